@@ -0,0 +1,139 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import jdbm.RecordManagerOptions;
+import jdbm.helper.compessor.BestCompressionRecordCompressor;
+import jdbm.helper.compessor.BestSpeedRecordCompressor;
+import jdbm.helper.compessor.DefaultRecordCompressor;
+import jdbm.helper.compessor.FastRecordCompressor;
+import jdbm.helper.compessor.IRecordCompressor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of each record compressor on its own, without the store.
+ *
+ * @version $Id$
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class CompressorBenchmark
+{
+
+    @Param( { RecordManagerOptions.COMPRESSOR_NONE,
+              RecordManagerOptions.COMPRESSOR_BEST_SPEED,
+              RecordManagerOptions.COMPRESSOR_BEST_COMPRESSION,
+              RecordManagerOptions.COMPRESSOR_FAST } )
+    public String compressor;
+
+    @Param( { "100", "1000", "8000" } )
+    public int recordSize;
+
+    private IRecordCompressor _compressor;
+
+    private byte[][] _records;
+
+    private byte[][] _compressed;
+
+    private int _next;
+
+
+    @Setup( Level.Trial )
+    public void setUp()
+    {
+        if ( RecordManagerOptions.COMPRESSOR_NONE.equals( compressor ) ) {
+            _compressor = new DefaultRecordCompressor();
+        } else if ( RecordManagerOptions.COMPRESSOR_BEST_SPEED.equals( compressor ) ) {
+            _compressor = new BestSpeedRecordCompressor();
+        } else if ( RecordManagerOptions.COMPRESSOR_BEST_COMPRESSION.equals( compressor ) ) {
+            _compressor = new BestCompressionRecordCompressor();
+        } else {
+            _compressor = new FastRecordCompressor();
+        }
+        _records = new byte[ 256 ][];
+        _compressed = new byte[ _records.length ][];
+        for ( int i = 0; i < _records.length; i++ ) {
+            _records[ i ] = Datasets.bytes( i, recordSize );
+            _compressed[ i ] = _compressor.compress( _records[ i ] );
+        }
+    }
+
+
+    @Benchmark
+    public byte[] compress()
+    {
+        _next = ( _next + 1 ) % _records.length;
+        return _compressor.compress( _records[ _next ] );
+    }
+
+
+    @Benchmark
+    public byte[] decompress()
+    {
+        _next = ( _next + 1 ) % _compressed.length;
+        return _compressor.decompress( _compressed[ _next ] );
+    }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Properties;
+import java.util.Random;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+
+/**
+ * The fixed datasets of the benchmarks. All data is generated from fixed
+ * seeds so that runs are comparable across versions.
+ *
+ * @version $Id$
+ */
+public final class Datasets
+{
+
+    /**
+     * The seed of all generated data.
+     */
+    public static final long SEED = 20061019L;
+
+    /**
+     * Words used to generate compressible text.
+     */
+    private static final String[] WORDS = { "record", "manager", "page",
+        "block", "btree", "htree", "cache", "commit", "serializer", "log",
+        "transaction", "key", "value", "jdbm", "store", "fetch" };
+
+    private Datasets()
+    {
+    }
+
+
+    /**
+     * A record which is a plain java object with a mix of fields.
+     */
+    public static class Item
+        implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        long id;
+        int quantity;
+        double price;
+        String name;
+        String description;
+
+        public Item()
+        {
+        }
+    }
+
+
+    /**
+     * Returns the <i>i</i>th item of the dataset.
+     */
+    public static Item item( int i )
+    {
+        Random r = new Random( SEED + i );
+        Item item = new Item();
+        item.id = i;
+        item.quantity = r.nextInt( 1000 );
+        item.price = r.nextInt( 100000 ) / 100d;
+        item.name = "item-" + i;
+        item.description = text( r, 20 );
+        return item;
+    }
+
+
+    /**
+     * Returns <i>size</i> bytes of compressible text for the <i>i</i>th
+     * record of the dataset.
+     */
+    public static byte[] bytes( int i, int size )
+    {
+        Random r = new Random( SEED + i );
+        byte[] text = text( r, size / 4 + 1 ).getBytes();
+        byte[] b = new byte[ size ];
+        for ( int j = 0; j < size; j++ ) {
+            b[ j ] = text[ j % text.length ];
+        }
+        return b;
+    }
+
+
+    private static String text( Random r, int nwords )
+    {
+        StringBuffer sb = new StringBuffer();
+        for ( int i = 0; i < nwords; i++ ) {
+            if ( i > 0 ) {
+                sb.append( ' ' );
+            }
+            sb.append( WORDS[ r.nextInt( WORDS.length ) ] );
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Returns a permutation of [0:n) which is used to visit the records of a
+     * dataset in a random but fixed order.
+     */
+    public static int[] permutation( int n )
+    {
+        int[] a = new int[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            a[ i ] = i;
+        }
+        Random r = new Random( SEED );
+        for ( int i = n - 1; i > 0; i-- ) {
+            int j = r.nextInt( i + 1 );
+            int t = a[ i ];
+            a[ i ] = a[ j ];
+            a[ j ] = t;
+        }
+        return a;
+    }
+
+
+    /**
+     * Creates a new store in a temporary directory.
+     *
+     * @param options The options of the store.
+     */
+    public static RecordManager createStore( File dir, Properties options )
+        throws IOException
+    {
+        return RecordManagerFactory.createRecordManager
+            ( new File( dir, "bench" ).getPath(), options );
+    }
+
+
+    /**
+     * Creates a temporary directory for a store.
+     */
+    public static File createDirectory()
+        throws IOException
+    {
+        File dir = File.createTempFile( "jdbm-bench", "" );
+        if ( ! dir.delete() || ! dir.mkdir() ) {
+            throw new IOException( "Can not create " + dir );
+        }
+        return dir;
+    }
+
+
+    /**
+     * Deletes a directory created by {@link #createDirectory()}.
+     */
+    public static void deleteDirectory( File dir )
+    {
+        File[] files = dir.listFiles();
+        if ( files != null ) {
+            for ( int i = 0; i < files.length; i++ ) {
+                files[ i ].delete();
+            }
+        }
+        dir.delete();
+    }
+
+}
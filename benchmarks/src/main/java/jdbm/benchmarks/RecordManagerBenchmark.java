@@ -0,0 +1,215 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerOptions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the record manager operations for each cache policy,
+ * serialization handler and record compressor. The store is loaded with
+ * {@link #records} {@link Datasets.Item}s before each trial.
+ *
+ * @version $Id$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class RecordManagerBenchmark
+{
+
+    @Param( { RecordManagerOptions.NO_CACHE, RecordManagerOptions.NORMAL_CACHE,
+              RecordManagerOptions.SOFT_REF_CACHE, RecordManagerOptions.WEAK_REF_CACHE } )
+    public String cacheType;
+
+    @Param( { RecordManagerOptions.SERIALIZER_DEFAULT,
+              RecordManagerOptions.SERIALIZER_EXTENSIBLE,
+              RecordManagerOptions.SERIALIZER_COMPACT } )
+    public String serializer;
+
+    @Param( { RecordManagerOptions.COMPRESSOR_NONE,
+              RecordManagerOptions.COMPRESSOR_BEST_SPEED,
+              RecordManagerOptions.COMPRESSOR_FAST } )
+    public String compressor;
+
+    @Param( { "10000" } )
+    public int records;
+
+    private File _dir;
+
+    private RecordManager _recman;
+
+    private long[] _recids;
+
+    /**
+     * The records, built before the trial so that their construction is not
+     * part of the measured time.
+     */
+    private Datasets.Item[] _items;
+
+    private int[] _order;
+
+    private int _next;
+
+    private int _nextItem;
+
+
+    @Setup( Level.Trial )
+    public void setUp()
+        throws IOException
+    {
+        Properties props = new Properties();
+        props.setProperty( RecordManagerOptions.CACHE_TYPE, cacheType );
+        props.setProperty( RecordManagerOptions.SERIALIZER, serializer );
+        props.setProperty( RecordManagerOptions.COMPRESSOR, compressor );
+        _dir = Datasets.createDirectory();
+        _recman = Datasets.createStore( _dir, props );
+        _recids = new long[ records ];
+        _items = new Datasets.Item[ records ];
+        for ( int i = 0; i < records; i++ ) {
+            _items[ i ] = Datasets.item( i );
+            _recids[ i ] = _recman.insert( _items[ i ] );
+        }
+        _recman.commit();
+        _order = Datasets.permutation( records );
+    }
+
+
+    /**
+     * Commits the inserts and updates of each iteration, so that the
+     * transaction does not grow without bound.
+     */
+    @TearDown( Level.Iteration )
+    public void commitIteration()
+        throws IOException
+    {
+        _recman.commit();
+    }
+
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+        throws IOException
+    {
+        _recman.close();
+        Datasets.deleteDirectory( _dir );
+    }
+
+
+    /**
+     * Returns the next record of the dataset, in random order.
+     */
+    private int next()
+    {
+        int i = _order[ _next ];
+        _next = ( _next + 1 ) % _order.length;
+        return i;
+    }
+
+
+    @Benchmark
+    public Object fetch()
+        throws IOException
+    {
+        return _recman.fetch( _recids[ next() ] );
+    }
+
+
+    @Benchmark
+    public long insert()
+        throws IOException
+    {
+        Datasets.Item item = _items[ _nextItem ];
+        _nextItem = ( _nextItem + 1 ) % _items.length;
+        return _recman.insert( item );
+    }
+
+
+    @Benchmark
+    public void update()
+        throws IOException
+    {
+        int i = next();
+        _recman.update( _recids[ i ], _items[ i ] );
+    }
+
+
+    /**
+     * An update followed by a commit, which is dominated by the writes to
+     * the transaction log.
+     */
+    @Benchmark
+    public void commit()
+        throws IOException
+    {
+        update();
+        _recman.commit();
+    }
+
+}
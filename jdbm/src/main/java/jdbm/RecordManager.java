@@ -51,6 +51,8 @@ package jdbm;
 import java.io.IOException;
 
 import jdbm.helper.ISerializationHandler;
+import jdbm.helper.LatencyHistograms;
+import jdbm.helper.SerializationProfiler;
 import jdbm.helper.Serializer;
 
 /**
@@ -113,6 +115,60 @@ public interface RecordManager
     public ISerializationHandler getSerializationHandler();
     
     
+    /**
+     * Return the serialization profiler.
+     * 
+     * @return The profiler or <code>null</code> unless profiling was
+     * enabled.
+     * 
+     * @see RecordManagerOptions#PROFILE_SERIALIZATION
+     */
+    
+    public SerializationProfiler getSerializationProfiler();
+    
+    
+    /**
+     * Return a snapshot of the statistics of the record manager, including
+     * those of the underlying record managers.
+     * 
+     * @see RecordManagerOptions#JMX
+     */
+    
+    public RecordManagerStatistics getStatistics()
+        throws IOException;
+    
+    
+    /**
+     * Return the latency histograms.
+     * 
+     * @return The histograms or <code>null</code> unless they were
+     * enabled.
+     * 
+     * @see RecordManagerOptions#LATENCY_HISTOGRAMS
+     */
+    
+    public LatencyHistograms getLatencyHistograms();
+    
+    
+    /**
+     * Writes a backup of the last commit while the record manager stays in
+     * use. The backup is a record manager of its own which may be opened
+     * under the given name. Changes made while the backup runs are not part
+     * of it, whether or not they are committed meanwhile.
+     * 
+     * @param name The name of the backup, without an extension.
+     * @param incremental When true and <i>name</i> is the last backup taken
+     * since the record manager was opened, only the pages changed since
+     * then are copied onto it. Otherwise the whole file is copied.
+     * 
+     * @throws IOException when one of the underlying I/O operations fails.
+     * @throws IllegalStateException if another backup is in progress.
+     */
+    
+    public void backup( String name, boolean incremental )
+        throws IOException;
+    
+    
     /**
      *  Inserts a new record using standard java object serialization.
      *
@@ -137,6 +193,22 @@ public interface RecordManager
         throws IOException;
 
 
+    /**
+     *  Inserts a set of new records. This is equivalent to inserting each
+     *  object in turn, but all objects are serialized first and the records
+     *  are then allocated together, one after the other, in new space.
+     *
+     *  @param objs the objects for the new records.
+     *  @param serializer a custom serializer or <code>null</code> to use the
+     *  configured serialization handler.
+     *  @return the rowids for the new records, in the same order as
+     *  <i>objs</i>.
+     *  @throws IOException when one of the underlying I/O operations fails.
+     */
+    public abstract long[] insertAll( Object[] objs, Serializer serializer )
+        throws IOException;
+
+
     /**
      *  Deletes a record.
      *
@@ -195,6 +267,78 @@ public interface RecordManager
         throws IOException;
 
 
+    /**
+     *  Fetches a set of records using the configured serialization handler.
+     *  This is equivalent to fetching each record in turn, but the records
+     *  are read from the file in page order so that each page is visited
+     *  once.
+     *
+     *  @param recids the recids of the records that must be fetched.
+     *  @return the objects contained in the records, in the same order as
+     *  <i>recids</i>. The entry for a deleted record is <code>null</code>.
+     *  @throws IOException when one of the underlying I/O operations fails.
+     */
+    public abstract Object[] fetchAll( long[] recids )
+        throws IOException;
+
+
+    /**
+     *  Fetches a set of records using a custom serializer.
+     *
+     *  @param recids the recids of the records that must be fetched.
+     *  @param serializer a custom serializer or <code>null</code> to use the
+     *  configured serialization handler.
+     *  @return the objects contained in the records, in the same order as
+     *  <i>recids</i>. The entry for a deleted record is <code>null</code>.
+     *  @throws IOException when one of the underlying I/O operations fails.
+     *
+     *  @see #fetchAll( long[] )
+     */
+    public abstract Object[] fetchAll( long[] recids, Serializer serializer )
+        throws IOException;
+
+
+    /**
+     *  Opens a stream which writes a new large object (blob). The blob
+     *  is stored in chunks of about a page which are written as the data
+     *  arrives, so it is never held in memory as a whole. The recid of
+     *  the blob is available from the stream once it is closed.
+     *  <p>
+     *  A blob is read with {@link #openBlobInput(long)} and must be deleted
+     *  with {@link #deleteBlob(long)}. It cannot be fetched or updated as
+     *  a record, and {@link #delete(long)} refuses it. Note that the pages written for a blob are part of the
+     *  current transaction until it is committed.
+     *
+     *  @return the stream.
+     *  @throws IOException when one of the underlying I/O operations fails.
+     */
+    public abstract BlobOutputStream openBlobOutput()
+        throws IOException;
+
+
+    /**
+     *  Opens a stream which reads a large object (blob).
+     *
+     *  @param recid the recid of the blob.
+     *  @return the stream, positioned at the start of the blob.
+     *  @throws IOException when one of the underlying I/O operations fails
+     *  or if the record is not a blob.
+     */
+    public abstract BlobInputStream openBlobInput( long recid )
+        throws IOException;
+
+
+    /**
+     *  Deletes a large object (blob).
+     *
+     *  @param recid the recid of the blob.
+     *  @throws IOException when one of the underlying I/O operations fails
+     *  or if the record is not a blob.
+     */
+    public abstract void deleteBlob( long recid )
+        throws IOException;
+
+
     /**
      *  Closes the record manager.
      *
@@ -92,7 +92,7 @@ public class RecordManagerOptions
     public static final String DISABLE_TRANSACTIONS_AUTOCOMMITINTERVAL = "jdbm.disableTransactions.autoCommitInterval";
 	
     /**
-     * The default is 10000 pages, which is 80MB since each page is 8KB.
+     * The default is 10000 pages, which is 80MB with the default 8KB page size.
      * 
      * @see #DISABLE_TRANSACTIONS_AUTOCOMMITINTERVAL
      */
@@ -109,6 +109,52 @@ public class RecordManagerOptions
      */
     public static final String DISABLE_TRANSACTIONS_PERFORMSYNCONCLOSE = "jdbm.disableTransactions.syncOnClose";
 
+    /**
+     * Option to specify the page size (in bytes) of a new store.  The value
+     * must be a power of two between {@link RecordFile#MIN_BLOCK_SIZE} and
+     * {@link RecordFile#MAX_BLOCK_SIZE}.  The page size is recorded in the
+     * file header when the store is created, so this option is ignored when
+     * an existing store is opened.  Large pages favor scans of large records
+     * and BTree nodes, small pages favor random updates of small records.
+     */
+    public static final String PAGE_SIZE = "jdbm.pageSize";
+
+    /**
+     * The default page size is 8KB.
+     * @see #PAGE_SIZE
+     */
+    public static final String PAGE_SIZE_DEFAULT = ""+RecordFile.BLOCK_SIZE;
+
+    /**
+     * Option for the #of threads writing the pages of the transaction log
+     * onto the data file when a store is recovered after a crash.  The log
+     * is read once to find the last image of each page and the distinct
+     * pages are then written in page order, several threads writing runs
+     * of adjacent pages.
+     */
+    public static final String RECOVERY_THREADS = "jdbm.recoveryThreads";
+
+    /**
+     * The default is 4 threads.
+     * @see #RECOVERY_THREADS
+     */
+    public static final String RECOVERY_THREADS_DEFAULT = "4";
+
+    /**
+     * Option for the #of files across which the records are spread.  With
+     * more than one shard, the record manager is a
+     * {@link jdbm.recman.ShardedRecordManager} whose shards are named after
+     * the record manager followed by <code>-0</code>, <code>-1</code>,
+     * ... The #of shards of an existing record manager cannot be changed.
+     */
+    public static final String SHARDS = "jdbm.shards";
+
+    /**
+     * The default is a single file.
+     * @see #SHARDS
+     */
+    public static final String SHARDS_DEFAULT = "1";
+
     //
     // Object cache options.
     //
@@ -206,6 +252,7 @@ public class RecordManagerOptions
      *
      * @see #SERIALIZER_DEFAULT
      * @see #SERIALIZER_EXTENSIBLE
+     * @see #SERIALIZER_COMPACT
      * @see RecordManager#getSerializationHandler()
      */
     public static final String SERIALIZER = "jdbm.serializer";
@@ -233,12 +280,50 @@ public class RecordManagerOptions
      */
     public static final String SERIALIZER_EXTENSIBLE = "extensible";
 
+    /**
+     * This option specifies the use of a serialization handler which
+     * writes the fields of plain java objects compactly, without java
+     * serialization, and falls back on java serialization for other
+     * objects.  This is NOT backward compatible with existing stores.
+     * 
+     * @see #SERIALIZER
+     * @see jdbm.helper.CompactSerializationHandler
+     */
+    public static final String SERIALIZER_COMPACT = "compact";
+
     /**
      * Boolean option may be used to turn on profiling for the serializer. This
-     * option defaults to false and is only supported by the extensible
-     * serialization handler.
+     * option defaults to false. When true, the #of records, bytes and time
+     * spent serializing and deserializing are counted per class of record for
+     * all serializers, and the extensible serialization handler also turns on
+     * its own profiler.
+     * 
+     * @see RecordManager#getSerializationProfiler()
+     * @see jdbm.helper.SerializationProfiler
      */
     public static final String PROFILE_SERIALIZATION = "jdbm.serializer.profile";
+
+    /**
+     * Boolean option may be used to register the statistics of the record
+     * manager as an MBean with the platform MBean server, under the object
+     * name <code>jdbm:type=RecordManager,name="<i>store</i>"</code>, until
+     * the record manager is closed. This option defaults to false.
+     * 
+     * @see RecordManager#getStatistics()
+     * @see RecordManagerStatistics
+     */
+    public static final String JMX = "jdbm.jmx";
+
+    /**
+     * Boolean option may be used to record the latencies of fetch, insert,
+     * update, delete and commit operations and of the checkpoints of the
+     * transaction log in histograms. The percentiles are also reported by
+     * the statistics. This option defaults to false.
+     * 
+     * @see RecordManager#getLatencyHistograms()
+     * @see jdbm.helper.LatencyHistograms
+     */
+    public static final String LATENCY_HISTOGRAMS = "jdbm.latencyHistograms";
     
     //
     // Compression options.
@@ -268,6 +353,32 @@ public class RecordManagerOptions
      */
     public static final String COMPRESSOR_BEST_COMPRESSION = "bestCompression";
 
+    /**
+     * Record compression strategy using a fast LZ4 style codec, which stores
+     * small records and records that do not compress raw.
+     * 
+     * @see jdbm.helper.compessor.FastRecordCompressor
+     * @see #COMPRESSOR_THRESHOLD
+     * @see #COMPRESSOR_DICTIONARY
+     */
+    public static final String COMPRESSOR_FAST = "fast";
+
+    /**
+     * Option for the {@link #COMPRESSOR_FAST} compressor specifying the size
+     * in bytes below which records are stored raw (default is 32).
+     */
+    public static final String COMPRESSOR_THRESHOLD = "jdbm.compressor.threshold";
+
+    /**
+     * Option for the {@link #COMPRESSOR_FAST} compressor naming a file which
+     * holds a compression dictionary, e.g., as built by
+     * {@link jdbm.helper.compessor.FastRecordCompressor#trainDictionary(byte[][], int)}.
+     * The dictionary is copied into the store when the compressor is first
+     * selected and is used from then on, so this option has no effect on a
+     * store which already uses the compressor.
+     */
+    public static final String COMPRESSOR_DICTIONARY = "jdbm.compressor.dictionary";
+
     //
     // Dump utility options.
     //
@@ -0,0 +1,337 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of the statistics of a record manager, which is a set of named
+ * counters and gauges. The statistics reported depend on the configuration
+ * of the store, e.g., there are no object cache statistics unless a cache
+ * is used and no log statistics when transactions are disabled.
+ * <p>
+ * When {@link RecordManagerOptions#LATENCY_HISTOGRAMS} is true, the count,
+ * median, 99th and 99.9th percentiles and maximum latency in nanoseconds of
+ * each operation are reported as e.g. <code>CommitLatencyCount</code>,
+ * <code>CommitLatencyP50</code>, <code>CommitLatencyP99</code>,
+ * <code>CommitLatencyP999</code> and <code>CommitLatencyMax</code>.
+ * <p>
+ * The same statistics are exposed as the attributes of an MBean when
+ * {@link RecordManagerOptions#JMX} is true.
+ *
+ * @see RecordManager#getStatistics()
+ * @version $Id$
+ */
+public class RecordManagerStatistics
+    implements Serializable
+{
+
+    private static final long serialVersionUID = 1L;
+
+    //
+    // Block cache (RecordFile).
+    //
+
+    /**
+     * #of block requests satisfied by blocks held in memory.
+     */
+    public static final String BLOCK_CACHE_HITS = "BlockCacheHits";
+
+    /**
+     * #of block requests which were read from the file or which extended
+     * the file.
+     */
+    public static final String BLOCK_CACHE_MISSES = "BlockCacheMisses";
+
+    /**
+     * #of clean blocks evicted from the block cache.
+     */
+    public static final String BLOCK_CACHE_EVICTIONS = "BlockCacheEvictions";
+
+    /**
+     * #of blocks read from the data file.
+     */
+    public static final String BLOCKS_READ = "BlocksRead";
+
+    /**
+     * #of bytes read from the data file.
+     */
+    public static final String BYTES_READ = "BytesRead";
+
+    /**
+     * #of blocks written onto the data file.
+     */
+    public static final String BLOCKS_WRITTEN = "BlocksWritten";
+
+    /**
+     * #of bytes written onto the data file.
+     */
+    public static final String BYTES_WRITTEN = "BytesWritten";
+
+    /**
+     * #of gathering writes of runs of adjacent blocks.
+     */
+    public static final String WRITE_BATCHES = "WriteBatches";
+
+    /**
+     * #of times the data file or the log was forced to disk.
+     */
+    public static final String FSYNCS = "Fsyncs";
+
+    //
+    // Transaction log.
+    //
+
+    /**
+     * The size of the transaction log in bytes.
+     */
+    public static final String LOG_SIZE = "LogSize";
+
+    /**
+     * #of transactions written onto the log.
+     */
+    public static final String LOG_TRANSACTIONS = "LogTransactions";
+
+    /**
+     * #of times the log was synchronized with the data file.
+     */
+    public static final String LOG_CHECKPOINTS = "LogCheckpoints";
+
+    /**
+     * #of transactions replayed from the log when the store was recovered
+     * (also by rollbacks, which recover the data file from the log).
+     */
+    public static final String LOG_RECOVERED_TRANSACTIONS = "LogRecoveredTransactions";
+
+    /**
+     * #of distinct blocks written onto the data file by recoveries.
+     */
+    public static final String LOG_RECOVERED_BLOCKS = "LogRecoveredBlocks";
+
+    /**
+     * #of block images read from the log by recoveries, counting each
+     * image of a block which was logged by several transactions.
+     */
+    public static final String LOG_REPLAYED_BLOCKS = "LogReplayedBlocks";
+
+    /**
+     * #of undecided transactions at the end of the log which recoveries
+     * discarded.
+     */
+    public static final String LOG_DISCARDED_TRANSACTIONS = "LogDiscardedTransactions";
+
+    /**
+     * Nanoseconds spent recovering the data file from the log.
+     */
+    public static final String LOG_RECOVERY_NANOS = "LogRecoveryNanos";
+
+    //
+    // Record manager.
+    //
+
+    /**
+     * #of commits.
+     */
+    public static final String COMMITS = "Commits";
+
+    /**
+     * Total time spent in commits in nanoseconds.
+     */
+    public static final String COMMIT_NANOS = "CommitNanos";
+
+    /**
+     * #of rollbacks.
+     */
+    public static final String ROLLBACKS = "Rollbacks";
+
+    /**
+     * #of commits of a {@link jdbm.recman.ShardedRecordManager} which
+     * changed more than one shard and were coordinated in two phases.
+     */
+    public static final String DISTRIBUTED_COMMITS = "DistributedCommits";
+
+    //
+    // Allocator (PhysicalRowIdManager).
+    //
+
+    /**
+     * #of physical rows allocated from the free physical row list.
+     */
+    public static final String ROWS_REUSED = "RowsReused";
+
+    /**
+     * #of physical rows allocated after the last row in use.
+     */
+    public static final String ROWS_ALLOCATED = "RowsAllocated";
+
+    /**
+     * #of physical rows freed, including rows freed when a record grows and
+     * is moved.
+     */
+    public static final String ROWS_FREED = "RowsFreed";
+
+    /**
+     * #of records moved to a new physical row since they outgrew their row.
+     */
+    public static final String ROWS_MOVED = "RowsMoved";
+
+    //
+    // Object cache (CacheRecordManager).
+    //
+
+    /**
+     * #of fetches satisfied by the object cache.
+     */
+    public static final String OBJECT_CACHE_HITS = "ObjectCacheHits";
+
+    /**
+     * #of fetches which were not satisfied by the object cache.
+     */
+    public static final String OBJECT_CACHE_MISSES = "ObjectCacheMisses";
+
+    /**
+     * #of dirty objects written back when evicted from the object cache.
+     */
+    public static final String OBJECT_CACHE_WRITE_BACKS = "ObjectCacheWriteBacks";
+
+    //
+    // Buffered installs (BufferedRecordInstallManager).
+    //
+
+    /**
+     * #of records installed by the buffered record install manager.
+     */
+    public static final String BUFFERED_RECORDS_INSTALLED = "BufferedRecordsInstalled";
+
+    /**
+     * #of bytes installed by the buffered record install manager.
+     */
+    public static final String BUFFERED_BYTES_WRITTEN = "BufferedBytesWritten";
+
+    /**
+     * #of bytes wasted in buckets installed page at once.
+     */
+    public static final String BUFFERED_BYTES_WASTED = "BufferedBytesWasted";
+
+
+    /**
+     * The values by name.
+     */
+    private final TreeMap _values = new TreeMap();
+
+
+    /**
+     * Set a statistic.
+     */
+    public void set( String name, long value )
+    {
+        _values.put( name, new Long( value ) );
+    }
+
+
+    /**
+     * Add to a statistic.
+     */
+    public void add( String name, long value )
+    {
+        set( name, get( name ) + value );
+    }
+
+
+    /**
+     * Returns a statistic, or zero if the statistic is not reported.
+     */
+    public long get( String name )
+    {
+        Long value = (Long) _values.get( name );
+        return value == null ? 0L : value.longValue();
+    }
+
+
+    /**
+     * True iff the statistic is reported.
+     */
+    public boolean contains( String name )
+    {
+        return _values.containsKey( name );
+    }
+
+
+    /**
+     * Returns the names of the reported statistics in sorted order.
+     */
+    public String[] getNames()
+    {
+        return (String[]) _values.keySet().toArray( new String[ _values.size() ] );
+    }
+
+
+    /**
+     * Returns the statistics as an unmodifiable map from name to
+     * {@link Long}.
+     */
+    public Map toMap()
+    {
+        return Collections.unmodifiableMap( _values );
+    }
+
+
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer();
+        for ( Iterator it = _values.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            sb.append( entry.getKey() ).append( '=' ).append( entry.getValue() ).append( '\n' );
+        }
+        return sb.toString();
+    }
+
+}
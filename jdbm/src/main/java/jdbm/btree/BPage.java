@@ -47,7 +47,6 @@
 package jdbm.btree;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -60,6 +59,8 @@ import org.CognitiveWeb.extser.IStreamSerializer;
 import org.CognitiveWeb.extser.Stateless;
 
 import jdbm.RecordManager;
+import jdbm.helper.BufferSerializer;
+import jdbm.helper.ByteArrayBuffer;
 import jdbm.helper.ExtensibleSerializer;
 import jdbm.helper.Serializer;
 import jdbm.helper.Tuple;
@@ -86,7 +87,7 @@ import jdbm.helper.compression.ByteArrayDecompressor;
  * @version $Id: BPage.java,v 1.14 2006/05/03 19:51:15 thompsonbry Exp $
  */
 public final class BPage
-    implements Serializer
+    implements BufferSerializer
 {
 
     private static final boolean DEBUG = false;
@@ -954,6 +955,44 @@ public final class BPage
         }
     }
 
+
+    /**
+     * Reads an object written by {@link #writeObject} into the scratch buffer
+     * and deserializes it from there, in the format of {@link #readByteArray}.
+     */
+    static Object readObject( ObjectInput in, BufferSerializer ser,
+                              ByteArrayBuffer scratch )
+        throws IOException
+    {
+        int len = in.readInt();
+        if ( len < 0 ) {
+            return null;
+        }
+        scratch.reset();
+        scratch.ensureCapacity( len );
+        in.readFully( scratch.getBuffer(), 0, len );
+        return ser.deserialize( scratch.getBuffer(), 0, len );
+    }
+
+
+    /**
+     * Serializes an object into the scratch buffer and writes it in the
+     * format of {@link #writeByteArray}, without a byte[] per object.
+     */
+    static void writeObject( ObjectOutput out, BufferSerializer ser,
+                             Object obj, ByteArrayBuffer scratch )
+        throws IOException
+    {
+        if ( obj == null ) {
+            out.writeInt( -1 );
+        } else {
+            scratch.reset();
+            ser.serialize( scratch, obj );
+            out.writeInt( scratch.size() );
+            out.write( scratch.getBuffer(), 0, scratch.size() );
+        }
+    }
+
     /**
      * Dump the structure of the tree on the screen.  This is used for debugging
      * purposes only.
@@ -1066,13 +1105,39 @@ public final class BPage
      */
     public Object deserialize( byte[] serialized ) 
         throws IOException
+    {
+        return deserialize( serialized, 0, serialized.length );
+    }
+
+
+    /**
+     * Deserialize the content of an object from a region of a byte array.
+     * Keys and values whose serializers are {@link BufferSerializer}s are
+     * deserialized from a reused buffer.
+     */
+    public Object deserialize( byte[] buf, int off, int len )
+        throws IOException
+    {
+        ByteArrayBuffer scratch = ByteArrayBuffer.acquire();
+        try {
+            return deserialize( buf, off, len, scratch );
+        } finally {
+            ByteArrayBuffer.release( scratch );
+        }
+    }
+
+
+    private Object deserialize( byte[] buf, int off, int len,
+                                ByteArrayBuffer scratch )
+        throws IOException
     {
         ByteArrayInputStream  bais;
         ObjectInput/*Stream*/ ois;
         BPage                 bpage;
+        byte[]                serialized;
 
         bpage = new BPage();
-        bais = new ByteArrayInputStream( serialized );
+        bais = new ByteArrayInputStream( buf, off, len );
 //        ois = new jdbm.helper.ObjectInputStream( recman, recid, bais );
         ois = new java.io.ObjectInputStream( bais );
         
@@ -1094,6 +1159,10 @@ public final class BPage
                 if ( _btree._keySerializer == null ) {
                     bpage._keys[ i ] = ois.readObject();
                 } else {
+                	if (keyDecompressor == null && _btree._keySerializer instanceof BufferSerializer) {
+                		bpage._keys[ i ] = readObject( ois, (BufferSerializer) _btree._keySerializer, scratch );
+                		continue;
+                	}
                 	if (keyDecompressor != null)
                 		serialized = keyDecompressor.decompressNextGroup();
                 	else
@@ -1114,6 +1183,8 @@ public final class BPage
                 for ( int i=bpage._first; i<_btree._pageSize; i++ ) {
                     if ( _btree._valueSerializer == null ) {
                         bpage._values[ i ] = ois.readObject();
+                    } else if ( _btree._valueSerializer instanceof BufferSerializer ) {
+                        bpage._values[ i ] = readObject( ois, (BufferSerializer) _btree._valueSerializer, scratch );
                     } else {
                         serialized = readByteArray( ois );
                         if ( serialized != null ) {
@@ -1160,20 +1231,50 @@ public final class BPage
     public byte[] serialize( Object obj ) 
         throws IOException
     {
+        ByteArrayBuffer out = ByteArrayBuffer.acquire();
+        try {
+            serialize( out, obj );
+            return out.toByteArray();
+        } finally {
+            ByteArrayBuffer.release( out );
+        }
+    }
+
+
+    /**
+     * Serialize the content of an object, appending it to a buffer. Keys and
+     * values whose serializers are {@link BufferSerializer}s are serialized
+     * into a reused buffer rather than a byte[] each.
+     *
+     * @see #serialize(Object)
+     */
+    public void serialize( ByteArrayBuffer out, Object obj )
+        throws IOException
+    {
+        ByteArrayBuffer scratch = ByteArrayBuffer.acquire();
+        try {
+            serialize( out, obj, scratch );
+        } finally {
+            ByteArrayBuffer.release( scratch );
+        }
+    }
+
+
+    private void serialize( ByteArrayBuffer out, Object obj,
+                            ByteArrayBuffer scratch )
+        throws IOException
+    {
         
         byte[]                 serialized;
-        ByteArrayOutputStream  baos;
         ObjectOutput/*Stream*/ oos;
         BPage                  bpage;
-        byte[]                 data;
         
         // note:  It is assumed that BPage instance doing the serialization is the parent
         // of the BPage object being serialized (actually, this is not quite true).
         
         bpage = (BPage) obj;
-        baos = new ByteArrayOutputStream();
 //        oos = new jdbm.helper.ObjectOutputStream( recman, recid, baos );
-        oos = new java.io.ObjectOutputStream( baos );
+        oos = new java.io.ObjectOutputStream( out );
         
         oos.writeBoolean( bpage._isLeaf );
         if ( bpage._isLeaf ) {
@@ -1188,6 +1289,8 @@ public final class BPage
         for ( int i=bpage._first; i<_btree._pageSize; i++ ) {
             if ( _btree._keySerializer == null ) {
                 oos.writeObject( bpage._keys[ i ] );
+            } else if ( keyCompressor == null && _btree._keySerializer instanceof BufferSerializer ) {
+                writeObject( oos, (BufferSerializer) _btree._keySerializer, bpage._keys[ i ], scratch );
             } else {
                 serialized = bpage._keys[ i ] != null ? _btree._keySerializer.serialize( bpage._keys[ i ] ) : null;
                 if (keyCompressor != null)
@@ -1205,6 +1308,8 @@ public final class BPage
             for ( int i=bpage._first; i<_btree._pageSize; i++ ) {
                 if ( _btree._valueSerializer == null ) {
                     oos.writeObject( bpage._values[ i ] );
+                } else if ( _btree._valueSerializer instanceof BufferSerializer ) {
+                    writeObject( oos, (BufferSerializer) _btree._valueSerializer, bpage._values[ i ], scratch );
                 } else {
                     if ( bpage._values[ i ] != null ) {
                         serialized = _btree._valueSerializer.serialize( bpage._values[ i ] );
@@ -1221,10 +1326,7 @@ public final class BPage
         }
         
         oos.flush();
-        data = baos.toByteArray();
         oos.close();
-        baos.close();
-        return data;
     }
     
     
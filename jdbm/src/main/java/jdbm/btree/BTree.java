@@ -66,6 +66,8 @@ import jdbm.helper.ExtensibleSerializerSingleton;
 import jdbm.helper.Serializer;
 import jdbm.helper.Tuple;
 import jdbm.helper.TupleBrowser;
+import jdbm.helper.compessor.FastRecordCompressor;
+import jdbm.helper.compessor.IRecordCompressor;
 import jdbm.helper.compression.CompressionProvider;
 
 
@@ -174,6 +176,17 @@ public class BTree
     */
     protected CompressionProvider _keyCompressionProvider;
 
+    /**
+     * True iff each serialized BPage is compressed as a whole before it is
+     * stored.
+     */
+    protected boolean _compressPages;
+
+    /**
+     * Compressor used for the BPages when {@link #_compressPages} is set.
+     */
+    private transient IRecordCompressor _pageCompressor;
+
     /**
      * Serializer used for the root BPage of this tree.
      */
@@ -237,6 +250,36 @@ public class BTree
                                         Serializer valueSerializer,
                                         int pageSize )
         throws IOException
+    {
+        return createInstance( recman, comparator, keySerializer,
+                               valueSerializer, pageSize, false );
+    }
+
+
+    /**
+     * Create a new persistent BTree with the given number of entries per node.
+     * <p>
+     * When <i>compressPages</i> is set, each serialized BPage is compressed
+     * as a whole with a {@link FastRecordCompressor}. The keys and values on
+     * a page are usually similar, so the page compresses far better than
+     * each record or key on its own, and the smaller record needs less space
+     * in the store. Pages are decompressed when they are fetched, so the
+     * record manager cache holds the uncompressed pages.
+     *
+     * @param recman Record manager used for persistence.
+     * @param comparator Comparator used to order index entries
+     * @param keySerializer Serializer used to serialize index keys (optional)
+     * @param valueSerializer Serializer used to serialize index values (optional)
+     * @param pageSize Number of entries per page (must be even).
+     * @param compressPages True to store the BPages compressed.
+     */
+    public static BTree createInstance( RecordManager recman,
+                                        Comparator comparator,
+                                        Serializer keySerializer,
+                                        Serializer valueSerializer,
+                                        int pageSize,
+                                        boolean compressPages )
+        throws IOException
     {
         BTree btree;
 
@@ -271,6 +314,7 @@ public class BTree
         btree._keySerializer = keySerializer;
         btree._valueSerializer = valueSerializer;
         btree._pageSize = pageSize;
+        btree._compressPages = compressPages;
         btree._bpageSerializer = new BPage();
         btree._bpageSerializer._btree = btree;
         btree._recid = recman.insert( btree ); // insert into store.
@@ -309,6 +353,14 @@ public class BTree
     {
         return _keyCompressionProvider;
     }
+
+    /**
+     * True iff the BPages of this tree are stored compressed.
+     */
+    public boolean isCompressPages()
+    {
+        return _compressPages;
+    }
     
     /**
      * Insert an entry in the BTree.
@@ -665,6 +717,12 @@ public class BTree
         	// I'd prefer to do this with in.available(), but that doesn't work reliably (available() is not the number of bytes left in the input- it is the number of bytes that can be read without blocking...)
         	_keyCompressionProvider = null;
         }
+        try{
+        	_compressPages = in.readBoolean();
+        } catch (EOFException e){
+        	// this BTree was stored before we added page compression support
+        	_compressPages = false;
+        }
 
     }
 
@@ -694,6 +752,7 @@ public class BTree
         }
         
         out.writeObject( _keyCompressionProvider );
+        out.writeBoolean( _compressPages );
     }
 
     /**
@@ -719,6 +778,7 @@ public class BTree
             out.serialize( tmp._keySerializer );
             out.serialize( tmp._valueSerializer );
             out.serialize( tmp._keyCompressionProvider );
+            out.writeBoolean( tmp._compressPages );
             
         }
 
@@ -736,6 +796,12 @@ public class BTree
             tmp._keySerializer = (Serializer) in.deserialize();
             tmp._valueSerializer = (Serializer) in.deserialize();
             tmp._keyCompressionProvider = (CompressionProvider) in.deserialize();
+            try {
+                tmp._compressPages = in.readBoolean();
+            } catch( EOFException ex ) {
+                // stored before page compression support was added.
+                tmp._compressPages = false;
+            }
             
             return tmp;
             
@@ -831,6 +897,12 @@ public class BTree
     	throws IOException
     {
 
+        if( _compressPages ) {
+
+            return _recman.insert( bpage, new CompressedPageSerializer( ser ) );
+
+        }
+
         return ( isExtensibleSerializer()
                 ? _recman.insert( bpage )
                 : _recman.insert( bpage, ser )
@@ -857,6 +929,12 @@ public class BTree
     BPage _fetch( long recid, Serializer ser )
     	throws IOException
     {
+
+        if( _compressPages ) {
+
+            return (BPage) _recman.fetch( recid, new CompressedPageSerializer( ser ) );
+
+        }
     
         return (BPage) ( isExtensibleSerializer()
                 	 ? _recman.fetch( recid )
@@ -888,7 +966,11 @@ public class BTree
     	throws IOException
     {
 
-        if( isExtensibleSerializer() ) {
+        if( _compressPages ) {
+
+            _recman.update( recid, bpage, new CompressedPageSerializer( ser ) );
+
+        } else if( isExtensibleSerializer() ) {
 
             _recman.update( recid, bpage );
             
@@ -900,6 +982,50 @@ public class BTree
         
     }
 
+    /**
+     * Returns the compressor for the BPages.
+     */
+    private IRecordCompressor getPageCompressor()
+    {
+        if( _pageCompressor == null ) {
+            _pageCompressor = new FastRecordCompressor( 0, null );
+        }
+        return _pageCompressor;
+    }
+
+    /**
+     * Compresses the BPage serialized by the custom serializer. The custom
+     * serializer is always used for compressed pages, even when the
+     * extensible serialization handler was configured for the store.
+     */
+    private class CompressedPageSerializer
+        implements Serializer
+    {
+
+        private final transient Serializer _ser;
+
+        CompressedPageSerializer( Serializer ser )
+        {
+            _ser = ser;
+        }
+
+        public byte[] serialize( Object obj )
+            throws IOException
+        {
+            byte[] data = _ser.serialize( obj );
+            synchronized( BTree.this ) {
+                return getPageCompressor().compress( data );
+            }
+        }
+
+        public Object deserialize( byte[] serialized )
+            throws IOException
+        {
+            return _ser.deserialize( getPageCompressor().decompress( serialized ) );
+        }
+
+    }
+
     /**
      * Delete a {@link BPage} from the store.
      * 
@@ -0,0 +1,88 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ * $Id$
+ */
+
+package jdbm.helper;
+
+import java.io.IOException;
+
+/**
+ * A {@link Serializer} which can write into a reusable buffer and read from a
+ * region of an array, so that no intermediate byte arrays are allocated. The
+ * record managers, {@link jdbm.btree.BPage} and {@link Serialization} use
+ * these methods when they are given such a serializer.
+ * <p>
+ * The results must be the same as those of {@link #serialize(Object)} and
+ * {@link #deserialize(byte[])}.
+ *
+ * @version $Id$
+ */
+public interface BufferSerializer
+    extends Serializer
+{
+
+    /**
+     * Serialize the content of an object, appending it to a buffer.
+     *
+     * @param out The buffer.
+     * @param obj Object to serialize
+     */
+    public void serialize( ByteArrayBuffer out, Object obj )
+        throws IOException;
+
+
+    /**
+     * Deserialize the content of an object from a region of a byte array.
+     *
+     * @param buf The array.
+     * @param off The offset of the serialized object in the array.
+     * @param len The length of the serialized object.
+     * @return deserialized object
+     */
+    public Object deserialize( byte[] buf, int off, int len )
+        throws IOException;
+
+}
@@ -0,0 +1,235 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ * $Id$
+ */
+
+package jdbm.helper;
+
+import java.io.OutputStream;
+
+/**
+ * A growable byte array which is reused to serialize records without
+ * allocating a new array for each record.
+ * <p>
+ * A buffer is borrowed from a per thread pool using {@link #acquire()} and
+ * handed back using {@link #release(ByteArrayBuffer)}. A borrowed buffer is
+ * not in the pool, so nested serializations on the same thread (e.g., a page
+ * and its keys) each get their own buffer. The pool keeps up to
+ * {@link #POOL_SIZE} buffers per thread and drops buffers which grew larger
+ * than {@link #MAX_POOLED_CAPACITY}.
+ *
+ * @version $Id$
+ * @see BufferSerializer
+ */
+public final class ByteArrayBuffer
+    extends OutputStream
+{
+
+    /**
+     * The largest buffer kept in the pool of a thread.
+     */
+    public static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+
+    /**
+     * The #of buffers kept in the pool of a thread.
+     */
+    public static final int POOL_SIZE = 4;
+
+    /**
+     * The pool of each thread, which is an array of {@link #POOL_SIZE}
+     * buffers used as a stack.
+     */
+    private static final ThreadLocal _pool = new ThreadLocal() {
+        protected Object initialValue()
+        {
+            return new ByteArrayBuffer[ POOL_SIZE ];
+        }
+    };
+
+    private byte[] _buf;
+
+    private int _count;
+
+
+    public ByteArrayBuffer()
+    {
+        this( 256 );
+    }
+
+
+    public ByteArrayBuffer( int capacity )
+    {
+        _buf = new byte[ capacity ];
+    }
+
+
+    /**
+     * Borrow an empty buffer from the pool of the current thread.
+     */
+    public static ByteArrayBuffer acquire()
+    {
+        ByteArrayBuffer[] pool = (ByteArrayBuffer[]) _pool.get();
+        for ( int i = pool.length - 1; i >= 0; i-- ) {
+            if ( pool[ i ] != null ) {
+                ByteArrayBuffer buf = pool[ i ];
+                pool[ i ] = null;
+                return buf;
+            }
+        }
+        return new ByteArrayBuffer();
+    }
+
+
+    /**
+     * Hand back a buffer obtained from {@link #acquire()}. The buffer must not
+     * be used afterwards.
+     */
+    public static void release( ByteArrayBuffer buf )
+    {
+        if ( buf._buf.length > MAX_POOLED_CAPACITY ) {
+            return;
+        }
+        buf._count = 0;
+        ByteArrayBuffer[] pool = (ByteArrayBuffer[]) _pool.get();
+        for ( int i = 0; i < pool.length; i++ ) {
+            if ( pool[ i ] == null ) {
+                pool[ i ] = buf;
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * The backing array, which holds {@link #size()} bytes of data. The array
+     * is replaced when the buffer grows.
+     */
+    public byte[] getBuffer()
+    {
+        return _buf;
+    }
+
+
+    /**
+     * The #of bytes written.
+     */
+    public int size()
+    {
+        return _count;
+    }
+
+
+    /**
+     * Discard the data, keeping the backing array.
+     */
+    public void reset()
+    {
+        _count = 0;
+    }
+
+
+    /**
+     * A copy of the data.
+     */
+    public byte[] toByteArray()
+    {
+        byte[] tmp = new byte[ _count ];
+        System.arraycopy( _buf, 0, tmp, 0, _count );
+        return tmp;
+    }
+
+
+    /**
+     * Make room for <i>len</i> more bytes.
+     */
+    public void ensureCapacity( int len )
+    {
+        int required = _count + len;
+        if ( required > _buf.length ) {
+            byte[] tmp = new byte[ Math.max( required, _buf.length * 2 ) ];
+            System.arraycopy( _buf, 0, tmp, 0, _count );
+            _buf = tmp;
+        }
+    }
+
+
+    public void write( int b )
+    {
+        ensureCapacity( 1 );
+        _buf[ _count++ ] = (byte) b;
+    }
+
+
+    public void write( byte[] b, int off, int len )
+    {
+        ensureCapacity( len );
+        System.arraycopy( b, off, _buf, _count, len );
+        _count += len;
+    }
+
+
+    /**
+     * Write an int in big-endian byte order.
+     */
+    public void writeInt( int v )
+    {
+        ensureCapacity( 4 );
+        _buf[ _count++ ] = (byte) ( v >>> 24 );
+        _buf[ _count++ ] = (byte) ( v >>> 16 );
+        _buf[ _count++ ] = (byte) ( v >>> 8 );
+        _buf[ _count++ ] = (byte) v;
+    }
+
+
+    /**
+     * Write a long in big-endian byte order.
+     */
+    public void writeLong( long v )
+    {
+        writeInt( (int) ( v >>> 32 ) );
+        writeInt( (int) v );
+    }
+
+}
@@ -59,7 +59,7 @@ import org.CognitiveWeb.extser.Stateless;
  * @version $Id: ByteArraySerializer.java,v 1.3 2006/05/03 19:51:33 thompsonbry Exp $
  */
 public final class ByteArraySerializer
-    implements Serializer, Stateless
+    implements BufferSerializer, Stateless
 {
 
     /**
@@ -101,4 +101,21 @@ public final class ByteArraySerializer
         return serialized;
     }    
 
+
+    public void serialize( ByteArrayBuffer out, Object obj )
+        throws IOException
+    {
+        byte[] buf = (byte[]) obj;
+        out.write( buf, 0, buf.length );
+    }
+
+
+    public Object deserialize( byte[] buf, int off, int len )
+        throws IOException
+    {
+        byte[] tmp = new byte[ len ];
+        System.arraycopy( buf, off, tmp, 0, len );
+        return tmp;
+    }
+
 }
@@ -0,0 +1,860 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ * $Id$
+ */
+
+package jdbm.helper;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import jdbm.RecordManager;
+
+/**
+ * Serialization handler which writes plain java objects (POJOs) compactly,
+ * without java serialization.
+ * <p>
+ * The fields of a POJO are written positionally, without names or class
+ * descriptors, using varints for the integral types. The class is written as
+ * a compact id. The ids are assigned as classes are first written and the
+ * class registry, i.e. the class name and the names and types of the fields
+ * for each id, is a record of the store (the
+ * {@link jdbm.recman.BaseRecordManager#DEFAULT_SERIALIZER_ROOT} root). The
+ * fields are read and written through {@link MethodHandle}s.
+ * <p>
+ * A class is written as a POJO if it is {@link Serializable} but not
+ * {@link Externalizable}, has a no-argument constructor and does not
+ * customize its serialization (<code>writeObject</code>,
+ * <code>readObject</code>, <code>writeReplace</code>,
+ * <code>readResolve</code>). The non-static, non-transient fields of the
+ * class and its serializable super classes are written. Strings, boxed
+ * primitives and byte arrays have their own compact encoding. Any other
+ * object (collections, arrays, jdbm's own classes, etc.) falls back to java
+ * serialization.
+ * <p>
+ * Classes may evolve: when the fields of a class change, the class is
+ * registered again under a new id. Records written under an older id are
+ * read by matching the fields by name and type; fields which no longer exist
+ * are skipped and new fields keep their default values.
+ * <p>
+ * Note: References between POJOs are written as a tree, so shared objects
+ * are written once per reference and cyclic object graphs can not be
+ * written.
+ * 
+ * @see jdbm.RecordManagerOptions#SERIALIZER_COMPACT
+ * @version $Id$
+ */
+public class CompactSerializationHandler
+    implements ISerializationHandler
+{
+
+    private static final long serialVersionUID = 1L;
+
+    // value tags.
+    static final int NULL = 0;
+    static final int JAVA = 1;
+    static final int STRING = 2;
+    static final int INTEGER = 3;
+    static final int LONG = 4;
+    static final int TRUE = 5;
+    static final int FALSE = 6;
+    static final int DOUBLE = 7;
+    static final int FLOAT = 8;
+    static final int BYTES = 9;
+    static final int SHORT = 10;
+    static final int BYTE = 11;
+    static final int CHAR = 12;
+    static final int OBJECT = 13;
+
+    /**
+     * The maximum nesting of POJOs, which catches cyclic object graphs.
+     */
+    static final int MAX_DEPTH = 256;
+
+    /**
+     * The recid of the class registry.
+     */
+    private transient long _recid;
+
+    /**
+     * The registered {@link Schema}s, indexed by id.
+     */
+    private transient ArrayList _schemas;
+
+    /**
+     * The {@link Writer} for each class, or {@link #NOT_A_POJO} for classes
+     * which are written using java serialization.
+     */
+    private transient Map _writers = new HashMap();
+
+    /**
+     * The {@link Reader} for each id, created when first used.
+     */
+    private transient ArrayList _readers = new ArrayList();
+
+    private static final Object NOT_A_POJO = new Object();
+
+
+    private CompactSerializationHandler( long recid, ArrayList schemas )
+    {
+        _recid = recid;
+        _schemas = schemas;
+    }
+
+
+    /**
+     * Create a handler with an empty class registry, which is inserted into
+     * the store.
+     *
+     * @param recman The base record manager.
+     */
+    public static CompactSerializationHandler createInstance( RecordManager recman )
+        throws IOException
+    {
+        ArrayList schemas = new ArrayList();
+        long recid = recman.insert( schemas, DefaultSerializer.INSTANCE );
+        return new CompactSerializationHandler( recid, schemas );
+    }
+
+
+    /**
+     * Load the handler whose class registry is the given record.
+     *
+     * @param recman The base record manager.
+     */
+    public static CompactSerializationHandler load( RecordManager recman, long recid )
+        throws IOException
+    {
+        ArrayList schemas = (ArrayList) recman.fetch( recid, DefaultSerializer.INSTANCE );
+        return new CompactSerializationHandler( recid, schemas );
+    }
+
+
+    /**
+     * The recid of the class registry.
+     */
+    public long getRecid()
+    {
+        return _recid;
+    }
+
+
+    /**
+     * Reload the class registry, discarding ids registered by a transaction
+     * which was rolled back.
+     */
+    public synchronized void rollback( RecordManager recman )
+        throws IOException
+    {
+        _schemas = (ArrayList) recman.fetch( _recid, DefaultSerializer.INSTANCE );
+        _writers.clear();
+        _readers.clear();
+    }
+
+
+    public synchronized byte[] serialize( RecordManager recman, long recid, Object obj )
+        throws IOException
+    {
+        ByteArrayBuffer out = ByteArrayBuffer.acquire();
+        try {
+            writeValue( recman, out, obj, 0 );
+            return out.toByteArray();
+        } finally {
+            ByteArrayBuffer.release( out );
+        }
+    }
+
+
+    public synchronized Object deserialize( RecordManager recman, long recid, byte[] serialized )
+        throws IOException
+    {
+        Input in = new Input( serialized );
+        Object obj = readValue( in, 0 );
+        if ( in.pos != serialized.length ) {
+            throw new IOException( "Trailing data: recid=" + recid );
+        }
+        return obj;
+    }
+
+
+    //
+    // Writing.
+    //
+
+    private void writeValue( RecordManager recman, ByteArrayBuffer out, Object obj, int depth )
+        throws IOException
+    {
+        if ( obj == null ) {
+            out.write( NULL );
+        } else if ( obj instanceof String ) {
+            String s = (String) obj;
+            out.write( STRING );
+            int len = s.length();
+            writeVarLong( out, len );
+            for ( int i = 0; i < len; i++ ) {
+                writeVarLong( out, s.charAt( i ) );
+            }
+        } else if ( obj instanceof Integer ) {
+            out.write( INTEGER );
+            writeVarLong( out, zigZag( ( (Integer) obj ).intValue() ) );
+        } else if ( obj instanceof Long ) {
+            out.write( LONG );
+            writeVarLong( out, zigZag( ( (Long) obj ).longValue() ) );
+        } else if ( obj instanceof Boolean ) {
+            out.write( ( (Boolean) obj ).booleanValue() ? TRUE : FALSE );
+        } else if ( obj instanceof Double ) {
+            out.write( DOUBLE );
+            out.writeLong( Double.doubleToLongBits( ( (Double) obj ).doubleValue() ) );
+        } else if ( obj instanceof Float ) {
+            out.write( FLOAT );
+            out.writeInt( Float.floatToIntBits( ( (Float) obj ).floatValue() ) );
+        } else if ( obj instanceof byte[] ) {
+            byte[] b = (byte[]) obj;
+            out.write( BYTES );
+            writeVarLong( out, b.length );
+            out.write( b, 0, b.length );
+        } else if ( obj instanceof Short ) {
+            out.write( SHORT );
+            writeVarLong( out, zigZag( ( (Short) obj ).shortValue() ) );
+        } else if ( obj instanceof Byte ) {
+            out.write( BYTE );
+            out.write( ( (Byte) obj ).byteValue() );
+        } else if ( obj instanceof Character ) {
+            out.write( CHAR );
+            writeVarLong( out, ( (Character) obj ).charValue() );
+        } else {
+            Writer writer = getWriter( recman, obj.getClass() );
+            if ( writer == null ) {
+                out.write( JAVA );
+                byte[] b = Serialization.serialize( obj );
+                writeVarLong( out, b.length );
+                out.write( b, 0, b.length );
+            } else {
+                if ( depth >= MAX_DEPTH ) {
+                    throw new IOException( "Object graph is too deep or cyclic: "
+                                           + obj.getClass().getName() );
+                }
+                out.write( OBJECT );
+                writeVarLong( out, writer.id );
+                writer.write( this, recman, out, obj, depth + 1 );
+            }
+        }
+    }
+
+
+    /**
+     * Returns the writer for a class, registering the class if necessary,
+     * or <code>null</code> if the class is written using java serialization.
+     */
+    private Writer getWriter( RecordManager recman, Class cl )
+        throws IOException
+    {
+        Object writer = _writers.get( cl );
+        if ( writer == null ) {
+            Field[] fields = getFields( cl );
+            if ( fields == null ) {
+                writer = NOT_A_POJO;
+            } else {
+                try {
+                    writer = new Writer( registerSchema( recman, new Schema( cl, fields ) ),
+                                         fields );
+                } catch ( IllegalAccessException ex ) {
+                    writer = NOT_A_POJO;
+                }
+            }
+            _writers.put( cl, writer );
+        }
+        return writer == NOT_A_POJO ? null : (Writer) writer;
+    }
+
+
+    /**
+     * Returns the id of a schema, adding it to the registry if necessary.
+     */
+    int registerSchema( RecordManager recman, Schema schema )
+        throws IOException
+    {
+        int id = _schemas.indexOf( schema );
+        if ( id == -1 ) {
+            _schemas.add( schema );
+            recman.update( _recid, _schemas, DefaultSerializer.INSTANCE );
+            id = _schemas.size() - 1;
+        }
+        return id;
+    }
+
+
+    /**
+     * Returns the fields written for a class in a fixed order, or
+     * <code>null</code> if the class is not written as a POJO.
+     */
+    static Field[] getFields( Class cl )
+    {
+        if ( ! Serializable.class.isAssignableFrom( cl )
+             || Externalizable.class.isAssignableFrom( cl )
+             || cl.isArray() || cl.isEnum() || cl.isPrimitive()
+             || Modifier.isAbstract( cl.getModifiers() )
+             || cl.getName().startsWith( "java." ) ) {
+            return null;
+        }
+        try {
+            cl.getDeclaredConstructor( new Class[ 0 ] );
+        } catch ( NoSuchMethodException ex ) {
+            return null;
+        }
+        ArrayList list = new ArrayList();
+        for ( Class c = cl; c != null && Serializable.class.isAssignableFrom( c );
+              c = c.getSuperclass() ) {
+            if ( hasMethod( c, "writeObject" ) || hasMethod( c, "readObject" )
+                 || hasMethod( c, "readObjectNoData" )
+                 || hasMethod( c, "writeReplace" ) || hasMethod( c, "readResolve" ) ) {
+                return null;
+            }
+            Field[] declared = c.getDeclaredFields();
+            Arrays.sort( declared, new Comparator() {
+                public int compare( Object o1, Object o2 )
+                {
+                    return ( (Field) o1 ).getName().compareTo( ( (Field) o2 ).getName() );
+                }
+            } );
+            // super class fields come first.
+            int pos = 0;
+            for ( int i = 0; i < declared.length; i++ ) {
+                int mod = declared[ i ].getModifiers();
+                if ( ! Modifier.isStatic( mod ) && ! Modifier.isTransient( mod )
+                     && ! declared[ i ].isSynthetic() ) {
+                    list.add( pos++, declared[ i ] );
+                }
+            }
+        }
+        return (Field[]) list.toArray( new Field[ list.size() ] );
+    }
+
+
+    private static boolean hasMethod( Class c, String name )
+    {
+        Method[] methods = c.getDeclaredMethods();
+        for ( int i = 0; i < methods.length; i++ ) {
+            if ( methods[ i ].getName().equals( name )
+                 && ! Modifier.isStatic( methods[ i ].getModifiers() ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    //
+    // Reading.
+    //
+
+    private Object readValue( Input in, int depth )
+        throws IOException
+    {
+        int tag = in.read();
+        switch ( tag ) {
+        case NULL:
+            return null;
+        case STRING: {
+            int len = (int) in.readVarLong();
+            char[] chars = new char[ len ];
+            for ( int i = 0; i < len; i++ ) {
+                chars[ i ] = (char) in.readVarLong();
+            }
+            return new String( chars );
+        }
+        case INTEGER:
+            return new Integer( (int) unZigZag( in.readVarLong() ) );
+        case LONG:
+            return new Long( unZigZag( in.readVarLong() ) );
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case DOUBLE:
+            return new Double( Double.longBitsToDouble( in.readLong() ) );
+        case FLOAT:
+            return new Float( Float.intBitsToFloat( in.readInt() ) );
+        case BYTES: {
+            byte[] b = new byte[ (int) in.readVarLong() ];
+            in.readFully( b );
+            return b;
+        }
+        case SHORT:
+            return new Short( (short) unZigZag( in.readVarLong() ) );
+        case BYTE:
+            return new Byte( (byte) in.read() );
+        case CHAR:
+            return new Character( (char) in.readVarLong() );
+        case JAVA: {
+            int len = (int) in.readVarLong();
+            int off = in.pos;
+            in.skip( len );
+            try {
+                return Serialization.deserialize( in.buf, off, len );
+            } catch ( ClassNotFoundException ex ) {
+                throw new WrappedRuntimeException( ex );
+            }
+        }
+        case OBJECT:
+            if ( depth >= MAX_DEPTH ) {
+                throw new IOException( "Object graph is too deep" );
+            }
+            return getReader( (int) in.readVarLong() ).read( this, in, depth + 1 );
+        default:
+            throw new IOException( "Unknown tag: " + tag );
+        }
+    }
+
+
+    private Reader getReader( int id )
+        throws IOException
+    {
+        if ( id < 0 || id >= _schemas.size() ) {
+            throw new IOException( "Unknown class id: " + id );
+        }
+        while ( _readers.size() <= id ) {
+            _readers.add( null );
+        }
+        Reader reader = (Reader) _readers.get( id );
+        if ( reader == null ) {
+            Schema schema = (Schema) _schemas.get( id );
+            try {
+                reader = new Reader( schema );
+            } catch ( ClassNotFoundException ex ) {
+                throw new WrappedRuntimeException( ex );
+            } catch ( Exception ex ) {
+                throw new IOException( "Can not read " + schema.className + ": " + ex );
+            }
+            _readers.set( id, reader );
+        }
+        return reader;
+    }
+
+
+    //
+    // Schemas and accessors.
+    //
+
+    /**
+     * The registered form of a class: the class name and the names and
+     * types of its fields in the order in which they are written.
+     */
+    static class Schema
+        implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        final String className;
+        final String[] names;
+
+        /**
+         * The type of each field: the JVM descriptor character of a
+         * primitive type and 'L' for a reference.
+         */
+        final char[] types;
+
+        Schema( Class cl, Field[] fields )
+        {
+            this( cl.getName(), new String[ fields.length ], new char[ fields.length ] );
+            for ( int i = 0; i < fields.length; i++ ) {
+                names[ i ] = fields[ i ].getName();
+                types[ i ] = typeOf( fields[ i ].getType() );
+            }
+        }
+
+        Schema( String className, String[] names, char[] types )
+        {
+            this.className = className;
+            this.names = names;
+            this.types = types;
+        }
+
+        public boolean equals( Object o )
+        {
+            if ( ! ( o instanceof Schema ) ) {
+                return false;
+            }
+            Schema s = (Schema) o;
+            return className.equals( s.className ) && Arrays.equals( names, s.names )
+                && Arrays.equals( types, s.types );
+        }
+
+        public int hashCode()
+        {
+            return className.hashCode();
+        }
+    }
+
+
+    static char typeOf( Class type )
+    {
+        if ( type == Boolean.TYPE ) return 'Z';
+        if ( type == Byte.TYPE ) return 'B';
+        if ( type == Character.TYPE ) return 'C';
+        if ( type == Short.TYPE ) return 'S';
+        if ( type == Integer.TYPE ) return 'I';
+        if ( type == Long.TYPE ) return 'J';
+        if ( type == Float.TYPE ) return 'F';
+        if ( type == Double.TYPE ) return 'D';
+        return 'L';
+    }
+
+
+    /**
+     * The method type of a getter for a field of the given type, as invoked.
+     */
+    private static MethodType getterType( char type )
+    {
+        return MethodType.methodType( erase( type ), Object.class );
+    }
+
+
+    /**
+     * The method type of a setter for a field of the given type, as invoked.
+     */
+    private static MethodType setterType( char type )
+    {
+        return MethodType.methodType( Void.TYPE, Object.class, erase( type ) );
+    }
+
+
+    private static Class erase( char type )
+    {
+        switch ( type ) {
+        case 'Z': return Boolean.TYPE;
+        case 'B': return Byte.TYPE;
+        case 'C': return Character.TYPE;
+        case 'S': return Short.TYPE;
+        case 'I': return Integer.TYPE;
+        case 'J': return Long.TYPE;
+        case 'F': return Float.TYPE;
+        case 'D': return Double.TYPE;
+        default: return Object.class;
+        }
+    }
+
+
+    /**
+     * Writes the fields of the instances of a class.
+     */
+    static class Writer
+    {
+        final int id;
+        final char[] types;
+        final MethodHandle[] getters;
+
+        Writer( int id, Field[] fields )
+            throws IllegalAccessException
+        {
+            this.id = id;
+            types = new char[ fields.length ];
+            getters = new MethodHandle[ fields.length ];
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for ( int i = 0; i < fields.length; i++ ) {
+                fields[ i ].setAccessible( true );
+                types[ i ] = typeOf( fields[ i ].getType() );
+                getters[ i ] = lookup.unreflectGetter( fields[ i ] )
+                    .asType( getterType( types[ i ] ) );
+            }
+        }
+
+        void write( CompactSerializationHandler handler, RecordManager recman,
+                    ByteArrayBuffer out, Object obj, int depth )
+            throws IOException
+        {
+            try {
+                for ( int i = 0; i < getters.length; i++ ) {
+                    MethodHandle mh = getters[ i ];
+                    switch ( types[ i ] ) {
+                    case 'Z': out.write( (boolean) mh.invokeExact( obj ) ? 1 : 0 ); break;
+                    case 'B': out.write( (byte) mh.invokeExact( obj ) ); break;
+                    case 'C': writeVarLong( out, (char) mh.invokeExact( obj ) ); break;
+                    case 'S': writeVarLong( out, zigZag( (short) mh.invokeExact( obj ) ) ); break;
+                    case 'I': writeVarLong( out, zigZag( (int) mh.invokeExact( obj ) ) ); break;
+                    case 'J': writeVarLong( out, zigZag( (long) mh.invokeExact( obj ) ) ); break;
+                    case 'F': out.writeInt( Float.floatToIntBits( (float) mh.invokeExact( obj ) ) ); break;
+                    case 'D': out.writeLong( Double.doubleToLongBits( (double) mh.invokeExact( obj ) ) ); break;
+                    default:
+                        handler.writeValue( recman, out, (Object) mh.invokeExact( obj ), depth );
+                    }
+                }
+            } catch ( IOException ex ) {
+                throw ex;
+            } catch ( RuntimeException ex ) {
+                throw ex;
+            } catch ( Exception ex ) {
+                throw new WrappedRuntimeException( ex );
+            } catch ( Error err ) {
+                throw err;
+            } catch ( Throwable t ) {
+                // MethodHandle.invokeExact() is declared to throw anything.
+                throw new UndeclaredThrowableException( t );
+            }
+        }
+    }
+
+
+    /**
+     * Reads instances of a class written under a given schema. Fields of the
+     * schema which the class no longer has are skipped.
+     */
+    static class Reader
+    {
+        final Schema schema;
+        final MethodHandle ctor;
+
+        /**
+         * The setter for each field of the schema, <code>null</code> for the
+         * fields which are skipped.
+         */
+        final MethodHandle[] setters;
+
+        Reader( Schema schema )
+            throws Exception
+        {
+            this.schema = schema;
+            Class cl = Class.forName( schema.className, false,
+                                      CompactSerializationHandler.class.getClassLoader() );
+            Field[] fields = getFields( cl );
+            if ( fields == null ) {
+                throw new IOException( "Not a POJO: " + schema.className );
+            }
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Constructor c = cl.getDeclaredConstructor( new Class[ 0 ] );
+            c.setAccessible( true );
+            ctor = lookup.unreflectConstructor( c )
+                .asType( MethodType.methodType( Object.class ) );
+            setters = new MethodHandle[ schema.names.length ];
+            for ( int i = 0; i < setters.length; i++ ) {
+                for ( int j = 0; j < fields.length; j++ ) {
+                    if ( fields[ j ].getName().equals( schema.names[ i ] )
+                         && typeOf( fields[ j ].getType() ) == schema.types[ i ] ) {
+                        fields[ j ].setAccessible( true );
+                        setters[ i ] = lookup.unreflectSetter( fields[ j ] )
+                            .asType( setterType( schema.types[ i ] ) );
+                        break;
+                    }
+                }
+            }
+        }
+
+        Object read( CompactSerializationHandler handler, Input in, int depth )
+            throws IOException
+        {
+            try {
+                Object obj = (Object) ctor.invokeExact();
+                for ( int i = 0; i < setters.length; i++ ) {
+                    MethodHandle mh = setters[ i ];
+                    switch ( schema.types[ i ] ) {
+                    case 'Z': {
+                        boolean v = in.read() != 0;
+                        if ( mh != null ) mh.invokeExact( obj, v );
+                        break;
+                    }
+                    case 'B': {
+                        byte v = (byte) in.read();
+                        if ( mh != null ) mh.invokeExact( obj, v );
+                        break;
+                    }
+                    case 'C': {
+                        char v = (char) in.readVarLong();
+                        if ( mh != null ) mh.invokeExact( obj, v );
+                        break;
+                    }
+                    case 'S': {
+                        short v = (short) unZigZag( in.readVarLong() );
+                        if ( mh != null ) mh.invokeExact( obj, v );
+                        break;
+                    }
+                    case 'I': {
+                        int v = (int) unZigZag( in.readVarLong() );
+                        if ( mh != null ) mh.invokeExact( obj, v );
+                        break;
+                    }
+                    case 'J': {
+                        long v = unZigZag( in.readVarLong() );
+                        if ( mh != null ) mh.invokeExact( obj, v );
+                        break;
+                    }
+                    case 'F': {
+                        float v = Float.intBitsToFloat( in.readInt() );
+                        if ( mh != null ) mh.invokeExact( obj, v );
+                        break;
+                    }
+                    case 'D': {
+                        double v = Double.longBitsToDouble( in.readLong() );
+                        if ( mh != null ) mh.invokeExact( obj, v );
+                        break;
+                    }
+                    default: {
+                        Object v = handler.readValue( in, depth );
+                        if ( mh != null ) mh.invokeExact( obj, v );
+                    }
+                    }
+                }
+                return obj;
+            } catch ( IOException ex ) {
+                throw ex;
+            } catch ( RuntimeException ex ) {
+                throw ex;
+            } catch ( Exception ex ) {
+                throw new WrappedRuntimeException( ex );
+            } catch ( Error err ) {
+                throw err;
+            } catch ( Throwable t ) {
+                throw new UndeclaredThrowableException( t );
+            }
+        }
+    }
+
+
+    //
+    // Encoding.
+    //
+
+    static long zigZag( long v )
+    {
+        return ( v << 1 ) ^ ( v >> 63 );
+    }
+
+
+    static long unZigZag( long v )
+    {
+        return ( v >>> 1 ) ^ -( v & 1 );
+    }
+
+
+    static void writeVarLong( ByteArrayBuffer out, long v )
+    {
+        while ( ( v & ~0x7fL ) != 0 ) {
+            out.write( (int) ( ( v & 0x7f ) | 0x80 ) );
+            v >>>= 7;
+        }
+        out.write( (int) v );
+    }
+
+
+    /**
+     * A cursor over a serialized record.
+     */
+    static class Input
+    {
+        final byte[] buf;
+        int pos;
+
+        Input( byte[] buf )
+        {
+            this.buf = buf;
+        }
+
+        int read()
+            throws IOException
+        {
+            if ( pos >= buf.length ) {
+                throw new IOException( "Unexpected end of record" );
+            }
+            return buf[ pos++ ] & 0xff;
+        }
+
+        void skip( int len )
+            throws IOException
+        {
+            if ( len < 0 || pos + len > buf.length ) {
+                throw new IOException( "Unexpected end of record" );
+            }
+            pos += len;
+        }
+
+        void readFully( byte[] b )
+            throws IOException
+        {
+            int off = pos;
+            skip( b.length );
+            System.arraycopy( buf, off, b, 0, b.length );
+        }
+
+        long readVarLong()
+            throws IOException
+        {
+            long v = 0;
+            for ( int shift = 0; shift < 64; shift += 7 ) {
+                int b = read();
+                v |= (long) ( b & 0x7f ) << shift;
+                if ( ( b & 0x80 ) == 0 ) {
+                    return v;
+                }
+            }
+            throw new IOException( "Malformed varint" );
+        }
+
+        int readInt()
+            throws IOException
+        {
+            return ( read() << 24 ) | ( read() << 16 ) | ( read() << 8 ) | read();
+        }
+
+        long readLong()
+            throws IOException
+        {
+            return ( (long) readInt() << 32 ) | ( readInt() & 0xffffffffL );
+        }
+    }
+
+}
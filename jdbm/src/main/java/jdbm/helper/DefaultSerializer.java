@@ -58,7 +58,7 @@ import org.CognitiveWeb.extser.Stateless;
  * @version $Id: DefaultSerializer.java,v 1.5 2006/05/03 19:51:33 thompsonbry Exp $
  */
 public class DefaultSerializer
-    implements Serializer, Stateless
+    implements BufferSerializer, Stateless
 {
 
 	private static final long serialVersionUID = -3818545055661017388L;
@@ -104,4 +104,22 @@ public class DefaultSerializer
          }
      }
 
+
+     public void serialize( ByteArrayBuffer out, Object obj )
+        throws IOException
+     {
+         Serialization.serialize( out, obj );
+     }
+
+
+     public Object deserialize( byte[] buf, int off, int len )
+        throws IOException
+     {
+         try {
+            return Serialization.deserialize( buf, off, len );
+         } catch ( ClassNotFoundException except ) {
+            throw new WrappedRuntimeException( except );
+         }
+     }
+
 }
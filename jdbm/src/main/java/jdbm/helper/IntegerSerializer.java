@@ -58,7 +58,7 @@ import org.CognitiveWeb.extser.Stateless;
  * @version $Id: IntegerSerializer.java,v 1.5 2006/05/03 19:51:33 thompsonbry Exp $
  */
 public class IntegerSerializer
-    implements Serializer, Stateless
+    implements BufferSerializer, Stateless
 {
     
 	private static final long serialVersionUID = 8683732630163314356L;
@@ -102,4 +102,19 @@ public class IntegerSerializer
          return new Integer( number );
      }
 
+
+     public void serialize( ByteArrayBuffer out, Object obj )
+         throws IOException
+     {
+         // flip MSB because "int" is signed, as Conversion does.
+         out.writeInt( ( (Integer) obj ).intValue() ^ 0x80000000 );
+     }
+
+
+     public Object deserialize( byte[] buf, int off, int len )
+         throws IOException
+     {
+         return new Integer( Conversion.unpack4( buf, off ) ^ 0x80000000 );
+     }
+
 }
@@ -0,0 +1,240 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.helper;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of latencies in nanoseconds with a bounded relative error,
+ * in the style of an HDR histogram.
+ * <p>
+ * Values below {@link #SUB_BUCKETS} are counted exactly. Larger values are
+ * counted in buckets which split each power of two range into
+ * {@link #SUB_BUCKETS}/2 linear sub-buckets, so a value is reported within
+ * about 6% of its recorded value. The histogram is a fixed array of
+ * counters, so recording a value does not allocate.
+ *
+ * @see LatencyHistograms
+ * @version $Id$
+ */
+public class LatencyHistogram
+{
+
+    /**
+     * The #of bits of precision of the sub-buckets.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The #of values which are counted exactly.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    /**
+     * The #of buckets, enough for any non-negative long.
+     */
+    private static final int NBUCKETS = bucketOf( Long.MAX_VALUE ) + 1;
+
+    private final long[] _counts = new long[ NBUCKETS ];
+
+    private long _count;
+
+    private long _total;
+
+    private long _min = Long.MAX_VALUE;
+
+    private long _max;
+
+
+    /**
+     * Returns the bucket of a non-negative value.
+     */
+    static int bucketOf( long value )
+    {
+        if ( value < SUB_BUCKETS ) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + ( shift - 1 ) * HALF + (int) ( ( value >>> shift ) - HALF );
+    }
+
+
+    /**
+     * Returns the largest value counted in a bucket.
+     */
+    static long highestValueOf( int bucket )
+    {
+        if ( bucket < SUB_BUCKETS ) {
+            return bucket;
+        }
+        int shift = ( bucket - SUB_BUCKETS ) / HALF + 1;
+        long sub = ( bucket - SUB_BUCKETS ) % HALF + HALF;
+        return ( ( sub + 1 ) << shift ) - 1;
+    }
+
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos The latency in nanoseconds. Negative values (e.g. from a
+     * clock adjustment) are recorded as zero.
+     */
+    public synchronized void record( long nanos )
+    {
+        if ( nanos < 0 ) {
+            nanos = 0;
+        }
+        _counts[ bucketOf( nanos ) ]++;
+        _count++;
+        _total += nanos;
+        if ( nanos < _min ) {
+            _min = nanos;
+        }
+        if ( nanos > _max ) {
+            _max = nanos;
+        }
+    }
+
+
+    /**
+     * The #of recorded latencies.
+     */
+    public synchronized long getCount()
+    {
+        return _count;
+    }
+
+
+    /**
+     * The sum of the recorded latencies in nanoseconds.
+     */
+    public synchronized long getTotal()
+    {
+        return _total;
+    }
+
+
+    /**
+     * The smallest recorded latency, or zero if none was recorded.
+     */
+    public synchronized long getMin()
+    {
+        return _count == 0 ? 0L : _min;
+    }
+
+
+    /**
+     * The largest recorded latency.
+     */
+    public synchronized long getMax()
+    {
+        return _max;
+    }
+
+
+    /**
+     * The mean of the recorded latencies, or zero if none was recorded.
+     */
+    public synchronized double getMean()
+    {
+        return _count == 0 ? 0d : (double) _total / _count;
+    }
+
+
+    /**
+     * Returns the latency at a percentile, i.e., a value which is at least
+     * the given percentage of the recorded latencies, within the precision
+     * of the histogram. Returns zero if no latency was recorded.
+     *
+     * @param percentile The percentile in [0:100], e.g., 99.9.
+     */
+    public synchronized long getValueAtPercentile( double percentile )
+    {
+        if ( percentile < 0d || percentile > 100d ) {
+            throw new IllegalArgumentException( "percentile=" + percentile );
+        }
+        if ( _count == 0 ) {
+            return 0L;
+        }
+        long target = (long) Math.ceil( percentile / 100d * _count );
+        if ( target < 1 ) {
+            target = 1;
+        }
+        long seen = 0;
+        for ( int i = 0; i < NBUCKETS; i++ ) {
+            seen += _counts[ i ];
+            if ( seen >= target ) {
+                return Math.min( highestValueOf( i ), _max );
+            }
+        }
+        return _max;
+    }
+
+
+    /**
+     * Clear the histogram.
+     */
+    public synchronized void reset()
+    {
+        Arrays.fill( _counts, 0L );
+        _count = 0;
+        _total = 0;
+        _min = Long.MAX_VALUE;
+        _max = 0;
+    }
+
+
+    public synchronized String toString()
+    {
+        return "count=" + _count + ", mean=" + (long) getMean() + ", p50="
+            + getValueAtPercentile( 50 ) + ", p99=" + getValueAtPercentile( 99 )
+            + ", p99.9=" + getValueAtPercentile( 99.9 ) + ", max=" + _max;
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.helper;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The {@link LatencyHistogram}s of the operations of a record manager, in
+ * nanoseconds.
+ * <p>
+ * A fetch is recorded as {@link #FETCH} by the base record manager, i.e.,
+ * when the record is read from the store, and also as either
+ * {@link #FETCH_CACHE_HIT} or {@link #FETCH_CACHE_MISS} when an object cache
+ * is used. A {@link #COMMIT} includes any {@link #CHECKPOINT} of the
+ * transaction log which it triggers, so that spikes in the commit latency
+ * may be attributed to checkpoints.
+ *
+ * @see jdbm.RecordManagerOptions#LATENCY_HISTOGRAMS
+ * @version $Id$
+ */
+public class LatencyHistograms
+{
+
+    public static final String FETCH = "Fetch";
+
+    public static final String FETCH_CACHE_HIT = "FetchCacheHit";
+
+    public static final String FETCH_CACHE_MISS = "FetchCacheMiss";
+
+    public static final String INSERT = "Insert";
+
+    public static final String UPDATE = "Update";
+
+    public static final String DELETE = "Delete";
+
+    public static final String COMMIT = "Commit";
+
+    /**
+     * The synchronization of the transaction log with the data file.
+     */
+    public static final String CHECKPOINT = "Checkpoint";
+
+    private static final String[] NAMES = { FETCH, FETCH_CACHE_HIT,
+            FETCH_CACHE_MISS, INSERT, UPDATE, DELETE, COMMIT, CHECKPOINT };
+
+    /**
+     * The histogram of each operation. The map is not modified once
+     * constructed.
+     */
+    private final Map _histograms;
+
+
+    public LatencyHistograms()
+    {
+        TreeMap histograms = new TreeMap();
+        for ( int i = 0; i < NAMES.length; i++ ) {
+            histograms.put( NAMES[ i ], new LatencyHistogram() );
+        }
+        _histograms = Collections.unmodifiableMap( histograms );
+    }
+
+
+    /**
+     * Record the latency of an operation.
+     *
+     * @param name The operation, e.g., {@link #COMMIT}.
+     * @param nanos The latency.
+     */
+    public void record( String name, long nanos )
+    {
+        get( name ).record( nanos );
+    }
+
+
+    /**
+     * Returns the histogram of an operation.
+     *
+     * @param name The operation, e.g., {@link #COMMIT}.
+     */
+    public LatencyHistogram get( String name )
+    {
+        LatencyHistogram h = (LatencyHistogram) _histograms.get( name );
+        if ( h == null ) {
+            throw new IllegalArgumentException( "Unknown operation: " + name );
+        }
+        return h;
+    }
+
+
+    /**
+     * Returns the names of the operations in sorted order.
+     */
+    public String[] getNames()
+    {
+        return (String[]) _histograms.keySet().toArray( new String[ _histograms.size() ] );
+    }
+
+
+    /**
+     * Clear all histograms.
+     */
+    public void reset()
+    {
+        for ( Iterator it = _histograms.values().iterator(); it.hasNext(); ) {
+            ( (LatencyHistogram) it.next() ).reset();
+        }
+    }
+
+
+    public String toString()
+    {
+        StringBuffer sb = new StringBuffer();
+        for ( Iterator it = _histograms.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            sb.append( entry.getKey() ).append( ": " ).append( entry.getValue() ).append( '\n' );
+        }
+        return sb.toString();
+    }
+
+}
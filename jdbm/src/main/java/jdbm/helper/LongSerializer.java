@@ -58,7 +58,7 @@ import org.CognitiveWeb.extser.Stateless;
  * @version $Id: LongSerializer.java,v 1.5 2006/05/03 19:51:33 thompsonbry Exp $
  */
 public class LongSerializer 
-    implements Serializer, Stateless
+    implements BufferSerializer, Stateless
 {
 
 	private static final long serialVersionUID = -7980451649962070585L;
@@ -102,4 +102,20 @@ public class LongSerializer
          return new Long( number );
      }
 
+
+     public void serialize( ByteArrayBuffer out, Object obj )
+         throws IOException
+     {
+         // flip MSB because "long" is signed, as Conversion does.
+         out.writeLong( ( (Long) obj ).longValue() ^ 0x8000000000000000L );
+     }
+
+
+     public Object deserialize( byte[] buf, int off, int len )
+         throws IOException
+     {
+         // unpack8 flips the MSB back.
+         return new Long( Conversion.unpack8( buf, off ) );
+     }
+
 }
@@ -47,7 +47,6 @@
 package jdbm.helper;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
@@ -62,20 +61,33 @@ public final class Serialization
 {
 
     /**
-     * Serialize the object into a byte array.
+     * Serialize the object into a byte array. The object is serialized into
+     * the buffer of the current thread, so only the result is allocated.
      */
     public static byte[] serialize( Object obj )
         throws IOException
     {
-        ByteArrayOutputStream  baos;
+        ByteArrayBuffer buf = ByteArrayBuffer.acquire();
+        try {
+            serialize( buf, obj );
+            return buf.toByteArray();
+        } finally {
+            ByteArrayBuffer.release( buf );
+        }
+    }
+
+
+    /**
+     * Serialize the object, appending it to a buffer.
+     */
+    public static void serialize( ByteArrayBuffer buf, Object obj )
+        throws IOException
+    {
         ObjectOutput/*Stream*/ oos;
 
-        baos = new ByteArrayOutputStream();
-        oos = new java.io.ObjectOutputStream( baos );
+        oos = new java.io.ObjectOutputStream( buf );
         oos.writeObject( obj );
         oos.close();
-
-        return baos.toByteArray();
     }
 
 
@@ -84,11 +96,21 @@ public final class Serialization
      */
     public static Object deserialize( byte[] buf )
         throws ClassNotFoundException, IOException
+    {
+        return deserialize( buf, 0, buf.length );
+    }
+
+
+    /**
+     * Deserialize an object from a region of a byte array
+     */
+    public static Object deserialize( byte[] buf, int off, int len )
+        throws ClassNotFoundException, IOException
     {
         ByteArrayInputStream  bais;
         ObjectInput/*Stream*/ ois;
 
-        bais = new ByteArrayInputStream( buf );
+        bais = new ByteArrayInputStream( buf, off, len );
         ois = new java.io.ObjectInputStream( bais );
         return ois.readObject();
     }
@@ -0,0 +1,391 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.helper;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Profiles the serialization of records by the record manager, whatever
+ * the serializer: the configured serialization handler, custom
+ * {@link Serializer}s and the pages of the BTree and HTree. The #of
+ * records, bytes and nanoseconds are counted per class of record, for both
+ * serialization and deserialization. The bytes are those handed to or from
+ * the serializer, i.e., before compression.
+ * <p>
+ * The profiler is enabled by {@link jdbm.RecordManagerOptions#PROFILE_SERIALIZATION},
+ * retrieved using {@link jdbm.RecordManager#getSerializationProfiler()} and
+ * registered as an MBean while the record manager is open.
+ *
+ * @version $Id$
+ */
+public class SerializationProfiler
+    implements SerializationProfilerMBean
+{
+
+    /**
+     * The domain of the object names under which profilers are registered.
+     */
+    public static final String DOMAIN = "jdbm";
+
+    /**
+     * {@link Counters} for each class name.
+     */
+    private final Map _counters = new HashMap();
+
+    /**
+     * The name under which this profiler is registered, if any.
+     */
+    private ObjectName _objectName;
+
+
+    /**
+     * Record the serialization of an object.
+     *
+     * @param obj The object (may be <code>null</code>).
+     * @param bytes The length of the serialized record.
+     * @param nanos The elapsed time.
+     */
+    public void serialized( Object obj, int bytes, long nanos )
+    {
+        Counters c = countersOf( obj );
+        synchronized ( c ) {
+            c.serializeCount++;
+            c.serializeBytes += bytes;
+            c.serializeNanos += nanos;
+        }
+    }
+
+
+    /**
+     * Record the deserialization of an object.
+     *
+     * @param obj The deserialized object (may be <code>null</code>).
+     * @param bytes The length of the serialized record.
+     * @param nanos The elapsed time.
+     */
+    public void deserialized( Object obj, int bytes, long nanos )
+    {
+        Counters c = countersOf( obj );
+        synchronized ( c ) {
+            c.deserializeCount++;
+            c.deserializeBytes += bytes;
+            c.deserializeNanos += nanos;
+        }
+    }
+
+
+    private synchronized Counters countersOf( Object obj )
+    {
+        String name = obj == null ? "null" : obj.getClass().getName();
+        Counters c = (Counters) _counters.get( name );
+        if ( c == null ) {
+            c = new Counters( name );
+            _counters.put( name, c );
+        }
+        return c;
+    }
+
+
+    /**
+     * Returns a copy of the counters of a class, or <code>null</code> if no
+     * instance of the class was profiled.
+     *
+     * @param className The class name, or "null" for <code>null</code>
+     * records.
+     */
+    public Counters getCounters( String className )
+    {
+        Counters c;
+        synchronized ( this ) {
+            c = (Counters) _counters.get( className );
+        }
+        return c == null ? null : c.copy();
+    }
+
+
+    /**
+     * Returns a copy of the counters of all classes, ordered by the total
+     * time spent on the class, largest first.
+     */
+    public Counters[] getCounters()
+    {
+        ArrayList list = new ArrayList();
+        synchronized ( this ) {
+            for ( Iterator it = _counters.values().iterator(); it.hasNext(); ) {
+                list.add( ( (Counters) it.next() ).copy() );
+            }
+        }
+        Collections.sort( list, new Comparator() {
+            public int compare( Object o1, Object o2 )
+            {
+                long t1 = ( (Counters) o1 ).getNanos();
+                long t2 = ( (Counters) o2 ).getNanos();
+                return t1 > t2 ? -1 : t1 < t2 ? 1 : 0;
+            }
+        } );
+        return (Counters[]) list.toArray( new Counters[ list.size() ] );
+    }
+
+
+    /**
+     * Returns the sum of the counters of all classes.
+     */
+    public Counters getTotals()
+    {
+        Counters[] all = getCounters();
+        Counters t = new Counters( "total" );
+        for ( int i = 0; i < all.length; i++ ) {
+            t.serializeCount += all[ i ].serializeCount;
+            t.serializeBytes += all[ i ].serializeBytes;
+            t.serializeNanos += all[ i ].serializeNanos;
+            t.deserializeCount += all[ i ].deserializeCount;
+            t.deserializeBytes += all[ i ].deserializeBytes;
+            t.deserializeNanos += all[ i ].deserializeNanos;
+        }
+        return t;
+    }
+
+
+    public synchronized void reset()
+    {
+        _counters.clear();
+    }
+
+
+    public long getSerializeCount()
+    {
+        return getTotals().serializeCount;
+    }
+
+
+    public long getSerializeBytes()
+    {
+        return getTotals().serializeBytes;
+    }
+
+
+    public long getSerializeNanos()
+    {
+        return getTotals().serializeNanos;
+    }
+
+
+    public long getDeserializeCount()
+    {
+        return getTotals().deserializeCount;
+    }
+
+
+    public long getDeserializeBytes()
+    {
+        return getTotals().deserializeBytes;
+    }
+
+
+    public long getDeserializeNanos()
+    {
+        return getTotals().deserializeNanos;
+    }
+
+
+    public String[] getClassNames()
+    {
+        Counters[] all = getCounters();
+        String[] names = new String[ all.length ];
+        for ( int i = 0; i < all.length; i++ ) {
+            names[ i ] = all[ i ].getClassName();
+        }
+        return names;
+    }
+
+
+    public String getReport()
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append( "class\tserCount\tserBytes\tserNanos\tdeserCount\tdeserBytes\tdeserNanos\n" );
+        Counters[] all = getCounters();
+        for ( int i = 0; i < all.length; i++ ) {
+            sb.append( all[ i ] ).append( '\n' );
+        }
+        return sb.toString();
+    }
+
+
+    public String toString()
+    {
+        return getReport();
+    }
+
+
+    /**
+     * Register this profiler with the platform MBean server.
+     *
+     * @param name The name of the store, which is quoted into the object
+     * name.
+     */
+    public synchronized void registerMBean( String name )
+        throws JMException
+    {
+        ObjectName objectName = new ObjectName
+            ( DOMAIN + ":type=SerializationProfiler,name=" + ObjectName.quote( name )
+              );
+        ManagementFactory.getPlatformMBeanServer().registerMBean( this, objectName );
+        _objectName = objectName;
+    }
+
+
+    /**
+     * Unregister this profiler from the platform MBean server if it was
+     * registered.
+     */
+    public synchronized void unregisterMBean()
+    {
+        if ( _objectName == null ) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean( _objectName );
+        } catch ( JMException ex ) {
+            System.err.println( "WARN: could not unregister " + _objectName + ": " + ex );
+        }
+        _objectName = null;
+    }
+
+
+    /**
+     * The counters of a class.
+     */
+    public static class Counters
+    {
+        private final String className;
+        long serializeCount;
+        long serializeBytes;
+        long serializeNanos;
+        long deserializeCount;
+        long deserializeBytes;
+        long deserializeNanos;
+
+        Counters( String className )
+        {
+            this.className = className;
+        }
+
+        synchronized Counters copy()
+        {
+            Counters c = new Counters( className );
+            c.serializeCount = serializeCount;
+            c.serializeBytes = serializeBytes;
+            c.serializeNanos = serializeNanos;
+            c.deserializeCount = deserializeCount;
+            c.deserializeBytes = deserializeBytes;
+            c.deserializeNanos = deserializeNanos;
+            return c;
+        }
+
+        public String getClassName()
+        {
+            return className;
+        }
+
+        public long getSerializeCount()
+        {
+            return serializeCount;
+        }
+
+        public long getSerializeBytes()
+        {
+            return serializeBytes;
+        }
+
+        public long getSerializeNanos()
+        {
+            return serializeNanos;
+        }
+
+        public long getDeserializeCount()
+        {
+            return deserializeCount;
+        }
+
+        public long getDeserializeBytes()
+        {
+            return deserializeBytes;
+        }
+
+        public long getDeserializeNanos()
+        {
+            return deserializeNanos;
+        }
+
+        /**
+         * The total time spent serializing and deserializing.
+         */
+        public long getNanos()
+        {
+            return serializeNanos + deserializeNanos;
+        }
+
+        public String toString()
+        {
+            return className + "\t" + serializeCount + "\t" + serializeBytes + "\t"
+                + serializeNanos + "\t" + deserializeCount + "\t" + deserializeBytes
+                + "\t" + deserializeNanos;
+        }
+    }
+
+}
@@ -0,0 +1,548 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ * $Id$
+ */
+package jdbm.helper.compessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A fast record compressor using a pure java implementation of the LZ4 block
+ * format.
+ * <p>
+ * Each record starts with a flag byte. Records shorter than the threshold and
+ * records which do not get any smaller are stored raw after the flag byte, so
+ * small records pay one byte rather than the cost of a deflater. Compressed
+ * records store the uncompressed length as an int after the flag byte,
+ * followed by the LZ4 block.
+ * <p>
+ * An optional dictionary (see {@link #trainDictionary(byte[][], int)}) acts
+ * as a prefix of every record, so that the common structure of small records
+ * (class names, field names, etc.) can be matched even though a single
+ * record has too little data to compress on its own. A record compressed
+ * with a dictionary can only be decompressed with the same dictionary.
+ * <p>
+ * Note: This assumes that jdbm serialization is single threaded since the
+ * hash table of the compressor is reused.
+ * 
+ * @see jdbm.RecordManagerOptions#COMPRESSOR_FAST
+ */
+public class FastRecordCompressor
+    implements IRecordCompressor
+{
+
+    /**
+     * Flag for a record which is stored raw.
+     */
+    static final byte RAW = 0;
+
+    /**
+     * Flag for a record compressed without a dictionary.
+     */
+    static final byte LZ4 = 1;
+
+    /**
+     * Flag for a record compressed with the dictionary.
+     */
+    static final byte LZ4_DICTIONARY = 2;
+
+    /**
+     * The default threshold in bytes below which records are stored raw.
+     */
+    public static final int DEFAULT_THRESHOLD = 32;
+
+    /**
+     * The largest dictionary which can be used, which is the largest offset
+     * of a match in the LZ4 block format.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 0xffff;
+
+    private static final int MIN_MATCH = 4;
+
+    /**
+     * The last match must start at least this many bytes before the end of
+     * the input.
+     */
+    private static final int MF_LIMIT = 12;
+
+    /**
+     * The last bytes of the input are always literals.
+     */
+    private static final int LAST_LITERALS = 5;
+
+    private static final int HASH_LOG = 12;
+
+    private final int _threshold;
+
+    private final byte[] _dictionary;
+
+    /**
+     * The hash table: the position of the last occurrence of a 4 byte
+     * sequence, where the dictionary precedes the record, plus one. Zero
+     * indicates an empty entry.
+     */
+    private final int[] _table = new int[ 1 << HASH_LOG ];
+
+    /**
+     * The hash table after hashing the dictionary, which is copied into
+     * {@link #_table} for each record.
+     */
+    private final int[] _dictionaryTable;
+
+    /**
+     * A compressor using the default threshold and no dictionary.
+     */
+    public FastRecordCompressor()
+    {
+        this( DEFAULT_THRESHOLD, null );
+    }
+
+    /**
+     * Create a record compressor.
+     * 
+     * @param threshold
+     *            Records shorter than this many bytes are stored raw.
+     * @param dictionary
+     *            The dictionary (optional).
+     */
+    public FastRecordCompressor( int threshold, byte[] dictionary )
+    {
+        if( threshold < 0 ) {
+            throw new IllegalArgumentException( "threshold=" + threshold );
+        }
+        if( dictionary != null && dictionary.length > MAX_DICTIONARY_SIZE ) {
+            throw new IllegalArgumentException( "dictionary is too large: "
+                    + dictionary.length );
+        }
+        _threshold = threshold;
+        if( dictionary == null || dictionary.length == 0 ) {
+            _dictionary = null;
+            _dictionaryTable = null;
+        } else {
+            _dictionary = dictionary;
+            _dictionaryTable = new int[ _table.length ];
+            for( int i = 0; i + MIN_MATCH <= dictionary.length; i++ ) {
+                _dictionaryTable[ hash( readInt( dictionary, i ) ) ] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * The dictionary and <code>null</code> if there is none.
+     */
+    public byte[] getDictionary()
+    {
+        return _dictionary;
+    }
+
+    public byte[] compress( byte[] serialized )
+    {
+        final int n = serialized.length;
+        if( n >= _threshold && n > MF_LIMIT ) {
+            byte[] out = new byte[ 5 + n + n / 255 + 16 ];
+            int len = compress( serialized, out, 5 );
+            if( len < n - 4 ) {
+                out[ 0 ] = _dictionary == null ? LZ4 : LZ4_DICTIONARY;
+                out[ 1 ] = (byte) ( n >>> 24 );
+                out[ 2 ] = (byte) ( n >>> 16 );
+                out[ 3 ] = (byte) ( n >>> 8 );
+                out[ 4 ] = (byte) n;
+                byte[] tmp = new byte[ 5 + len ];
+                System.arraycopy( out, 0, tmp, 0, tmp.length );
+                return tmp;
+            }
+        }
+        byte[] tmp = new byte[ n + 1 ];
+        tmp[ 0 ] = RAW;
+        System.arraycopy( serialized, 0, tmp, 1, n );
+        return tmp;
+    }
+
+    public byte[] decompress( byte[] compressed )
+    {
+        if( compressed.length == 0 ) {
+            throw new RuntimeException( "Empty record" );
+        }
+        switch( compressed[ 0 ] ) {
+        case RAW: {
+            byte[] tmp = new byte[ compressed.length - 1 ];
+            System.arraycopy( compressed, 1, tmp, 0, tmp.length );
+            return tmp;
+        }
+        case LZ4:
+            return decompress( compressed, null );
+        case LZ4_DICTIONARY:
+            if( _dictionary == null ) {
+                throw new RuntimeException
+                    ( "Record was compressed with a dictionary" );
+            }
+            return decompress( compressed, _dictionary );
+        default:
+            throw new RuntimeException( "Unknown record compression: "
+                    + compressed[ 0 ] );
+        }
+    }
+
+    private static int readInt( byte[] b, int i )
+    {
+        return ( b[ i ] & 0xff ) | ( b[ i + 1 ] & 0xff ) << 8
+                | ( b[ i + 2 ] & 0xff ) << 16 | ( b[ i + 3 ] & 0xff ) << 24;
+    }
+
+    private static int hash( int v )
+    {
+        return ( v * -1640531535 ) >>> ( 32 - HASH_LOG );
+    }
+
+    /**
+     * Returns the byte at a position relative to the start of the record,
+     * where negative positions are in the dictionary.
+     */
+    private byte byteAt( byte[] src, int pos )
+    {
+        return pos < 0 ? _dictionary[ _dictionary.length + pos ] : src[ pos ];
+    }
+
+    /**
+     * Compresses <i>src</i> into <i>out</i> starting at <i>start</i>.
+     * 
+     * @return The #of bytes written.
+     */
+    private int compress( byte[] src, byte[] out, final int start )
+    {
+        final int n = src.length;
+        final int dlen = _dictionary == null ? 0 : _dictionary.length;
+        if( _dictionaryTable == null ) {
+            Arrays.fill( _table, 0 );
+        } else {
+            System.arraycopy( _dictionaryTable, 0, _table, 0, _table.length );
+        }
+        final int mfLimit = n - MF_LIMIT;
+        final int matchLimit = n - LAST_LITERALS;
+        int op = start;
+        int anchor = 0;
+        int pos = 0;
+        while( pos < mfLimit ) {
+            int v = readInt( src, pos );
+            int h = hash( v );
+            int ref = _table[ h ] - 1 - dlen;
+            _table[ h ] = pos + dlen + 1;
+            if( ref < -dlen || pos - ref > 0xffff
+                    || ( ref >= 0 ? readInt( src, ref ) != v
+                            : byteAt( src, ref ) != src[ pos ]
+                                    || byteAt( src, ref + 1 ) != src[ pos + 1 ]
+                                    || byteAt( src, ref + 2 ) != src[ pos + 2 ]
+                                    || byteAt( src, ref + 3 ) != src[ pos + 3 ] ) ) {
+                // skip faster over data which does not compress.
+                pos += 1 + ( ( pos - anchor ) >>> 6 );
+                continue;
+            }
+            // extend the match backwards over pending literals.
+            while( pos > anchor && ref > -dlen
+                    && byteAt( src, ref - 1 ) == src[ pos - 1 ] ) {
+                pos--;
+                ref--;
+            }
+            int len = MIN_MATCH;
+            while( pos + len < matchLimit
+                    && byteAt( src, ref + len ) == src[ pos + len ] ) {
+                len++;
+            }
+            final int tokenPos = op;
+            op = writeSequence( src, anchor, pos - anchor, out, op );
+            out[ op++ ] = (byte) ( pos - ref );
+            out[ op++ ] = (byte) ( ( pos - ref ) >>> 8 );
+            // add the match length to the token.
+            int ml = len - MIN_MATCH;
+            out[ tokenPos ] |= (byte) Math.min( ml, 15 );
+            if( ml >= 15 ) {
+                op = writeLength( ml - 15, out, op );
+            }
+            pos += len;
+            anchor = pos;
+            if( pos < mfLimit ) {
+                // index a position inside the match.
+                _table[ hash( readInt( src, pos - 2 ) ) ] = pos - 2 + dlen + 1;
+            }
+        }
+        op = writeSequence( src, anchor, n - anchor, out, op );
+        return op - start;
+    }
+
+    /**
+     * Writes a token with the literal length followed by the literals.
+     */
+    private static int writeSequence( byte[] src, int off, int litLen,
+            byte[] out, int op )
+    {
+        out[ op++ ] = (byte) ( Math.min( litLen, 15 ) << 4 );
+        if( litLen >= 15 ) {
+            op = writeLength( litLen - 15, out, op );
+        }
+        System.arraycopy( src, off, out, op, litLen );
+        return op + litLen;
+    }
+
+    private static int writeLength( int len, byte[] out, int op )
+    {
+        while( len >= 255 ) {
+            out[ op++ ] = (byte) 255;
+            len -= 255;
+        }
+        out[ op++ ] = (byte) len;
+        return op;
+    }
+
+    private static byte[] decompress( byte[] in, byte[] dictionary )
+    {
+        if( in.length < 5 ) {
+            throw new RuntimeException( "Corrupt record" );
+        }
+        final int n = ( in[ 1 ] & 0xff ) << 24 | ( in[ 2 ] & 0xff ) << 16
+                | ( in[ 3 ] & 0xff ) << 8 | ( in[ 4 ] & 0xff );
+        if( n < 0 ) {
+            throw new RuntimeException( "Corrupt record" );
+        }
+        final int dlen = dictionary == null ? 0 : dictionary.length;
+        final byte[] out = new byte[ n ];
+        int ip = 5;
+        int op = 0;
+        try {
+            while( true ) {
+                int token = in[ ip++ ] & 0xff;
+                int litLen = token >>> 4;
+                if( litLen == 15 ) {
+                    int b;
+                    do {
+                        b = in[ ip++ ] & 0xff;
+                        litLen += b;
+                    } while( b == 255 );
+                }
+                System.arraycopy( in, ip, out, op, litLen );
+                ip += litLen;
+                op += litLen;
+                if( ip == in.length ) {
+                    break; // the last sequence has no match.
+                }
+                int offset = ( in[ ip ] & 0xff ) | ( in[ ip + 1 ] & 0xff ) << 8;
+                ip += 2;
+                int len = token & 15;
+                if( len == 15 ) {
+                    int b;
+                    do {
+                        b = in[ ip++ ] & 0xff;
+                        len += b;
+                    } while( b == 255 );
+                }
+                len += MIN_MATCH;
+                int ref = op - offset;
+                if( offset == 0 || ref < -dlen || op + len > n ) {
+                    throw new RuntimeException( "Corrupt record" );
+                }
+                for( ; ref < 0 && len > 0; len-- ) {
+                    out[ op++ ] = dictionary[ dlen + ref++ ];
+                }
+                for( ; len > 0; len-- ) {
+                    out[ op++ ] = out[ ref++ ];
+                }
+            }
+        }
+        catch( IndexOutOfBoundsException ex ) {
+            throw new RuntimeException( "Corrupt record", ex );
+        }
+        if( op != n ) {
+            throw new RuntimeException( "Corrupt record" );
+        }
+        return out;
+    }
+
+    /**
+     * Builds a dictionary from sample records. The dictionary is made from
+     * the 8 byte sequences which occur most often across the samples, each
+     * taken together with the bytes around it. The most frequent sequences
+     * are placed at the end of the dictionary, where they are closest to the
+     * record and least likely to fall out of reach of a match.
+     * 
+     * @param samples
+     *            Serialized records typical of the store.
+     * @param size
+     *            The maximum size of the dictionary, which may not exceed
+     *            {@link #MAX_DICTIONARY_SIZE}.
+     * 
+     * @return The dictionary, which may be empty if the samples have nothing
+     *         in common.
+     */
+    public static byte[] trainDictionary( byte[][] samples, int size )
+    {
+        if( size < 0 || size > MAX_DICTIONARY_SIZE ) {
+            throw new IllegalArgumentException( "size=" + size );
+        }
+        final int k = 8;
+        final int segment = 32;
+        // count the occurrences of each k byte sequence, remembering where
+        // it was first seen.
+        Map counts = new HashMap();
+        for( int i = 0; i < samples.length; i++ ) {
+            byte[] s = samples[ i ];
+            for( int j = 0; j + k <= s.length; j++ ) {
+                Long key = new Long( ( (long) readInt( s, j ) << 32 )
+                        | ( readInt( s, j + 4 ) & 0xffffffffL ) );
+                Gram g = (Gram) counts.get( key );
+                if( g == null ) {
+                    counts.put( key, new Gram( i, j ) );
+                } else {
+                    g.count++;
+                }
+            }
+        }
+        ArrayList grams = new ArrayList();
+        for( Iterator it = counts.values().iterator(); it.hasNext(); ) {
+            Gram g = (Gram) it.next();
+            if( g.count > 1 ) {
+                grams.add( g );
+            }
+        }
+        Collections.sort( grams, new Comparator() {
+            public int compare( Object o1, Object o2 )
+            {
+                int c1 = ( (Gram) o1 ).count, c2 = ( (Gram) o2 ).count;
+                return c1 < c2 ? 1 : c1 > c2 ? -1 : 0;
+            }
+        } );
+        // take a segment around each sequence which is not yet covered,
+        // most frequent first.
+        Set covered = new HashSet();
+        ArrayList segments = new ArrayList();
+        int total = 0;
+        for( int i = 0; i < grams.size() && total < size; i++ ) {
+            Gram g = (Gram) grams.get( i );
+            byte[] s = samples[ g.sample ];
+            int from = Math.max( 0, g.offset - ( segment - k ) / 2 );
+            int to = Math.min( s.length, from + segment );
+            if( covered.contains( new Segment( s, g.offset, k ) ) ) {
+                continue;
+            }
+            to = Math.min( to, from + size - total );
+            for( int j = from; j + k <= to; j++ ) {
+                covered.add( new Segment( s, j, k ) );
+            }
+            segments.add( new Segment( s, from, to - from ) );
+            total += to - from;
+        }
+        byte[] dictionary = new byte[ total ];
+        int off = total;
+        for( int i = 0; i < segments.size(); i++ ) {
+            Segment seg = (Segment) segments.get( i );
+            off -= seg.len;
+            System.arraycopy( seg.b, seg.off, dictionary, off, seg.len );
+        }
+        return dictionary;
+    }
+
+    /**
+     * The first occurrence and the count of a sequence in the samples.
+     */
+    private static class Gram
+    {
+        final int sample;
+        final int offset;
+        int count = 1;
+
+        Gram( int sample, int offset )
+        {
+            this.sample = sample;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * A byte sequence within a sample, compared by content.
+     */
+    private static class Segment
+    {
+        final byte[] b;
+        final int off;
+        final int len;
+
+        Segment( byte[] b, int off, int len )
+        {
+            this.b = b;
+            this.off = off;
+            this.len = len;
+        }
+
+        public int hashCode()
+        {
+            int h = 1;
+            for( int i = 0; i < len; i++ ) {
+                h = 31 * h + b[ off + i ];
+            }
+            return h;
+        }
+
+        public boolean equals( Object o )
+        {
+            Segment s = (Segment) o;
+            if( s.len != len ) {
+                return false;
+            }
+            for( int i = 0; i < len; i++ ) {
+                if( b[ off + i ] != s.b[ s.off + i ] ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
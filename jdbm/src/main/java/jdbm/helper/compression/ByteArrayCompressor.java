@@ -37,8 +37,9 @@ public interface ByteArrayCompressor {
 	 * Causes the compressor to finish writing it's data to the output.  After this call, all
 	 * data will be written to the output, and the compressor can be reused by calling reset().
 	 * @param out
+	 * @throws IOException
 	 */
-	void finishCompression();
+	void finishCompression() throws IOException;
 	
 	
 }
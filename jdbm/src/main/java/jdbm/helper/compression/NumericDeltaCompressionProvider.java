@@ -0,0 +1,243 @@
+package jdbm.helper.compression;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.CognitiveWeb.extser.Stateless;
+
+
+/**
+ * Provider for compressing numeric keys, such as those written by
+ * {@link jdbm.helper.IntegerSerializer} and {@link jdbm.helper.LongSerializer}.
+ * 
+ * The keys of a page are buffered until the compression is finished. If all keys
+ * have the same length of at most 8 bytes, they are read as big-endian numbers and
+ * the first value is stored followed by the differences (deltas) between successive
+ * values. The deltas are written either as zig-zag varints, or, when that is
+ * smaller, relative to the smallest delta (frame of reference) in a fixed number of
+ * bits each. Sorted keys with regular gaps, e.g. timestamps, need a few bits per key
+ * or even none at all. Other keys are stored as is.
+ * 
+ * Note that the decompressor reads all keys of the page on the first call to
+ * {@link ByteArrayDecompressor#decompressNextGroup()}, so it must be asked for as
+ * many groups as were compressed.
+ */
+
+public class NumericDeltaCompressionProvider implements CompressionProvider, Stateless {
+	private static final long serialVersionUID = 1L;
+
+	/** Keys are stored as is. */
+	static final byte RAW = 0;
+	/** Deltas are stored as zig-zag varints. */
+	static final byte VARINT = 1;
+	/** Deltas are stored relative to the smallest delta in a fixed number of bits. */
+	static final byte PACKED = 2;
+
+	public static transient final NumericDeltaCompressionProvider INSTANCE = new NumericDeltaCompressionProvider();
+
+	public NumericDeltaCompressionProvider() {
+	}
+
+	public ByteArrayCompressor getCompressor(DataOutput out) {
+		Compressor comp = new Compressor();
+		comp.out = out;
+		return comp;
+	}
+
+	public ByteArrayDecompressor getDecompressor(DataInput in) {
+		Decompressor decomp = new Decompressor();
+		decomp.in = in;
+		return decomp;
+	}
+
+	static long zigZag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	static long unZigZag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	static void writeVarLong(DataOutput out, long v) throws IOException {
+		while ((v & ~0x7fL) != 0) {
+			out.writeByte((int) ((v & 0x7f) | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readByte();
+			v |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	static int varLongSize(long v) {
+		int n = 1;
+		while ((v & ~0x7fL) != 0) {
+			n++;
+			v >>>= 7;
+		}
+		return n;
+	}
+
+	static long toLong(byte[] buf) {
+		long v = 0;
+		for (int i = 0; i < buf.length; i++)
+			v = (v << 8) | (buf[i] & 0xff);
+		return v;
+	}
+
+	static byte[] toBytes(long v, int width) {
+		byte[] buf = new byte[width];
+		for (int i = width - 1; i >= 0; i--) {
+			buf[i] = (byte) v;
+			v >>>= 8;
+		}
+		return buf;
+	}
+
+	static private class Compressor implements ByteArrayCompressor {
+		private DataOutput out;
+		private byte[][] groups = new byte[16][];
+		private int count = 0;
+
+		public void compressNextGroup(byte[] in) throws IOException {
+			if (count == groups.length) {
+				byte[][] tmp = new byte[count * 2][];
+				System.arraycopy(groups, 0, tmp, 0, count);
+				groups = tmp;
+			}
+			groups[count++] = in;
+		}
+
+		public void finishCompression() throws IOException {
+			if (count == 0)
+				return; // nothing will be read either.
+			writeVarLong(out, count);
+			int width = groups[0] != null ? groups[0].length : -1;
+			for (int i = 0; i < count && width != -1; i++) {
+				if (groups[i] == null || groups[i].length != width)
+					width = -1;
+			}
+			if (width < 1 || width > 8) {
+				out.writeByte(RAW);
+				for (int i = 0; i < count; i++)
+					DefaultCompressionProvider.writeByteArray(out, groups[i]);
+			} else {
+				long first = toLong(groups[0]);
+				long[] deltas = new long[count - 1];
+				long prev = first, min = 0, max = 0;
+				int varintSize = 0;
+				for (int i = 0; i < deltas.length; i++) {
+					long v = toLong(groups[i + 1]);
+					deltas[i] = v - prev;
+					prev = v;
+					if (i == 0 || deltas[i] < min)
+						min = deltas[i];
+					if (i == 0 || deltas[i] > max)
+						max = deltas[i];
+					varintSize += varLongSize(zigZag(deltas[i]));
+				}
+				int bits = 64 - Long.numberOfLeadingZeros(max - min);
+				int packedSize = varLongSize(zigZag(min)) + 1 + (int) (((long) deltas.length * bits + 7) / 8);
+				out.writeByte(packedSize < varintSize ? PACKED : VARINT);
+				out.writeByte(width);
+				out.write(groups[0]);
+				if (packedSize < varintSize) {
+					writeVarLong(out, zigZag(min));
+					out.writeByte(bits);
+					long acc = 0;
+					int nacc = 0;
+					for (int i = 0; i < deltas.length; i++) {
+						long v = deltas[i] - min;
+						for (int b = bits - 1; b >= 0; b--) {
+							acc = (acc << 1) | ((v >>> b) & 1);
+							if (++nacc == 8) {
+								out.writeByte((int) acc);
+								acc = 0;
+								nacc = 0;
+							}
+						}
+					}
+					if (nacc > 0)
+						out.writeByte((int) (acc << (8 - nacc)));
+				} else {
+					for (int i = 0; i < deltas.length; i++)
+						writeVarLong(out, zigZag(deltas[i]));
+				}
+			}
+			groups = new byte[16][];
+			count = 0;
+		}
+
+	}
+
+	static private class Decompressor implements ByteArrayDecompressor {
+		private DataInput in;
+		private byte[][] groups = null;
+		private int next = 0;
+
+		public void reset(DataInput in) {
+			this.in = in;
+			groups = null;
+			next = 0;
+		}
+
+		public byte[] decompressNextGroup() throws IOException {
+			if (groups == null)
+				readGroups();
+			if (next == groups.length)
+				throw new IOException("No more groups");
+			return groups[next++];
+		}
+
+		private void readGroups() throws IOException {
+			int count = (int) readVarLong(in);
+			groups = new byte[count][];
+			byte mode = in.readByte();
+			if (mode == RAW) {
+				for (int i = 0; i < count; i++)
+					groups[i] = DefaultCompressionProvider.readByteArray(in);
+				return;
+			}
+			if (mode != VARINT && mode != PACKED)
+				throw new IOException("Unknown mode: " + mode);
+			int width = in.readByte();
+			groups[0] = new byte[width];
+			in.readFully(groups[0]);
+			long v = toLong(groups[0]);
+			if (mode == VARINT) {
+				for (int i = 1; i < count; i++) {
+					v += unZigZag(readVarLong(in));
+					groups[i] = toBytes(v, width);
+				}
+			} else {
+				long min = unZigZag(readVarLong(in));
+				int bits = in.readByte();
+				int acc = 0;
+				int nacc = 0;
+				for (int i = 1; i < count; i++) {
+					long d = 0;
+					for (int b = 0; b < bits; b++) {
+						if (nacc == 0) {
+							acc = in.readByte() & 0xff;
+							nacc = 8;
+						}
+						d = (d << 1) | ((acc >>> --nacc) & 1);
+					}
+					v += d + min;
+					groups[i] = toBytes(v, width);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,485 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2000 (C) Cees de Groot. All Rights Reserved.
+ * Contributions are Copyright (C) 2000 by their associated contributors.
+ *
+ * $Id$
+ */
+
+package jdbm.recman;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import jdbm.RecordManager;
+import jdbm.helper.Serializer;
+
+/**
+ *  A non-blocking front end for another RecordManager.
+ *  <p>
+ *  Each operation is queued and a {@link CompletableFuture} is returned at
+ *  once. Queued operations are run one at a time, in the order in which
+ *  they were submitted, on an I/O executor. Futures therefore complete in
+ *  submission order: when the future returned by {@link #commit()}
+ *  completes, every operation submitted before the commit has completed as
+ *  well.
+ *  <p>
+ *  A fetch of a recid for which a fetch using the same serializer is still
+ *  queued shares the result of the queued fetch rather than reading the
+ *  record again. Both callers receive the <i>same</i> object. A fetch is
+ *  never coalesced across an update or delete of that recid or across a
+ *  rollback.
+ *  <p>
+ *  Futures are completed on the I/O thread. Dependent actions which do
+ *  real work should use the <code>*Async</code> methods of
+ *  {@link CompletableFuture} so that they do not hold up the queue.
+ *
+ * @version $Id$
+ */
+public class AsyncRecordManager
+{
+
+    /**
+     * Wrapped RecordManager
+     */
+    protected RecordManager _recman;
+
+
+    /**
+     * The executor on which queued operations are run.
+     */
+    protected Executor _executor;
+
+
+    /**
+     * True if the executor was created by this object and must be shutdown
+     * on close.
+     */
+    private boolean _ownsExecutor;
+
+
+    /**
+     * Queued operations not yet run (FIFO).
+     */
+    private LinkedList _queue = new LinkedList();
+
+
+    /**
+     * True while a {@link Drain} task is scheduled on the executor.
+     */
+    private boolean _draining;
+
+
+    /**
+     * Queued fetches which may be shared, keyed by recid.
+     */
+    private Map _pendingFetches = new HashMap();
+
+
+    /**
+     * True once {@link #close()} has been submitted.
+     */
+    private boolean _closed;
+
+
+    /**
+     * Construct an AsyncRecordManager wrapping another RecordManager and
+     * running operations on a dedicated I/O thread.
+     *
+     * @param recman Wrapped RecordManager
+     */
+    public AsyncRecordManager( RecordManager recman )
+    {
+        this( recman, Executors.newSingleThreadExecutor( new IOThreadFactory() ) );
+        _ownsExecutor = true;
+    }
+
+
+    /**
+     * Construct an AsyncRecordManager wrapping another RecordManager and
+     * running operations on the given executor. Operations are run one at
+     * a time and in order even if the executor has several threads. The
+     * executor is not shutdown by {@link #close()}.
+     *
+     * @param recman Wrapped RecordManager
+     * @param executor Executor for I/O
+     */
+    public AsyncRecordManager( RecordManager recman, Executor executor )
+    {
+        if ( recman == null ) {
+            throw new IllegalArgumentException( "Argument 'recman' is null" );
+        }
+        if ( executor == null ) {
+            throw new IllegalArgumentException( "Argument 'executor' is null" );
+        }
+        _recman = recman;
+        _executor = executor;
+    }
+
+
+    /**
+     * Get the underlying Record Manager. It must not be closed directly;
+     * use {@link #close()} instead.
+     *
+     * @return underlying RecordManager.
+     */
+    public RecordManager getRecordManager()
+    {
+        return _recman;
+    }
+
+
+    /**
+     *  Inserts a new record using the default serialization handler.
+     *
+     *  @param obj the object for the new record.
+     *  @return a future for the rowid (<code>Long</code>) of the new record.
+     */
+    public CompletableFuture insert( Object obj )
+    {
+        return insert( obj, null );
+    }
+
+
+    /**
+     *  Inserts a new record using a custom serializer.
+     *
+     *  @param obj the object for the new record.
+     *  @param serializer a custom serializer
+     *  @return a future for the rowid (<code>Long</code>) of the new record.
+     */
+    public CompletableFuture insert( final Object obj,
+                                     final Serializer serializer )
+    {
+        return submit( new Operation() {
+            Object execute() throws IOException {
+                return new Long( _recman.insert( obj, serializer ) );
+            }
+        } );
+    }
+
+
+    /**
+     *  Deletes a record.
+     *
+     *  @param recid the rowid for the record that should be deleted.
+     *  @return a future which completes (with <code>null</code>) once the
+     *  record has been deleted.
+     */
+    public synchronized CompletableFuture delete( final long recid )
+    {
+        _pendingFetches.remove( new Long( recid ) );
+        return submit( new Operation() {
+            Object execute() throws IOException {
+                _recman.delete( recid );
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     *  Updates a record using the default serialization handler.
+     *
+     *  @param recid the recid for the record that is to be updated.
+     *  @param obj the new object for the record.
+     *  @return a future which completes (with <code>null</code>) once the
+     *  record has been updated.
+     */
+    public CompletableFuture update( long recid, Object obj )
+    {
+        return update( recid, obj, null );
+    }
+
+
+    /**
+     *  Updates a record using a custom serializer.
+     *
+     *  @param recid the recid for the record that is to be updated.
+     *  @param obj the new object for the record.
+     *  @param serializer a custom serializer
+     *  @return a future which completes (with <code>null</code>) once the
+     *  record has been updated.
+     */
+    public synchronized CompletableFuture update( final long recid,
+                                                  final Object obj,
+                                                  final Serializer serializer )
+    {
+        _pendingFetches.remove( new Long( recid ) );
+        return submit( new Operation() {
+            Object execute() throws IOException {
+                _recman.update( recid, obj, serializer );
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     *  Fetches a record using the default serialization handler.
+     *
+     *  @param recid the recid for the record that must be fetched.
+     *  @return a future for the object contained in the record.
+     */
+    public CompletableFuture fetch( long recid )
+    {
+        return fetch( recid, null );
+    }
+
+
+    /**
+     *  Fetches a record using a custom serializer. If a fetch of the same
+     *  recid using the same serializer is already queued then its future
+     *  is returned.
+     *
+     *  @param recid the recid for the record that must be fetched.
+     *  @param serializer a custom serializer
+     *  @return a future for the object contained in the record.
+     */
+    public synchronized CompletableFuture fetch( long recid,
+                                                 Serializer serializer )
+    {
+        Long id = new Long( recid );
+        Fetch fetch = (Fetch) _pendingFetches.get( id );
+        if ( fetch != null && fetch._serializer == serializer ) {
+            return fetch._future;
+        }
+        fetch = new Fetch( recid, serializer );
+        CompletableFuture future = submit( fetch );
+        if ( ! _pendingFetches.containsKey( id ) ) {
+            _pendingFetches.put( id, fetch );
+        }
+        return future;
+    }
+
+
+    /**
+     * Commit (make persistent) all changes since beginning of transaction.
+     *
+     * @return a future which completes (with <code>null</code>) once the
+     * commit is durable. All operations submitted before the commit have
+     * completed by then.
+     */
+    public CompletableFuture commit()
+    {
+        return submit( new Operation() {
+            Object execute() throws IOException {
+                _recman.commit();
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     * Rollback (cancel) all changes since beginning of transaction.
+     *
+     * @return a future which completes (with <code>null</code>) once the
+     * changes have been discarded.
+     */
+    public synchronized CompletableFuture rollback()
+    {
+        _pendingFetches.clear();
+        return submit( new Operation() {
+            Object execute() throws IOException {
+                _recman.rollback();
+                return null;
+            }
+        } );
+    }
+
+
+    /**
+     *  Closes the record manager once all queued operations have run.
+     *  Further operations are rejected with an
+     *  {@link IllegalStateException}.
+     *
+     *  @return a future which completes (with <code>null</code>) once the
+     *  underlying record manager has been closed.
+     */
+    public synchronized CompletableFuture close()
+    {
+        CompletableFuture future = submit( new Operation() {
+            Object execute() throws IOException {
+                try {
+                    _recman.close();
+                } finally {
+                    if ( _ownsExecutor ) {
+                        ( (ExecutorService) _executor ).shutdown();
+                    }
+                }
+                return null;
+            }
+        } );
+        _closed = true;
+        return future;
+    }
+
+
+    /**
+     * Queue an operation, scheduling a {@link Drain} task if none is
+     * scheduled.
+     */
+    private synchronized CompletableFuture submit( Operation op )
+    {
+        if ( _closed ) {
+            throw new IllegalStateException( "RecordManager has been closed" );
+        }
+        _queue.addLast( op );
+        if ( ! _draining ) {
+            try {
+                _executor.execute( new Drain() );
+            } catch ( RejectedExecutionException except ) {
+                _queue.removeLast();
+                throw except;
+            }
+            _draining = true;
+        }
+        return op._future;
+    }
+
+
+    /**
+     * Remove and return the next queued operation, or <code>null</code> if
+     * the queue is empty, in which case the drain task must exit.
+     */
+    private synchronized Operation next()
+    {
+        if ( _queue.isEmpty() ) {
+            _draining = false;
+            return null;
+        }
+        Operation op = (Operation) _queue.removeFirst();
+        if ( op instanceof Fetch ) {
+            Long id = new Long( ( (Fetch) op )._recid );
+            if ( _pendingFetches.get( id ) == op ) {
+                _pendingFetches.remove( id );
+            }
+        }
+        return op;
+    }
+
+
+    /**
+     * Runs queued operations until the queue is empty.
+     */
+    private class Drain
+        implements Runnable
+    {
+        public void run()
+        {
+            Operation op;
+            while ( ( op = next() ) != null ) {
+                op.run();
+            }
+        }
+    }
+
+
+    /**
+     * A queued operation and the future for its result.
+     */
+    private abstract static class Operation
+    {
+        final CompletableFuture _future = new CompletableFuture();
+
+        abstract Object execute() throws IOException;
+
+        void run()
+        {
+            Object result;
+            try {
+                result = execute();
+            } catch ( Throwable t ) {
+                _future.completeExceptionally( t );
+                return;
+            }
+            _future.complete( result );
+        }
+    }
+
+
+    /**
+     * A queued fetch, which may be shared by several callers.
+     */
+    private class Fetch
+        extends Operation
+    {
+        final long _recid;
+        final Serializer _serializer;
+
+        Fetch( long recid, Serializer serializer )
+        {
+            _recid = recid;
+            _serializer = serializer;
+        }
+
+        Object execute() throws IOException
+        {
+            return _recman.fetch( _recid, _serializer );
+        }
+    }
+
+
+    /**
+     * Creates the daemon thread used when no executor is given.
+     */
+    private static class IOThreadFactory
+        implements ThreadFactory
+    {
+        public Thread newThread( Runnable r )
+        {
+            Thread t = new Thread( r, "jdbm-async-io" );
+            t.setDaemon( true );
+            return t;
+        }
+    }
+
+}
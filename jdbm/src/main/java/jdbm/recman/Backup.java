@@ -0,0 +1,239 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.recman;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ *  A copy of a {@link RecordFile} taken while the file stays in use.
+ *  <p>
+ *  The backup copies the blocks the data file has when the backup
+ *  starts. The copy runs without the lock of the record manager: the
+ *  record file calls {@link #beforeWrite(long)} before it writes a block
+ *  onto the data file, and the backup then copies the block it is about
+ *  to lose first. Each block is therefore copied exactly once, as of the
+ *  start of the backup. Together with the committed transactions of the
+ *  log, copied when the backup starts, the copy is the state of the last
+ *  commit before the backup.
+ *  <p>
+ *  An incremental backup only copies the given blocks into a file which
+ *  holds an earlier backup of the same record file.
+ *
+ *  @version $Id$
+ */
+final class Backup {
+
+    /** The maximum number of adjacent blocks copied with one read. */
+    private static final int RUN = 64;
+
+    /** The record file being backed up. */
+    final RecordFile owner;
+
+    private final FileChannel source;
+    private final RandomAccessFile target;
+    private final String targetName;
+    private final int blockSize;
+
+    /** The length of the data file when the backup started. */
+    private final long length;
+
+    /** The number of blocks of the data file when the backup started. */
+    private final long nblocks;
+
+    /** The blocks to copy, or null to copy all of them. */
+    private final BitSet blocksToCopy;
+
+    /** The blocks which have been copied. */
+    private final BitSet copied = new BitSet();
+
+    private long copiedCount = 0L;
+
+    /**
+     *  The blocks changed before the backup, which the record file gets
+     *  back if the backup fails.
+     */
+    final BitSet changedBefore;
+
+    /**
+     *  Starts a backup of a data file.
+     *
+     *  @param owner The record file being backed up.
+     *  @param source The channel of the data file.
+     *  @param targetName The name of the backup, without an extension.
+     *  @param blockSize The length of a block of the data file.
+     *  @param blocksToCopy The blocks to copy over an earlier backup, or
+     *         null to copy the whole data file.
+     *  @param changedBefore The blocks changed before the backup.
+     */
+    Backup(RecordFile owner, FileChannel source, String targetName, int blockSize,
+           BitSet blocksToCopy, BitSet changedBefore)
+        throws IOException {
+        this.owner = owner;
+        this.source = source;
+        this.targetName = targetName;
+        this.blockSize = blockSize;
+        this.blocksToCopy = blocksToCopy;
+        this.changedBefore = changedBefore;
+        length = source.size();
+        nblocks = (length + blockSize - 1) / blockSize;
+        if (nblocks > Integer.MAX_VALUE) {
+            throw new IOException("Too many blocks to back up: " + nblocks);
+        }
+        target = new RandomAccessFile(targetName + RecordFile.extension, "rw");
+        if (blocksToCopy == null) {
+            target.setLength(0);
+        }
+    }
+
+    /**
+     *  Returns a name identifying the data file of a backup, whichever
+     *  way the name of the backup is written.
+     */
+    static String canonicalName(String targetName) throws IOException {
+        return new File(targetName + RecordFile.extension).getCanonicalPath();
+    }
+
+    /** Returns true if only some blocks are copied over an earlier backup. */
+    boolean isIncremental() {
+        return blocksToCopy != null;
+    }
+
+    /** Returns the number of blocks copied so far. */
+    synchronized long getCopiedCount() {
+        return copiedCount;
+    }
+
+    /**
+     *  Copies the old image of a block which is about to be written onto
+     *  the data file, if the backup still needs it.
+     */
+    synchronized void beforeWrite(long blockId) throws IOException {
+        if (blockId < nblocks && needs((int) blockId)) {
+            copy((int) blockId, (int) blockId + 1,
+                 ByteBuffer.allocate(blockSize));
+        }
+    }
+
+    /**
+     *  Copies the blocks the backup still needs, a run of adjacent blocks
+     *  at a time, and syncs the copy.
+     */
+    void copy() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(RUN * blockSize);
+        int next = 0;
+        while (next < nblocks) {
+            synchronized (this) {
+                int first = next;
+                while (first < nblocks && !needs(first)) {
+                    first = nextCandidate(first + 1);
+                }
+                if (first >= nblocks) {
+                    break;
+                }
+                int last = first + 1;
+                while (last < nblocks && last - first < RUN && needs(last)) {
+                    last++;
+                }
+                copy(first, last, buf);
+                next = last;
+            }
+        }
+        target.setLength(length);
+        target.getFD().sync();
+    }
+
+    /** Closes the copy. */
+    void close() throws IOException {
+        target.close();
+    }
+
+    /** Returns the name of the backup, without an extension. */
+    String getTargetName() {
+        return targetName;
+    }
+
+    private boolean needs(int block) {
+        return (blocksToCopy == null || blocksToCopy.get(block))
+            && !copied.get(block);
+    }
+
+    private int nextCandidate(int block) {
+        if (blocksToCopy == null) {
+            return block;
+        }
+        int next = blocksToCopy.nextSetBit(block);
+        return next < 0 ? Integer.MAX_VALUE : next;
+    }
+
+    /**
+     *  Copies the blocks in [first, last) from the data file onto the
+     *  same position of the copy.
+     */
+    private void copy(int first, int last, ByteBuffer buf) throws IOException {
+        long position = (long) first * blockSize;
+        buf.clear();
+        buf.limit((int) Math.min((long) (last - first) * blockSize,
+                                 length - position));
+        while (buf.hasRemaining()) {
+            if (source.read(buf, position + buf.position()) < 0) {
+                break;
+            }
+        }
+        buf.flip();
+        FileChannel channel = target.getChannel();
+        while (buf.hasRemaining()) {
+            channel.write(buf, position + buf.position());
+        }
+        copied.set(first, last);
+        copiedCount += last - first;
+    }
+}
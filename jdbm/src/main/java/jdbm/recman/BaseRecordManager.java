@@ -50,15 +50,25 @@ package jdbm.recman;
 
 import java.io.IOException;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import jdbm.BlobInputStream;
+import jdbm.BlobOutputStream;
 import jdbm.RecordManager;
 import jdbm.RecordManagerOptions;
+import jdbm.RecordManagerStatistics;
+import jdbm.helper.CompactSerializationHandler;
 import jdbm.helper.DefaultSerializationHandler;
 import jdbm.helper.ISerializationHandler;
+import jdbm.helper.LatencyHistogram;
+import jdbm.helper.LatencyHistograms;
+import jdbm.helper.SerializationProfiler;
 import jdbm.helper.Serializer;
 import jdbm.helper.DefaultSerializer;
+import jdbm.helper.BufferSerializer;
+import jdbm.helper.ByteArrayBuffer;
 import jdbm.helper.compessor.DefaultRecordCompressor;
 import jdbm.helper.compessor.IRecordCompressor;
 
@@ -119,6 +129,11 @@ public /*final*/ class BaseRecordManager
 	 * @see RecordManagerOptions#BUFFERED_INSTALLS
 	 */
     BufferedRecordInstallManager _bufMgr;
+
+    /**
+     * Large object (blob) storage, created on first use.
+     */
+    private BlobStore _blobs;
     
     /**
      * Reserved slot for name directory.
@@ -165,6 +180,35 @@ public /*final*/ class BaseRecordManager
      */
     transient private long m_deserializationElapsed = 0L;
 
+    /**
+     * Serialization profiler (optional).
+     * 
+     * @see Provider
+     * @see RecordManagerOptions#PROFILE_SERIALIZATION
+     */
+    /*private*/ SerializationProfiler _profiler;
+
+    /**
+     * The statistics MBean (optional).
+     * 
+     * @see Provider
+     * @see RecordManagerOptions#JMX
+     */
+    /*private*/ StatisticsMBean _statisticsMBean;
+
+    /**
+     * Latency histograms (optional).
+     * 
+     * @see Provider
+     * @see RecordManagerOptions#LATENCY_HISTOGRAMS
+     */
+    /*private*/ LatencyHistograms _latencies;
+
+    // counters.
+    private long _commitCount;
+    private long _commitNanos;
+    private long _rollbackCount;
+
     /**
      * Record compressor (optional).
      * 
@@ -181,6 +225,144 @@ public /*final*/ class BaseRecordManager
         return _serializer;
         
     }
+
+    public SerializationProfiler getSerializationProfiler()
+    {
+        
+        checkIfClosed();
+        
+        return _profiler;
+        
+    }
+
+    public LatencyHistograms getLatencyHistograms()
+    {
+        
+        checkIfClosed();
+        
+        return _latencies;
+        
+    }
+
+    /**
+     * The pages are copied without holding the lock of the record manager:
+     * a page which is about to be written onto the data file meanwhile is
+     * copied first, so that the backup keeps the image it had when the
+     * backup started.
+     */
+    public void backup( String name, boolean incremental )
+        throws IOException
+    {
+        backup( name, incremental, null );
+    }
+
+    /**
+     * Writes a backup and sets the listener of the committed transactions
+     * at the point in time of the backup.
+     *
+     * @param listener The listener, notified of the transactions committed
+     * after those in the backup, or <code>null</code>.
+     *
+     * @see LogShipper
+     */
+    void backup( String name, boolean incremental, CommitListener listener )
+        throws IOException
+    {
+        completeBackup( startBackup( name, incremental, listener ), listener );
+    }
+
+    /**
+     * Starts a backup, which must then be completed by {@link
+     * #completeBackup(Backup, CommitListener)}.
+     *
+     * @see ShardedRecordManager#backup(String, boolean)
+     */
+    synchronized Backup startBackup( String name, boolean incremental,
+                                     CommitListener listener )
+        throws IOException
+    {
+        checkIfClosed();
+        Backup backup = _file.startBackup( name, incremental );
+        if( listener != null ) {
+            _file.txnMgr.setCommitListener( listener );
+        }
+        return backup;
+    }
+
+    /**
+     * Copies the pages of a backup without holding the lock of the record
+     * manager, then ends the backup and recovers its log.
+     */
+    void completeBackup( Backup backup, CommitListener listener )
+        throws IOException
+    {
+        RecordFile file = backup.owner;
+        boolean ok = false;
+        try {
+            backup.copy();
+            ok = true;
+        } finally {
+            synchronized( this ) {
+                if( !ok && listener != null ) {
+                    file.txnMgr.setCommitListener( null );
+                }
+                file.endBackup( backup, ok );
+            }
+        }
+        // apply the committed transactions of the log onto the backup.
+        new RecordFile( backup.getTargetName(), file.getBlockSize() ).close();
+    }
+
+    /**
+     * Overwrites pages with images shipped from another record manager and
+     * commits them.
+     *
+     * @see LogFollower
+     */
+    synchronized void install( long[] blockIds, byte[][] images )
+        throws IOException
+    {
+        checkIfClosed();
+
+        _pageman.install( blockIds, images );
+
+        if( _serializer instanceof CompactSerializationHandler ) {
+
+            // Reload the classes registered by the shipped transaction.
+            ((CompactSerializationHandler)_serializer).rollback( this );
+
+        }
+    }
+
+    public synchronized RecordManagerStatistics getStatistics()
+        throws IOException
+    {
+        
+        checkIfClosed();
+        
+        RecordManagerStatistics stats = new RecordManagerStatistics();
+        _file.addStatistics( stats );
+        _physMgr.addStatistics( stats );
+        if( _bufMgr != null ) {
+            _bufMgr.addStatistics( stats );
+        }
+        stats.set( RecordManagerStatistics.COMMITS, _commitCount );
+        stats.set( RecordManagerStatistics.COMMIT_NANOS, _commitNanos );
+        stats.set( RecordManagerStatistics.ROLLBACKS, _rollbackCount );
+        if( _latencies != null ) {
+            String[] names = _latencies.getNames();
+            for( int i = 0; i < names.length; i++ ) {
+                LatencyHistogram h = _latencies.get( names[ i ] );
+                stats.set( names[ i ] + "LatencyCount", h.getCount() );
+                stats.set( names[ i ] + "LatencyP50", h.getValueAtPercentile( 50 ) );
+                stats.set( names[ i ] + "LatencyP99", h.getValueAtPercentile( 99 ) );
+                stats.set( names[ i ] + "LatencyP999", h.getValueAtPercentile( 99.9 ) );
+                stats.set( names[ i ] + "LatencyMax", h.getMax() );
+            }
+        }
+        return stats;
+        
+    }
     
     /**
      * Static debugging flag
@@ -203,7 +385,58 @@ public /*final*/ class BaseRecordManager
     public BaseRecordManager( String filename )
         throws IOException
     {
-        _file = new RecordFile( filename );
+        this( filename, RecordFile.BLOCK_SIZE );
+    }
+
+    /**
+     *  Creates a record manager for the indicated file.
+     *
+     *  @param filename The name of the file, without an extension.
+     *  @param pageSize The page size in bytes used if the file is created.
+     *  An existing file always uses the page size with which it was created.
+     *
+     *  @throws IOException when the file cannot be opened or is not
+     *          a valid file content-wise.
+     *  @see RecordManagerOptions#PAGE_SIZE
+     */
+    public BaseRecordManager( String filename, int pageSize )
+        throws IOException
+    {
+        this( filename, pageSize, Integer.parseInt
+              ( RecordManagerOptions.RECOVERY_THREADS_DEFAULT ) );
+    }
+
+    /**
+     *  Creates a record manager for the indicated file.
+     *
+     *  @param filename The name of the file, without an extension.
+     *  @param pageSize The page size in bytes used if the file is created.
+     *  An existing file always uses the page size with which it was created.
+     *  @param recoveryThreads The #of threads writing the pages of the
+     *  transaction log onto the file if the store needs to be recovered.
+     *
+     *  @throws IOException when the file cannot be opened or is not
+     *          a valid file content-wise.
+     *  @see RecordManagerOptions#RECOVERY_THREADS
+     */
+    public BaseRecordManager( String filename, int pageSize, int recoveryThreads )
+        throws IOException
+    {
+        this( filename, pageSize, recoveryThreads, null );
+    }
+
+    /**
+     *  Creates a record manager for the indicated file, recovering the
+     *  transactions of its log which the filter accepts.
+     *
+     *  @see ShardedRecordManager
+     */
+    BaseRecordManager( String filename, int pageSize, int recoveryThreads,
+                       RecoveryFilter recoveryFilter )
+        throws IOException
+    {
+        _file = new RecordFile( filename, pageSize, recoveryThreads,
+                                recoveryFilter );
         _pageman = new PageManager( _file );
         _physMgr = new PhysicalRowIdManager( _file, _pageman );
         _logMgr = new LogicalRowIdManager( _file, _pageman );
@@ -324,6 +557,12 @@ public /*final*/ class BaseRecordManager
     {
         checkIfClosed();
 
+        if( _blobs != null ) {
+
+            _blobs.close();
+
+        }
+
         if( _bufMgr != null ) {
         	
         	_bufMgr.commit();
@@ -336,6 +575,19 @@ public /*final*/ class BaseRecordManager
 
         _file.close();
         _file = null;
+
+        if( _profiler != null ) {
+
+            _profiler.unregisterMBean();
+
+        }
+
+        if( _statisticsMBean != null ) {
+
+            _statisticsMBean.unregisterMBean();
+            _statisticsMBean = null;
+
+        }
     }
 
 
@@ -370,18 +622,54 @@ public /*final*/ class BaseRecordManager
      */
     public synchronized long insert( Object obj, Serializer serializer )
         throws IOException
+    {
+        if( _latencies == null ) {
+            return _insert( obj, serializer );
+        }
+        long beginNanos = System.nanoTime();
+        try {
+            return _insert( obj, serializer );
+        } finally {
+            _latencies.record( LatencyHistograms.INSERT, System.nanoTime() - beginNanos );
+        }
+    }
+
+
+    private long _insert( Object obj, Serializer serializer )
+        throws IOException
     {
         byte[]    data;
         long      recid;
         
         checkIfClosed();
 
+        if( isBufferSerializer( serializer ) ) {
+            ByteArrayBuffer buf = ByteArrayBuffer.acquire();
+            try {
+                long beginTime = System.currentTimeMillis();
+                long beginNanos = _profiler != null ? System.nanoTime() : 0L;
+                ( (BufferSerializer) serializer ).serialize( buf, obj );
+                if( _profiler != null ) {
+                    _profiler.serialized( obj, buf.size(), System.nanoTime() - beginNanos );
+                }
+                m_serializationElapsed += System.currentTimeMillis() - beginTime;
+                Location physRowId = _physMgr.insert( buf.getBuffer(), 0, buf.size() );
+                return _logMgr.insert( physRowId ).toLong();
+            } finally {
+                ByteArrayBuffer.release( buf );
+            }
+        }
+
         long beginTime = System.currentTimeMillis();
+        long beginNanos = _profiler != null ? System.nanoTime() : 0L;
         if( serializer == null ) {
             data = _serializer.serialize( this, 0L, obj );
         } else {
             data = serializer.serialize( obj );
         }
+        if( _profiler != null ) {
+            _profiler.serialized( obj, data.length, System.nanoTime() - beginNanos );
+        }
         m_serializationElapsed += System.currentTimeMillis() - beginTime;
         
         data = _compressor.compress( data );
@@ -418,11 +706,71 @@ public /*final*/ class BaseRecordManager
         return recid;
     }
 
+
+    /**
+     *  Inserts a set of new records using a custom serializer. All objects
+     *  are serialized and compressed first. The physical rows are then
+     *  packed one after the other at the end of the in use pages, without
+     *  consulting the free physical row list, and the logical row ids are
+     *  assigned in bulk.
+     *  <p>
+     *  When records are buffered, each record is inserted as by
+     *  {@link #insert( Object, Serializer )}.
+     *
+     *  @param objs the objects for the new records.
+     *  @param serializer a custom serializer
+     *  @return the rowids for the new records, in the same order as
+     *  <i>objs</i>.
+     *  @throws IOException when one of the underlying I/O operations fails.
+     */
+    public synchronized long[] insertAll( Object[] objs, Serializer serializer )
+        throws IOException
+    {
+        checkIfClosed();
+        if ( objs == null ) {
+            throw new IllegalArgumentException( "Argument 'objs' is null" );
+        }
+        long[] recids = new long[ objs.length ];
+        if( _bufMgr != null ) {
+            for ( int i = 0; i < objs.length; i++ ) {
+                recids[ i ] = insert( objs[ i ], serializer );
+            }
+            return recids;
+        }
+
+        byte[][] data = new byte[ objs.length ][];
+        long beginTime = System.currentTimeMillis();
+        for ( int i = 0; i < objs.length; i++ ) {
+            long beginNanos = _profiler != null ? System.nanoTime() : 0L;
+            if( serializer == null ) {
+                data[ i ] = _serializer.serialize( this, 0L, objs[ i ] );
+            } else {
+                data[ i ] = serializer.serialize( objs[ i ] );
+            }
+            if( _profiler != null ) {
+                _profiler.serialized( objs[ i ], data[ i ].length,
+                                      System.nanoTime() - beginNanos );
+            }
+        }
+        m_serializationElapsed += System.currentTimeMillis() - beginTime;
+        for ( int i = 0; i < objs.length; i++ ) {
+            data[ i ] = _compressor.compress( data[ i ] );
+        }
+
+        Location[] physRowIds = _physMgr.insertAll( data );
+        Location[] logRowIds = _logMgr.insertAll( physRowIds );
+        for ( int i = 0; i < objs.length; i++ ) {
+            recids[ i ] = logRowIds[ i ].toLong();
+        }
+        return recids;
+    }
+
     /**
      *  Deletes a record.
      *
      *  @param recid the rowid for the record that should be deleted.
      *  @throws IOException when one of the underlying I/O operations fails.
+     *  @throws IllegalArgumentException if the record is a blob.
      */
     public synchronized void delete( long recid )
         throws IOException
@@ -432,13 +780,34 @@ public /*final*/ class BaseRecordManager
             throw new IllegalArgumentException( "Argument 'recid' is invalid: "
                                                 + recid );
         }
+        delete( recid, false );
+    }
+
+
+    /**
+     *  Deletes a record, which must be a blob descriptor iff <i>blob</i> is
+     *  true. The mark of a blob is cleared.
+     */
+    void delete( long recid, boolean blob )
+        throws IOException
+    {
+        long beginNanos = _latencies != null ? System.nanoTime() : 0L;
 
         if ( DEBUG ) {
             System.out.println( "BaseRecordManager.delete() recid " + recid ) ;
         }
 
         Location logRowId = new Location( recid );
-        Location physRowId = _logMgr.fetch( logRowId );
+        Location physRowId = _logMgr.fetch( logRowId, blob );
+        if( physRowId == null ) {
+            // a blob is deleted with its chunks by deleteBlob().
+            throw new IllegalArgumentException( blob ? "Not a blob: recid=" + recid
+                                                : "Record is a blob, use deleteBlob(): recid="
+                                                + recid );
+        }
+        if( blob ) {
+            _logMgr.update( logRowId, physRowId );
+        }
         if( physRowId.getBlock() != 0L ) {
             // Delete the physical row.  (Not done until the physical row has
             // been allocated).
@@ -452,6 +821,10 @@ public /*final*/ class BaseRecordManager
         	_bufMgr.delete( logRowId );
         }
         _logMgr.delete( logRowId );
+
+        if( _latencies != null ) {
+            _latencies.record( LatencyHistograms.DELETE, System.nanoTime() - beginNanos );
+        }
     }
 
 
@@ -476,9 +849,26 @@ public /*final*/ class BaseRecordManager
      *  @param obj the new object for the record.
      *  @param serializer a custom serializer
      *  @throws IOException when one of the underlying I/O operations fails.
+     *  @throws IllegalArgumentException if the record is a blob.
      */
     public synchronized void update( long recid, Object obj, Serializer serializer )
         throws IOException
+    {
+        if( _latencies == null ) {
+            _update( recid, obj, serializer );
+            return;
+        }
+        long beginNanos = System.nanoTime();
+        try {
+            _update( recid, obj, serializer );
+        } finally {
+            _latencies.record( LatencyHistograms.UPDATE, System.nanoTime() - beginNanos );
+        }
+    }
+
+
+    private void _update( long recid, Object obj, Serializer serializer )
+        throws IOException
     {
         checkIfClosed();
         if ( recid <= 0 ) {
@@ -487,15 +877,39 @@ public /*final*/ class BaseRecordManager
         }
 
         Location logRecid = new Location( recid );
-        Location physRecid = _logMgr.fetch( logRecid );
+        Location physRecid = _logMgr.fetch( logRecid, false );
+        if( physRecid == null ) {
+            throw new IllegalArgumentException( "Record is a blob: recid=" + recid );
+        }
+
+        if( isBufferSerializer( serializer ) ) {
+            ByteArrayBuffer buf = ByteArrayBuffer.acquire();
+            try {
+                long beginTime = System.currentTimeMillis();
+                long beginNanos = _profiler != null ? System.nanoTime() : 0L;
+                ( (BufferSerializer) serializer ).serialize( buf, obj );
+                if( _profiler != null ) {
+                    _profiler.serialized( obj, buf.size(), System.nanoTime() - beginNanos );
+                }
+                m_serializationElapsed += System.currentTimeMillis() - beginTime;
+                update( logRecid, physRecid, buf.getBuffer(), buf.size() );
+            } finally {
+                ByteArrayBuffer.release( buf );
+            }
+            return;
+        }
         
         long beginTime = System.currentTimeMillis();
+        long beginNanos = _profiler != null ? System.nanoTime() : 0L;
         byte[] data;
         if( serializer == null ) {
             data = _serializer.serialize( this, recid, obj );
         } else {
             data = serializer.serialize( obj );
         }
+        if( _profiler != null ) {
+            _profiler.serialized( obj, data.length, System.nanoTime() - beginNanos );
+        }
         m_serializationElapsed += System.currentTimeMillis() - beginTime;
         
         data = _compressor.compress( data );
@@ -518,6 +932,17 @@ public /*final*/ class BaseRecordManager
         	
         }
         
+        update( logRecid, physRecid, data, data.length );
+    }
+
+
+    /**
+     *  Writes the data of a record onto its physical row.
+     */
+    private void update( Location logRecid, Location physRecid, byte[] data,
+                         int length )
+        throws IOException
+    {
         /*
          * Modified algorithm detects a non-existing physical row from an insert
          * and allocates a physical row. If the physical row exists, then it
@@ -528,16 +953,29 @@ public /*final*/ class BaseRecordManager
         if( physRecid.getBlock() == 0L ) {
             // physical row does not exist (insert as performed by the cache layer defers
             // allocation of the physical record).
-            newRecid = _physMgr.insert( data, 0, data.length );
+            newRecid = _physMgr.insert( data, 0, length );
         } else {
             // physical row exists (record was either inserted by base recman or already
             // updated).
-            newRecid = _physMgr.update( physRecid, data, 0, data.length );
+            newRecid = _physMgr.update( physRecid, data, 0, length );
         }
         if ( ! newRecid.equals( physRecid ) ) {
             _logMgr.update( logRecid, newRecid );
         }
     }
+
+
+    /**
+     *  True iff the record can be serialized straight into a reusable buffer
+     *  and written from there, which is the case for a {@link
+     *  BufferSerializer} when records are neither compressed nor buffered.
+     */
+    private boolean isBufferSerializer( Serializer serializer )
+    {
+        return serializer instanceof BufferSerializer
+            && _compressor instanceof DefaultRecordCompressor
+            && _bufMgr == null;
+    }
     
     /**
      *  Fetches a record using standard java object serialization.
@@ -560,9 +998,25 @@ public /*final*/ class BaseRecordManager
      *  @param serializer a custom serializer
      *  @return the object contained in the record.
      *  @throws IOException when one of the underlying I/O operations fails.
+     *  @throws IllegalArgumentException if the record is a blob.
      */
     public synchronized Object fetch( long recid, Serializer serializer )
         throws IOException
+    {
+        if( _latencies == null ) {
+            return _fetch( recid, serializer );
+        }
+        long beginNanos = System.nanoTime();
+        try {
+            return _fetch( recid, serializer );
+        } finally {
+            _latencies.record( LatencyHistograms.FETCH, System.nanoTime() - beginNanos );
+        }
+    }
+
+
+    private Object _fetch( long recid, Serializer serializer )
+        throws IOException
     {
         byte[] data = null;
 
@@ -590,7 +1044,11 @@ public /*final*/ class BaseRecordManager
 			 * record identifier and then fetch the record from the page (and
 			 * the page from the store if necessary).
 			 */
-        	Location physRowId = _logMgr.fetch( logRowId );
+        	Location physRowId = _logMgr.fetch( logRowId, false );
+        	if( physRowId == null ) {
+        	    throw new IllegalArgumentException( "Record is a blob, use openBlobInput(): recid="
+        	                                        + recid );
+        	}
         	data = _physMgr.fetch( physRowId );
         }
         if ( DEBUG ) {
@@ -606,19 +1064,190 @@ public /*final*/ class BaseRecordManager
             // to permit zero length records, but this test should still be valid.
             return null;
         }
+        return deserialize( recid, data, serializer );
+    }
+
+
+    /**
+     * Decompress and deserialize the data for a record.
+     */
+    private Object deserialize( long recid, byte[] data, Serializer serializer )
+        throws IOException
+    {
         data = _compressor.decompress( data );
         long beginTime = System.currentTimeMillis();
+        long beginNanos = _profiler != null ? System.nanoTime() : 0L;
         Object obj;
         if( serializer == null ) {
             obj = _serializer.deserialize( this, recid, data );
         } else {
             obj = serializer.deserialize( data );
         }
+        if( _profiler != null ) {
+            _profiler.deserialized( obj, data.length, System.nanoTime() - beginNanos );
+        }
         m_deserializationElapsed += System.currentTimeMillis() - beginTime; 
         return obj;
     }
 
 
+    /**
+     *  Fetches a set of records using the configured serialization handler.
+     *
+     *  @param recids the recids of the records that must be fetched.
+     *  @return the objects contained in the records, in request order.
+     *  @throws IOException when one of the underlying I/O operations fails.
+     */
+    public Object[] fetchAll( long[] recids )
+        throws IOException
+    {
+        return fetchAll( recids, null );
+    }
+
+
+    /**
+     *  Fetches a set of records using a custom serializer. All logical
+     *  row ids are first translated, in translation page order, and the
+     *  physical records are then read in page order, so that each page is
+     *  read at most once and the file is visited sequentially. The records
+     *  are deserialized in request order.
+     *
+     *  @param recids the recids of the records that must be fetched.
+     *  @param serializer a custom serializer
+     *  @return the objects contained in the records, in request order.
+     *  @throws IOException when one of the underlying I/O operations fails.
+     */
+    public synchronized Object[] fetchAll( long[] recids, Serializer serializer )
+        throws IOException
+    {
+        checkIfClosed();
+        if ( recids == null ) {
+            throw new IllegalArgumentException( "Argument 'recids' is null" );
+        }
+        final int n = recids.length;
+        FetchRequest[] requests = new FetchRequest[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            if ( recids[ i ] <= 0 ) {
+                throw new IllegalArgumentException( "Argument 'recid' is invalid: "
+                                                    + recids[ i ] );
+            }
+            requests[ i ] = new FetchRequest( recids[ i ] );
+        }
+        FetchRequest[] inOrder = (FetchRequest[]) requests.clone();
+
+        // translate the logical row ids in translation page order.
+        Arrays.sort( requests );
+        for ( int i = 0; i < n; i++ ) {
+            FetchRequest req = requests[ i ];
+            Location logRowId = new Location( req.key );
+            if( _bufMgr != null ) {
+                req.data = _bufMgr.fetch( logRowId );
+                if( req.data != null ) {
+                    continue;
+                }
+            }
+            req.physRowId = _logMgr.fetch( logRowId, false );
+            if( req.physRowId == null ) {
+                throw new IllegalArgumentException( "Record is a blob, use openBlobInput(): recid="
+                                                    + logRowId.toLong() );
+            }
+            req.key = req.physRowId.toLong();
+        }
+
+        // read the physical records in page order.
+        Arrays.sort( requests );
+        for ( int i = 0; i < n; i++ ) {
+            FetchRequest req = requests[ i ];
+            if( req.physRowId != null ) {
+                req.data = _physMgr.fetch( req.physRowId );
+            }
+        }
+
+        // deserialize in request order.
+        Object[] objs = new Object[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            if( inOrder[ i ].data != null ) {
+                objs[ i ] = deserialize( recids[ i ], inOrder[ i ].data,
+                                         serializer );
+            }
+        }
+        return objs;
+    }
+
+
+    /**
+     * One record of a {@link #fetchAll( long[], Serializer )} request. The
+     * sort key is first the logical row id and then the physical row id
+     * of the record, and is the same as the order of the records in the
+     * file.
+     */
+    private static class FetchRequest
+        implements Comparable
+    {
+        long key;
+        Location physRowId;
+        byte[] data;
+
+        FetchRequest( long recid )
+        {
+            this.key = recid;
+        }
+
+        public int compareTo( Object o )
+        {
+            long other = ( (FetchRequest) o ).key;
+            return key < other ? -1 : ( key == other ? 0 : 1 );
+        }
+    }
+
+
+    /**
+     *  Opens a stream which writes a new large object (blob).
+     *
+     *  @see BlobStore
+     */
+    public synchronized BlobOutputStream openBlobOutput()
+        throws IOException
+    {
+        checkIfClosed();
+        return getBlobStore().openOutput();
+    }
+
+
+    /**
+     *  Opens a stream which reads a large object (blob).
+     */
+    public synchronized BlobInputStream openBlobInput( long recid )
+        throws IOException
+    {
+        checkIfClosed();
+        return getBlobStore().openInput( recid );
+    }
+
+
+    /**
+     *  Deletes a large object (blob).
+     */
+    public synchronized void deleteBlob( long recid )
+        throws IOException
+    {
+        checkIfClosed();
+        getBlobStore().delete( recid );
+    }
+
+
+    /**
+     *  Returns the blob store, creating it on first use.
+     */
+    private BlobStore getBlobStore()
+    {
+        if ( _blobs == null ) {
+            _blobs = new BlobStore( this );
+        }
+        return _blobs;
+    }
+
+
     /**
      *  Returns the number of slots available for "root" rowids. These slots
      *  can be used to store special rowids, like rowids that point to
@@ -627,7 +1256,9 @@ public /*final*/ class BaseRecordManager
      */
     public int getRootCount()
     {
-        return FileHeader.NROOTS;
+        checkIfClosed();
+
+        return _pageman.getFileHeader().getRootCount();
     }
 
     /**
@@ -712,6 +1343,8 @@ public /*final*/ class BaseRecordManager
     {
         checkIfClosed();
 
+        long beginNanos = System.nanoTime();
+
         if( _bufMgr != null ) {
         	
         	_bufMgr.commit();
@@ -719,6 +1352,19 @@ public /*final*/ class BaseRecordManager
         }
         
         _pageman.commit();
+
+        if( _blobs != null ) {
+
+            _blobs.commit();
+
+        }
+
+        long elapsed = System.nanoTime() - beginNanos;
+        _commitCount++;
+        _commitNanos += elapsed;
+        if( _latencies != null ) {
+            _latencies.record( LatencyHistograms.COMMIT, elapsed );
+        }
     }
 
 
@@ -737,6 +1383,22 @@ public /*final*/ class BaseRecordManager
         }
 
         _pageman.rollback();
+        _physMgr.rollback();
+        _rollbackCount++;
+
+        if( _blobs != null ) {
+
+            // Free the chunks of the blobs still being written.
+            _blobs.rollback();
+
+        }
+
+        if( _serializer instanceof CompactSerializationHandler ) {
+
+            // Discard classes registered by the aborted transaction.
+            ((CompactSerializationHandler)_serializer).rollback( this );
+
+        }
     }
 
 
@@ -0,0 +1,522 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2000 (C) Cees de Groot. All Rights Reserved.
+ * Contributions are Copyright (C) 2000 by their associated contributors.
+ *
+ * $Id$
+ */
+
+package jdbm.recman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdbm.BlobInputStream;
+import jdbm.BlobOutputStream;
+
+/**
+ *  Stores large objects (blobs) for a {@link BaseRecordManager}.
+ *  <p>
+ *  The data of a blob is written as a sequence of physical rows (chunks).
+ *  Each chunk starts a new in use page and, but for the last one, fills
+ *  it exactly: a chunk is the data area of a page less a record header.
+ *  Reading a chunk therefore reads a single page, and the chunks of a blob
+ *  written while no other rows are inserted take consecutive pages, as far
+ *  as the page manager hands out consecutive pages. The chunks have no
+ *  logical row ids. The blob itself is a record, the descriptor, which is marked as
+ *  a blob in its translation (see {@link LogicalRowIdManager#BLOB}) and
+ *  holds the length of the blob, the chunk size and the physical row id of
+ *  each chunk:
+ *  <pre>
+ *  int magic, long length, int chunkSize, int nchunks, long[nchunks] chunks
+ *  </pre>
+ *  The descriptor and the chunks are neither serialized nor compressed.
+ *  <p>
+ *  Until its stream is closed, a blob has no descriptor and its chunks are
+ *  referenced only by the stream. The chunks are freed when the stream is
+ *  aborted, when the transaction is rolled back and when the record
+ *  manager is closed, so that they are never left behind without a blob.
+ *  <p>
+ *  All access to the record manager is synchronized on the record manager.
+ */
+final class BlobStore
+{
+
+    /**
+     * Magic at the start of a blob descriptor.
+     */
+    static final int MAGIC = 0x424c4f42; // "BLOB"
+
+    /**
+     * The record manager.
+     */
+    private final BaseRecordManager _recman;
+
+    /**
+     * The #of bytes in a chunk, which with its record header fills the data
+     * area of a page.
+     */
+    private final int _chunkSize;
+
+    /**
+     * The streams writing blobs which are neither closed nor aborted.
+     */
+    private final List _open = new ArrayList();
+
+    BlobStore( BaseRecordManager recman )
+    {
+        _recman = recman;
+        _chunkSize = DataPage.getDataPerPage( recman._file.getBlockSize() )
+            - RecordHeader.SIZE;
+    }
+
+    /**
+     * Opens a stream writing a new blob.
+     */
+    BlobOutputStream openOutput()
+    {
+        Output out = new Output();
+        _open.add( out );
+        return out;
+    }
+
+    /**
+     * Opens a stream reading a blob.
+     */
+    BlobInputStream openInput( long recid )
+        throws IOException
+    {
+        return new Input( recid );
+    }
+
+    /**
+     * Deletes a blob: its chunks and then the descriptor.
+     */
+    void delete( long recid )
+        throws IOException
+    {
+        synchronized ( _recman ) {
+            long[] chunks = readDescriptor( recid ).chunks;
+            for ( int i = 0; i < chunks.length; i++ ) {
+                _recman._physMgr.delete( new Location( chunks[ i ] ) );
+            }
+            _recman.delete( recid, true );
+        }
+    }
+
+    /**
+     * Notes that the transaction has been committed: the chunks written so
+     * far by the open streams are now part of the store.
+     */
+    void commit()
+    {
+        for ( int i = 0; i < _open.size(); i++ ) {
+            Output out = (Output) _open.get( i );
+            out._committed = out._nchunks;
+        }
+    }
+
+    /**
+     * Notes that the transaction has been rolled back. The chunks the open
+     * streams wrote in the transaction are gone with it, and the ones they
+     * wrote in earlier transactions are freed. The streams are aborted.
+     */
+    void rollback()
+        throws IOException
+    {
+        for ( int i = 0; i < _open.size(); i++ ) {
+            Output out = (Output) _open.get( i );
+            out._nchunks = out._committed;
+            out.discard();
+        }
+        _open.clear();
+    }
+
+    /**
+     * Aborts the open streams before the record manager is closed, which
+     * commits the chunks they wrote.
+     */
+    void close()
+        throws IOException
+    {
+        for ( int i = 0; i < _open.size(); i++ ) {
+            ( (Output) _open.get( i ) ).discard();
+        }
+        _open.clear();
+    }
+
+    /**
+     * A decoded blob descriptor.
+     */
+    private static class Descriptor
+    {
+        long length;
+        int chunkSize;
+        long[] chunks;
+    }
+
+    /**
+     * Reads and decodes the descriptor of a blob.
+     *
+     * @throws IOException if the record is not a blob.
+     */
+    private Descriptor readDescriptor( long recid )
+        throws IOException
+    {
+        byte[] data;
+        synchronized ( _recman ) {
+            _recman.checkIfClosed();
+            if ( recid <= 0 ) {
+                throw new IllegalArgumentException( "Argument 'recid' is invalid: "
+                                                    + recid );
+            }
+            Location physRowId = _recman._logMgr.fetch( new Location( recid ), true );
+            data = physRowId == null || physRowId.getBlock() == 0L
+                ? null : _recman._physMgr.fetch( physRowId );
+        }
+        if ( data == null || data.length < 20 ) {
+            throw new IOException( "Not a blob: recid=" + recid );
+        }
+        DataInputStream is = new DataInputStream( new ByteArrayInputStream( data ) );
+        if ( is.readInt() != MAGIC ) {
+            throw new IOException( "Not a blob: recid=" + recid );
+        }
+        Descriptor d = new Descriptor();
+        d.length = is.readLong();
+        d.chunkSize = is.readInt();
+        d.chunks = new long[ is.readInt() ];
+        for ( int i = 0; i < d.chunks.length; i++ ) {
+            d.chunks[ i ] = is.readLong();
+        }
+        return d;
+    }
+
+    /**
+     * Writes a blob chunk by chunk.
+     */
+    private class Output
+        extends BlobOutputStream
+    {
+        private byte[] _buf = new byte[ _chunkSize ];
+        private int _count;
+        private long _length;
+        private long[] _chunks = new long[ 16 ];
+        private int _nchunks;
+        private int _committed;
+        private boolean _closed;
+        private boolean _aborted;
+        private long _recid;
+
+        public void write( int b )
+            throws IOException
+        {
+            ensureOpen();
+            if ( _count == _buf.length ) {
+                flushChunk();
+            }
+            _buf[ _count++ ] = (byte) b;
+            _length++;
+        }
+
+        public void write( byte[] b, int off, int len )
+            throws IOException
+        {
+            ensureOpen();
+            if ( off < 0 || len < 0 || off + len > b.length ) {
+                throw new IndexOutOfBoundsException();
+            }
+            while ( len > 0 ) {
+                if ( _count == _buf.length ) {
+                    flushChunk();
+                }
+                int n = Math.min( len, _buf.length - _count );
+                System.arraycopy( b, off, _buf, _count, n );
+                _count += n;
+                _length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * Writes the buffered data as the next chunk.
+         */
+        private void flushChunk()
+            throws IOException
+        {
+            Location loc;
+            synchronized ( _recman ) {
+                _recman.checkIfClosed();
+                loc = _recman._physMgr.appendPage( _buf, 0, _count );
+            }
+            if ( _nchunks == _chunks.length ) {
+                long[] tmp = new long[ _chunks.length * 2 ];
+                System.arraycopy( _chunks, 0, tmp, 0, _nchunks );
+                _chunks = tmp;
+            }
+            _chunks[ _nchunks++ ] = loc.toLong();
+            _count = 0;
+        }
+
+        /**
+         * Writes the last chunk and the descriptor, creating the blob.
+         */
+        public void close()
+            throws IOException
+        {
+            if ( _closed ) {
+                return;
+            }
+            ensureOpen();
+            if ( _count > 0 ) {
+                flushChunk();
+            }
+            _buf = null;
+            ByteArrayOutputStream baos =
+                new ByteArrayOutputStream( 20 + 8 * _nchunks );
+            DataOutputStream os = new DataOutputStream( baos );
+            os.writeInt( MAGIC );
+            os.writeLong( _length );
+            os.writeInt( _chunkSize );
+            os.writeInt( _nchunks );
+            for ( int i = 0; i < _nchunks; i++ ) {
+                os.writeLong( _chunks[ i ] );
+            }
+            os.flush();
+            byte[] data = baos.toByteArray();
+            synchronized ( _recman ) {
+                _recman.checkIfClosed();
+                Location physRowId = _recman._physMgr.insert( data, 0, data.length );
+                _recid = _recman._logMgr.insert( physRowId, true ).toLong();
+                _open.remove( this );
+            }
+            _closed = true;
+        }
+
+        public void abort()
+            throws IOException
+        {
+            if ( _closed || _aborted ) {
+                return;
+            }
+            synchronized ( _recman ) {
+                _recman.checkIfClosed();
+                discard();
+                _open.remove( this );
+            }
+        }
+
+        /**
+         * Frees the chunks written so far and aborts the stream.
+         */
+        void discard()
+            throws IOException
+        {
+            _aborted = true;
+            _buf = null;
+            for ( int i = 0; i < _nchunks; i++ ) {
+                _recman._physMgr.delete( new Location( _chunks[ i ] ) );
+            }
+            _nchunks = 0;
+        }
+
+        public long getRecid()
+        {
+            if ( ! _closed ) {
+                throw new IllegalStateException( "Stream is not closed" );
+            }
+            return _recid;
+        }
+
+        private void ensureOpen()
+            throws IOException
+        {
+            if ( _closed ) {
+                throw new IOException( "Stream closed" );
+            }
+            if ( _aborted ) {
+                throw new IOException( "Stream aborted" );
+            }
+        }
+    }
+
+    /**
+     * Reads a blob chunk by chunk.
+     */
+    private class Input
+        extends BlobInputStream
+    {
+        private final Descriptor _desc;
+        private long _pos;
+        private byte[] _chunk;
+        private int _chunkIndex = -1;
+        private boolean _closed;
+
+        Input( long recid )
+            throws IOException
+        {
+            _desc = readDescriptor( recid );
+        }
+
+        public long length()
+        {
+            return _desc.length;
+        }
+
+        public long position()
+        {
+            return _pos;
+        }
+
+        public void seek( long pos )
+            throws IOException
+        {
+            ensureOpen();
+            if ( pos < 0 || pos > _desc.length ) {
+                throw new IllegalArgumentException( "pos=" + pos + ", length="
+                                                    + _desc.length );
+            }
+            _pos = pos;
+        }
+
+        /**
+         * Makes the chunk holding the current position the current chunk
+         * and returns the offset of the current position in that chunk.
+         */
+        private int loadChunk()
+            throws IOException
+        {
+            int index = (int) ( _pos / _desc.chunkSize );
+            if ( index != _chunkIndex ) {
+                Location loc = new Location( _desc.chunks[ index ] );
+                synchronized ( _recman ) {
+                    _recman.checkIfClosed();
+                    _chunk = _recman._physMgr.fetch( loc );
+                }
+                if ( _chunk == null ) {
+                    throw new IOException( "Blob chunk missing: " + loc );
+                }
+                _chunkIndex = index;
+            }
+            return (int) ( _pos % _desc.chunkSize );
+        }
+
+        public int read()
+            throws IOException
+        {
+            ensureOpen();
+            if ( _pos >= _desc.length ) {
+                return -1;
+            }
+            int off = loadChunk();
+            _pos++;
+            return _chunk[ off ] & 0xff;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            ensureOpen();
+            if ( off < 0 || len < 0 || off + len > b.length ) {
+                throw new IndexOutOfBoundsException();
+            }
+            if ( len == 0 ) {
+                return 0;
+            }
+            if ( _pos >= _desc.length ) {
+                return -1;
+            }
+            int total = 0;
+            while ( len > 0 && _pos < _desc.length ) {
+                int chunkOff = loadChunk();
+                int n = (int) Math.min( Math.min( len, _chunk.length - chunkOff ),
+                                        _desc.length - _pos );
+                System.arraycopy( _chunk, chunkOff, b, off, n );
+                _pos += n;
+                off += n;
+                len -= n;
+                total += n;
+            }
+            return total;
+        }
+
+        public long skip( long n )
+            throws IOException
+        {
+            ensureOpen();
+            if ( n <= 0 ) {
+                return 0;
+            }
+            long skipped = Math.min( n, _desc.length - _pos );
+            _pos += skipped;
+            return skipped;
+        }
+
+        public int available()
+            throws IOException
+        {
+            ensureOpen();
+            return (int) Math.min( _desc.chunkSize - _pos % _desc.chunkSize,
+                                   _desc.length - _pos );
+        }
+
+        public void close()
+        {
+            _closed = true;
+            _chunk = null;
+        }
+
+        private void ensureOpen()
+            throws IOException
+        {
+            if ( _closed ) {
+                throw new IOException( "Stream closed" );
+            }
+        }
+    }
+
+}
@@ -69,6 +69,12 @@ public final class BlockIo implements java.io.Externalizable {
     private transient boolean dirty = false;
     private transient int transactionCount = 0;
 
+    // the state of the block in the BlockTable of its RecordFile and the
+    // links of the list of the blocks in that state.
+    transient byte state;
+    transient BlockIo prevInState;
+    transient BlockIo nextInState;
+
     /**
      * Default constructor for serialization
      */
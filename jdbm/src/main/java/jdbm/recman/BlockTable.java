@@ -0,0 +1,274 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.recman;
+
+/**
+ *  The blocks held in memory by a {@link RecordFile}, keyed by block id.
+ *  Each block is in exactly one state: in use, dirty, in a transaction
+ *  written on the log or clean. The table replaces one map per state, so
+ *  that finding a block and changing its state is a single probe.
+ *  <p>
+ *  The table uses open addressing with linear probing on arrays of
+ *  primitive keys and of blocks. The blocks of each state are kept on a
+ *  doubly linked list threaded through the blocks themselves, in the
+ *  order in which they entered the state, so that the clean blocks are
+ *  in least recently used order and the dirty blocks can be visited
+ *  without scanning the table. Nothing is allocated except when the
+ *  table grows.
+ *  <p>
+ *  Methods are *not* synchronized, so no concurrent access is allowed.
+ */
+final class BlockTable {
+
+    static final byte IN_USE = 0;
+    static final byte DIRTY = 1;
+    static final byte IN_TXN = 2;
+    static final byte CLEAN = 3;
+
+    private static final int NSTATES = 4;
+
+    private static final String[] STATE_NAMES =
+        { "inUse", "dirty", "inTxn", "clean" };
+
+    // keys[i] is only meaningful when blocks[i] != null.
+    private long[] keys;
+    private BlockIo[] blocks;
+    private int mask;
+    private int size;
+
+    private final BlockIo[] heads = new BlockIo[NSTATES];
+    private final BlockIo[] tails = new BlockIo[NSTATES];
+    private final int[] counts = new int[NSTATES];
+
+    /**
+     *  Creates a table sized for the given number of blocks.
+     */
+    BlockTable(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        blocks = new BlockIo[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slotOf(long key) {
+        // Fibonacci hashing spreads the mostly sequential block ids.
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     *  Returns the block with the given id or null if it is not in the
+     *  table.
+     */
+    BlockIo get(long key) {
+        int i = slotOf(key);
+        BlockIo block;
+        while ((block = blocks[i]) != null) {
+            if (keys[i] == key) {
+                return block;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     *  Adds a block which is not in the table.
+     */
+    void put(long key, BlockIo block, byte state) {
+        if (size * 2 >= blocks.length) {
+            grow();
+        }
+        int i = slotOf(key);
+        while (blocks[i] != null) {
+            if (keys[i] == key) {
+                throw new Error("block " + key + " already in the table");
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        blocks[i] = block;
+        size++;
+        link(block, state);
+    }
+
+    /**
+     *  Moves a block of the table to another state. The block goes to the
+     *  end of the list of that state, even if it is already in it.
+     */
+    void setState(BlockIo block, byte state) {
+        unlink(block);
+        link(block, state);
+    }
+
+    /**
+     *  Removes the block with the given id.
+     *
+     *  @return the removed block or null if it was not in the table.
+     */
+    BlockIo remove(long key) {
+        int i = slotOf(key);
+        BlockIo block;
+        while ((block = blocks[i]) != null) {
+            if (keys[i] == key) {
+                deleteSlot(i);
+                unlink(block);
+                return block;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     *  Removes all the blocks in a state.
+     */
+    void removeAll(byte state) {
+        while (heads[state] != null) {
+            remove(heads[state].getBlockId());
+        }
+    }
+
+    /**
+     *  Returns the number of blocks in a state.
+     */
+    int size(byte state) {
+        return counts[state];
+    }
+
+    /**
+     *  Returns the block which has been in a state the longest or null
+     *  if there is no block in that state. The next one is
+     *  {@link BlockIo#nextInState}.
+     */
+    BlockIo first(byte state) {
+        return heads[state];
+    }
+
+    /**
+     *  Returns the name of a state.
+     */
+    static String nameOf(byte state) {
+        return STATE_NAMES[state];
+    }
+
+    private void link(BlockIo block, byte state) {
+        block.state = state;
+        block.nextInState = null;
+        block.prevInState = tails[state];
+        if (tails[state] == null) {
+            heads[state] = block;
+        } else {
+            tails[state].nextInState = block;
+        }
+        tails[state] = block;
+        counts[state]++;
+    }
+
+    private void unlink(BlockIo block) {
+        byte state = block.state;
+        if (block.prevInState == null) {
+            heads[state] = block.nextInState;
+        } else {
+            block.prevInState.nextInState = block.nextInState;
+        }
+        if (block.nextInState == null) {
+            tails[state] = block.prevInState;
+        } else {
+            block.nextInState.prevInState = block.prevInState;
+        }
+        block.prevInState = null;
+        block.nextInState = null;
+        counts[state]--;
+    }
+
+    /**
+     *  Empties a slot, shifting back the entries of the probe sequence
+     *  which follows it so that no tombstone is needed.
+     */
+    private void deleteSlot(int i) {
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (blocks[j] == null) {
+                break;
+            }
+            int k = slotOf(keys[j]);
+            // move the entry at j to i unless its home slot k lies
+            // cyclically in (i, j].
+            if ((i <= j) ? (i < k && k <= j) : (i < k || k <= j)) {
+                continue;
+            }
+            keys[i] = keys[j];
+            blocks[i] = blocks[j];
+            i = j;
+        }
+        blocks[i] = null;
+        size--;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        BlockIo[] oldBlocks = blocks;
+        keys = new long[oldKeys.length * 2];
+        blocks = new BlockIo[oldBlocks.length * 2];
+        mask = blocks.length - 1;
+        for (int j = 0; j < oldBlocks.length; j++) {
+            if (oldBlocks[j] != null) {
+                int i = slotOf(oldKeys[j]);
+                while (blocks[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                blocks[i] = oldBlocks[j];
+            }
+        }
+    }
+}
@@ -55,6 +55,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 
 import jdbm.RecordManagerOptions;
+import jdbm.RecordManagerStatistics;
 
 /**
  * <p>
@@ -166,6 +167,15 @@ public class BufferedRecordInstallManager {
     	return _counters;
     }
 
+    /**
+     * Adds the install statistics.
+     */
+    void addStatistics( RecordManagerStatistics stats ) {
+    	stats.set( RecordManagerStatistics.BUFFERED_RECORDS_INSTALLED, _counters.recordsInstalled );
+    	stats.set( RecordManagerStatistics.BUFFERED_BYTES_WRITTEN, _counters.bytesWritten );
+    	stats.set( RecordManagerStatistics.BUFFERED_BYTES_WASTED, _counters.bytesWasted );
+    }
+
     /**
 	 * Counters. Counters must be explicitly reset using resetCounters().
 	 * 
@@ -327,17 +337,18 @@ public class BufferedRecordInstallManager {
 		if( file == null || logMgr == null || physMgr == null /*|| nbuckets<0*/ || pageman == null ) {
 			throw new IllegalArgumentException();
 		}
-		if( wasteMargin < 0 || wasteMargin > DataPage.DATA_PER_PAGE ) {
+		final int dataPerPage = DataPage.getDataPerPage(file.getBlockSize());
+		if( wasteMargin < 0 || wasteMargin > dataPerPage ) {
 			throw new IllegalArgumentException("wasteMargin");
 		}
-		if( wasteMargin2 < 0 || wasteMargin2 > DataPage.DATA_PER_PAGE ) {
+		if( wasteMargin2 < 0 || wasteMargin2 > dataPerPage ) {
 			throw new IllegalArgumentException("wasteMargin2");
 		}
 		_file = file;
 		_logMgr = logMgr;
 		_physMgr = physMgr;
 		_pageman = pageman;
-		_bucket = new Bucket();
+		_bucket = new Bucket(dataPerPage);
 		_wasteMargin = wasteMargin;
 		_wasteMargin2 = wasteMargin2;
 //		_nbuckets = nbuckets;
@@ -442,7 +453,7 @@ public class BufferedRecordInstallManager {
 		 */
         Location physRowId = _logMgr.fetch( logRowId );
 
-        if( data.length > DataPage.DATA_PER_PAGE ) {
+        if( data.length > _bucket._capacity ) {
 			/*
 			 * If the record is too large for a page then install it
 			 * immediately.
@@ -622,7 +633,7 @@ public class BufferedRecordInstallManager {
 			/*
 			 * Install records onto that page.
 			 */
-			int avail = DataPage.DATA_PER_PAGE;
+			int avail = bucket._capacity;
 			short offset = DataPage.O_DATA;
 			int nrecs = 0;
 			Iterator itr = bucket.iterator();
@@ -671,7 +682,7 @@ public class BufferedRecordInstallManager {
 				if( avail < 0 ) {
 					throw new AssertionError();
 				}
-				if( offset > RecordFile.BLOCK_SIZE ) {
+				if( offset > _file.getBlockSize() ) {
 					throw new AssertionError();
 				}
 			}
@@ -829,11 +840,11 @@ public class BufferedRecordInstallManager {
 		/**
 		 * The capacity of the page that will be filled by the bucket.
 		 */            
-		final static int _capacity = DataPage.DATA_PER_PAGE;
+		final int _capacity;
 		/**
 		 * Space available in the bucket.
 		 */
-		int _avail = _capacity;
+		int _avail;
 		/**
 		 * Current size of the bucket (sum of the length of the buffered records
 		 * assigned to the bucket plus the size of their record headers).
@@ -842,8 +853,14 @@ public class BufferedRecordInstallManager {
 		
 		/**
 		 * Create a new, empty bucket.
+		 * 
+		 * @param capacity
+		 *            The capacity of the page that will be filled by the
+		 *            bucket.
 		 */
-		Bucket() {
+		Bucket(int capacity) {
+			_capacity = capacity;
+			_avail = capacity;
 		}
 
 		/**
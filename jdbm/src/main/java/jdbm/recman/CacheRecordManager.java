@@ -51,12 +51,17 @@ package jdbm.recman;
 import java.io.IOException;
 import java.util.Enumeration;
 
+import jdbm.BlobInputStream;
+import jdbm.BlobOutputStream;
 import jdbm.RecordManager;
+import jdbm.RecordManagerStatistics;
 import jdbm.helper.CacheEvictionException;
 import jdbm.helper.CachePolicy;
 import jdbm.helper.CachePolicyListener;
 import jdbm.helper.ICacheEntry;
 import jdbm.helper.ISerializationHandler;
+import jdbm.helper.LatencyHistograms;
+import jdbm.helper.SerializationProfiler;
 import jdbm.helper.Serializer;
 import jdbm.helper.WrappedRuntimeException;
 
@@ -91,6 +96,11 @@ public class CacheRecordManager
      */
     protected boolean _lazyInsert = false;
 
+    // counters.
+    private long _hitCount;
+    private long _missCount;
+    private long _writeBackCount;
+
     /**
      * Construct a CacheRecordManager wrapping another RecordManager and
      * using a given cache policy.
@@ -153,6 +163,49 @@ public class CacheRecordManager
         
     }
 
+    public SerializationProfiler getSerializationProfiler()
+    {
+        
+        checkIfClosed();
+        
+        return _recman.getSerializationProfiler();
+        
+    }
+
+    public LatencyHistograms getLatencyHistograms()
+    {
+        
+        checkIfClosed();
+        
+        return _recman.getLatencyHistograms();
+        
+    }
+
+    public void backup( String name, boolean incremental )
+        throws IOException
+    {
+        
+        checkIfClosed();
+        
+        // the cached objects which are dirty are not committed yet.
+        _recman.backup( name, incremental );
+        
+    }
+
+    public synchronized RecordManagerStatistics getStatistics()
+        throws IOException
+    {
+        
+        checkIfClosed();
+        
+        RecordManagerStatistics stats = _recman.getStatistics();
+        stats.set( RecordManagerStatistics.OBJECT_CACHE_HITS, _hitCount );
+        stats.set( RecordManagerStatistics.OBJECT_CACHE_MISSES, _missCount );
+        stats.set( RecordManagerStatistics.OBJECT_CACHE_WRITE_BACKS, _writeBackCount );
+        return stats;
+        
+    }
+
 //    public void setDefaultSerializer( Serializer ser )
 //    {
 //        
@@ -239,6 +292,41 @@ public class CacheRecordManager
     }
 
 
+    /**
+     *  Inserts a set of new records using a custom serializer. The records
+     *  are inserted into the wrapped record manager as one batch and then
+     *  cached. When insert operations are lazy, each record is inserted as
+     *  by {@link #insert( Object, Serializer )}.
+     *
+     *  @param objs the objects for the new records.
+     *  @param serializer a custom serializer
+     *  @return the rowids for the new records.
+     *  @throws IOException when one of the underlying I/O operations fails.
+     */
+    public synchronized long[] insertAll( Object[] objs, Serializer serializer )
+        throws IOException
+    {
+        checkIfClosed();
+
+        if( _lazyInsert ) {
+            long[] recids = new long[ objs.length ];
+            for ( int i = 0; i < objs.length; i++ ) {
+                recids[ i ] = insert( objs[ i ], serializer );
+            }
+            return recids;
+        }
+        long[] recids = _recman.insertAll( objs, serializer );
+        try {
+            for ( int i = 0; i < objs.length; i++ ) {
+                _cache.put( new Long( recids[ i ] ), objs[ i ], false, serializer );
+            }
+        } catch ( CacheEvictionException except ) {
+            throw new WrappedRuntimeException( except );
+        }
+        return recids;
+    }
+
+
     /**
      *  Deletes a record.
      *
@@ -330,9 +418,12 @@ public class CacheRecordManager
     {
         checkIfClosed();
 
+        LatencyHistograms latencies = _recman.getLatencyHistograms();
+        long beginNanos = latencies != null ? System.nanoTime() : 0L;
         Long id = new Long( recid );
         Object obj = _cache.get( id );
         if ( obj == null ) {
+            _missCount++;
             obj = _recman.fetch( recid, serializer );
             if( obj != null ) {
                 try {
@@ -341,11 +432,127 @@ public class CacheRecordManager
                     throw new WrappedRuntimeException( except );
                 }
             }
+            if( latencies != null ) {
+                latencies.record( LatencyHistograms.FETCH_CACHE_MISS,
+                                  System.nanoTime() - beginNanos );
+            }
+        } else {
+            _hitCount++;
+            if( latencies != null ) {
+                latencies.record( LatencyHistograms.FETCH_CACHE_HIT,
+                                  System.nanoTime() - beginNanos );
+            }
         }
         return obj;
     }
 
 
+    /**
+     *  Fetches a set of records using the default serialization handler.
+     *
+     *  @param recids the recids of the records that must be fetched.
+     *  @return the objects contained in the records, in request order.
+     *  @throws IOException when one of the underlying I/O operations fails.
+     */
+    public Object[] fetchAll( long[] recids )
+        throws IOException
+    {
+        return fetchAll( recids, null );
+    }
+
+
+    /**
+     *  Fetches a set of records using a custom serializer. Records found
+     *  in the cache are returned from the cache and the others are fetched
+     *  from the wrapped record manager in a single batch and then cached.
+     *
+     *  @param recids the recids of the records that must be fetched.
+     *  @param serializer a custom serializer
+     *  @return the objects contained in the records, in request order.
+     *  @throws IOException when one of the underlying I/O operations fails.
+     */
+    public synchronized Object[] fetchAll( long[] recids, Serializer serializer )
+        throws IOException
+    {
+        checkIfClosed();
+
+        Object[] objs = new Object[ recids.length ];
+        int[] missing = new int[ recids.length ];
+        int nmissing = 0;
+        for ( int i = 0; i < recids.length; i++ ) {
+            objs[ i ] = _cache.get( new Long( recids[ i ] ) );
+            if ( objs[ i ] == null ) {
+                missing[ nmissing++ ] = i;
+            }
+        }
+        _hitCount += recids.length - nmissing;
+        _missCount += nmissing;
+        if ( nmissing == 0 ) {
+            return objs;
+        }
+        long[] fetch = new long[ nmissing ];
+        for ( int i = 0; i < nmissing; i++ ) {
+            fetch[ i ] = recids[ missing[ i ] ];
+        }
+        Object[] fetched = _recman.fetchAll( fetch, serializer );
+        for ( int i = 0; i < nmissing; i++ ) {
+            Long id = new Long( fetch[ i ] );
+            Object obj = _cache.get( id );
+            if ( obj == null ) {
+                // not a recid repeated in the request.
+                obj = fetched[ i ];
+                if( obj != null ) {
+                    try {
+                        _cache.put( id, obj, false, serializer );
+                    } catch ( CacheEvictionException except ) {
+                        throw new WrappedRuntimeException( except );
+                    }
+                }
+            }
+            objs[ missing[ i ] ] = obj;
+        }
+        return objs;
+    }
+
+
+    /**
+     *  Opens a stream which writes a new large object (blob). Blobs are
+     *  not cached.
+     */
+    public synchronized BlobOutputStream openBlobOutput()
+        throws IOException
+    {
+        checkIfClosed();
+
+        return _recman.openBlobOutput();
+    }
+
+
+    /**
+     *  Opens a stream which reads a large object (blob).
+     */
+    public synchronized BlobInputStream openBlobInput( long recid )
+        throws IOException
+    {
+        checkIfClosed();
+
+        return _recman.openBlobInput( recid );
+    }
+
+
+    /**
+     *  Deletes a large object (blob).
+     */
+    public synchronized void deleteBlob( long recid )
+        throws IOException
+    {
+        checkIfClosed();
+
+        _cache.remove( new Long( recid ) );
+        _recman.deleteBlob( recid );
+    }
+
+
     /**
      *  Closes the record manager.
      *
@@ -523,6 +730,7 @@ public class CacheRecordManager
 //            CacheEntry entry = (CacheEntry) obj;
 //            if ( entry._isDirty ) {
             if( dirty ) {
+                _writeBackCount++;
                 try {
 //                    _recman.update( entry._recid, entry._obj, entry._serializer );
                     _recman.update( ((Long)key).longValue(), obj, ser );
@@ -54,7 +54,6 @@ final class DataPage extends PageHeader {
     // offsets
     private static final short O_FIRST = PageHeader.SIZE; // short firstrowid
     static final short O_DATA = (short)(O_FIRST + Magic.SZ_SHORT);
-    static final short DATA_PER_PAGE = (short)(RecordFile.BLOCK_SIZE - O_DATA);
 
     /**
      *  Constructs a data page view from the indicated block.
@@ -63,6 +62,14 @@ final class DataPage extends PageHeader {
   super(block);
     }
 
+    /**
+     *  Returns the number of data bytes held by a page of the indicated
+     *  size.
+     */
+    static int getDataPerPage(int blockSize) {
+  return blockSize - O_DATA;
+    }
+
     /**
      *  Factory method to create or return a data page for the
      *  indicated block.
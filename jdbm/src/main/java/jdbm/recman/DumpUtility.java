@@ -438,16 +438,12 @@ public class DumpUtility
 
         long npages = 0L;
         
-        // Setup a cursor over the free page list.
-        
-        PageCursor curs = new PageCursor
-            ( _pageman,
-              Magic.FREE_PAGE
-              );
-        
         final int pageLimit = getPageLimit();
         
-        while( curs.next() != 0 ) {
+        // Visit the pages marked free by the bitmap of free pages.
+        
+        for( long blockId = _pageman.getNextFree( 0L ); blockId != 0L;
+             blockId = _pageman.getNextFree( blockId ) ) {
 
             if( pageLimit != 0 && npages >= pageLimit ) {
                 
@@ -463,8 +459,6 @@ public class DumpUtility
 		
 	    }
 
-	    long blockId = curs.getCurrent();
-            
             //ps.print( "Scanning free page="+blockId );
             
             try {
@@ -483,13 +477,13 @@ public class DumpUtility
                 
                 // Release the page.
                 
-                _file.release( curs.getCurrent(), false );
+                _file.release( blockId, false );
                 
             }
             
         }
     
-        ps.println( "\nScanned "+npages+" page(s) on the free page list." );
+        ps.println( "\nScanned "+npages+" free page(s)." );
                 
     }
     
@@ -519,7 +513,7 @@ public class DumpUtility
         // #of pages on the free logical row id page list.
         long npages = 0L;
         
-        final int slotsPerPage = FreeLogicalRowIdPage.ELEMS_PER_PAGE;
+        final int slotsPerPage = FreeLogicalRowIdPage.getElemsPerPage( _file.getBlockSize() );
         
         ps.println( "#slots per page="+slotsPerPage );
 
@@ -628,7 +622,7 @@ public class DumpUtility
         // capacity.
         long freecapacitybin[] = new long[ getHistogramBins().length ];
 
-        final int slotsPerPage = FreePhysicalRowIdPage.ELEMS_PER_PAGE;
+        final int slotsPerPage = FreePhysicalRowIdPage.getElemsPerPage( _file.getBlockSize() );
         
         ps.println( "#slots per page="+slotsPerPage );
 
@@ -822,7 +816,7 @@ public class DumpUtility
 		    ( transBlock
 		      );
 		
-		for( int i=0; i<TranslationPage.ELEMS_PER_PAGE; i++ ) {
+		for( int i=0; i<xlatPage.slots.length; i++ ) {
 		    
 		    // Compute the offset to the ith entry on this
 		    // translation page.  Normally the blockId for the
@@ -845,7 +839,15 @@ public class DumpUtility
 		    // if that logical record has never been allocated.
 		    // Either way, we skip these slots.
                 
-		    Location physid = new Location( xlatPage.get( offset ) );
+		    // Note: The mark of a blob descriptor is not part of the
+		    // block of its physical row.
+
+		    PhysicalRowId tmp = xlatPage.get( offset );
+
+		    Location physid = new Location
+		        ( tmp.getBlock() & ~LogicalRowIdManager.BLOB,
+		          tmp.getOffset()
+		          );
 		    
 		    if( physid.getBlock() == 0 ) {
 			
@@ -1802,7 +1804,7 @@ public class DumpUtility
                 
 		    offset += head.getAvailableSize() + RecordHeader.SIZE;
 		    
-		    if( offset >= ( RecordFile.BLOCK_SIZE - RecordHeader.SIZE ) ) {
+		    if( offset >= ( _file.getBlockSize() - RecordHeader.SIZE ) ) {
 			
 			// Fall off the end of this data page.
 			
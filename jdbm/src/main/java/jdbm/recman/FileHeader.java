@@ -50,21 +50,24 @@ package jdbm.recman;
 /**
  *  This class represents a file header. It is a 1:1 representation of
  *  the data that appears in block 0 of a file.
+ *  <p>
+ *  Files using the default page size ({@link RecordFile#BLOCK_SIZE}) start
+ *  with {@link Magic#FILE_HEADER}. Files created with another page size
+ *  start with {@link Magic#FILE_HEADER_PAGESIZE} followed by the page size,
+ *  which shifts the remainder of the header.
  */
 class FileHeader implements BlockView {
     // offsets
-    private static final short O_MAGIC = 0; // short magic
-    private static final short O_LISTS = Magic.SZ_SHORT; // long[2*NLISTS]
-    private static final int O_ROOTS = 
-        O_LISTS + (Magic.NLISTS * 2 * Magic.SZ_LONG);
+    static final short O_MAGIC = 0; // short magic
+    static final short O_PAGESIZE = Magic.SZ_SHORT; // int pagesize (optional)
+
+    // offsets of the lists and roots, which depend on the magic.
+    private final int listsOffset; // long[2*NLISTS]
+    private final int rootsOffset;
 
     // my block
     private BlockIo block;
 
-    /** The number of "root" rowids available in the file. */
-    static final int NROOTS = 
-        (RecordFile.BLOCK_SIZE - O_ROOTS) / Magic.SZ_LONG;
-
     /**
      *  Constructs a FileHeader object from a block.
      *
@@ -75,22 +78,82 @@ class FileHeader implements BlockView {
      */
     FileHeader(BlockIo block, boolean isNew) {
         this.block = block;
-        if (isNew)
-            block.writeShort(O_MAGIC, Magic.FILE_HEADER);
-        else if (!magicOk())
+        final int blockSize = block.getData().length;
+        if (isNew) {
+            if (blockSize == RecordFile.BLOCK_SIZE) {
+                block.writeShort(O_MAGIC, Magic.FILE_HEADER);
+            } else {
+                block.writeShort(O_MAGIC, Magic.FILE_HEADER_PAGESIZE);
+                block.writeInt(O_PAGESIZE, blockSize);
+            }
+        } else if (!magicOk())
             throw new Error("CRITICAL: file header magic not OK " 
                             + block.readShort(O_MAGIC));
+        if (block.readShort(O_MAGIC) == Magic.FILE_HEADER) {
+            listsOffset = Magic.SZ_SHORT;
+        } else {
+            if (block.readInt(O_PAGESIZE) != blockSize)
+                throw new Error("CRITICAL: file header page size "
+                                + block.readInt(O_PAGESIZE)
+                                + " does not match block size " + blockSize);
+            listsOffset = O_PAGESIZE + Magic.SZ_INT;
+        }
+        rootsOffset = listsOffset + (Magic.NLISTS * 2 * Magic.SZ_LONG);
     }
 
     /** Returns true if the magic corresponds with the fileHeader magic.  */
     private boolean magicOk() {
-        return block.readShort(O_MAGIC) == Magic.FILE_HEADER;
+        short magic = block.readShort(O_MAGIC);
+        return magic == Magic.FILE_HEADER
+            || magic == Magic.FILE_HEADER_PAGESIZE;
+    }
+
+    /**
+     *  Returns the page size recorded by the header of a file given the
+     *  leading bytes of that file, or {@link RecordFile#BLOCK_SIZE} if the
+     *  file uses the default page size.
+     *
+     *  @param magic The magic at the start of the file.
+     *  @param pageSize The int following the magic.
+     */
+    static int getPageSize(short magic, int pageSize) {
+        return magic == Magic.FILE_HEADER_PAGESIZE
+            ? pageSize : RecordFile.BLOCK_SIZE;
+    }
+
+    /** Returns the page size of the file. */
+    int getPageSize() {
+        return block.getData().length;
+    }
+
+    /**
+     *  Returns the number of "root" rowids available in the file. The
+     *  last slot of the header is not counted; it holds the
+     *  {@link #getBitmapRoot bitmap root}.
+     */
+    int getRootCount() {
+        return (block.getData().length - rootsOffset) / Magic.SZ_LONG - 1;
+    }
+
+    /**
+     *  Returns the first page of the bitmap of free pages, or zero if the
+     *  file has none.
+     */
+    long getBitmapRoot() {
+        return block.readLong(offsetOfRoot(getRootCount()));
+    }
+
+    /**
+     *  Sets the first page of the bitmap of free pages.
+     */
+    void setBitmapRoot(long recid) {
+        block.writeLong(offsetOfRoot(getRootCount()), recid);
     }
 
 
     /** Returns the offset of the "first" block of the indicated list */
     private short offsetOfFirst(int list) {
-        return (short) (O_LISTS + (2 * Magic.SZ_LONG * list));
+        return (short) (listsOffset + (2 * Magic.SZ_LONG * list));
     }
 
     /** Returns the offset of the "last" block of the indicated list */
@@ -100,7 +163,7 @@ class FileHeader implements BlockView {
 
     /** Returns the offset of the indicated root */
     private short offsetOfRoot(int root) {
-        return (short) (O_ROOTS + (root * Magic.SZ_LONG));
+        return (short) (rootsOffset + (root * Magic.SZ_LONG));
     }
 
     /**
@@ -138,7 +201,7 @@ class FileHeader implements BlockView {
      *  block header is wasted anyway, it's more useful to store it where
      *  it belongs.
      *
-     *  @see #NROOTS
+     *  @see #getRootCount
      */
     long getRoot(int root) {
         return block.readLong(offsetOfRoot(root));
@@ -148,7 +211,7 @@ class FileHeader implements BlockView {
      *  Sets the indicated root rowid.
      *
      *  @see #getRoot
-     *  @see #NROOTS
+     *  @see #getRootCount
      */
     void setRoot(int root, long rowid) {
         block.writeLong(offsetOfRoot(root), rowid);
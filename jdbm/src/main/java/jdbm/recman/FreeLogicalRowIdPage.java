@@ -57,20 +57,30 @@ final class FreeLogicalRowIdPage extends PageHeader {
     // offsets
     private static final short O_COUNT = PageHeader.SIZE; // short count
     static final short O_FREE = (short)(O_COUNT + Magic.SZ_SHORT);
-    static final short ELEMS_PER_PAGE = (short)
-        ((RecordFile.BLOCK_SIZE - O_FREE) / PhysicalRowId.SIZE);
+
+    // #of slots on this page.
+    final short elemsPerPage;
 
     private int previousFoundFree = 0; // keeps track of the most recent found free slot so we can locate it again quickly 
     private int previousFoundAllocated = 0; // keeps track of the most recent found allocated slot so we can locate it again quickly
     
     // slots we returned.
-    final PhysicalRowId[] slots = new PhysicalRowId[ELEMS_PER_PAGE];
+    final PhysicalRowId[] slots;
 
     /**
      *  Constructs a data page view from the indicated block.
      */
     FreeLogicalRowIdPage(BlockIo block) {
         super(block);
+        elemsPerPage = getElemsPerPage(block.getData().length);
+        slots = new PhysicalRowId[elemsPerPage];
+    }
+
+    /**
+     *  Returns the number of slots on a page of the indicated size.
+     */
+    static short getElemsPerPage(int blockSize) {
+        return (short) ((blockSize - O_FREE) / PhysicalRowId.SIZE);
     }
 
     /**
@@ -146,7 +156,7 @@ final class FreeLogicalRowIdPage extends PageHeader {
      *  Returns first free slot, -1 if no slots are available
      */
     int getFirstFree() {
-        for (; previousFoundFree < ELEMS_PER_PAGE; previousFoundFree++) {
+        for (; previousFoundFree < elemsPerPage; previousFoundFree++) {
             if (isFree(previousFoundFree))
                 return previousFoundFree;
         }
@@ -157,7 +167,7 @@ final class FreeLogicalRowIdPage extends PageHeader {
      *  Returns first allocated slot, -1 if no slots are available.
      */
     int getFirstAllocated() {
-        for (; previousFoundAllocated < ELEMS_PER_PAGE; previousFoundAllocated++) {
+        for (; previousFoundAllocated < elemsPerPage; previousFoundAllocated++) {
             if (isAllocated(previousFoundAllocated))
                 return previousFoundAllocated;
         }
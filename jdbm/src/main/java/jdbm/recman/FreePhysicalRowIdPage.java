@@ -54,8 +54,9 @@ final class FreePhysicalRowIdPage extends PageHeader {
     // offsets
     private static final short O_COUNT = PageHeader.SIZE; // short count
     static final short O_FREE = O_COUNT + Magic.SZ_SHORT;
-    static final short ELEMS_PER_PAGE = 
-  (RecordFile.BLOCK_SIZE - O_FREE) / FreePhysicalRowId.SIZE;
+
+    // #of slots on this page.
+    final short elemsPerPage;
     
     /**
 	 * Used to place a limit on the wasted capacity resulting in a modified
@@ -77,13 +78,22 @@ final class FreePhysicalRowIdPage extends PageHeader {
     static public final transient int wasteMargin2 = PageHeader.SIZE/4;
 
     // slots we returned.
-    FreePhysicalRowId[] slots = new FreePhysicalRowId[ELEMS_PER_PAGE];
+    FreePhysicalRowId[] slots;
 
     /**
      *  Constructs a data page view from the indicated block.
      */
     FreePhysicalRowIdPage(BlockIo block) {
   super(block);
+  elemsPerPage = getElemsPerPage(block.getData().length);
+  slots = new FreePhysicalRowId[elemsPerPage];
+    }
+
+    /**
+     *  Returns the number of slots on a page of the indicated size.
+     */
+    static short getElemsPerPage(int blockSize) {
+  return (short) ((blockSize - O_FREE) / FreePhysicalRowId.SIZE);
     }
 
     /**
@@ -149,7 +159,7 @@ final class FreePhysicalRowIdPage extends PageHeader {
      *  Returns first free slot, -1 if no slots are available
      */
     int getFirstFree() {
-  for (int i = 0; i < ELEMS_PER_PAGE; i++) {
+  for (int i = 0; i < elemsPerPage; i++) {
       if (isFree(i))
     return i;
   }
@@ -174,7 +184,7 @@ final class FreePhysicalRowIdPage extends PageHeader {
     	/*
     	 * Scan each slot in the page.
     	 */
-        for (int i = 0; i < ELEMS_PER_PAGE; i++) {
+        for (int i = 0; i < elemsPerPage; i++) {
             /*
              * When large allocations are used, the space wasted by the first
              * fit policy can become very large (25% of the store). The first
@@ -48,10 +48,24 @@
 package jdbm.recman;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  *  This class manages free physical rowid pages and provides methods
  *  to free and allocate physical rowids on a high level.
+ *  <p>
+ *  The free physical rowids are stored on a linked list of pages. To avoid
+ *  scanning that list on each allocation and free, an in-memory index of
+ *  the list is kept. The index maps the size of each free physical row to
+ *  the slots which hold free rows of that size, and tracks the pages on the
+ *  list which have empty slots. The index is built by a single scan of the
+ *  list the first time it is needed, and is discarded on rollback since it
+ *  then no longer matches the list.
  */
 final class FreePhysicalRowIdPageManager
 {
@@ -61,6 +75,26 @@ final class FreePhysicalRowIdPageManager
     // our page manager
     protected PageManager _pageman;
 
+    /**
+     * Map from the size of a free physical row (Integer) to the set of
+     * slots (LinkedHashSet) holding free rows of that size. Each slot is a
+     * Long encoding the page and slot number, see
+     * {@link #encode(long, int)}. This is <code>null</code> until the index
+     * is built.
+     */
+    private SortedMap _bySize;
+
+    /**
+     * Map from the location of each free physical row to its slot.
+     */
+    private Map _byLocation;
+
+    /**
+     * The pages on the free physical rowid list which have at least one
+     * empty slot (Long).
+     */
+    private LinkedHashSet _pagesWithFreeSlots;
+
     /**
      *  Creates a new instance using the indicated record file and
      *  page manager.
@@ -73,48 +107,157 @@ final class FreePhysicalRowIdPageManager
     }
 
 
+    /**
+     * Encodes a page and a slot on that page as a Long.
+     */
+    private static Long encode( long page, int slot )
+    {
+        return new Long( ( page << 16 ) | slot );
+    }
+
+
+    /**
+     * Builds the index by scanning the free physical rowid list if it has
+     * not been built yet.
+     */
+    private void buildIndex()
+        throws IOException
+    {
+        if ( _bySize != null ) {
+            return;
+        }
+        SortedMap bySize = new TreeMap();
+        Map byLocation = new HashMap();
+        LinkedHashSet pagesWithFreeSlots = new LinkedHashSet();
+        PageCursor curs = new PageCursor( _pageman, Magic.FREEPHYSIDS_PAGE );
+        while ( curs.next() != 0 ) {
+            long page = curs.getCurrent();
+            FreePhysicalRowIdPage fp = FreePhysicalRowIdPage
+                .getFreePhysicalRowIdPageView( _file.get( page ) );
+            for ( int i = 0; i < fp.elemsPerPage; i++ ) {
+                FreePhysicalRowId free = fp.get( i );
+                if ( free.getSize() != 0 ) {
+                    Long slot = encode( page, i );
+                    addSlot( bySize, free.getSize(), slot );
+                    byLocation.put( new Location( free ), slot );
+                }
+            }
+            if ( fp.getCount() < fp.elemsPerPage ) {
+                pagesWithFreeSlots.add( new Long( page ) );
+            }
+            _file.release( page, false );
+        }
+        _bySize = bySize;
+        _byLocation = byLocation;
+        _pagesWithFreeSlots = pagesWithFreeSlots;
+    }
+
+
+    /**
+     * Adds a slot holding a free row of the given size to the index.
+     */
+    private static void addSlot( SortedMap bySize, int size, Long slot )
+    {
+        Integer key = new Integer( size );
+        LinkedHashSet slots = (LinkedHashSet) bySize.get( key );
+        if ( slots == null ) {
+            slots = new LinkedHashSet();
+            bySize.put( key, slots );
+        }
+        slots.add( slot );
+    }
+
+
+    /**
+     * Discards the index, which is rebuilt when next needed. This must be
+     * called when the pages of the free physical rowid list are changed
+     * other than through this object, e.g. on rollback.
+     */
+    void invalidate()
+    {
+        _bySize = null;
+        _byLocation = null;
+        _pagesWithFreeSlots = null;
+    }
+
+
     /**
 	 * Returns a free physical rowid of the indicated size, or null if nothing
-	 * was found. This scans the free physical row table, which is modeled as a
-	 * linked list of pages. Each page on that list has slots that are either
-	 * free (awaiting the insertion of the location of a free physical row) or
-	 * available for reallocation requests. An allocated slot is indicated by a
-	 * non-zero size field in that slot and the size is the size of the
-	 * available free record in bytes.
+	 * was found. The smallest free physical row whose size is at least the
+	 * indicated size is chosen (best fit), but only when the capacity wasted
+	 * by using that row is less than
+	 * {@link FreePhysicalRowIdPage#wasteMargin}.
 	 */
     Location get( int size )
         throws IOException
     {
-        // Loop through the free physical rowid list until we find
-        // a rowid that's large enough.
-        Location retval = null;
-        PageCursor curs = new PageCursor( _pageman, Magic.FREEPHYSIDS_PAGE );
+        buildIndex();
+        SortedMap tail = _bySize.tailMap( new Integer( size ) );
+        if ( tail.isEmpty() ) {
+            return null;
+        }
+        Integer key = (Integer) tail.firstKey();
+        if ( key.intValue() - size >= FreePhysicalRowIdPage.wasteMargin ) {
+            return null;
+        }
+        Long slot = (Long) ( (LinkedHashSet) tail.get( key ) ).iterator().next();
+        return removeSlot( key, slot );
+    }
 
-        while (curs.next() != 0) {
-            FreePhysicalRowIdPage fp = FreePhysicalRowIdPage
-                .getFreePhysicalRowIdPageView( _file.get( curs.getCurrent() ) );
-            int slot = fp.getFirstLargerThan( size );
-            if ( slot != -1 ) {
-                // got one!
-                retval = new Location( fp.get( slot ) );
-
-                fp.free( slot );
-                if ( fp.getCount() == 0 ) {
-                    // page became empty - free it
-                    _file.release( curs.getCurrent(), false );
-                    _pageman.free( Magic.FREEPHYSIDS_PAGE, curs.getCurrent() );
-                } else {
-                    _file.release( curs.getCurrent(), true );
-                }
+    /**
+     * Removes the indicated free physical row from the free list, e.g.
+     * because it has been merged with a neighbouring free row.
+     *
+     * @param rowid The location of the free row.
+     * @return true if the row was on the free list.
+     */
+    boolean remove( Location rowid )
+        throws IOException
+    {
+        buildIndex();
+        Long slot = (Long) _byLocation.get( rowid );
+        if ( slot == null ) {
+            return false;
+        }
+        long page = slot.longValue() >>> 16;
+        FreePhysicalRowIdPage fp = FreePhysicalRowIdPage
+            .getFreePhysicalRowIdPageView( _file.get( page ) );
+        Integer key = new Integer( fp.get( (int) ( slot.longValue() & 0xffff ) ).getSize() );
+        _file.release( page, false );
+        removeSlot( key, slot );
+        return true;
+    }
 
-                return retval;
-            } else {
-                // no luck, go to next page
-                _file.release( curs.getCurrent(), false );
-            }
+    /**
+     * Removes a slot from the index and frees it on its page.
+     *
+     * @return The location of the free row which was in the slot.
+     */
+    private Location removeSlot( Integer key, Long slot )
+        throws IOException
+    {
+        LinkedHashSet slots = (LinkedHashSet) _bySize.get( key );
+        slots.remove( slot );
+        if ( slots.isEmpty() ) {
+            _bySize.remove( key );
+        }
 
+        long page = slot.longValue() >>> 16;
+        FreePhysicalRowIdPage fp = FreePhysicalRowIdPage
+            .getFreePhysicalRowIdPageView( _file.get( page ) );
+        Location retval = new Location( fp.get( (int) ( slot.longValue() & 0xffff ) ) );
+        _byLocation.remove( retval );
+        fp.free( (int) ( slot.longValue() & 0xffff ) );
+        if ( fp.getCount() == 0 ) {
+            // page became empty - free it
+            _file.release( page, false );
+            _pageman.free( Magic.FREEPHYSIDS_PAGE, page );
+            _pagesWithFreeSlots.remove( new Long( page ) );
+        } else {
+            _file.release( page, true );
+            _pagesWithFreeSlots.add( new Long( page ) );
         }
-        return null;
+        return retval;
     }
 
     /**
@@ -123,34 +266,35 @@ final class FreePhysicalRowIdPageManager
     void put(Location rowid, int size)
   throws IOException {
 
-  FreePhysicalRowId free = null;
-  PageCursor curs = new PageCursor(_pageman, Magic.FREEPHYSIDS_PAGE);
-  long freePage = 0;
-  while (curs.next() != 0) {
-      freePage = curs.getCurrent();
-      BlockIo curBlock = _file.get(freePage);
-      FreePhysicalRowIdPage fp = FreePhysicalRowIdPage
-    .getFreePhysicalRowIdPageView(curBlock);
-      int slot = fp.getFirstFree();
-      if (slot != -1) {
-    free = fp.alloc(slot);
-    break;
-      }
-
-      _file.release(curBlock);
-  }
-  if (free == null) {
+  buildIndex();
+  long freePage;
+  FreePhysicalRowIdPage fp;
+  int slot;
+  Iterator it = _pagesWithFreeSlots.iterator();
+  if (it.hasNext()) {
+      freePage = ((Long) it.next()).longValue();
+      fp = FreePhysicalRowIdPage
+    .getFreePhysicalRowIdPageView(_file.get(freePage));
+      slot = fp.getFirstFree();
+  } else {
       // No more space on the free list, add a page.
       freePage = _pageman.allocate(Magic.FREEPHYSIDS_PAGE);
-      BlockIo curBlock = _file.get(freePage);
-      FreePhysicalRowIdPage fp =
-    FreePhysicalRowIdPage.getFreePhysicalRowIdPageView(curBlock);
-      free = fp.alloc(0);
+      fp = FreePhysicalRowIdPage
+    .getFreePhysicalRowIdPageView(_file.get(freePage));
+      slot = 0;
+      _pagesWithFreeSlots.add(new Long(freePage));
+  }
+  FreePhysicalRowId free = fp.alloc(slot);
+  if (fp.getCount() == fp.elemsPerPage) {
+      _pagesWithFreeSlots.remove(new Long(freePage));
   }
 
   free.setBlock(rowid.getBlock());
   free.setOffset(rowid.getOffset());
   free.setSize(size);
   _file.release(freePage, true);
+  Long encoded = encode(freePage, slot);
+  addSlot(_bySize, size, encoded);
+  _byLocation.put(rowid, encoded);
     }
 }
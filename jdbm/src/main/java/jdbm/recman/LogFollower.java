@@ -0,0 +1,472 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.recman;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import jdbm.BlobInputStream;
+import jdbm.BlobOutputStream;
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+import jdbm.RecordManagerStatistics;
+import jdbm.helper.ISerializationHandler;
+import jdbm.helper.LatencyHistograms;
+import jdbm.helper.SerializationProfiler;
+import jdbm.helper.Serializer;
+
+/**
+ *  A read-only record manager which follows the transactions shipped by a
+ *  {@link LogShipper}.
+ *  <p>
+ *  The follower keeps a file of its own, which starts as a copy of the
+ *  backup in the directory of the shipper. Each call to {@link #poll()}
+ *  applies the transactions shipped since, in order, each one as a single
+ *  transaction of the follower, so that fetches always see the state of a
+ *  commit of the shipping record manager. {@link #start(long)} polls from a
+ *  thread of the follower. When the shipper starts a new generation, the
+ *  follower starts again from the new backup.
+ *  <p>
+ *  The number of the last transaction applied is kept in a file next to
+ *  the file of the follower, with the extension <code>.follow</code>, so
+ *  that a follower which is closed and opened again carries on where it
+ *  stopped.
+ *  <p>
+ *  All the operations which change records throw
+ *  {@link UnsupportedOperationException}. Objects built from several
+ *  records, such as a {@link jdbm.btree.BTree}, must be loaded again to
+ *  see the changes applied by a poll.
+ *
+ *  @see LogShipper
+ *  @version $Id$
+ */
+public final class LogFollower implements RecordManager {
+
+    /** The extension of the file holding the last transaction applied. */
+    static final String FOLLOW_EXTENSION = ".follow";
+
+    private final File directory;
+    private final String name;
+    private final Properties options;
+
+    /** The record manager of the follower, or null before the first backup. */
+    private BaseRecordManager recman;
+
+    private long generation = -1L;
+    private long sequence;
+
+    private Thread poller;
+    private volatile boolean stopping;
+    private IOException failure;
+
+    /**
+     *  Opens a follower and applies the transactions shipped so far.
+     *
+     *  @param directory The directory of the shipper.
+     *  @param name The name of the file of the follower, without an
+     *         extension.
+     *  @param options The options of the record manager of the follower,
+     *         which should be those of the shipping record manager. The
+     *         follower never uses an object cache.
+     */
+    public LogFollower(String directory, String name, Properties options)
+        throws IOException {
+        this.directory = new File(directory);
+        this.name = name;
+        this.options = new Properties();
+        if (options != null) {
+            this.options.putAll(options);
+        }
+        this.options.setProperty(RecordManagerOptions.CACHE_TYPE,
+                                 RecordManagerOptions.NO_CACHE);
+        File follow = new File(name + FOLLOW_EXTENSION);
+        if (follow.exists()
+            && new File(name + RecordFile.extension).exists()) {
+            String[] state = new String(Files.readAllBytes(follow.toPath()),
+                                        "US-ASCII").trim().split(" ");
+            generation = Long.parseLong(state[0]);
+            sequence = Long.parseLong(state[1]);
+            open();
+        }
+        poll();
+    }
+
+    private void open() throws IOException {
+        recman = (BaseRecordManager) RecordManagerFactory
+            .createRecordManager(name, options).getBaseRecordManager();
+    }
+
+    /**
+     *  Applies the transactions shipped since the last poll.
+     *
+     *  @return the number of transactions applied.
+     */
+    public synchronized int poll() throws IOException {
+        checkIfClosed();
+        long published = LogShipper.readGeneration(
+            new File(directory, LogShipper.GENERATION));
+        if (published < 0) {
+            // nothing shipped yet, or a new generation is being started.
+            return 0;
+        }
+        if (published != generation) {
+            restart(published);
+        }
+        int count = 0;
+        File file;
+        while ((file = new File(directory,
+                                LogShipper.nameOf(sequence + 1))).exists()) {
+            if (!apply(file)) {
+                break;
+            }
+            sequence++;
+            count++;
+            saveState();
+        }
+        return count;
+    }
+
+    /**
+     *  Starts again from the backup of a new generation.
+     */
+    private void restart(long published) throws IOException {
+        if (recman != null) {
+            recman.close();
+            recman = null;
+        }
+        new File(name + TransactionManager.extension).delete();
+        Files.copy(new File(directory, LogShipper.BASE
+                            + RecordFile.extension).toPath(),
+                   new File(name + RecordFile.extension).toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+        generation = published;
+        sequence = 0;
+        saveState();
+        open();
+    }
+
+    /**
+     *  Applies a shipped transaction.
+     *
+     *  @return false if the transaction belongs to another generation.
+     */
+    private boolean apply(File file) throws IOException {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file), 65536));
+        try {
+            if (in.readShort() != Magic.SHIPPED_TXN_HEADER) {
+                throw new IOException("Not a shipped transaction: " + file);
+            }
+            if (in.readLong() != generation) {
+                return false;
+            }
+            if (in.readLong() != sequence + 1) {
+                throw new IOException("Unexpected transaction in " + file);
+            }
+            int blockSize = in.readInt();
+            int count = in.readInt();
+            long[] blockIds = new long[count];
+            byte[][] images = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                blockIds[i] = in.readLong();
+                images[i] = new byte[blockSize];
+                in.readFully(images[i]);
+            }
+            recman.install(blockIds, images);
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void saveState() throws IOException {
+        File file = new File(name + FOLLOW_EXTENSION).getAbsoluteFile();
+        LogShipper.writeAndRename(file.getParentFile(), file.getName(),
+                                  (generation + " " + sequence)
+                                  .getBytes("US-ASCII"));
+    }
+
+    /**
+     *  Returns the number of the last transaction applied.
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     *  Polls the directory of the shipper from a thread of the follower
+     *  until the follower is closed. A poll which fails stops the thread
+     *  (see {@link #getFailure()}).
+     *
+     *  @param intervalMillis The delay between two polls.
+     */
+    public synchronized void start(final long intervalMillis) {
+        checkIfClosed();
+        if (poller != null) {
+            throw new IllegalStateException("Already started");
+        }
+        poller = new Thread("jdbm-follower-" + name) {
+            public void run() {
+                try {
+                    while (!stopping) {
+                        poll();
+                        synchronized (LogFollower.this) {
+                            if (!stopping) {
+                                LogFollower.this.wait(intervalMillis);
+                            }
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    // closing.
+                } catch (IOException ex) {
+                    synchronized (LogFollower.this) {
+                        failure = ex;
+                    }
+                } catch (IllegalStateException ex) {
+                    // closed.
+                }
+            }
+        };
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /**
+     *  Returns the error which stopped the polling thread, or null.
+     */
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    private void checkIfClosed() {
+        if (stopping) {
+            throw new IllegalStateException("RecordManager has been closed");
+        }
+    }
+
+    private void checkIfOpen() {
+        checkIfClosed();
+        if (recman == null) {
+            throw new IllegalStateException("No backup has been shipped yet");
+        }
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Read-only follower");
+    }
+
+    public RecordManager getRecordManager() {
+        return this;
+    }
+
+    public RecordManager getBaseRecordManager() {
+        return this;
+    }
+
+    public synchronized ISerializationHandler getSerializationHandler() {
+        checkIfOpen();
+        return recman.getSerializationHandler();
+    }
+
+    public synchronized SerializationProfiler getSerializationProfiler() {
+        checkIfOpen();
+        return recman.getSerializationProfiler();
+    }
+
+    public synchronized RecordManagerStatistics getStatistics()
+        throws IOException {
+        checkIfOpen();
+        return recman.getStatistics();
+    }
+
+    public synchronized LatencyHistograms getLatencyHistograms() {
+        checkIfOpen();
+        return recman.getLatencyHistograms();
+    }
+
+    public void backup(String name, boolean incremental) throws IOException {
+        BaseRecordManager current;
+        synchronized (this) {
+            checkIfOpen();
+            current = recman;
+        }
+        current.backup(name, incremental);
+    }
+
+    public long insert(Object obj) {
+        throw readOnly();
+    }
+
+    public long insert(Object obj, Serializer serializer) {
+        throw readOnly();
+    }
+
+    public long[] insertAll(Object[] objs, Serializer serializer) {
+        throw readOnly();
+    }
+
+    public void delete(long recid) {
+        throw readOnly();
+    }
+
+    public void update(long recid, Object obj) {
+        throw readOnly();
+    }
+
+    public void update(long recid, Object obj, Serializer serializer) {
+        throw readOnly();
+    }
+
+    public synchronized Object fetch(long recid) throws IOException {
+        checkIfOpen();
+        return recman.fetch(recid);
+    }
+
+    public synchronized Object fetch(long recid, Serializer serializer)
+        throws IOException {
+        checkIfOpen();
+        return recman.fetch(recid, serializer);
+    }
+
+    public synchronized Object[] fetchAll(long[] recids) throws IOException {
+        checkIfOpen();
+        return recman.fetchAll(recids);
+    }
+
+    public synchronized Object[] fetchAll(long[] recids, Serializer serializer)
+        throws IOException {
+        checkIfOpen();
+        return recman.fetchAll(recids, serializer);
+    }
+
+    public BlobOutputStream openBlobOutput() {
+        throw readOnly();
+    }
+
+    public synchronized BlobInputStream openBlobInput(long recid)
+        throws IOException {
+        checkIfOpen();
+        return recman.openBlobInput(recid);
+    }
+
+    public void deleteBlob(long recid) {
+        throw readOnly();
+    }
+
+    /**
+     *  Stops polling and closes the record manager of the follower.
+     */
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            checkIfClosed();
+            stopping = true;
+            thread = poller;
+            // an interrupt would close the channels of a poll in progress.
+            notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (recman != null) {
+                recman.close();
+                recman = null;
+            }
+        }
+    }
+
+    public synchronized int getRootCount() {
+        checkIfOpen();
+        return recman.getRootCount();
+    }
+
+    public synchronized long getRoot(int id) throws IOException {
+        checkIfOpen();
+        return recman.getRoot(id);
+    }
+
+    public void setRoot(int id, long rowid) {
+        throw readOnly();
+    }
+
+    /**
+     *  Does nothing: there is nothing to commit.
+     */
+    public void commit() {
+    }
+
+    /**
+     *  Does nothing: there is nothing to roll back.
+     */
+    public void rollback() {
+    }
+
+    public synchronized long getNamedObject(String name) throws IOException {
+        checkIfOpen();
+        if (recman.getRoot(BaseRecordManager.NAME_DIRECTORY_ROOT) == 0) {
+            // the record manager would create the directory.
+            return 0;
+        }
+        return recman.getNamedObject(name);
+    }
+
+    public void setNamedObject(String name, long recid) {
+        throw readOnly();
+    }
+}
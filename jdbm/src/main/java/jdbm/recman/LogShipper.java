@@ -0,0 +1,317 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.recman;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import jdbm.RecordManager;
+
+/**
+ *  Ships the transactions committed by a record manager to a directory, from
+ *  which {@link LogFollower}s apply them onto read-only copies of the
+ *  record manager, possibly in other processes or on other nodes sharing
+ *  the directory.
+ *  <p>
+ *  {@link #start()} writes a backup of the record manager into the
+ *  directory and from then on each transaction written onto the log is
+ *  also written into the directory as the images of the pages it changed.
+ *  The directory holds:
+ *  <dl>
+ *  <dt><code>base.db</code>, <code>base.lg</code></dt><dd>The backup the
+ *  followers start from.</dd>
+ *  <dt><code>nnn.txn</code></dt><dd>The transactions committed after the
+ *  backup, numbered from one: the generation, the number, the page size
+ *  and the number of pages, followed by the id and the image of each
+ *  page.</dd>
+ *  <dt><code>generation</code></dt><dd>The generation of the files, which
+ *  changes each time shipping starts, written once the backup is
+ *  complete.</dd>
+ *  </dl>
+ *  Each file is written under a temporary name and renamed, so a follower
+ *  never sees a partial file. Nothing is ever removed from the directory
+ *  while shipping: the transactions accumulate until shipping starts
+ *  again.
+ *  <p>
+ *  The record manager must use transactions. The pages are written while
+ *  the commit holds the lock of the record manager.
+ *
+ *  @see LogFollower
+ *  @version $Id$
+ */
+public final class LogShipper implements CommitListener {
+
+    /** The name of the backup in the directory. */
+    static final String BASE = "base";
+
+    /** The name of the file holding the generation. */
+    static final String GENERATION = "generation";
+
+    /** The extension of a shipped transaction. */
+    static final String TXN_EXTENSION = ".txn";
+
+    private final BaseRecordManager recman;
+    private final File directory;
+
+    /** The generation of the files being shipped. */
+    private long generation;
+
+    /** The number of the last transaction shipped. */
+    private long sequence;
+
+    /** True while shipping. */
+    private boolean shipping;
+
+    /** The reason why shipping stopped on its own, or null. */
+    private IOException failure;
+
+    /**
+     *  Creates a shipper, which does nothing until it is started.
+     *
+     *  @param recman The record manager whose transactions are shipped.
+     *  @param directory The directory receiving the transactions, which is
+     *         created if needed.
+     */
+    public LogShipper(RecordManager recman, String directory) {
+        this.recman = (BaseRecordManager) recman.getBaseRecordManager();
+        this.directory = new File(directory);
+    }
+
+    /**
+     *  Returns the name of the file of a shipped transaction.
+     */
+    static String nameOf(long sequence) {
+        String s = Long.toString(sequence);
+        StringBuffer sb = new StringBuffer();
+        for (int i = s.length(); i < 19; i++) {
+            sb.append('0');
+        }
+        return sb.append(s).append(TXN_EXTENSION).toString();
+    }
+
+    /**
+     *  Starts shipping. The files of an earlier generation are removed, the
+     *  backup is written and then the new generation is published.
+     *
+     *  @throws IOException if the backup cannot be written.
+     *  @throws IllegalStateException if the shipper is already started or
+     *          the record manager does not use transactions.
+     */
+    public void start() throws IOException {
+        synchronized (this) {
+            if (shipping) {
+                throw new IllegalStateException("Already shipping");
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            generation = System.currentTimeMillis();
+            File file = new File(directory, GENERATION);
+            if (file.exists()) {
+                // a new generation must differ from the one it replaces.
+                generation = Math.max(generation, readGeneration(file) + 1);
+                file.delete();
+            }
+            File[] files = directory.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].getName().endsWith(TXN_EXTENSION)) {
+                    files[i].delete();
+                }
+            }
+            sequence = 0;
+            failure = null;
+            shipping = true;
+        }
+        synchronized (recman) {
+            recman.checkIfClosed();
+            if (recman._file.isTransactionsDisabled()) {
+                stop();
+                throw new IllegalStateException(
+                    "Shipping needs a record manager using transactions");
+            }
+        }
+        boolean ok = false;
+        try {
+            recman.backup(new File(directory, BASE).getPath(), false, this);
+            ok = true;
+        } finally {
+            if (!ok) {
+                stop();
+            }
+        }
+        writeAndRename(directory, GENERATION, Long.toString(generation)
+                       .getBytes("US-ASCII"));
+    }
+
+    /**
+     *  Reads the generation published in a directory.
+     *
+     *  @return the generation or -1 if there is none.
+     */
+    static long readGeneration(File file) throws IOException {
+        try {
+            byte[] data = Files.readAllBytes(file.toPath());
+            return Long.parseLong(new String(data, "US-ASCII").trim());
+        } catch (NoSuchFileException ex) {
+            return -1L;
+        } catch (NumberFormatException ex) {
+            return -1L;
+        }
+    }
+
+    /**
+     *  Stops shipping. The directory is left as it is: the followers apply
+     *  the transactions shipped so far.
+     */
+    public void stop() {
+        synchronized (recman) {
+            if (recman._file != null) {
+                recman._file.txnMgr.setCommitListener(null);
+            }
+        }
+        synchronized (this) {
+            shipping = false;
+        }
+    }
+
+    /**
+     *  Returns true if transactions are being shipped.
+     */
+    public synchronized boolean isShipping() {
+        return shipping;
+    }
+
+    /**
+     *  Returns the generation of the files being shipped.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     *  Returns the number of the last transaction shipped.
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     *  Returns the error which stopped shipping, or null.
+     */
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     *  Writes a committed transaction into the directory. An error stops
+     *  shipping rather than failing the commit, which is already durable.
+     */
+    public void committed(List blocks) {
+        synchronized (this) {
+            if (!shipping) {
+                return;
+            }
+            try {
+                write(sequence + 1, blocks);
+                sequence++;
+                return;
+            } catch (IOException ex) {
+                failure = ex;
+                shipping = false;
+            }
+        }
+        recman._file.txnMgr.setCommitListener(null);
+    }
+
+    private void write(long seq, List blocks) throws IOException {
+        File tmp = new File(directory, nameOf(seq) + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+        try {
+            int blockSize = recman._file.getBlockSize();
+            out.writeShort(Magic.SHIPPED_TXN_HEADER);
+            out.writeLong(generation);
+            out.writeLong(seq);
+            out.writeInt(blockSize);
+            out.writeInt(blocks.size());
+            for (int i = 0; i < blocks.size(); i++) {
+                BlockIo block = (BlockIo) blocks.get(i);
+                out.writeLong(block.getBlockId());
+                out.write(block.getData(), 0, blockSize);
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), new File(directory, nameOf(seq)).toPath(),
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     *  Writes a small file under a temporary name and renames it, replacing
+     *  the file of the same name.
+     */
+    static void writeAndRename(File directory, String name, byte[] data)
+        throws IOException {
+        File tmp = new File(directory, name + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), new File(directory, name).toPath(),
+                   StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -53,6 +53,13 @@ import java.io.IOException;
  *  This class manages the linked lists of logical rowid pages.
  */
 final class LogicalRowIdManager {
+    /**
+     *  Set in the block of a translation to mark the record as a blob
+     *  descriptor (see {@link BlobStore}). Block numbers fit in 48 bits
+     *  (see {@link Location#toLong()}), so the bit is otherwise unused.
+     */
+    static final long BLOB = 1L << 62;
+
     // our record file and associated page manager
     private RecordFile file;
     private PageManager pageman;
@@ -76,6 +83,15 @@ final class LogicalRowIdManager {
      */
     Location insert(Location loc)
     throws IOException {
+  return insert(loc, false);
+    }
+
+    /**
+     *  Creates a new logical rowid pointing to the indicated physical
+     *  id, marked as a blob iff <i>blob</i> is true.
+     */
+    Location insert(Location loc, boolean blob)
+    throws IOException {
   // check whether there's a free rowid to reuse
   Location retval = freeman.get();
   if (retval == null) {
@@ -83,7 +99,8 @@ final class LogicalRowIdManager {
       // a new translation page and freeing all the rowids on it.
       long firstPage = pageman.allocate(Magic.TRANSLATION_PAGE);
       short curOffset = TranslationPage.O_TRANS;
-      for (int i = 0; i < TranslationPage.ELEMS_PER_PAGE; i++) {
+      int elemsPerPage = TranslationPage.getElemsPerPage(file.getBlockSize());
+      for (int i = 0; i < elemsPerPage; i++) {
     freeman.put(new Location(firstPage, curOffset));
     curOffset += PhysicalRowId.SIZE;
       }
@@ -93,7 +110,49 @@ final class LogicalRowIdManager {
       }
   }
   // write the translation.
-  update(retval, loc);
+  write(retval, loc, blob);
+  return retval;
+    }
+
+    /**
+     *  Creates new logical rowids pointing to the indicated physical ids.
+     *  Free rowids are reused first. The remaining rowids are assigned
+     *  directly from new translation pages, and only the slots left over
+     *  on the last new page are put on the free list.
+     *
+     *  @return The logical rowids, in the same order as <i>locs</i>.
+     */
+    Location[] insertAll(Location[] locs)
+    throws IOException {
+  Location[] retval = new Location[locs.length];
+  int i = 0;
+  for (; i < locs.length; i++) {
+      Location rowid = freeman.get();
+      if (rowid == null) {
+    break;
+      }
+      update(rowid, locs[i]);
+      retval[i] = rowid;
+  }
+  int elemsPerPage = TranslationPage.getElemsPerPage(file.getBlockSize());
+  while (i < locs.length) {
+      long page = pageman.allocate(Magic.TRANSLATION_PAGE);
+      TranslationPage xlatPage = TranslationPage.getTranslationPageView(
+                                     file.get(page));
+      short curOffset = TranslationPage.O_TRANS;
+      for (int j = 0; j < elemsPerPage; j++) {
+    if (i < locs.length) {
+        PhysicalRowId physid = xlatPage.get(curOffset);
+        physid.setBlock(locs[i].getBlock());
+        physid.setOffset(locs[i].getOffset());
+        retval[i++] = new Location(page, curOffset);
+    } else {
+        freeman.put(new Location(page, curOffset));
+    }
+    curOffset += PhysicalRowId.SIZE;
+      }
+      file.release(page, true);
+  }
   return retval;
     }
 
@@ -113,12 +172,21 @@ final class LogicalRowIdManager {
      *  @param loc The physical rowid
      */
     void update(Location rowid, Location loc)
+    throws IOException {
+
+        write(rowid, loc, false);
+    }
+
+    /**
+     *  Writes the mapping and the blob mark.
+     */
+    private void write(Location rowid, Location loc, boolean blob)
     throws IOException {
 
         TranslationPage xlatPage = TranslationPage.getTranslationPageView(
                                        file.get(rowid.getBlock()));
         PhysicalRowId physid = xlatPage.get(rowid.getOffset());
-        physid.setBlock(loc.getBlock());
+        physid.setBlock(blob ? loc.getBlock() | BLOB : loc.getBlock());
         physid.setOffset(loc.getOffset());
         file.release(rowid.getBlock(), true);
     }
@@ -166,8 +234,33 @@ final class LogicalRowIdManager {
         TranslationPage xlatPage = TranslationPage.getTranslationPageView(
                                        file.get(rowid.getBlock()));
         try {
-            Location retval = new Location(xlatPage.get(rowid.getOffset()));
-            return retval;
+            PhysicalRowId physid = xlatPage.get(rowid.getOffset());
+            return new Location(physid.getBlock() & ~BLOB, physid.getOffset());
+        } finally {
+            file.release(rowid.getBlock(), false);
+        }
+    }
+
+    /**
+     *  Returns the mapping from the logical row identifier to the physical
+     *  row identifier, as {@link #fetch(Location)} does, provided that the
+     *  record is a blob iff <i>blob</i> is true.
+     *
+     *  @return The physical rowid, or <code>null</code> if the record is
+     *  (not) a blob.
+     */
+    Location fetch(Location rowid, boolean blob)
+    throws IOException {
+
+        TranslationPage xlatPage = TranslationPage.getTranslationPageView(
+                                       file.get(rowid.getBlock()));
+        try {
+            PhysicalRowId physid = xlatPage.get(rowid.getOffset());
+            long block = physid.getBlock();
+            if (((block & BLOB) != 0) != blob) {
+                return null;
+            }
+            return new Location(block & ~BLOB, physid.getOffset());
         } finally {
             file.release(rowid.getBlock(), false);
         }
@@ -54,6 +54,12 @@ public interface Magic {
     /** Magic cookie at start of file */
     public short FILE_HEADER = 0x1350;
 
+    /**
+     *  Magic cookie at start of a file whose page size is not the default
+     *  {@link RecordFile#BLOCK_SIZE}. The page size follows the magic.
+     */
+    public short FILE_HEADER_PAGESIZE = 0x1348;
+
     /** Magic for blocks. They're offset by the block type magic codes. */
     public short BLOCK = 0x1351;
 
@@ -64,6 +70,13 @@ public interface Magic {
     short FREELOGIDS_PAGE = 3;
     short FREEPHYSIDS_PAGE = 4;
 
+    /**
+     *  Magic for the pages holding the bitmap of free pages. These pages
+     *  are not kept on a list of the file header; they are chained from
+     *  the bitmap root of the file header.
+     */
+    short BITMAP_PAGE = 5;
+
     /** Number of lists in a file */
     public short NLISTS = 5;
 
@@ -76,6 +89,12 @@ public interface Magic {
     /** Magic for transaction file */
     short LOGFILE_HEADER = 0x1360;
 
+    /** Magic for a transaction shipped to followers */
+    short SHIPPED_TXN_HEADER = 0x1361;
+
+    /** Magic for the coordinator file of a sharded record manager */
+    short SHARD_COORDINATOR_HEADER = 0x1362;
+
     /** Size of an externalized byte */
     public short SZ_BYTE = 1;
     /** Size of an externalized short */
@@ -108,7 +108,7 @@ public class PageHeader implements BlockView {
     private boolean magicOk() {
         int magic = getMagic();
         return magic >= Magic.BLOCK
-            && magic <= (Magic.BLOCK + Magic.FREEPHYSIDS_PAGE);
+            && magic <= (Magic.BLOCK + Magic.BITMAP_PAGE);
     }
     
     /**
@@ -48,9 +48,22 @@
 package jdbm.recman;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
 
 /**
  *  This class manages the linked lists of pages that make up a file.
+ *  <p>
+ *  Free pages are not kept on a list. Instead, the file has a bitmap of
+ *  its free pages, kept in pages of their own which are chained from the
+ *  {@link FileHeader#getBitmapRoot bitmap root} of the file header. The
+ *  bitmap is read into memory the first time it is needed, and both the
+ *  pages and the copy in memory are updated as pages are freed and
+ *  allocated, so that freeing a page only writes its bitmap page besides
+ *  the pages of the list it leaves. The bitmap lets pages be allocated
+ *  lowest first and lets contiguous runs of pages be allocated with
+ *  {@link #allocate(short, int)}. The free list written by older versions
+ *  is moved into the bitmap the first time the bitmap is read.
  */
 final class PageManager {
     // our record file
@@ -58,6 +71,11 @@ final class PageManager {
     // header data
     private FileHeader header;
     private BlockIo headerBuf;
+    // the pages marked free by the bitmap, or null until needed.
+    private BitSet freePages;
+    // the pages holding the bitmap, in order.
+    private long[] bitmapPages;
+    private int bitmapCount;
     
     /**
      *  Creates a new page manager using the indicated record file.
@@ -79,38 +97,77 @@ final class PageManager {
      *  page.
      */
     long allocate(short type) throws IOException {
+        return allocate(type, 1);
+    }
+
+    /**
+     *  Allocates a run of contiguous pages of the indicated type. The pages
+     *  are added to the end of the list for that type in ascending order.
+     *  The lowest run of free pages which is long enough is used; if there
+     *  is none then the run is taken from the end of the file, starting
+     *  with any free pages which are already at the end of the file.
+     *
+     *  @param type The page type.
+     *  @param count The number of pages.
+     *  @return The recid of the first page of the run.
+     */
+    long allocate(short type, int count) throws IOException {
         
-        if (type == Magic.FREE_PAGE)
+        if (type == Magic.FREE_PAGE || type == Magic.BITMAP_PAGE)
             throw new Error("allocate of free page?");
-        
-        // do we have something on the free list?
-        long retval = header.getFirstOf(Magic.FREE_PAGE);
-        boolean isNew = false;
-        if (retval != 0) {
-            // yes. Point to it and make the next of that page the
-            // new first free page.
-            header.setFirstOf(Magic.FREE_PAGE, getNext(retval));
-        }
-        else {
-            // nope. make a new record
-            retval = header.getLastOf(Magic.FREE_PAGE);
-            if (retval == 0)
-                // very new file - allocate record #1
-                retval = 1;
-            header.setLastOf(Magic.FREE_PAGE, retval + 1);
-            isNew = true;
+        if (count < 1)
+            throw new IllegalArgumentException("count=" + count);
+        loadFreePages();
+
+        // the first page which has never been allocated.
+        long end = getEnd();
+
+        // do we have a long enough run of free pages?
+        long retval = findFreeRun(count);
+        if (retval == 0) {
+            // nope. extend the file, reusing free pages at its end.
+            retval = end;
+            while (retval - 1 > 0 && end - retval < count - 1
+                   && freePages.get(toIndex(retval - 1)))
+                retval--;
+            header.setLastOf(Magic.FREE_PAGE, retval + count);
         }
-        
-        // Cool. We have a record, add it to the correct list
-        BlockIo buf = file.get(retval);
+        for (long i = retval; i < end && i < retval + count; i++)
+            setFree(i, false);
+
+        // Cool. We have the pages, add them to the correct list
+        for (int i = 0; i < count; i++)
+            link(type, retval + i, retval + i >= end);
+        return retval;
+    }
+
+    /**
+     *  Returns the first page which has never been allocated.
+     */
+    private long getEnd() {
+        long end = header.getLastOf(Magic.FREE_PAGE);
+        if (end == 0)
+            // very new file - allocate record #1
+            end = 1;
+        return end;
+    }
+
+    /**
+     *  Adds a page to the end of the list of the indicated type.
+     *
+     *  @param isNew True if the page has never been allocated.
+     */
+    private void link(short type, long recid, boolean isNew) 
+        throws IOException {
+        BlockIo buf = file.get(recid);
         PageHeader pageHdr = isNew ? new PageHeader(buf, type) 
             : PageHeader.getView(buf);
         long oldLast = header.getLastOf(type);
         
         // Clean data.
-        System.arraycopy(RecordFile.cleanData, 0, 
+        System.arraycopy(file.cleanData, 0, 
                          buf.getData(), 0, 
-                         RecordFile.BLOCK_SIZE);
+                         file.getBlockSize());
         pageHdr.setType(type);
         pageHdr.setPrev(oldLast);
         pageHdr.setNext(0);
@@ -118,22 +175,20 @@ final class PageManager {
         
         if (oldLast == 0)
             // This was the first one of this type
-            header.setFirstOf(type, retval);
-        header.setLastOf(type, retval);
-        file.release(retval, true);
+            header.setFirstOf(type, recid);
+        header.setLastOf(type, recid);
+        file.release(recid, true);
         
         // If there's a previous, fix up its pointer
         if (oldLast != 0) {
             buf = file.get(oldLast);
             pageHdr = PageHeader.getView(buf);
-            pageHdr.setNext(retval);
+            pageHdr.setNext(recid);
             file.release(oldLast, true);
         }
         
         // remove the view, we have modified the type.
         buf.setView(null);
-        
-        return retval;
     }
     
     /**
@@ -144,6 +199,7 @@ final class PageManager {
             throw new Error("free free page?");
         if (recid == 0)
             throw new Error("free header page?");
+        loadFreePages();
         
         // get the page and read next and previous pointers
         BlockIo buf = file.get(recid);
@@ -151,13 +207,12 @@ final class PageManager {
         long prev = pageHdr.getPrev();
         long next = pageHdr.getNext();
         
-        // put the page at the front of the free list.
+        // mark the page free
         pageHdr.setType(Magic.FREE_PAGE);
-        pageHdr.setNext(header.getFirstOf(Magic.FREE_PAGE));
+        pageHdr.setNext(0);
         pageHdr.setPrev(0);
-        
-        header.setFirstOf(Magic.FREE_PAGE, recid);
         file.release(recid, true);
+        setFree(recid, true);
         
         // remove the page from its old list
         if (prev != 0) {
@@ -180,7 +235,157 @@ final class PageManager {
         }
         
     }
-    
+
+    /**
+     *  Converts a page recid to a bit index in {@link #freePages}.
+     */
+    private static int toIndex(long recid) {
+        if (recid > Integer.MAX_VALUE)
+            throw new Error("page out of range: " + recid);
+        return (int) recid;
+    }
+
+    /**
+     *  Returns the number of pages covered by each bitmap page.
+     */
+    private int getBitsPerPage() {
+        return (file.getBlockSize() - PageHeader.SIZE) * 8;
+    }
+
+    /**
+     *  Reads the bitmap of free pages, unless already done. A free list
+     *  left by an older version is moved into the bitmap.
+     */
+    private void loadFreePages() throws IOException {
+        if (freePages != null)
+            return;
+        freePages = new BitSet();
+        bitmapPages = new long[4];
+        bitmapCount = 0;
+        final int bitsPerPage = getBitsPerPage();
+        long cur = header.getBitmapRoot();
+        if (!isBitmapPage(cur))
+            // no bitmap yet; the slot is not ours in older files.
+            cur = 0;
+        while (cur != 0) {
+            BlockIo buf = file.get(cur);
+            try {
+                BitSet bits = BitSet.valueOf(ByteBuffer.wrap(
+                    buf.getData(), PageHeader.SIZE, bitsPerPage / 8));
+                int base = toIndex((long) bitmapCount * bitsPerPage);
+                for (int i = bits.nextSetBit(0); i >= 0;
+                     i = bits.nextSetBit(i + 1))
+                    freePages.set(base + i);
+                addBitmapPage(cur);
+                cur = PageHeader.getView(buf).getNext();
+            } finally {
+                file.release(buf.getBlockId(), false);
+            }
+        }
+
+        cur = header.getFirstOf(Magic.FREE_PAGE);
+        if (cur != 0) {
+            header.setFirstOf(Magic.FREE_PAGE, 0);
+            for (; cur != 0; cur = getNext(cur))
+                setFree(cur, true);
+        }
+    }
+
+    /**
+     *  Returns true if the indicated page is a bitmap page.
+     */
+    private boolean isBitmapPage(long recid) throws IOException {
+        if (recid <= 0 || recid >= getEnd())
+            return false;
+        try {
+            return file.get(recid).readShort(0)
+                == Magic.BLOCK + Magic.BITMAP_PAGE;
+        } finally {
+            file.release(recid, false);
+        }
+    }
+
+    /**
+     *  Remembers the next page of the bitmap.
+     */
+    private void addBitmapPage(long recid) {
+        if (bitmapCount == bitmapPages.length) {
+            long[] pages = new long[bitmapCount * 2];
+            System.arraycopy(bitmapPages, 0, pages, 0, bitmapCount);
+            bitmapPages = pages;
+        }
+        bitmapPages[bitmapCount++] = recid;
+    }
+
+    /**
+     *  Adds a page to the end of the bitmap, taking it from the end of the
+     *  file.
+     */
+    private void appendBitmapPage() throws IOException {
+        long recid = getEnd();
+        header.setLastOf(Magic.FREE_PAGE, recid + 1);
+        BlockIo buf = file.get(recid);
+        System.arraycopy(file.cleanData, 0, 
+                         buf.getData(), 0, 
+                         file.getBlockSize());
+        PageHeader pageHdr = new PageHeader(buf, Magic.BITMAP_PAGE);
+        long prev = bitmapCount == 0 ? 0 : bitmapPages[bitmapCount - 1];
+        pageHdr.setPrev(prev);
+        pageHdr.setNext(0);
+        file.release(recid, true);
+        buf.setView(null);
+        if (prev == 0) {
+            header.setBitmapRoot(recid);
+        } else {
+            buf = file.get(prev);
+            PageHeader.getView(buf).setNext(recid);
+            file.release(prev, true);
+        }
+        addBitmapPage(recid);
+    }
+
+    /**
+     *  Marks a page free or not free in the bitmap.
+     */
+    private void setFree(long recid, boolean free) throws IOException {
+        final int bitsPerPage = getBitsPerPage();
+        int index = toIndex(recid);
+        while (bitmapCount <= index / bitsPerPage)
+            appendBitmapPage();
+        long page = bitmapPages[index / bitsPerPage];
+        int bit = index % bitsPerPage;
+        int pos = PageHeader.SIZE + bit / 8;
+        int mask = 1 << (bit % 8);
+        BlockIo buf = file.get(page);
+        byte b = buf.readByte(pos);
+        buf.writeByte(pos, (byte) (free ? b | mask : b & ~mask));
+        file.release(page, true);
+        freePages.set(index, free);
+    }
+
+    /**
+     *  Returns the first page of the lowest run of free pages of at least
+     *  the indicated length, or zero if there is none.
+     */
+    private long findFreeRun(int count) {
+        for (int i = freePages.nextSetBit(1); i >= 0; ) {
+            int clear = freePages.nextClearBit(i);
+            if (clear - i >= count)
+                return i;
+            i = freePages.nextSetBit(clear);
+        }
+        return 0;
+    }
+
+    /**
+     *  Returns the lowest free page after the indicated page, or zero if
+     *  there is none.
+     */
+    long getNextFree(long recid) throws IOException {
+        loadFreePages();
+        int next = freePages.nextSetBit(toIndex(recid) + 1);
+        return next < 0 ? 0 : next;
+    }
     
     /**
      *  Returns the page following the indicated block
@@ -234,6 +439,32 @@ final class PageManager {
         header = new FileHeader(headerBuf, false);
     }
 
+    /**
+     *  Overwrites blocks with images taken from another file and commits
+     *  them. The file header is one of the blocks this page manager holds,
+     *  so the images are installed here.
+     *
+     *  @param blockIds The ids of the blocks.
+     *  @param images The new contents of the blocks.
+     */
+    void install(long[] blockIds, byte[][] images) throws IOException {
+        for (int i = 0; i < blockIds.length; i++) {
+            if (blockIds[i] == 0) {
+                System.arraycopy(images[i], 0, headerBuf.getData(), 0,
+                                 images[i].length);
+                headerBuf.setDirty();
+            } else {
+                BlockIo buf = file.get(blockIds[i]);
+                System.arraycopy(images[i], 0, buf.getData(), 0,
+                                 images[i].length);
+                file.release(blockIds[i], true);
+            }
+        }
+        freePages = null;
+        bitmapPages = null;
+        commit();
+    }
+
     /**
      *  Flushes the page manager. This forces a flush of all outstanding
      *  blocks (this it's an implicit {@link RecordFile#commit} as well).
@@ -242,6 +473,8 @@ final class PageManager {
         // release header
         file.discard(headerBuf);
         file.rollback();
+        freePages = null;
+        bitmapPages = null;
         // and obtain it again
         headerBuf = file.get(0);
         if (headerBuf.readShort(0) == 0)
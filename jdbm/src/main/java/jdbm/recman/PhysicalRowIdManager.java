@@ -49,6 +49,8 @@ package jdbm.recman;
 
 import java.io.IOException;
 
+import jdbm.RecordManagerStatistics;
+
 /**
  *  This class manages physical row ids, and their data.
  */
@@ -60,6 +62,16 @@ final class PhysicalRowIdManager
     private PageManager pageman;
     private FreePhysicalRowIdPageManager freeman;
 
+    // The length of a block and the #of data bytes on a data page.
+    private final int blockSize;
+    private final int dataPerPage;
+
+    // allocator counters.
+    private long rowsReused;
+    private long rowsAllocated;
+    private long rowsFreed;
+    private long rowsMoved;
+
     /**
      *  Creates a new rowid manager using the indicated record file.
      *  and page manager.
@@ -70,6 +82,8 @@ final class PhysicalRowIdManager
         this.file = file;
         this.pageman = pageManager;
         this.freeman = new FreePhysicalRowIdPageManager(file, pageman);
+        this.blockSize = file.getBlockSize();
+        this.dataPerPage = DataPage.getDataPerPage( blockSize );
     }
 
     /**
@@ -83,6 +97,35 @@ final class PhysicalRowIdManager
         return retval;
     }
 
+    /**
+     *  Inserts a new record at the start of a new in use page. The free
+     *  list is not consulted, and the space after the last physical row of
+     *  the in use pages is freed. A record of the data area of a page less
+     *  a record header fills the new page exactly, so records appended one
+     *  after the other each take one page. Returns the new physical rowid.
+     */
+    Location appendPage( byte[] data, int start, int length )
+        throws IOException
+    {
+        if ( length <= 0 || length > dataPerPage - RecordHeader.SIZE ) {
+            throw new IllegalArgumentException( "length=" + length );
+        }
+        Tail tail = new Tail();
+        findTail( pageman.getLast( Magic.USED_PAGE ), tail );
+        if ( tail.block != 0 ) {
+            // turn the space after the last row into a free row.
+            BlockIo curBlock = file.get( tail.block );
+            new RecordHeader( curBlock, (short) tail.pos )
+                .setAvailableSize( blockSize - tail.pos - RecordHeader.SIZE );
+            file.release( tail.block, true );
+            free( new Location( tail.block, (short) tail.pos ) );
+            tail.block = 0;
+        }
+        Location retval = allocAt( length, tail );
+        write( retval, data, start, length );
+        return retval;
+    }
+
     /**
      *  Updates an existing record. Returns the possibly changed
      *  physical rowid.
@@ -97,6 +140,8 @@ final class PhysicalRowIdManager
             // not enough space - we need to copy to a new rowid.
             file.release( block );
             free( rowid );
+            rowsFreed++;
+            rowsMoved++;
             rowid = alloc( length );
         } else {
             file.release( block );
@@ -107,6 +152,15 @@ final class PhysicalRowIdManager
         return rowid;
     }
 
+    /**
+     *  Notifies this object that the record file has been rolled back, so
+     *  that state derived from the file is discarded.
+     */
+    void rollback()
+    {
+        freeman.invalidate();
+    }
+
     /**
      *  Deletes a record.
      */
@@ -114,6 +168,18 @@ final class PhysicalRowIdManager
         throws IOException
     {
         free( rowid );
+        rowsFreed++;
+    }
+
+    /**
+     *  Adds the allocator statistics.
+     */
+    void addStatistics( RecordManagerStatistics stats )
+    {
+        stats.set( RecordManagerStatistics.ROWS_REUSED, rowsReused );
+        stats.set( RecordManagerStatistics.ROWS_ALLOCATED, rowsAllocated );
+        stats.set( RecordManagerStatistics.ROWS_FREED, rowsFreed );
+        stats.set( RecordManagerStatistics.ROWS_MOVED, rowsMoved );
     }
 
     /**
@@ -195,7 +261,7 @@ final class PhysicalRowIdManager
         short dataOffset = (short) (rowid.getOffset() + RecordHeader.SIZE);
         while ( leftToRead > 0 ) {
             // copy current page's data to return buffer
-            int toCopy = RecordFile.BLOCK_SIZE - dataOffset;
+            int toCopy = blockSize - dataOffset;
             if ( leftToRead < toCopy ) {
                 toCopy = leftToRead;
             }
@@ -231,6 +297,8 @@ final class PhysicalRowIdManager
         Location retval = freeman.get( size );
         if ( retval == null ) {
             retval = allocNew( size, pageman.getLast( Magic.USED_PAGE ) );
+        } else {
+            rowsReused++;
         }
         return retval;
     }
@@ -244,14 +312,101 @@ final class PhysicalRowIdManager
 	 * @param start
 	 *            The blockId of the next in use page to be scanned. When zero,
 	 *            a new page will be allocated. If nothing is found on the
-	 *            current page, then the previous page in the in use page linked
-	 *            list is scanned (using a recursive call).
+	 *            current page, then a new page is allocated.
 	 * 
 	 * @return The location of the new physical row.
 	 */
     private Location allocNew( int size, long start )
         throws IOException
     {
+        Tail tail = new Tail();
+        findTail( start, tail );
+        return allocAt( size, tail );
+    }
+
+    /**
+     * The position following the last physical row on the last in use page,
+     * which is where new physical rows are allocated. The record header at
+     * that position has no available space. When <i>block</i> is zero, the
+     * last page is full and a new page must be allocated.
+     */
+    private static class Tail {
+        long block;
+        int pos;
+    }
+
+    /**
+     * Scans the indicated in use page for the position following its last
+     * physical row.
+     * 
+     * @param start
+     *            The blockId of the page to be scanned, or zero if a new page
+     *            is required.
+     * @param tail
+     *            Set to the position found.
+     */
+    private void findTail( long start, Tail tail )
+        throws IOException
+    {
+        tail.block = 0;
+        tail.pos = 0;
+        if ( start == 0 ) {
+            return;
+        }
+        BlockIo curBlock = file.get( start );
+        try {
+            DataPage curPage = DataPage.getDataPageView( curBlock );
+
+            // follow the rowids on this page to get to the last one. We don't
+            // fall off, because this is the last page, remember?
+            int pos = curPage.getFirst();
+            if ( pos == 0 ) {
+                // page is exactly filled by the last block of a record
+                return;
+            }
+
+            RecordHeader hdr = new RecordHeader( curBlock, (short) pos );
+            while ( hdr.getAvailableSize() != 0 && pos < (blockSize-RecordHeader.SIZE) ) {
+                pos += hdr.getAvailableSize() + RecordHeader.SIZE;
+                if ( pos == blockSize ) {
+                    // Again, a filled page.
+                    return;
+                }
+                /*
+                 * FIXME I am seeing an exception thrown from the next line that is
+                 * is linked to how the physical rows on the page are being scanned.
+                 * I believe that the code is failing to test for a number of fence
+                 * posts.  It can be fixed, but we could also factor out an iterator
+                 * to scan a page.  See DumpUtility for some code that does the same
+                 * thing.
+                 */ 
+                hdr = new RecordHeader( curBlock, (short) pos );
+            }
+            tail.block = start;
+            tail.pos = pos;
+        } finally {
+            file.release( curBlock );
+        }
+    }
+
+    /**
+     * Allocates a new physical row at the tail of the in use pages and
+     * advances the tail past it.
+     * 
+     * @param size
+     *            The capacity of the physical row
+     * @param tail
+     *            The position at which to allocate the row, which is updated
+     *            to the position following the new row.
+     *            
+     * @return The location of the new physical row.
+     */
+    private Location allocAt( int size, Tail tail )
+        throws IOException
+    {
+        rowsAllocated++;
+        long start = tail.block;
+        int pos = tail.pos;
         BlockIo curBlock;
         DataPage curPage;
         if ( start == 0 ) {
@@ -260,82 +415,52 @@ final class PhysicalRowIdManager
             curBlock = file.get( start );
             curPage = DataPage.getDataPageView( curBlock );
             curPage.setFirst( DataPage.O_DATA );
-            RecordHeader hdr = new RecordHeader( curBlock, DataPage.O_DATA );
-            hdr.setAvailableSize( 0 );
-            hdr.setCurrentSize( 0 );
+            pos = DataPage.O_DATA;
         } else {
             curBlock = file.get( start );
-            curPage = DataPage.getDataPageView( curBlock );
-        }
-
-        // follow the rowids on this page to get to the last one. We don't
-        // fall off, because this is the last page, remember?
-        short pos = curPage.getFirst();
-        if ( pos == 0 ) {
-            // page is exactly filled by the last block of a record
-            file.release( curBlock );
-            return allocNew( size, 0 );
-        }
-
-        RecordHeader hdr = new RecordHeader( curBlock, pos );
-        while ( hdr.getAvailableSize() != 0 && pos < (RecordFile.BLOCK_SIZE-RecordHeader.SIZE) ) {
-//        while ( hdr.getAvailableSize() != 0 && pos < RecordFile.BLOCK_SIZE ) {
-            pos += hdr.getAvailableSize() + RecordHeader.SIZE;
-            if ( pos == RecordFile.BLOCK_SIZE ) {
-                // Again, a filled page.
-                file.release( curBlock );
-                return allocNew( size, 0 );
-            }
-            /*
-			 * FIXME I am seeing an exception thrown from the next line that is
-			 * is linked to how the physical rows on the page are being scanned.
-			 * I believe that the code is failing to test for a number of fence
-			 * posts.  It can be fixed, but we could also factor out an iterator
-			 * to scan a page.  See DumpUtility for some code that does the same
-			 * thing.
-			 */ 
-            hdr = new RecordHeader( curBlock, pos );
-        }
-
-        if ( pos == RecordHeader.SIZE ) {
-            // the last record exactly filled the page. Restart forcing
-            // a new page.
-            file.release( curBlock );
         }
+        RecordHeader hdr = new RecordHeader( curBlock, (short) pos );
 
         // we have the position, now tack on extra pages until we've got
         // enough space.
-        Location retval = new Location( start, pos );
-        int freeHere = RecordFile.BLOCK_SIZE - pos - RecordHeader.SIZE;
+        Location retval = new Location( start, (short) pos );
+        int freeHere = blockSize - pos - RecordHeader.SIZE;
         if ( freeHere < size ) {
             // check whether the last page would have only a small bit left.
             // if yes, increase the allocation. A small bit is a record
             // header plus 16 bytes.
-            int lastSize = (size - freeHere) % DataPage.DATA_PER_PAGE;
-            if (( DataPage.DATA_PER_PAGE - lastSize ) < (RecordHeader.SIZE + 16) ) {
-                size += (DataPage.DATA_PER_PAGE - lastSize);
+            int lastSize = (size - freeHere) % dataPerPage;
+            if (( dataPerPage - lastSize ) < (RecordHeader.SIZE + 16) ) {
+                size += (dataPerPage - lastSize);
             }
 
             // write out the header now so we don't have to come back.
             hdr.setAvailableSize( size );
+            hdr.setCurrentSize( 0 );
             file.release( start, true );
 
             int neededLeft = size - freeHere;
-            // Refactor these two blocks!
-            while ( neededLeft >= DataPage.DATA_PER_PAGE ) {
-                start = pageman.allocate( Magic.USED_PAGE );
+            tail.block = 0;
+            // allocate the remaining pages as one contiguous run so that
+            // the record can be read sequentially.
+            int npages = ( neededLeft + dataPerPage - 1 ) / dataPerPage;
+            start = pageman.allocate( Magic.USED_PAGE, npages );
+            while ( neededLeft >= dataPerPage ) {
                 curBlock = file.get( start );
                 curPage = DataPage.getDataPageView( curBlock );
                 curPage.setFirst( (short) 0 ); // no rowids, just data
                 file.release( start, true );
-                neededLeft -= DataPage.DATA_PER_PAGE;
+                neededLeft -= dataPerPage;
+                start++;
             }
             if ( neededLeft > 0 ) {
-                // done with whole chunks, allocate last fragment.
-                start = pageman.allocate( Magic.USED_PAGE );
+                // done with whole chunks, set up the last fragment.
                 curBlock = file.get( start );
                 curPage = DataPage.getDataPageView( curBlock );
                 curPage.setFirst( (short) (DataPage.O_DATA + neededLeft) );
+                tail.block = start;
+                tail.pos = DataPage.O_DATA + neededLeft;
+                new RecordHeader( curBlock, (short) tail.pos ).setAvailableSize( 0 );
                 file.release( start, true );
             }
         } else {
@@ -346,24 +471,163 @@ final class PhysicalRowIdManager
                 size = freeHere;
             }
             hdr.setAvailableSize( size );
+            hdr.setCurrentSize( 0 );
+            tail.pos = pos + RecordHeader.SIZE + size;
+            if ( tail.pos == blockSize ) {
+                tail.block = 0;
+            } else {
+                tail.block = start;
+                new RecordHeader( curBlock, (short) tail.pos ).setAvailableSize( 0 );
+            }
             file.release( start, true );
         }
         return retval;
 
     }
 
+    /**
+     * Inserts a batch of new records. The free list is not consulted: the
+     * records are packed one after the other following the last physical
+     * row of the in use pages, onto new pages as required, in a single pass
+     * and without rescanning the last page for each record.
+     *
+     * @param data The records. Each record must be at least one byte long.
+     * @return The new physical rowids, in the same order as <i>data</i>.
+     */
+    Location[] insertAll( byte[][] data )
+        throws IOException
+    {
+        Location[] retval = new Location[ data.length ];
+        Tail tail = new Tail();
+        findTail( pageman.getLast( Magic.USED_PAGE ), tail );
+        for ( int i = 0; i < data.length; i++ ) {
+            int length = data[ i ].length;
+            if ( length <= 0 ) {
+                throw new IllegalArgumentException("Data rows must be greater than or equal to 1 byte in length");
+            }
+            retval[ i ] = allocAt( length, tail );
+            write( retval[ i ], data[ i ], 0, length );
+        }
+        return retval;
+    }
+
 
+    /**
+     * Frees a physical row. The row is merged with any free rows which
+     * precede or follow it on the same page, and pages which no longer
+     * hold any part of a row are given back to the page manager:
+     * <ul>
+     * <li>The pages holding only the continuation of a row spanning several
+     * pages are freed and the tail of the row on its last page becomes a
+     * free row of its own.</li>
+     * <li>A free row followed by the unallocated space at the end of the last
+     * page is returned to that unallocated space.</li>
+     * <li>A page left holding a single free row, or no rows at all, is
+     * freed.</li>
+     * </ul>
+     * Only the rest of the free row is put on the free list.
+     */
     private void free( Location id )
         throws IOException
     {
         // get the rowid, and write a zero current size into it.
-        BlockIo curBlock = file.get( id.getBlock() );
-        RecordHeader hdr = new RecordHeader( curBlock, id.getOffset() );
+        long blockId = id.getBlock();
+        int pos = id.getOffset();
+        BlockIo curBlock = file.get( blockId );
+        RecordHeader hdr = new RecordHeader( curBlock, (short) pos );
         hdr.setCurrentSize( 0 );
-        file.release( id.getBlock(), true );
+        int size = hdr.getAvailableSize();
 
-        // write the rowid to the free list
-        freeman.put( id, hdr.getAvailableSize() );
+        // give back the pages holding only the continuation of the row.
+        int spill = pos + RecordHeader.SIZE + size - blockSize;
+        if ( spill > 0 && pos + RecordHeader.SIZE < blockSize ) {
+            size -= spill;
+            hdr.setAvailableSize( size );
+            file.release( blockId, true );
+            freeContinuation( pageman.getNext( blockId ), spill );
+            curBlock = file.get( blockId );
+            hdr = new RecordHeader( curBlock, (short) pos );
+        }
+
+        // merge with a following free row, or with the unallocated space.
+        int end = pos + RecordHeader.SIZE + size;
+        boolean unallocated = false;
+        if ( end <= blockSize - RecordHeader.SIZE ) {
+            RecordHeader next = new RecordHeader( curBlock, (short) end );
+            if ( freeman.remove( new Location( blockId, (short) end ) ) ) {
+                size += RecordHeader.SIZE + next.getAvailableSize();
+                hdr.setAvailableSize( size );
+            } else if ( next.getAvailableSize() == 0
+                        && blockId == pageman.getLast( Magic.USED_PAGE ) ) {
+                unallocated = true;
+            }
+        }
+
+        // merge with a preceding free row.
+        DataPage curPage = DataPage.getDataPageView( curBlock );
+        int first = curPage.getFirst();
+        int prev = 0;
+        for ( int p = first; p != 0 && p < pos; ) {
+            prev = p;
+            p += RecordHeader.SIZE
+                + new RecordHeader( curBlock, (short) p ).getAvailableSize();
+        }
+        if ( prev != 0
+             && freeman.remove( new Location( blockId, (short) prev ) ) ) {
+            size += RecordHeader.SIZE + pos - prev - RecordHeader.SIZE;
+            pos = prev;
+            hdr = new RecordHeader( curBlock, (short) pos );
+            hdr.setAvailableSize( size );
+        }
+
+        if ( unallocated ) {
+            // the free space is now the unallocated space at the end of the
+            // last page.
+            hdr.setAvailableSize( 0 );
+        }
+        if ( pos == DataPage.O_DATA && first == DataPage.O_DATA
+             && ( unallocated
+                  || pos + RecordHeader.SIZE + size == blockSize ) ) {
+            // nothing else on this page.
+            file.release( blockId, true );
+            pageman.free( Magic.USED_PAGE, blockId );
+            return;
+        }
+        file.release( blockId, true );
+        if ( ! unallocated ) {
+            // write the rowid to the free list
+            freeman.put( new Location( blockId, (short) pos ), size );
+        }
+    }
+
+    /**
+     * Frees the pages which hold only the continuation of a row spanning
+     * several pages and turns the part of the row on the last page, if any,
+     * into a free row.
+     *
+     * @param blockId The first page after the page on which the row starts.
+     * @param spill The number of bytes of the row on the following pages.
+     */
+    private void freeContinuation( long blockId, int spill )
+        throws IOException
+    {
+        while ( spill >= dataPerPage ) {
+            long next = pageman.getNext( blockId );
+            pageman.free( Magic.USED_PAGE, blockId );
+            spill -= dataPerPage;
+            blockId = next;
+        }
+        if ( spill > RecordHeader.SIZE ) {
+            // the last page starts with the tail of the row.
+            BlockIo curBlock = file.get( blockId );
+            DataPage.getDataPageView( curBlock ).setFirst( DataPage.O_DATA );
+            RecordHeader hdr = new RecordHeader( curBlock, DataPage.O_DATA );
+            hdr.setAvailableSize( spill - RecordHeader.SIZE );
+            hdr.setCurrentSize( 0 );
+            file.release( blockId, true );
+            free( new Location( blockId, DataPage.O_DATA ) );
+        }
+        // else the few bytes of the row on the last page are left unused.
     }
 
     /**
@@ -388,7 +652,7 @@ final class PhysicalRowIdManager
         short dataOffset = (short) (rowid.getOffset() + RecordHeader.SIZE);
         while ( leftToWrite > 0 ) {
             // copy current page's data to return buffer
-            int toCopy = RecordFile.BLOCK_SIZE - dataOffset;
+            int toCopy = blockSize - dataOffset;
 
             if ( leftToWrite < toCopy ) {
                 toCopy = leftToWrite;
@@ -48,27 +48,37 @@
 
 package jdbm.recman;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Properties;
 
+import javax.management.JMException;
+
 import jdbm.RecordManager;
 import jdbm.RecordManagerOptions;
 import jdbm.RecordManagerProvider;
 
 import jdbm.helper.CacheAll;
 import jdbm.helper.CachePolicy;
+import jdbm.helper.CompactSerializationHandler;
 import jdbm.helper.DefaultSerializationHandler;
 import jdbm.helper.ExtensibleSerializer;
 import jdbm.helper.ExtensibleSerializerSingleton;
 import jdbm.helper.ISerializationHandler;
+import jdbm.helper.LatencyHistograms;
 import jdbm.helper.MRU;
+import jdbm.helper.SerializationProfiler;
 import jdbm.helper.MRUNativeLong;
 import jdbm.helper.SoftCache;
 import jdbm.helper.DefaultSerializer;
+import jdbm.helper.ByteArraySerializer;
 import jdbm.helper.WeakCache;
 import jdbm.helper.compessor.BestCompressionRecordCompressor;
 import jdbm.helper.compessor.BestSpeedRecordCompressor;
 import jdbm.helper.compessor.DefaultRecordCompressor;
+import jdbm.helper.compessor.FastRecordCompressor;
 import jdbm.helper.compessor.IRecordCompressor;
 import jdbm.helper.maps.LongKeyOpenHashMap;
 
@@ -96,6 +106,24 @@ public final class Provider
     public RecordManager createRecordManager( String name,
                                               Properties options )
         throws IOException
+    {
+        int shards = Integer.parseInt( options.getProperty
+            ( RecordManagerOptions.SHARDS, RecordManagerOptions.SHARDS_DEFAULT ) );
+        if( shards > 1 ) {
+            return new ShardedRecordManager( name, shards, options );
+        }
+        return createRecordManager( name, options, null );
+    }
+
+    /**
+     * Create a default implementation record manager which only recovers
+     * the transactions of its log accepted by a filter.
+     *
+     * @see ShardedRecordManager
+     */
+    RecordManager createRecordManager( String name, Properties options,
+                                       RecoveryFilter recoveryFilter )
+        throws IOException
     {
         BaseRecordManager  baserecman; 
         RecordManager      recman; // returned to caller.
@@ -105,7 +133,14 @@ public final class Provider
         if( value.equalsIgnoreCase( "TRUE") ) {
             recman = baserecman = new DumpUtility( name );
         } else {
-            recman = baserecman = new BaseRecordManager( name );
+            value = options.getProperty( RecordManagerOptions.PAGE_SIZE,
+                                         RecordManagerOptions.PAGE_SIZE_DEFAULT );
+            int pageSize = Integer.parseInt( value );
+            value = options.getProperty( RecordManagerOptions.RECOVERY_THREADS,
+                                         RecordManagerOptions.RECOVERY_THREADS_DEFAULT );
+            int recoveryThreads = Integer.parseInt( value );
+            recman = baserecman = new BaseRecordManager( name, pageSize, recoveryThreads,
+                                                         recoveryFilter );
         }
 
         // Some RecordFile options.
@@ -124,6 +159,11 @@ public final class Provider
             int counterDisplayRate = Integer.parseInt( value );
             baserecman._file.setCounterDisplayRate( counterDisplayRate );
         }
+        value = options.getProperty( "jdbm.RecordFile.maxWriteBatchSize" );
+        if( value != null ) {
+            int maxWriteBatchSize = Integer.parseInt( value );
+            baserecman._file.setMaxWriteBatchSize( maxWriteBatchSize );
+        }
         value = options.getProperty( RecordManagerOptions.DISABLE_TRANSACTIONS, "false" );
         if ( value.equalsIgnoreCase( "TRUE" ) ) {
             value = options.getProperty
@@ -266,6 +306,7 @@ public final class Provider
               RecordManagerOptions.COMPRESSOR,
               null
               );
+        final boolean newCompressor = value == null;
         if( value == null ) {
             value = options.getProperty
             	( RecordManagerOptions.COMPRESSOR,
@@ -279,6 +320,17 @@ public final class Provider
             compressor = new BestSpeedRecordCompressor();
         } else if( RecordManagerOptions.COMPRESSOR_BEST_COMPRESSION.equals(value)) {
             compressor = new BestCompressionRecordCompressor();
+        } else if( RecordManagerOptions.COMPRESSOR_FAST.equals(value)) {
+            int threshold = Integer.parseInt
+                ( options.getProperty
+                  ( RecordManagerOptions.COMPRESSOR_THRESHOLD,
+                    ""+FastRecordCompressor.DEFAULT_THRESHOLD
+                    )
+                  );
+            byte[] dictionary = getDictionary
+                ( options, recman, baserecman, newCompressor
+                  );
+            compressor = new FastRecordCompressor( threshold, dictionary );
         } else {
             throw new IllegalArgumentException
                ( "option="+RecordManagerOptions.COMPRESSOR+", value="+value
@@ -301,6 +353,20 @@ public final class Provider
         // Set the serialization handler now that the compressor is in place.
         setupSerializationHandler( options, recman, serializerValue );
 
+        // Optionally profile serialization (for all serializers).
+        value = options.getProperty( RecordManagerOptions.PROFILE_SERIALIZATION,
+                                     "false" );
+        if( value.equalsIgnoreCase( "TRUE" ) ) {
+            SerializationProfiler profiler = new SerializationProfiler();
+            try {
+                profiler.registerMBean( name );
+            } catch( JMException ex ) {
+                System.err.println( "WARN: could not register the serialization profiler: "
+                                    + ex );
+            }
+            baserecman._profiler = profiler;
+        }
+
         /*
          * Optionally setup the page at a time record installer.
          */
@@ -322,6 +388,27 @@ public final class Provider
 					baserecman._file, baserecman._logMgr, baserecman._physMgr,
 					baserecman._pageman, wasteMargin, wasteMargin2);
 		}
+
+        // Optionally record latency histograms.
+        value = options.getProperty( RecordManagerOptions.LATENCY_HISTOGRAMS, "false" );
+        if( value.equalsIgnoreCase( "TRUE" ) ) {
+            LatencyHistograms latencies = new LatencyHistograms();
+            baserecman._latencies = latencies;
+            baserecman._file.latencies = latencies;
+        }
+
+        // Optionally expose the statistics as an MBean.
+        value = options.getProperty( RecordManagerOptions.JMX, "false" );
+        if( value.equalsIgnoreCase( "TRUE" ) ) {
+            StatisticsMBean mbean = new StatisticsMBean( recman );
+            try {
+                mbean.registerMBean( name );
+                baserecman._statisticsMBean = mbean;
+            } catch( JMException ex ) {
+                System.err.println( "WARN: could not register the statistics: "
+                                    + ex );
+            }
+        }
 		
         return recman;
     }
@@ -329,6 +416,71 @@ public final class Provider
     private Properties _stickyOptions;
     private long _stickyOptionsId;
 
+    /**
+     * Sticky option holding the recid of the dictionary of the
+     * {@link FastRecordCompressor}.
+     */
+    static final String DICTIONARY_RECID = "jdbm.compressor.dictionary.recid";
+
+    /**
+     * Returns the dictionary for the {@link FastRecordCompressor}, if any.
+     * <p>
+     * The dictionary is stored as a raw record whose recid is a sticky
+     * option. It is neither a named object nor compressed since it must be
+     * read before the compressor is set up, while the name directory may be
+     * compressed.
+     * 
+     * @param newCompressor
+     *            True if the compressor is being selected for the store, in
+     *            which case the {@link RecordManagerOptions#COMPRESSOR_DICTIONARY}
+     *            file (if any) is copied into the store.
+     * 
+     * @return The dictionary or <code>null</code> if there is none.
+     */
+    protected byte[] getDictionary( Properties options, RecordManager recman,
+            BaseRecordManager baserecman, boolean newCompressor )
+        throws IOException
+    {
+        String value = getStickyOption( recman, DICTIONARY_RECID, null );
+        String file = options.getProperty
+            ( RecordManagerOptions.COMPRESSOR_DICTIONARY
+              );
+        if( value == null && file != null ) {
+            if( ! newCompressor ) {
+                System.err.println( "WARN: dictionary=" + file
+                        + " ignored since the compressor is already in use" );
+            } else {
+                byte[] dictionary = readFile( file );
+                // bypasses the cache so that the record is written now.
+                long recid = baserecman.insert
+                    ( dictionary, ByteArraySerializer.INSTANCE
+                      );
+                value = "" + recid;
+                setStickyOption( recman, DICTIONARY_RECID, value );
+            }
+        }
+        if( value == null ) {
+            return null;
+        }
+        return (byte[]) baserecman.fetch
+            ( Long.parseLong( value ), ByteArraySerializer.INSTANCE
+              );
+    }
+
+    private static byte[] readFile( String file )
+        throws IOException
+    {
+        File f = new File( file );
+        byte[] data = new byte[ (int) f.length() ];
+        DataInputStream is = new DataInputStream( new FileInputStream( f ) );
+        try {
+            is.readFully( data );
+        } finally {
+            is.close();
+        }
+        return data;
+    }
+
     /**
      * Initializes {@link #_stickyOptions}.  The sticky options are stored as a
      * root object.  If the root object does not exist, then it is created and
@@ -521,6 +673,37 @@ public final class Provider
 
 	    ser = proxy;
 
+	} else if( value.equalsIgnoreCase(RecordManagerOptions.SERIALIZER_COMPACT)) {
+
+	    // "compact"
+
+	    // The class registry is accessed through the base record manager
+	    // since it is updated while serializing records.
+	    RecordManager base = recman.getBaseRecordManager();
+
+	    long recid = base.getRoot
+	    	( BaseRecordManager.DEFAULT_SERIALIZER_ROOT
+	    	  );
+
+	    if( recid == 0L ) {
+
+	        CompactSerializationHandler compact = CompactSerializationHandler.createInstance
+	            ( base
+	              );
+
+	        base.setRoot
+	            ( BaseRecordManager.DEFAULT_SERIALIZER_ROOT,
+		      compact.getRecid()
+		      );
+
+	        ser = compact;
+
+	    } else {
+
+	        ser = CompactSerializationHandler.load( base, recid );
+
+	    }
+
 	} else {
 	    
 	    throw new IllegalArgumentException
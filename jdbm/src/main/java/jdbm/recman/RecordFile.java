@@ -49,22 +49,29 @@ package jdbm.recman;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import jdbm.helper.CacheEvictionException;
-import jdbm.helper.CachePolicyListener;
-import jdbm.helper.MRUNativeLong;
-import jdbm.helper.Serializer;
-import jdbm.helper.maps.LongKeyChainedHashMap;
-import jdbm.helper.maps.LongKeyMap;
+import jdbm.RecordManagerOptions;
+import jdbm.RecordManagerStatistics;
+import jdbm.helper.LatencyHistograms;
 
 /**
  * This class represents a random access file as a set of fixed size records
  * known as <em>blocks</em> or <em>pages</em>. Each record has a physical
  * record number (<em>blockid</em>), and records are cached in order to
- * improve access. The size of a block is specified by {@link #BLOCK_SIZE}. A
+ * improve access. The size of a block is chosen when the file is created
+ * (see {@link #getBlockSize()}) and defaults to {@link #BLOCK_SIZE}. A
  * block is modeled by {@link BlockIo}which provides an in-memory copy of the
  * state of the block on disk and also maintains some metadata about the state
  * of the block.
@@ -103,8 +110,8 @@ import jdbm.helper.maps.LongKeyMap;
  * <p>
  * 
  * The <em>clean</em> list contains those pages which have been fetched from
- * the store and whose state has NOT been modified. The clean list is
- * implemented as a MRU based on a hash map. Pages that fall off of the end of
+ * the store and whose state has NOT been modified. The clean list is kept in
+ * least recently used order. Pages that fall off of the end of
  * the clean list are migrated to the "free" list for reuse. The size of the
  * clean list is capped by a configurable parameter.
  * <p>
@@ -140,6 +147,12 @@ import jdbm.helper.maps.LongKeyMap;
  * free, dirty, in-use, in-transaction}.
  * <p>
  * 
+ * The in-use, dirty, in-txn and clean lists are held by a single
+ * {@link BlockTable}, which records the list of each page, so that
+ * {@link #get(long)} and {@link #release(BlockIo)} find a page and move it
+ * to another list with a single hash probe and without allocating.
+ * <p>
+ * 
  * Some questions:
  * <ul>
  * 
@@ -255,11 +268,18 @@ import jdbm.helper.maps.LongKeyMap;
  * @see TransactionManager
  */
 public final class RecordFile
-    implements CachePolicyListener
 {
     
     final TransactionManager txnMgr;
 
+    /**
+     * Latency histograms (optional), used to time checkpoints of the
+     * transaction log.
+     *
+     * @see BaseRecordManager#getLatencyHistograms()
+     */
+    LatencyHistograms latencies;
+
     /**
      * Size of the MRU consisting of blocks that are clean (recently
      * read and not modified since).  Blocks that fall off of the MRU
@@ -279,6 +299,12 @@ public final class RecordFile
      */
     private int maxDirtySize = 10000;
 
+    /**
+     * Maximum #of adjacent blocks that are coalesced into a single gathering
+     * write when dirty blocks are written back onto the data file.
+     */
+    private int maxWriteBatchSize = 64;
+
     // Todo: reorganize in hashes and fifos as necessary.
     // free -> inUse -> dirty -> inTxn -> free
     // free is a cache, thus a FIFO. The rest are hashes.
@@ -289,37 +315,51 @@ public final class RecordFile
     private final LinkedList free = new LinkedList();
 
     /**
-     * Blocks that are clean (vs dirty) to avoid re-reads of clean blocks
-     * (blocks whose state in current with the state of the block on disk). MRU
-     * policy governs ejection of LRU pages from this cache (to the free list or
-     * the GC depending on the size of the free list).
-     * <P>
-     * Note: The {dirty,serializer} metadata maintained by the object CachePolicy
-     * are ignored for the purposes of the RecordFile cache.
+     * The blocks held in memory, each of which is in one of these states:
+     * <dl>
+     * <dt>{@link BlockTable#IN_USE}</dt><dd>Blocks currently locked for
+     * read/update ops. When released the block goes to the dirty or clean
+     * list, depending on a flag.  The file header block is normally locked
+     * plus the block that is currently being read or modified (see
+     * {@link BlockIo#isDirty()}).</dd>
+     * <dt>{@link BlockTable#DIRTY}</dt><dd>Blocks whose state is
+     * dirty.</dd>
+     * <dt>{@link BlockTable#IN_TXN}</dt><dd>Blocks in a <em>historical</em>
+     * transaction(s) that have been written onto the log but which have not
+     * yet been committed to the database.</dd>
+     * <dt>{@link BlockTable#CLEAN}</dt><dd>Blocks that are clean (vs dirty)
+     * to avoid re-reads of clean blocks (blocks whose state in current with
+     * the state of the block on disk). LRU pages are ejected from this cache
+     * (to the free list or the GC depending on the size of the free list)
+     * once it holds more than {@link #cleanMRUSize} blocks.</dd>
+     * </dl>
      */
-    private MRUNativeLong clean = new MRUNativeLong( cleanMRUSize );
+    private final BlockTable blocks = new BlockTable(cleanMRUSize);
     
+    // transactions disabled?
+    private boolean transactionsDisabled = false;
+
     /**
-     * Blocks currently locked for read/update ops. When released the block goes
-     * to the dirty or clean list, depending on a flag.  The file header block is
-     * normally locked plus the block that is currently being read or modified.
-     * 
-     * @see BlockIo#isDirty()
+     * The blocks written onto the data file since the last backup started,
+     * which an incremental backup copies. Only meaningful once
+     * {@link #changesTracked} is set.
      */
-    private final LongKeyMap inUse = new LongKeyChainedHashMap();
+    private BitSet changed = new BitSet();
 
     /**
-     * Blocks whose state is dirty.
+     * True once a backup has started since the file was opened. The blocks
+     * changed before that are not known, so the first backup is a full one.
      */
-    private final LongKeyMap dirty = new LongKeyChainedHashMap();
+    private boolean changesTracked = false;
+
     /**
-     * Blocks in a <em>historical</em> transaction(s) that have been written
-     * onto the log but which have not yet been committed to the database.
+     * The canonical name of the data file of the last backup, which an
+     * incremental backup may update, or null.
      */
-    private final LongKeyMap inTxn = new LongKeyChainedHashMap();
-    
-    // transactions disabled?
-    private boolean transactionsDisabled = false;
+    private String lastBackup;
+
+    /** The backup in progress or null. */
+    private volatile Backup backup;
     
     /** sync file on close if transactions are disabled - this ensures that
      *  all data is actually persisted to physical disk when the file is closed
@@ -327,21 +367,34 @@ public final class RecordFile
      */
     private boolean syncOnClose = true;
     
-    /** The length of a single block. */
+    /** The default length of a single block. */
     public final static int BLOCK_SIZE = 8192; //16384; //4096;
 
+    /** The smallest length of a block that may be chosen for a new file. */
+    public final static int MIN_BLOCK_SIZE = 4096;
+
+    /**
+     * The largest length of a block that may be chosen for a new file. This
+     * is bounded by the use of a signed short for the offset within a block
+     * in {@link Location} and {@link PhysicalRowId}.
+     */
+    public final static int MAX_BLOCK_SIZE = 32768;
+
     /** The extension of a record file */
     final static String extension = ".db";
 
+    /** The length of a single block in this file. */
+    private final int blockSize;
+
     /** A block of clean data to wipe clean pages. */
-    final static byte[] cleanData = new byte[BLOCK_SIZE];
+    final byte[] cleanData;
 
     private RandomAccessFile file;
     private final String fileName;
 
     /**
-     *  Creates a new object on the indicated filename. The file is
-     *  opened in read/write mode.
+     *  Creates a new object on the indicated filename using the default
+     *  block size for a new file. The file is opened in read/write mode.
      *
      *  @param fileName the name of the file to open or create, without
      *         an extension.
@@ -349,13 +402,78 @@ public final class RecordFile
      *          RandomAccessFile throws it.
      */
     RecordFile(String fileName) throws IOException {
+        this(fileName, BLOCK_SIZE);
+    }
+
+    /**
+     *  Creates a new object on the indicated filename. The file is
+     *  opened in read/write mode. The block size is only used when the
+     *  file is created - an existing file always uses the block size
+     *  recorded in its file header.
+     *
+     *  @param fileName the name of the file to open or create, without
+     *         an extension.
+     *  @param blockSize the length of a block for a new file. This must be
+     *         a power of two between {@link #MIN_BLOCK_SIZE} and
+     *         {@link #MAX_BLOCK_SIZE}.
+     *  @throws IOException whenever the creation of the underlying
+     *          RandomAccessFile throws it.
+     */
+    RecordFile(String fileName, int blockSize) throws IOException {
+        this(fileName, blockSize, Integer.parseInt(
+            RecordManagerOptions.RECOVERY_THREADS_DEFAULT));
+    }
+
+    /**
+     *  Creates a new object on the indicated filename. The file is
+     *  opened in read/write mode and recovered from its transaction log
+     *  if needed.
+     *
+     *  @param fileName the name of the file to open or create, without
+     *         an extension.
+     *  @param blockSize the length of a block for a new file.
+     *  @param recoveryThreads the number of threads writing the blocks
+     *         of the transaction log onto the file during recovery.
+     *  @throws IOException whenever the creation of the underlying
+     *          RandomAccessFile throws it.
+     *  @see #RecordFile(String, int)
+     */
+    RecordFile(String fileName, int blockSize, int recoveryThreads)
+        throws IOException {
+        this(fileName, blockSize, recoveryThreads, null);
+    }
+
+    /**
+     *  Creates a new object on the indicated filename. The file is
+     *  opened in read/write mode and the transactions of its log which
+     *  the filter accepts are recovered.
+     *
+     *  @param recoveryFilter decides which transactions of the log are
+     *         recovered, or null to recover all of them.
+     *  @see #RecordFile(String, int, int)
+     */
+    RecordFile(String fileName, int blockSize, int recoveryThreads,
+               RecoveryFilter recoveryFilter)
+        throws IOException {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE
+            || (blockSize & (blockSize - 1)) != 0) {
+            throw new IllegalArgumentException(
+                "Argument 'blockSize' is invalid: " + blockSize );
+        }
         this.fileName = fileName;
         if( new File( fileName + extension ).exists() ) {
         	System.err.println("INFO: database exists: "+fileName);
         }
         file = new RandomAccessFile(fileName + extension, "rw");
-        txnMgr = new TransactionManager(this);
-        clean.addListener( this );
+        if (file.length() >= FileHeader.O_PAGESIZE + Magic.SZ_INT) {
+            // the block size of an existing file is sticky.
+            file.seek(FileHeader.O_MAGIC);
+            short magic = file.readShort();
+            blockSize = FileHeader.getPageSize(magic, file.readInt());
+        }
+        this.blockSize = blockSize;
+        cleanData = new byte[blockSize];
+        txnMgr = new TransactionManager(this, recoveryThreads, recoveryFilter);
     }
 
     
@@ -366,6 +484,20 @@ public final class RecordFile
         return fileName;
     }
 
+    /**
+     *  Returns the length of a block in this file.
+     */
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     *  Returns true if transactions are disabled.
+     */
+    boolean isTransactionsDisabled() {
+        return transactionsDisabled;
+    }
+
     /**
      *  Disables transactions: doesn't sync and doesn't use the
      *  transaction manager.
@@ -393,7 +525,6 @@ public final class RecordFile
 
     void setCleanMRUCapacity( int val ) {
         cleanMRUSize = val;
-        clean = new MRUNativeLong( cleanMRUSize );
     }
     
     /**
@@ -405,6 +536,22 @@ public final class RecordFile
     void setFreeListCapacity( int val ) {
         maxFreeSize = val;
     }
+
+    /**
+     * Set the maximum #of adjacent blocks that will be coalesced into a
+     * single write when dirty blocks are written back onto the data file.
+     * A value of one (1) writes each block individually.
+     * 
+     * @param val The maximum #of blocks per write.
+     */
+
+    void setMaxWriteBatchSize( int val ) {
+        if ( val <= 0 ) {
+            throw new IllegalArgumentException(
+                "Argument 'val' must be greater than 0." );
+        }
+        maxWriteBatchSize = val;
+    }
     
     /**
      * When non-zero, a set of counters will be displayed event N events. An
@@ -430,58 +577,42 @@ public final class RecordFile
      BlockIo get(long blockid) throws IOException {
          long key = blockid;
 
-         // try in transaction list, dirty list, clear, free list
-         BlockIo node = (BlockIo) inTxn.get(key);
+         // try in transaction list, dirty list, clean list (but NOT the
+         // free list -- it is just an allocation cache).
+         BlockIo node = blocks.get(key);
          if (node != null) {
-             inTxn.remove(key);
-             inUse.put(key, node);
+             switch (node.state) {
+             case BlockTable.IN_TXN:
+             case BlockTable.DIRTY:
+                 dirtyBlocksHitCount++;
+                 break;
+             case BlockTable.CLEAN:
+                 cleanBlocksHitCount++;
+                 break;
+             default:
+                 // sanity check: can't be on in use list
+                 throw new Error("double get for block " + blockid);
+             }
+             blocks.setState(node, BlockTable.IN_USE);
              return node;
          }
-         node = (BlockIo) dirty.get(key);
-         if (node != null) {
-             dirty.remove(key);
-             inUse.put(key, node);
-             return node;
-         }
-         node = (BlockIo) clean.get( new Long( key ) );
-         if( node != null ) {
-             clean.remove( new Long( key ) );
-             cleanBlocksHitCount++;
-             inUse.put( key, node );
-             return node;
-         }
-// Do NOT check the free list -- it is just an allocation cache.         
-//         for (Iterator i = free.iterator(); i.hasNext(); ) {
-//             BlockIo cur = (BlockIo) i.next();
-//             if (cur.getBlockId() == blockid) {
-//                 node = cur;
-//                 i.remove();
-//                 inUse.put(key, node);
-//                 return node;
-//             }
-//         }
-
-         // sanity check: can't be on in use list
-         if (inUse.get(key) != null) {
-             throw new Error("double get for block " + blockid);
-         }
 
          // get a new node and read it from the file
          node = getNewNode(blockid);
-         long offset = blockid * BLOCK_SIZE;
+         long offset = blockid * blockSize;
          if (file.length() > 0 && offset <= file.length()) {
              // read a block from disk.
-             read(file, offset, node.getData(), BLOCK_SIZE);
+             read(offset, node.getData(), blockSize);
              fetchBlockCount++;
              showCounters();
          } else {
               // get beyond the end of the data file uses a blank page rather
               // extending the file.
-              System.arraycopy(cleanData, 0, node.getData(), 0, BLOCK_SIZE);
+              System.arraycopy(cleanData, 0, node.getData(), 0, blockSize);
               extendBlockCount++;
               showCounters();
          }
-         inUse.put(key, node);
+         blocks.put(key, node, BlockTable.IN_USE);
          node.setClean();
          return node;
      }
@@ -495,8 +626,8 @@ public final class RecordFile
      */
     void release(long blockid, boolean isDirty)
     throws IOException {
-        BlockIo node = (BlockIo) inUse.get(blockid);
-        if (node == null)
+        BlockIo node = blocks.get(blockid);
+        if (node == null || node.state != BlockTable.IN_USE)
             throw new IOException("bad blockid " + blockid + " on release");
         if (!node.isDirty() && isDirty)
             node.setDirty();
@@ -510,39 +641,35 @@ public final class RecordFile
      * @throws IOException
      */
     void release(BlockIo block) throws IOException {
-        long key = block.getBlockId();
-        inUse.remove(key);
         if (block.isDirty()) {
             // System.out.println( "Dirty: " + key + block );
-            dirty.put(key, block);
-            if (transactionsDisabled && dirty.size() > maxDirtySize)
+            blocks.setState(block, BlockTable.DIRTY);
+            if (transactionsDisabled && blocks.size(BlockTable.DIRTY) > maxDirtySize)
             	commit();
         } else {
             if (!transactionsDisabled && block.isInTransaction()) {
-                inTxn.put(key, block);
+                blocks.setState(block, BlockTable.IN_TXN);
             } else {
-                putClean( key, block );
-//                free.add(block);
+                putClean( block );
             }
         }
     }
 
     /**
-     * Puts a block on the "clean" MRU.  This can cause LRU clean
-     * blocks to be ejected to the "free" list.
+     * Moves a block of the table to the "clean" list.  This can cause LRU
+     * clean blocks to be ejected to the "free" list.
      * 
-     * @param key
      * @param block
      */
     
-    private void putClean( long key, BlockIo block )
+    private void putClean( BlockIo block )
     {
-        try {
-            clean.put( new Long(key), block, false, null ); // {dirty,serializer} are ignored.
-        } catch( CacheEvictionException ex ) {
-            // masquerade exception until we replace the MRU impl.
-            throw new RuntimeException( ex );
-        }   
+        blocks.setState( block, BlockTable.CLEAN );
+        while( blocks.size( BlockTable.CLEAN ) > cleanMRUSize ) {
+            BlockIo lru = blocks.first( BlockTable.CLEAN );
+            blocks.remove( lru.getBlockId() );
+            cleanBlockEvicted( lru );
+        }
     }
 
     /**
@@ -552,7 +679,7 @@ public final class RecordFile
      */
     void discard(BlockIo block) {
         long key = block.getBlockId();
-        inUse.remove(key);
+        blocks.remove(key);
 
         // note: block not added to free list on purpose, because
         //       it's considered invalid
@@ -564,47 +691,45 @@ public final class RecordFile
      */
     void commit() throws IOException {
         // debugging...
-        if (!inUse.isEmpty() && inUse.size() > 1) {
-            showList(inUse.values().iterator());
+        if (blocks.size(BlockTable.IN_USE) > 1) {
+            showList(BlockTable.IN_USE);
             throw new Error("in use list not empty at commit time ("
-                            + inUse.size() + ")");
+                            + blocks.size(BlockTable.IN_USE) + ")");
         }
 
         //  System.out.println("committing...");
 
-        if ( dirty.size() == 0 ) {
+        if ( blocks.size(BlockTable.DIRTY) == 0 ) {
             // if no dirty blocks, skip commit process
             return;
         }
 
         if( triggerRate != 0 ) showCounters( false );
 
-        if (!transactionsDisabled) {
-            txnMgr.start();
-        }
-
-        for (Iterator i = dirty.values().iterator(); i.hasNext(); ) {
-            BlockIo node = (BlockIo) i.next();
-            i.remove();
-            // System.out.println("node " + node + " map size now " + dirty.size());
-            if (transactionsDisabled) {
-                // update the page in the data file.
-                long offset = node.getBlockId() * BLOCK_SIZE;
-                file.seek(offset);
-                file.write(node.getData());
-                writeBlockCount++;
-                showCounters();
+        if (transactionsDisabled) {
+            // update the pages in the data file in block order so that
+            // runs of adjacent pages are written with a single I/O.
+            ArrayList nodes = new ArrayList(blocks.size(BlockTable.DIRTY));
+            for (BlockIo node = blocks.first(BlockTable.DIRTY); node != null;
+                 node = node.nextInState) {
+                nodes.add(node);
+            }
+            Collections.sort(nodes, new TransactionManager.BlockIoComparator());
+            synch(nodes);
+            for (Iterator i = nodes.iterator(); i.hasNext(); ) {
+                BlockIo node = (BlockIo) i.next();
                 node.setClean();
-                putClean( node.getBlockId(), node );
-                //free.add(node);
+                putClean( node );
             }
-            else {
-		// add the page to the transaction buffer.
+        }
+        else {
+            txnMgr.start();
+            BlockIo node;
+            while ((node = blocks.first(BlockTable.DIRTY)) != null) {
+                // add the page to the transaction buffer.
                 txnMgr.add(node);
-                inTxn.put(node.getBlockId(), node);
+                blocks.setState(node, BlockTable.IN_TXN);
             }
-        }
-        if (!transactionsDisabled) {
             // write the transaction buffer to the log file.
             txnMgr.commit();
         }
@@ -622,20 +747,20 @@ public final class RecordFile
     		throw new IOException("Rollback not allowed if transactions are disabled");
     	
     	// debugging...
-        if (!inUse.isEmpty()) {
-            showList(inUse.values().iterator());
+        if (blocks.size(BlockTable.IN_USE) != 0) {
+            showList(BlockTable.IN_USE);
             throw new Error("in use list not empty at rollback time ("
-                            + inUse.size() + ")");
+                            + blocks.size(BlockTable.IN_USE) + ")");
         }
         //  System.out.println("rollback...");
-        dirty.clear();
+        blocks.removeAll(BlockTable.DIRTY);
 
         txnMgr.synchronizeLogFromDisk();
 
-        if (!inTxn.isEmpty()) {
-            showList(inTxn.values().iterator());
+        if (blocks.size(BlockTable.IN_TXN) != 0) {
+            showList(BlockTable.IN_TXN);
             throw new Error("in txn list not empty at rollback time ("
-                            + inTxn.size() + ")");
+                            + blocks.size(BlockTable.IN_TXN) + ")");
         };
     }
 
@@ -643,25 +768,25 @@ public final class RecordFile
      *  Commits and closes file.
      */
     void close() throws IOException {
-        if (!dirty.isEmpty()) {
+        if (blocks.size(BlockTable.DIRTY) != 0) {
             commit();
         }
         txnMgr.shutdown();
 
-        if (!inTxn.isEmpty()) {
-            showList(inTxn.values().iterator());
+        if (blocks.size(BlockTable.IN_TXN) != 0) {
+            showList(BlockTable.IN_TXN);
             throw new Error("In transaction not empty");
         }
 
         // these actually ain't that bad in a production release
-        if (!dirty.isEmpty()) {
+        if (blocks.size(BlockTable.DIRTY) != 0) {
             System.out.println("ERROR: dirty blocks at close time");
-            showList(dirty.values().iterator());
+            showList(BlockTable.DIRTY);
             throw new Error("Dirty blocks at close time");
         }
-        if (!inUse.isEmpty()) {
+        if (blocks.size(BlockTable.IN_USE) != 0) {
             System.out.println("ERROR: inUse blocks at close time");
-            showList(inUse.values().iterator());
+            showList(BlockTable.IN_USE);
             throw new Error("inUse blocks at close time");
         }
 
@@ -686,12 +811,14 @@ public final class RecordFile
     }
 
     /**
-     *  Prints contents of a list
+     *  Prints the blocks of a list
      */
-    private void showList(Iterator i) {
+    private void showList(byte state) {
         int cnt = 0;
-        while (i.hasNext()) {
-            System.out.println("elem " + cnt + ": " + i.next());
+        for (BlockIo node = blocks.first(state); node != null;
+             node = node.nextInState) {
+            System.out.println(BlockTable.nameOf(state) + " elem " + cnt
+                               + ": " + node);
             cnt++;
         }
     }
@@ -710,7 +837,7 @@ public final class RecordFile
             freeBlocksUsedCount++;
         }
         if (retval == null)
-            retval = new BlockIo(0, new byte[BLOCK_SIZE]);
+            retval = new BlockIo(0, new byte[blockSize]);
 
         retval.setBlockId(blockid);
         retval.setView(null);
@@ -724,7 +851,8 @@ public final class RecordFile
     void synch(BlockIo node) throws IOException {
         byte[] data = node.getData();
         if (data != null) {
-            long offset = node.getBlockId() * BLOCK_SIZE;
+            beforeWrite(node.getBlockId(), 1);
+            long offset = node.getBlockId() * blockSize;
             file.seek(offset);
             file.write(data);
             writeBlockCount++;
@@ -732,6 +860,243 @@ public final class RecordFile
         }
     }
 
+    /**
+     *  Synchs a list of nodes to disk. The nodes MUST be ordered by
+     *  increasing block id.  Runs of adjacent blocks (up to the configured
+     *  maximum write batch size) are written using a single gathering
+     *  write against the data file.
+     *
+     *  @param nodes The nodes to write.
+     *
+     *  @see #setMaxWriteBatchSize(int)
+     */
+    void synch(List nodes) throws IOException {
+        final int n = nodes.size();
+        int i = 0;
+        while (i < n) {
+            BlockIo first = (BlockIo) nodes.get(i);
+            if (first.getData() == null) {
+                i++;
+                continue;
+            }
+            // extend the run while the next block is adjacent.
+            int j = i + 1;
+            while (j < n && (j - i) < maxWriteBatchSize) {
+                BlockIo next = (BlockIo) nodes.get(j);
+                if (next.getData() == null
+                    || next.getBlockId() != first.getBlockId() + (j - i)) {
+                    break;
+                }
+                j++;
+            }
+            if (j - i == 1) {
+                synch(first);
+            } else {
+                ByteBuffer[] bufs = new ByteBuffer[j - i];
+                for (int k = i; k < j; k++) {
+                    bufs[k - i] = ByteBuffer.wrap(((BlockIo) nodes.get(k)).getData());
+                }
+                beforeWrite(first.getBlockId(), j - i);
+                FileChannel channel = file.getChannel();
+                channel.position(first.getBlockId() * blockSize);
+                long remaining = (long) (j - i) * blockSize;
+                while (remaining > 0) {
+                    remaining -= channel.write(bufs);
+                }
+                writeBlockCount += j - i;
+                writeBatchCount++;
+                showCounters();
+            }
+            i = j;
+        }
+    }
+
+    /**
+     *  Synchs a list of nodes to disk using several threads. The nodes
+     *  MUST be ordered by increasing block id. The list is cut into
+     *  chunks which the threads take in turn, each thread copying the
+     *  runs of adjacent blocks of a chunk into a buffer of its own and
+     *  writing the buffer at its position in the file, so that the
+     *  threads never share the file pointer.
+     *
+     *  @param nodes The nodes to write.
+     *  @param nthreads The number of threads. A small list or a single
+     *         thread uses {@link #synch(List)}.
+     */
+    void synch(final List nodes, int nthreads)
+        throws IOException {
+        final int n = nodes.size();
+        final int chunkSize = Math.max(maxWriteBatchSize, 256);
+        if (nthreads <= 1 || n <= chunkSize) {
+            synch(nodes);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            beforeWrite(((BlockIo) nodes.get(i)).getBlockId(), 1);
+        }
+        final FileChannel channel = file.getChannel();
+        final int nchunks = (n + chunkSize - 1) / chunkSize;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final AtomicLong batches = new AtomicLong();
+        final IOException[] failure = new IOException[1];
+        Thread[] threads = new Thread[Math.min(nthreads, nchunks)];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread("jdbm-recovery-" + t) {
+                public void run() {
+                    ByteBuffer buf = ByteBuffer.allocate(maxWriteBatchSize * blockSize);
+                    try {
+                        int chunk;
+                        while ((chunk = nextChunk.getAndIncrement()) < nchunks) {
+                            synchronized (failure) {
+                                if (failure[0] != null) {
+                                    return;
+                                }
+                            }
+                            int from = chunk * chunkSize;
+                            int to = Math.min(from + chunkSize, n);
+                            batches.addAndGet(writeRuns(channel, buf, nodes, from, to));
+                        }
+                    } catch (IOException ex) {
+                        synchronized (failure) {
+                            if (failure[0] == null) {
+                                failure[0] = ex;
+                            }
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            try {
+                threads[t].join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted recovery of " + fileName);
+            }
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        writeBlockCount += n;
+        writeBatchCount += batches.get();
+    }
+
+    /**
+     *  Writes the nodes in [from, to), which are ordered by increasing
+     *  block id, using positional writes of the runs of adjacent blocks.
+     *
+     *  @return the number of writes of more than one block.
+     */
+    private int writeRuns(FileChannel channel, ByteBuffer buf, List nodes,
+                          int from, int to) throws IOException {
+        int nbatches = 0;
+        int i = from;
+        while (i < to) {
+            BlockIo first = (BlockIo) nodes.get(i);
+            buf.clear();
+            buf.put(first.getData());
+            int j = i + 1;
+            while (j < to && (j - i) < maxWriteBatchSize) {
+                BlockIo next = (BlockIo) nodes.get(j);
+                if (next.getBlockId() != first.getBlockId() + (j - i)) {
+                    break;
+                }
+                buf.put(next.getData());
+                j++;
+            }
+            buf.flip();
+            long position = first.getBlockId() * blockSize;
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+            if (j - i > 1) {
+                nbatches++;
+            }
+            i = j;
+        }
+        return nbatches;
+    }
+
+    /**
+     *  Called before the blocks [blockId, blockId + count) are written
+     *  onto the data file: records them as changed and lets a backup in
+     *  progress copy their old images.
+     */
+    private void beforeWrite(long blockId, int count) throws IOException {
+        if (changesTracked) {
+            changed.set((int) blockId, (int) blockId + count);
+        }
+        Backup b = backup;
+        if (b != null) {
+            for (int i = 0; i < count; i++) {
+                b.beforeWrite(blockId + i);
+            }
+        }
+    }
+
+    /**
+     *  Starts a backup of the data file and copies the committed
+     *  transactions of the log next to it. The caller must hold the lock
+     *  of the record manager, then copy the blocks with {@link
+     *  Backup#copy()} without it and hand the backup to {@link
+     *  #endBackup(Backup, boolean)}.
+     *
+     *  @param target The name of the backup, without an extension.
+     *  @param incremental When true and the target is the last backup
+     *         taken since the file was opened, only the blocks changed
+     *         since that backup started are copied onto it.
+     */
+    Backup startBackup(String target, boolean incremental)
+        throws IOException {
+        if (backup != null) {
+            throw new IllegalStateException("A backup is in progress");
+        }
+        String name = Backup.canonicalName(target);
+        if (name.equals(Backup.canonicalName(fileName))) {
+            throw new IllegalArgumentException(
+                "Cannot back up a file onto itself: " + target);
+        }
+        if (!transactionsDisabled) {
+            // the data file and the log must be as of the same commit.
+            txnMgr.copyLog(target);
+        } else {
+            new File(target + TransactionManager.extension).delete();
+        }
+        BitSet toCopy = incremental && name.equals(lastBackup)
+            && new File(name).exists() ? changed : null;
+        Backup b = new Backup(this, file.getChannel(), target, blockSize, toCopy,
+                              changed);
+        changed = new BitSet();
+        changesTracked = true;
+        backup = b;
+        return b;
+    }
+
+    /**
+     *  Ends a backup. The caller must hold the lock of the record manager.
+     *
+     *  @param ok false if the backup failed, in which case the blocks
+     *         changed before it are still to be copied by the next
+     *         incremental backup.
+     */
+    void endBackup(Backup b, boolean ok) throws IOException {
+        backup = null;
+        String name = Backup.canonicalName(b.getTargetName());
+        if (ok) {
+            lastBackup = name;
+        } else {
+            b.changedBefore.or(changed);
+            changed = b.changedBefore;
+            if (!b.isIncremental() && name.equals(lastBackup)) {
+                // the last backup has been truncated.
+                lastBackup = null;
+            }
+            changesTracked = lastBackup != null;
+        }
+        b.close();
+    }
+
     /**
      *  Releases a node from the transaction list, if it was sitting
      *  there.
@@ -740,10 +1105,14 @@ public final class RecordFile
      */
     void releaseFromTransaction(BlockIo node, boolean recycle)
     throws IOException {
-        long key = node.getBlockId();
-        if ((inTxn.remove(key) != null) && recycle) {
-            putClean( key, node );
-//            free.add(node);
+        BlockIo block = blocks.get(node.getBlockId());
+        if (block == null || block.state != BlockTable.IN_TXN) {
+            return;
+        }
+        if (recycle) {
+            putClean( block );
+        } else {
+            blocks.remove(block.getBlockId());
         }
     }
 
@@ -752,14 +1121,15 @@ public final class RecordFile
      */
     void sync() throws IOException {
         file.getFD().sync();
+        syncCount++;
     }
 
 
     /**
-     * Utility method: Read a block from a RandomAccessFile
+     * Utility method: Read a block from the data file
      */
-    private static void read(RandomAccessFile file, long offset,
-                             byte[] buffer, int nBytes) throws IOException {
+    private void read(long offset, byte[] buffer, int nBytes)
+        throws IOException {
         file.seek(offset);
         int remaining = nBytes;
         int pos = 0;
@@ -782,9 +1152,12 @@ public final class RecordFile
     private long freeBlocksAddedCount = 0L;
     private long freeBlocksUsedCount = 0L;
     private long cleanBlocksHitCount = 0L;
+    private long dirtyBlocksHitCount = 0L;
     private long fetchBlockCount = 0L;
     private long writeBlockCount = 0L;
+    private long writeBatchCount = 0L;
     private long extendBlockCount = 0L;
+    private long syncCount = 0L;
     
     /**
      * When non-zero, the counters are written every N events.  Try
@@ -834,24 +1207,25 @@ public final class RecordFile
         // transaction manager can have more data in buffered
         // transactions).
         
-        long nblocks = inTxn.size()
-        	     + dirty.size()
-        	     + inUse.size()
-        	     + clean.size()
+        long nblocks = blocks.size(BlockTable.IN_TXN)
+        	     + blocks.size(BlockTable.DIRTY)
+        	     + blocks.size(BlockTable.IN_USE)
+        	     + blocks.size(BlockTable.CLEAN)
         	     + free.size()
         	     ;
         
-        long memused = ( nblocks * BLOCK_SIZE ) / ( 1024 * 1024 );
+        long memused = ( nblocks * blockSize ) / ( 1024 * 1024 );
         
         System.err.println( "memory used (mb): "+memused );
         System.err.println( "# blocks in mem : "+nblocks );
-        System.err.println( "# inTxn blocks  : "+inTxn.size() );
-        System.err.println( "# dirty blocks  : "+dirty.size() );
-        System.err.println( "# inUse blocks  : "+inUse.size() );
+        System.err.println( "# inTxn blocks  : "+blocks.size(BlockTable.IN_TXN) );
+        System.err.println( "# dirty blocks  : "+blocks.size(BlockTable.DIRTY) );
+        System.err.println( "# inUse blocks  : "+blocks.size(BlockTable.IN_USE) );
         System.err.println( "# fetch blocks  : "+fetchBlockCount );
         System.err.println( "# write blocks  : "+writeBlockCount );
+        System.err.println( "# write batches : "+writeBatchCount );
         System.err.println( "# extend blocks : "+extendBlockCount );
-        System.err.println( "# clean blocks  : "+clean.size() );
+        System.err.println( "# clean blocks  : "+blocks.size(BlockTable.CLEAN) );
         System.err.println( "# clean hit     : "+cleanBlocksHitCount );
         System.err.println( "# clean evicted : "+cleanBlocksEvictedCount );
         System.err.println( "# free blocks   : "+free.size() );
@@ -871,29 +1245,52 @@ public final class RecordFile
         freeBlocksAddedCount = 0L;
         freeBlocksUsedCount = 0L;
         cleanBlocksHitCount = 0L;
+        dirtyBlocksHitCount = 0L;
         fetchBlockCount = 0L;
         writeBlockCount = 0L;
+        writeBatchCount = 0L;
         extendBlockCount = 0L;
+        syncCount = 0L;
         triggerCount = 0L;
     }
+
+    /**
+     * Adds the block cache, I/O and transaction log statistics. Note that
+     * the counters are reset by each commit when the counters are displayed.
+     *
+     * @see Provider
+     */
+    void addStatistics(RecordManagerStatistics stats) throws IOException {
+        stats.set(RecordManagerStatistics.BLOCK_CACHE_HITS,
+                  cleanBlocksHitCount + dirtyBlocksHitCount);
+        stats.set(RecordManagerStatistics.BLOCK_CACHE_MISSES,
+                  fetchBlockCount + extendBlockCount);
+        stats.set(RecordManagerStatistics.BLOCK_CACHE_EVICTIONS,
+                  cleanBlocksEvictedCount);
+        stats.set(RecordManagerStatistics.BLOCKS_READ, fetchBlockCount);
+        stats.set(RecordManagerStatistics.BYTES_READ,
+                  fetchBlockCount * blockSize);
+        stats.set(RecordManagerStatistics.BLOCKS_WRITTEN, writeBlockCount);
+        stats.set(RecordManagerStatistics.BYTES_WRITTEN,
+                  writeBlockCount * blockSize);
+        stats.set(RecordManagerStatistics.WRITE_BATCHES, writeBatchCount);
+        stats.set(RecordManagerStatistics.FSYNCS, syncCount);
+        if (!transactionsDisabled) {
+            txnMgr.addStatistics(stats);
+        }
+    }
     
     /**
      * Used to migrate LRU pages from the "clean" list to the "free"
      * list.  If the free list reaches capacity, blocks evicted from
      * the "clean" list will be eventually swept by the JVM.
-     * @param obj
-     * @throws CacheEvictionException
-     */
-    public void cacheObjectEvicted(Object key, Object obj, boolean dirty, Serializer ser) throws CacheEvictionException {
-        /*
-         * Note: Eviction notices are fired by the "clean" MRU.  Those notices carry
-         * additional metadata defined by the CachePolicy interface that are ignored
-         * for the purposes of the RecordFile class.
-         */
+     * @param block
+     */
+    private void cleanBlockEvicted(BlockIo block) {
         cleanBlocksEvictedCount++;
         if( free.size() < maxFreeSize ) {
             freeBlocksAddedCount++;
-            free.add( (BlockIo) obj );
+            free.add( block );
         }
     }
     
@@ -71,10 +71,10 @@ class RecordHeader {
     RecordHeader(BlockIo block, short pos) {
         this.block = block;
         this.pos = pos;
-        if (pos > (RecordFile.BLOCK_SIZE - SIZE))
+        if (pos > (block.getData().length - SIZE))
             throw new Error("Offset too large for record header (" + "blockId="
 					+ block.getBlockId() + ", pos=" + pos + ", headerSize="
-					+ SIZE + ", pageSize=" + RecordFile.BLOCK_SIZE + ")");
+					+ SIZE + ", pageSize=" + block.getData().length + ")");
 	}
 
     /** Returns the current size */
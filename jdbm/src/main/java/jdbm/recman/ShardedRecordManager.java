@@ -0,0 +1,871 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.recman;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import jdbm.BlobInputStream;
+import jdbm.BlobOutputStream;
+import jdbm.RecordManager;
+import jdbm.RecordManagerOptions;
+import jdbm.RecordManagerStatistics;
+import jdbm.helper.ISerializationHandler;
+import jdbm.helper.LatencyHistograms;
+import jdbm.helper.SerializationProfiler;
+import jdbm.helper.Serializer;
+
+/**
+ *  A record manager which spreads the records across several record
+ *  managers, the <em>shards</em>, each with a file and a log of its own,
+ *  which may be on different disks.
+ *  <p>
+ *  New records go to the shards in turn, and the shard of a record is
+ *  encoded in the high bits of its recid, above {@link #SHARD_SHIFT}, so
+ *  that fetches, updates and deletes go straight to the shard. Operations
+ *  on different shards run concurrently, each shard having its own lock;
+ *  they only wait for a commit, rollback or close of the sharded record
+ *  manager. The roots and the named objects are those of the first shard.
+ *  <p>
+ *  A commit which changed a single shard commits that shard. A commit which
+ *  changed several shards is coordinated in two phases:
+ *  <ol>
+ *  <li>Each shard changed stores the number of the distributed transaction
+ *  in its last root and commits, the shards committing concurrently. Once
+ *  on its log, the transaction of a shard is prepared.</li>
+ *  <li>The number of the transaction is written and synced onto a
+ *  coordinator file, which decides the commit.</li>
+ *  </ol>
+ *  When a shard is opened, a transaction of its log whose number is above
+ *  the one of the coordinator was prepared but never decided, and is not
+ *  recovered (see {@link RecoveryFilter}). If the first phase fails, the
+ *  shards which prepared cannot take their transaction back while open: the
+ *  sharded record manager refuses any further operation and must be opened
+ *  again, which rolls them back.
+ *  <p>
+ *  Since the last root of each shard is reserved, the sharded record
+ *  manager has one root less than its shards.
+ *
+ *  @see RecordManagerOptions#SHARDS
+ *  @version $Id$
+ */
+public final class ShardedRecordManager implements RecordManager {
+
+    /** The shard of a recid is in the bits above this one. */
+    public static final int SHARD_SHIFT = 56;
+
+    /** The largest number of shards. */
+    public static final int MAX_SHARDS = 127;
+
+    private static final long LOCAL_MASK = (1L << SHARD_SHIFT) - 1;
+
+    /** The extension of the coordinator file. */
+    static final String COORDINATOR_EXTENSION = ".2pc";
+
+    private final String name;
+    /*private*/ final RecordManager[] shards;
+
+    /** The root of each shard holding the last distributed transaction. */
+    private final int txnRoot;
+
+    private final RandomAccessFile coordinator;
+
+    /** The number of the last distributed transaction decided. */
+    private volatile long committed;
+
+    /** The shards changed since the last commit or rollback. */
+    private final AtomicIntegerArray dirty;
+
+    /** The shard of the next insert. */
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /** Held shared by operations and exclusively by commits. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final ExecutorService committers;
+
+    private boolean closed;
+
+    /** True once a commit failed in the first phase. */
+    private volatile boolean failed;
+
+    private long distributedCommitCount;
+
+    /**
+     *  Opens a sharded record manager with shards named after it followed
+     *  by <code>-0</code>, <code>-1</code>, ...
+     *
+     *  @param name The name of the record manager, which is that of its
+     *         coordinator file, without an extension.
+     *  @param nshards The number of shards.
+     *  @param options The options of the shards.
+     */
+    public ShardedRecordManager(String name, int nshards, Properties options)
+        throws IOException {
+        this(name, shardNames(name, nshards), options);
+    }
+
+    /**
+     *  Opens a sharded record manager.
+     *
+     *  @param name The name of the record manager, which is that of its
+     *         coordinator file, without an extension.
+     *  @param shardNames The names of the files of the shards. The order of
+     *         the names must not change once the record manager exists.
+     *  @param options The options of the shards.
+     *  @throws IllegalArgumentException if the number of shards is invalid
+     *          or differs from the one of an existing record manager.
+     */
+    public ShardedRecordManager(String name, String[] shardNames,
+                                Properties options)
+        throws IOException {
+        if (shardNames.length < 1 || shardNames.length > MAX_SHARDS) {
+            throw new IllegalArgumentException(
+                "Argument 'shardNames' has an invalid length: "
+                + shardNames.length);
+        }
+        this.name = name;
+        File file = new File(name + COORDINATOR_EXTENSION);
+        boolean exists = file.exists() && file.length() > 0;
+        coordinator = new RandomAccessFile(file, "rw");
+        if (exists) {
+            if (coordinator.readShort() != Magic.SHARD_COORDINATOR_HEADER) {
+                coordinator.close();
+                throw new IOException("Bad magic on " + file);
+            }
+            int nshards = coordinator.readInt();
+            if (nshards != shardNames.length) {
+                coordinator.close();
+                throw new IllegalArgumentException(
+                    name + " has " + nshards + " shards, not "
+                    + shardNames.length);
+            }
+            committed = coordinator.readLong();
+        } else {
+            writeCoordinator(shardNames.length, 0L);
+        }
+
+        Properties shardOptions = new Properties();
+        shardOptions.putAll(options);
+        shardOptions.remove(RecordManagerOptions.SHARDS);
+        shards = new RecordManager[shardNames.length];
+        dirty = new AtomicIntegerArray(shards.length);
+        RecoveryFilter filter = new RecoveryFilter() {
+            public boolean recover(List blocks) {
+                for (int i = 0; i < blocks.size(); i++) {
+                    BlockIo block = (BlockIo) blocks.get(i);
+                    if (block.getBlockId() == 0) {
+                        FileHeader header = new FileHeader(block, false);
+                        return header.getRoot(header.getRootCount() - 1)
+                            <= committed;
+                    }
+                }
+                return true;
+            }
+        };
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new Provider().createRecordManager(
+                    shardNames[i], shardOptions, filter);
+            }
+        } catch (IOException ex) {
+            closeOpenShards();
+            throw ex;
+        } catch (RuntimeException ex) {
+            closeOpenShards();
+            throw ex;
+        }
+        txnRoot = shards[0].getRootCount() - 1;
+
+        committers = newThreadPool("jdbm-shard-commit-");
+    }
+
+    private ExecutorService newThreadPool(final String prefix) {
+        return Executors.newFixedThreadPool(shards.length, new ThreadFactory() {
+            private int count;
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private static String[] shardNames(String name, int nshards) {
+        if (nshards < 1) {
+            throw new IllegalArgumentException(
+                "Argument 'nshards' is invalid: " + nshards);
+        }
+        String[] names = new String[nshards];
+        for (int i = 0; i < nshards; i++) {
+            names[i] = name + "-" + i;
+        }
+        return names;
+    }
+
+    private void closeOpenShards() throws IOException {
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[i] != null) {
+                shards[i].close();
+            }
+        }
+        coordinator.close();
+    }
+
+    /**
+     *  Writes and syncs the coordinator file.
+     */
+    private void writeCoordinator(int nshards, long txn) throws IOException {
+        coordinator.seek(0);
+        coordinator.writeShort(Magic.SHARD_COORDINATOR_HEADER);
+        coordinator.writeInt(nshards);
+        coordinator.writeLong(txn);
+        coordinator.getFD().sync();
+    }
+
+    /**
+     *  Returns the number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     *  Returns the shard of a recid.
+     */
+    public static int shardOf(long recid) {
+        return (int) (recid >>> SHARD_SHIFT);
+    }
+
+    private RecordManager shard(long recid) {
+        int shard = shardOf(recid);
+        if (shard >= shards.length) {
+            throw new IllegalArgumentException("Invalid recid: " + recid);
+        }
+        return shards[shard];
+    }
+
+    private static long local(long recid) {
+        return recid & LOCAL_MASK;
+    }
+
+    private static long global(int shard, long recid) throws IOException {
+        if ((recid & ~LOCAL_MASK) != 0) {
+            throw new IOException("Recid of shard " + shard
+                                  + " out of range: " + recid);
+        }
+        return ((long) shard << SHARD_SHIFT) | recid;
+    }
+
+    private int nextShard() {
+        return (nextShard.getAndIncrement() & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /** Takes the shared lock, checking the record manager can be used. */
+    private void beginRead() {
+        lock.readLock().lock();
+        if (closed || failed) {
+            lock.readLock().unlock();
+            checkUsable();
+        }
+    }
+
+    private void endRead() {
+        lock.readLock().unlock();
+    }
+
+    private void checkUsable() {
+        if (closed) {
+            throw new IllegalStateException("RecordManager has been closed");
+        }
+        if (failed) {
+            throw new IllegalStateException(
+                "A commit failed: the record manager must be opened again");
+        }
+    }
+
+    public RecordManager getRecordManager() {
+        return this;
+    }
+
+    public RecordManager getBaseRecordManager() {
+        return this;
+    }
+
+    /**
+     *  Returns the serialization handler of the first shard.
+     */
+    public ISerializationHandler getSerializationHandler() {
+        return shards[0].getSerializationHandler();
+    }
+
+    /**
+     *  Returns the serialization profiler of the first shard.
+     */
+    public SerializationProfiler getSerializationProfiler() {
+        return shards[0].getSerializationProfiler();
+    }
+
+    /**
+     *  Returns the latency histograms of the first shard.
+     */
+    public LatencyHistograms getLatencyHistograms() {
+        return shards[0].getLatencyHistograms();
+    }
+
+    /**
+     *  Returns the sum of the statistics of the shards, except for the
+     *  latency percentiles and maxima which are the largest ones.
+     */
+    public RecordManagerStatistics getStatistics() throws IOException {
+        beginRead();
+        try {
+            RecordManagerStatistics stats = new RecordManagerStatistics();
+            for (int i = 0; i < shards.length; i++) {
+                RecordManagerStatistics s = shards[i].getStatistics();
+                String[] names = s.getNames();
+                for (int j = 0; j < names.length; j++) {
+                    long value = s.get(names[j]);
+                    if (names[j].indexOf("LatencyP") >= 0
+                        || names[j].endsWith("LatencyMax")) {
+                        stats.set(names[j], Math.max(value, stats.get(names[j])));
+                    } else {
+                        stats.add(names[j], value);
+                    }
+                }
+            }
+            synchronized (this) {
+                stats.set(RecordManagerStatistics.DISTRIBUTED_COMMITS,
+                          distributedCommitCount);
+            }
+            return stats;
+        } finally {
+            endRead();
+        }
+    }
+
+    /**
+     *  Writes a backup of the last commit, which is a sharded record
+     *  manager of the same number of shards opened under the given name.
+     *  The backups of the shards are started together, while commits wait,
+     *  and then copied concurrently by threads of the backup, so that
+     *  commits go on meanwhile.
+     */
+    public void backup(String name, boolean incremental) throws IOException {
+        Backup[] backups = new Backup[shards.length];
+        lock.writeLock().lock();
+        try {
+            checkUsable();
+            String[] names = shardNames(name, shards.length);
+            try {
+                for (int i = 0; i < shards.length; i++) {
+                    backups[i] = base(i).startBackup(names[i], incremental,
+                                                     null);
+                }
+            } catch (IOException ex) {
+                for (int i = 0; i < shards.length && backups[i] != null; i++) {
+                    synchronized (base(i)) {
+                        backups[i].owner.endBackup(backups[i], false);
+                    }
+                }
+                throw ex;
+            }
+            RandomAccessFile copy = new RandomAccessFile(
+                name + COORDINATOR_EXTENSION, "rw");
+            try {
+                copy.setLength(0);
+                copy.writeShort(Magic.SHARD_COORDINATOR_HEADER);
+                copy.writeInt(shards.length);
+                copy.writeLong(committed);
+                copy.getFD().sync();
+            } finally {
+                copy.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List tasks = new ArrayList();
+        for (int i = 0; i < shards.length; i++) {
+            final int shard = i;
+            final Backup backup = backups[i];
+            tasks.add(new Callable() {
+                public Object call() throws IOException {
+                    base(shard).completeBackup(backup, null);
+                    return null;
+                }
+            });
+        }
+        ExecutorService copiers = newThreadPool("jdbm-shard-backup-");
+        try {
+            invokeAll(copiers, tasks);
+        } finally {
+            copiers.shutdown();
+        }
+    }
+
+    private BaseRecordManager base(int shard) {
+        return (BaseRecordManager) shards[shard].getBaseRecordManager();
+    }
+
+    /**
+     *  Runs tasks on threads and waits for all of them.
+     *
+     *  @throws IOException the first error of a task.
+     */
+    private void invokeAll(ExecutorService executor, List tasks)
+        throws IOException {
+        List futures;
+        try {
+            futures = executor.invokeAll(tasks);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted " + name);
+        }
+        IOException failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                ((Future) futures.get(i)).get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted " + name);
+            } catch (ExecutionException ex) {
+                if (failure == null) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException) {
+                        failure = (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else {
+                        failure = new IOException(cause.toString());
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public long insert(Object obj) throws IOException {
+        return insert(obj, null);
+    }
+
+    public long insert(Object obj, Serializer serializer) throws IOException {
+        int shard = nextShard();
+        beginRead();
+        try {
+            dirty.set(shard, 1);
+            return global(shard, shards[shard].insert(obj, serializer));
+        } finally {
+            endRead();
+        }
+    }
+
+    /**
+     *  Inserts the objects into the same shard.
+     */
+    public long[] insertAll(Object[] objs, Serializer serializer)
+        throws IOException {
+        int shard = nextShard();
+        beginRead();
+        try {
+            dirty.set(shard, 1);
+            long[] recids = shards[shard].insertAll(objs, serializer);
+            for (int i = 0; i < recids.length; i++) {
+                recids[i] = global(shard, recids[i]);
+            }
+            return recids;
+        } finally {
+            endRead();
+        }
+    }
+
+    public void delete(long recid) throws IOException {
+        beginRead();
+        try {
+            RecordManager shard = shard(recid);
+            dirty.set(shardOf(recid), 1);
+            shard.delete(local(recid));
+        } finally {
+            endRead();
+        }
+    }
+
+    public void update(long recid, Object obj) throws IOException {
+        update(recid, obj, null);
+    }
+
+    public void update(long recid, Object obj, Serializer serializer)
+        throws IOException {
+        beginRead();
+        try {
+            RecordManager shard = shard(recid);
+            dirty.set(shardOf(recid), 1);
+            shard.update(local(recid), obj, serializer);
+        } finally {
+            endRead();
+        }
+    }
+
+    public Object fetch(long recid) throws IOException {
+        return fetch(recid, null);
+    }
+
+    public Object fetch(long recid, Serializer serializer) throws IOException {
+        beginRead();
+        try {
+            return shard(recid).fetch(local(recid), serializer);
+        } finally {
+            endRead();
+        }
+    }
+
+    public Object[] fetchAll(long[] recids) throws IOException {
+        return fetchAll(recids, null);
+    }
+
+    public Object[] fetchAll(long[] recids, Serializer serializer)
+        throws IOException {
+        beginRead();
+        try {
+            Object[] objs = new Object[recids.length];
+            for (int i = 0; i < recids.length; i++) {
+                objs[i] = shard(recids[i]).fetch(local(recids[i]), serializer);
+            }
+            return objs;
+        } finally {
+            endRead();
+        }
+    }
+
+    public BlobOutputStream openBlobOutput() throws IOException {
+        final int shard = nextShard();
+        beginRead();
+        try {
+            dirty.set(shard, 1);
+            final BlobOutputStream out = shards[shard].openBlobOutput();
+            // the stream writes rows into the shard until it is closed, so
+            // each write marks the shard again in case a commit came in
+            // between.
+            return new BlobOutputStream() {
+                private long recid;
+                public void write(int b) throws IOException {
+                    beginRead();
+                    try {
+                        dirty.set(shard, 1);
+                        out.write(b);
+                    } finally {
+                        endRead();
+                    }
+                }
+                public void write(byte[] b, int off, int len)
+                    throws IOException {
+                    beginRead();
+                    try {
+                        dirty.set(shard, 1);
+                        out.write(b, off, len);
+                    } finally {
+                        endRead();
+                    }
+                }
+                public void flush() throws IOException {
+                    beginRead();
+                    try {
+                        dirty.set(shard, 1);
+                        out.flush();
+                    } finally {
+                        endRead();
+                    }
+                }
+                public void close() throws IOException {
+                    beginRead();
+                    try {
+                        dirty.set(shard, 1);
+                        out.close();
+                        recid = global(shard, out.getRecid());
+                    } finally {
+                        endRead();
+                    }
+                }
+                public void abort() throws IOException {
+                    beginRead();
+                    try {
+                        dirty.set(shard, 1);
+                        out.abort();
+                    } finally {
+                        endRead();
+                    }
+                }
+                public long getRecid() {
+                    if (recid == 0) {
+                        // throws unless the stream has been closed.
+                        out.getRecid();
+                    }
+                    return recid;
+                }
+            };
+        } finally {
+            endRead();
+        }
+    }
+
+    public BlobInputStream openBlobInput(long recid) throws IOException {
+        beginRead();
+        try {
+            return shard(recid).openBlobInput(local(recid));
+        } finally {
+            endRead();
+        }
+    }
+
+    public void deleteBlob(long recid) throws IOException {
+        beginRead();
+        try {
+            RecordManager shard = shard(recid);
+            dirty.set(shardOf(recid), 1);
+            shard.deleteBlob(local(recid));
+        } finally {
+            endRead();
+        }
+    }
+
+    /**
+     *  Commits the changes and closes the shards.
+     */
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("RecordManager has been closed");
+            }
+            if (failed) {
+                // closing would write the prepared transactions onto the
+                // files: leave them to the recovery.
+                forceClose();
+                return;
+            }
+            commit();
+            for (int i = 0; i < shards.length; i++) {
+                shards[i].close();
+            }
+            coordinator.close();
+            closed = true;
+        } finally {
+            committers.shutdown();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     *  Closes the files of the shards and of the coordinator as they are,
+     *  as a crash would leave them.
+     */
+    void forceClose() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                base(i)._file.forceClose();
+            }
+            coordinator.close();
+            closed = true;
+        } finally {
+            committers.shutdown();
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int getRootCount() {
+        return txnRoot;
+    }
+
+    public long getRoot(int id) throws IOException {
+        checkRoot(id);
+        beginRead();
+        try {
+            return shards[0].getRoot(id);
+        } finally {
+            endRead();
+        }
+    }
+
+    public void setRoot(int id, long rowid) throws IOException {
+        checkRoot(id);
+        beginRead();
+        try {
+            dirty.set(0, 1);
+            shards[0].setRoot(id, rowid);
+        } finally {
+            endRead();
+        }
+    }
+
+    private void checkRoot(int id) {
+        if (id < 0 || id >= txnRoot) {
+            throw new IllegalArgumentException("Invalid root: " + id);
+        }
+    }
+
+    /**
+     *  Commits the changes of all the shards, in two phases if more than
+     *  one shard changed.
+     *
+     *  @throws IOException if a shard fails to commit. Unless a single
+     *          shard changed, the record manager must then be opened again.
+     */
+    public void commit() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkUsable();
+            List changed = new ArrayList();
+            for (int i = 0; i < shards.length; i++) {
+                if (dirty.get(i) != 0) {
+                    changed.add(new Integer(i));
+                }
+            }
+            if (changed.size() == 1) {
+                int shard = ((Integer) changed.get(0)).intValue();
+                shards[shard].commit();
+                dirty.set(shard, 0);
+                return;
+            }
+            if (changed.isEmpty()) {
+                return;
+            }
+
+            // phase 1: prepare each shard by committing it.
+            final long txn = committed + 1;
+            List tasks = new ArrayList();
+            for (int i = 0; i < changed.size(); i++) {
+                final RecordManager shard =
+                    shards[((Integer) changed.get(i)).intValue()];
+                tasks.add(new Callable() {
+                    public Object call() throws IOException {
+                        shard.setRoot(txnRoot, txn);
+                        shard.commit();
+                        return null;
+                    }
+                });
+            }
+            boolean ok = false;
+            try {
+                invokeAll(committers, tasks);
+
+                // phase 2: decide.
+                writeCoordinator(shards.length, txn);
+                ok = true;
+            } finally {
+                if (!ok) {
+                    failed = true;
+                }
+            }
+            committed = txn;
+            for (int i = 0; i < changed.size(); i++) {
+                dirty.set(((Integer) changed.get(i)).intValue(), 0);
+            }
+            synchronized (this) {
+                distributedCommitCount++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     *  Rolls back the changes of all the shards.
+     */
+    public void rollback() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkUsable();
+            for (int i = 0; i < shards.length; i++) {
+                if (dirty.get(i) != 0) {
+                    shards[i].rollback();
+                    dirty.set(i, 0);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getNamedObject(String name) throws IOException {
+        beginRead();
+        try {
+            // the directory may be created.
+            dirty.set(0, 1);
+            return shards[0].getNamedObject(name);
+        } finally {
+            endRead();
+        }
+    }
+
+    public void setNamedObject(String name, long recid) throws IOException {
+        beginRead();
+        try {
+            dirty.set(0, 1);
+            shards[0].setNamedObject(name, recid);
+        } finally {
+            endRead();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2000 (C) Cees de Groot. All Rights Reserved.
+ * Contributions are Copyright (C) 2000 by their associated contributors.
+ *
+ * $Id$
+ */
+
+package jdbm.recman;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerStatistics;
+
+/**
+ * Exposes the {@link RecordManagerStatistics} of a record manager as the
+ * read-only attributes of an MBean. Each read of the attributes takes a new
+ * snapshot.
+ *
+ * @see jdbm.RecordManagerOptions#JMX
+ * @version $Id$
+ */
+final class StatisticsMBean
+    implements DynamicMBean
+{
+
+    /**
+     * The outer record manager, whose statistics include those of the
+     * underlying record managers.
+     */
+    private final RecordManager _recman;
+
+    private final MBeanInfo _info;
+
+    private ObjectName _objectName;
+
+    /**
+     * @param recman The outer record manager.
+     */
+    StatisticsMBean( RecordManager recman )
+        throws java.io.IOException
+    {
+        _recman = recman;
+        String[] names = recman.getStatistics().getNames();
+        MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[ names.length ];
+        for ( int i = 0; i < names.length; i++ ) {
+            attrs[ i ] = new MBeanAttributeInfo( names[ i ], Long.class.getName(),
+                                                 names[ i ], true, false, false );
+        }
+        _info = new MBeanInfo( getClass().getName(), "jdbm record manager statistics",
+                               attrs, null, new MBeanOperationInfo[ 0 ], null );
+    }
+
+    /**
+     * Register with the platform MBean server.
+     *
+     * @param name The name of the store, which is quoted into the object
+     * name.
+     */
+    void registerMBean( String name )
+        throws JMException
+    {
+        ObjectName objectName = new ObjectName
+            ( "jdbm:type=RecordManager,name=" + ObjectName.quote( name ) );
+        ManagementFactory.getPlatformMBeanServer().registerMBean( this, objectName );
+        _objectName = objectName;
+    }
+
+    /**
+     * Unregister from the platform MBean server.
+     */
+    void unregisterMBean()
+    {
+        if ( _objectName == null ) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( _objectName );
+        } catch ( JMException ex ) {
+            System.err.println( "WARN: could not unregister " + _objectName + ": " + ex );
+        }
+        _objectName = null;
+    }
+
+    private RecordManagerStatistics getStatistics()
+        throws MBeanException
+    {
+        try {
+            return _recman.getStatistics();
+        } catch ( Exception ex ) {
+            throw new MBeanException( ex );
+        }
+    }
+
+    public Object getAttribute( String attribute )
+        throws AttributeNotFoundException, MBeanException, ReflectionException
+    {
+        RecordManagerStatistics stats = getStatistics();
+        if ( ! stats.contains( attribute ) ) {
+            throw new AttributeNotFoundException( attribute );
+        }
+        return new Long( stats.get( attribute ) );
+    }
+
+    public AttributeList getAttributes( String[] attributes )
+    {
+        AttributeList list = new AttributeList();
+        RecordManagerStatistics stats;
+        try {
+            stats = getStatistics();
+        } catch ( MBeanException ex ) {
+            return list;
+        }
+        for ( int i = 0; i < attributes.length; i++ ) {
+            if ( stats.contains( attributes[ i ] ) ) {
+                list.add( new Attribute( attributes[ i ],
+                                         new Long( stats.get( attributes[ i ] ) ) ) );
+            }
+        }
+        return list;
+    }
+
+    public void setAttribute( Attribute attribute )
+        throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException( "read-only: " + attribute.getName() );
+    }
+
+    public AttributeList setAttributes( AttributeList attributes )
+    {
+        return new AttributeList();
+    }
+
+    public Object invoke( String actionName, Object[] params, String[] signature )
+        throws ReflectionException
+    {
+        throw new ReflectionException
+            ( new NoSuchMethodException( actionName ), actionName );
+    }
+
+    public MBeanInfo getMBeanInfo()
+    {
+        return _info;
+    }
+
+}
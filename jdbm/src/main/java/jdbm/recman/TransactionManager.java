@@ -50,6 +50,11 @@ package jdbm.recman;
 import java.io.*;
 import java.util.*;
 
+import jdbm.RecordManagerStatistics;
+import jdbm.helper.LatencyHistograms;
+import jdbm.helper.maps.LongKeyMap;
+import jdbm.helper.maps.LongKeyOpenHashMap;
+
 /**
  *  This class manages the transaction log that belongs to every
  *  {@link RecordFile}. The transaction log is either clean, or
@@ -91,6 +96,25 @@ public final class TransactionManager {
     private ArrayList[] txns = new ArrayList[DEFAULT_TXNS_IN_LOG];
     private int curTxn = -1;
 
+    // counters.
+    private long syncCount = 0L;
+    private long commitCount = 0L;
+    private long checkpointCount = 0L;
+    private long recoveredTxnCount = 0L;
+    private long recoveredBlockCount = 0L;
+    private long replayedBlockCount = 0L;
+    private long discardedTxnCount = 0L;
+    private long recoveryNanos = 0L;
+
+    /** The #of threads writing the blocks of the log during recovery. */
+    private final int recoveryThreads;
+
+    /** Decides which transactions of the log are recovered, or null. */
+    private final RecoveryFilter recoveryFilter;
+
+    /** Notified of each committed transaction, or null. */
+    private CommitListener commitListener;
+
     /** Extension of a log file. */
     static final String extension = ".lg";
 
@@ -101,7 +125,38 @@ public final class TransactionManager {
      *  @param owner the RecordFile instance that owns this transaction mgr.
      */
     TransactionManager(RecordFile owner) throws IOException {
+        this(owner, 1);
+    }
+
+    /**
+     *  Instantiates a transaction manager instance. If recovery
+     *  needs to be performed, it is done.
+     *
+     *  @param owner the RecordFile instance that owns this transaction mgr.
+     *  @param recoveryThreads the #of threads writing the blocks of the
+     *         log onto the data file during recovery.
+     */
+    TransactionManager(RecordFile owner, int recoveryThreads)
+        throws IOException {
+        this(owner, recoveryThreads, null);
+    }
+
+    /**
+     *  Instantiates a transaction manager instance. If recovery
+     *  needs to be performed, it is done.
+     *
+     *  @param owner the RecordFile instance that owns this transaction mgr.
+     *  @param recoveryThreads the #of threads writing the blocks of the
+     *         log onto the data file during recovery.
+     *  @param recoveryFilter decides which transactions of the log are
+     *         recovered, or null to recover all of them.
+     */
+    TransactionManager(RecordFile owner, int recoveryThreads,
+                       RecoveryFilter recoveryFilter)
+        throws IOException {
         this.owner = owner;
+        this.recoveryThreads = recoveryThreads;
+        this.recoveryFilter = recoveryFilter;
         recover();
         open();
     }
@@ -153,6 +208,7 @@ public final class TransactionManager {
 
     /** Synchs in-core transactions to data file and opens a fresh log */
     private void synchronizeLogFromMemory() throws IOException {
+        long beginNanos = owner.latencies != null ? System.nanoTime() : 0L;
         close();
 
         TreeSet blockList = new TreeSet( new BlockIoComparator() );
@@ -183,6 +239,11 @@ public final class TransactionManager {
 
         owner.sync();
         open();
+        checkpointCount++;
+        if (owner.latencies != null) {
+            owner.latencies.record(LatencyHistograms.CHECKPOINT,
+                                   System.nanoTime() - beginNanos);
+        }
     }
 
 
@@ -195,7 +256,13 @@ public final class TransactionManager {
         curTxn = -1;
     }
 
-    /** Startup recovery on all files */
+    /**
+     *  Startup recovery on all files. The log is read once, keeping only
+     *  the last image of each block, and the distinct blocks are then
+     *  written in block order (see {@link RecordFile#synch(List, int,
+     *  boolean)}). The recovery is reported by the statistics rather
+     *  than on <code>System.err</code>.
+     */
     private void recover() throws IOException {
         String logName = makeLogName();
         File logFile = new File(logName);
@@ -218,6 +285,12 @@ public final class TransactionManager {
             return;
         }
 
+        long beginNanos = System.nanoTime();
+
+        // the last image of each block in the log.
+        LongKeyMap images = new LongKeyOpenHashMap();
+        int ntxns = 0;
+        long nblocks = 0;
         while (true) {
             ArrayList blocks = null;
             try {
@@ -228,7 +301,17 @@ public final class TransactionManager {
                 // corrupted logfile, ignore rest of transactions
                 break;
             }
-            synchronizeBlocks(blocks.iterator(), false);
+            if (recoveryFilter != null && !recoveryFilter.recover(blocks)) {
+                // an undecided transaction, which can only be the last one.
+                discardedTxnCount++;
+                break;
+            }
+            for (int i = 0; i < blocks.size(); i++) {
+                BlockIo block = (BlockIo) blocks.get(i);
+                images.put(block.getBlockId(), block);
+            }
+            ntxns++;
+            nblocks += blocks.size();
 
             // ObjectInputStream must match exactly each
             // ObjectOutputStream created during writes
@@ -239,17 +322,37 @@ public final class TransactionManager {
                 break;
             }
         }
+        fis.close();
+
+        ArrayList blocks = new ArrayList(images.values());
+        images = null;
+        Collections.sort(blocks, new BlockIoComparator());
+        owner.synch(blocks, recoveryThreads);
         owner.sync();
         logFile.delete(); // @todo test return code and handle when file not deleted.
+
+        long elapsed = System.nanoTime() - beginNanos;
+        recoveredTxnCount += ntxns;
+        recoveredBlockCount += blocks.size();
+        replayedBlockCount += nblocks;
+        recoveryNanos += elapsed;
     }
 
-    /** Synchronizes the indicated blocks with the owner. */
+    /**
+     *  Synchronizes the indicated blocks with the owner. The blocks
+     *  MUST be visited in increasing block id order so that the owner
+     *  can coalesce writes of adjacent blocks.
+     */
     private void synchronizeBlocks(Iterator blockIterator, boolean fromCore)
     throws IOException {
-        // write block vector elements to the data file.
+        ArrayList blocks = new ArrayList();
         while ( blockIterator.hasNext() ) {
-            BlockIo cur = (BlockIo)blockIterator.next();
-            owner.synch(cur);
+            blocks.add(blockIterator.next());
+        }
+        // write block vector elements to the data file.
+        owner.synch(blocks);
+        for (Iterator k = blocks.iterator(); k.hasNext(); ) {
+            BlockIo cur = (BlockIo)k.next();
             if (fromCore) {
                 cur.decrementTransactionCount();
                 if (!cur.isInTransaction()) {
@@ -309,6 +412,10 @@ public final class TransactionManager {
     void commit() throws IOException {
         oos.writeObject(txns[curTxn]);
         sync();
+        commitCount++;
+        if (commitListener != null) {
+            commitListener.committed(txns[curTxn]);
+        }
 
         // set clean flag to indicate blocks have been written to log
         setClean(txns[curTxn]);
@@ -323,6 +430,62 @@ public final class TransactionManager {
         oos.flush();
         fos.flush();
         fos.getFD().sync();
+        syncCount++;
+    }
+
+    /**
+     *  Adds the log statistics. The fsyncs of the log are added to those of
+     *  the data file.
+     */
+    void addStatistics(RecordManagerStatistics stats) throws IOException {
+        stats.add(RecordManagerStatistics.FSYNCS, syncCount);
+        stats.set(RecordManagerStatistics.LOG_SIZE,
+                  fos == null ? 0L : fos.getChannel().size());
+        stats.set(RecordManagerStatistics.LOG_TRANSACTIONS, commitCount);
+        stats.set(RecordManagerStatistics.LOG_CHECKPOINTS, checkpointCount);
+        stats.set(RecordManagerStatistics.LOG_RECOVERED_TRANSACTIONS,
+                  recoveredTxnCount);
+        stats.set(RecordManagerStatistics.LOG_RECOVERED_BLOCKS,
+                  recoveredBlockCount);
+        stats.set(RecordManagerStatistics.LOG_REPLAYED_BLOCKS,
+                  replayedBlockCount);
+        stats.set(RecordManagerStatistics.LOG_DISCARDED_TRANSACTIONS,
+                  discardedTxnCount);
+        stats.set(RecordManagerStatistics.LOG_RECOVERY_NANOS, recoveryNanos);
+    }
+
+    /**
+     *  Sets the listener notified of each committed transaction.
+     *
+     *  @param listener The listener, or null to remove it.
+     */
+    void setCommitListener(CommitListener listener) {
+        commitListener = listener;
+    }
+
+    /**
+     *  Copies the transactions committed onto the log to the log of a
+     *  backup. The log is only appended to by commits and is replaced at
+     *  checkpoints, so the copy is consistent with the data file as long
+     *  as neither happens meanwhile.
+     *
+     *  @param target The name of the backup, without an extension.
+     */
+    void copyLog(String target) throws IOException {
+        long length = fos.getChannel().size();
+        FileInputStream in = new FileInputStream(makeLogName());
+        FileOutputStream out = new FileOutputStream(target + extension);
+        try {
+            long position = 0;
+            while (position < length) {
+                position += in.getChannel().transferTo(
+                    position, length - position, out.getChannel());
+            }
+            out.getFD().sync();
+        } finally {
+            out.close();
+            in.close();
+        }
     }
 
     /**
@@ -56,17 +56,24 @@ package jdbm.recman;
 final class TranslationPage extends PageHeader {
     // offsets
     static final short O_TRANS = PageHeader.SIZE; // short count
-    static final short ELEMS_PER_PAGE = 
-        (RecordFile.BLOCK_SIZE - O_TRANS) / PhysicalRowId.SIZE;
     
     // slots we returned.
-    final PhysicalRowId[] slots = new PhysicalRowId[ELEMS_PER_PAGE];
+    final PhysicalRowId[] slots;
 
     /**
      *  Constructs a data page view from the indicated block.
      */
     TranslationPage(BlockIo block) {
         super(block);
+        slots = new PhysicalRowId[getElemsPerPage(block.getData().length)];
+    }
+
+    /**
+     *  Returns the number of translations held by a page of the
+     *  indicated size.
+     */
+    static short getElemsPerPage(int blockSize) {
+        return (short) ((blockSize - O_TRANS) / PhysicalRowId.SIZE);
     }
 
     /**
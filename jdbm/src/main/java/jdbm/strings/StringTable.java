@@ -52,6 +52,8 @@ import java.io.IOException;
 import java.io.Externalizable;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import org.CognitiveWeb.extser.DataInput;
 import org.CognitiveWeb.extser.DataOutput;
@@ -64,6 +66,8 @@ import jdbm.helper.IntegerComparator;
 import jdbm.helper.IntegerSerializer;
 import jdbm.helper.StringComparator;
 import jdbm.helper.StringSerializer;
+import jdbm.helper.Tuple;
+import jdbm.helper.TupleBrowser;
 
 /**
  * A class for interning and disinterning strings.  A single instance
@@ -71,6 +75,12 @@ import jdbm.helper.StringSerializer;
  * implementation uses two btrees to intern and disintern strings. One
  * maps from the string value to a stringId while the other maps from
  * the stringId to the string value.<p>
+ *
+ * Hot mappings may be kept in memory by giving the table a cache (see
+ * {@link #setCacheSize(int)}), in which case the strings and stringIds
+ * found in the cache are resolved without locking the table or reading
+ * the btrees.  Many strings may be interned at once using {@link
+ * #internAll(String[])}.<p>
  * 
  * @author thompsonbry
  */
@@ -121,6 +131,20 @@ public class StringTable
 
     transient private BTree m_disinternBTree = null;
 
+    /**
+     * Cache mapping interned strings to their stringIds (Integers) and
+     * <code>null</code> unless a cache size was set.
+     */
+
+    transient private volatile StripedLRUCache m_internCache = null;
+
+    /**
+     * Cache mapping stringIds (Integers) to string values and
+     * <code>null</code> unless a cache size was set.
+     */
+
+    transient private volatile StripedLRUCache m_disinternCache = null;
+
     /**
      * The stringId that always indicates <code>null</code>.
      */
@@ -190,6 +214,47 @@ public class StringTable
         return stbl;
     }
     
+    /**
+     * Sets the #of mappings kept in memory in each direction.  The
+     * caches are not persistent and are discarded by a change of size.
+     * The caches are not rolled back with the store, so, like the btrees
+     * cached by this instance, the table should be loaded again after a
+     * rollback.
+     * 
+     * @param capacity The #of strings and of stringIds to cache, or zero
+     * (the default) to disable the caches.
+     */
+    
+    public void setCacheSize( int capacity )
+    {
+        if( capacity < 0 ) {
+            throw new IllegalArgumentException
+                ( "capacity="+capacity
+                  );
+        }
+        if( capacity == 0 ) {
+            m_internCache = null;
+            m_disinternCache = null;
+        } else {
+            m_internCache = new StripedLRUCache( capacity );
+            m_disinternCache = new StripedLRUCache( capacity );
+        }
+    }
+
+    /**
+     * Adds a mapping to the caches, if any.
+     */
+    
+    private void cache( String s, Integer stringId )
+    {
+        StripedLRUCache internCache = m_internCache;
+        StripedLRUCache disinternCache = m_disinternCache;
+        if( internCache != null ) {
+            internCache.put( s, stringId );
+            disinternCache.put( stringId, s );
+        }
+    }
+
     /**
      * Conditionally interns <i>s</i> in the string table.  This
      * method may be used to obtain a persistent identifier for
@@ -206,7 +271,7 @@ public class StringTable
      * <code>-1</code> iff <code>s == null</code>.
      */
     
-    synchronized public int intern
+    public int intern
 	( String s,
 	  boolean insert
 	  )
@@ -219,6 +284,48 @@ public class StringTable
     
 	}
 
+	StripedLRUCache internCache = m_internCache;
+
+	if( internCache != null ) {
+
+	    Integer stringId = (Integer) internCache.get( s );
+
+	    if( stringId != null ) {
+
+		return stringId.intValue();
+
+	    }
+
+	}
+
+	Integer stringId = _intern( s, insert );
+
+	if( stringId == null ) {
+
+	    return 0;
+
+	}
+
+	cache( s, stringId );
+
+	return stringId.intValue();
+
+    }
+
+    /**
+     * Looks up and optionally interns <i>s</i> using the btrees.
+     * 
+     * @return The stringId or <code>null</code> if <i>s</i> was not
+     * interned and <code>insert == false</code>.
+     */
+    
+    synchronized private Integer _intern
+	( String s,
+	  boolean insert
+	  )
+	throws IOException
+    {
+
 	BTree internBTree = getInternBTree( _recman );
 
 	// Lookup existing entry, which is the recid of the
@@ -234,7 +341,7 @@ public class StringTable
 
 		// If not inserting, then we are done.
         
-		return 0;
+		return null;
 
 	    }
 
@@ -261,40 +368,297 @@ public class StringTable
 
 	    stringId = new Integer( (int) ( nstrings + 1 ) );
     
-	    // Insert the value into the disintern tree.  The key is
-	    // the one up stringId that we just generated.
+	    insert( disinternBTree, stringId, s );
+
+	    insert( internBTree, s, stringId );
+
+	}
+
+	return stringId;
+
+    }
+
+    /**
+     * Inserts a new string into the disintern btree.  The key is the
+     * one up stringId that was just generated.
+     */
     
-	    Object oldValue = disinternBTree.insert( stringId, s, false );
+    private static void insert( BTree disinternBTree, Integer stringId, String s )
+	throws IOException
+    {
+
+	Object oldValue = disinternBTree.insert( stringId, s, false );
 
-	    if( oldValue != null ) {
+	if( oldValue != null ) {
     
-		// paranoia test.
-		throw new AssertionError
-		    ( "Already used: stringId="+stringId
-		      );
+	    // paranoia test.
+	    throw new AssertionError
+		( "Already used: stringId="+stringId
+		  );
         
-	    }
+	}
+
+    }
+
+    /**
+     * Inserts a new string into the intern btree: the key is the
+     * string, the value is the stringId that was just generated (as an
+     * Integer).
+     */
     
-	    // Insert into the btree: the key is the string, the value
-	    // is the stringId we just generated (as an Integer).
-
-	    oldValue = internBTree.insert
-	        ( s,
-	          stringId,
-	          false	// replace (no!)
-	          );
+    private static void insert( BTree internBTree, String s, Integer stringId )
+	throws IOException
+    {
+
+	Object oldValue = internBTree.insert
+	    ( s,
+	      stringId,
+	      false	// replace (no!)
+	      );
 		
-	    if( oldValue != null ) {
+	if( oldValue != null ) {
     
-		throw new AssertionError
-		    ( "Already interned: "+s
-		      );
+	    throw new AssertionError
+		( "Already interned: "+s
+		  );
+    
+	}
+
+    }
+
+    /**
+     * Interns many strings at once, which is faster than interning them
+     * one by one. The strings that are not in the cache are sorted and
+     * the strings that are already interned are found with a single
+     * browser over the intern btree, which is advanced from one string
+     * to the next instead of searching the btree from its root for each
+     * string. The new strings are then appended to the disintern btree
+     * under consecutive stringIds and inserted into the intern btree in
+     * key order. The btree has no bulk insert, so each of those inserts
+     * still descends from the root of its btree. The order in which new
+     * strings are given stringIds is the sort order rather than the
+     * order of <i>strings</i>.
+     * 
+     * @param strings The strings, which may contain <code>null</code>s
+     * and duplicates.
+     * 
+     * @return The stringIds, where the stringId at each index is the one
+     * {@link #intern(String, boolean)} would return for the string at
+     * that index.
+     */
     
+    public int[] internAll( String[] strings )
+	throws IOException
+    {
+
+	final int[] stringIds = new int[ strings.length ];
+
+	StripedLRUCache internCache = m_internCache;
+
+	// Resolve nulls and cached strings and collect the indices of
+	// the others.
+
+	Integer[] misses = new Integer[ strings.length ];
+
+	int nmisses = 0;
+
+	for( int i = 0; i < strings.length; i++ ) {
+
+	    if( strings[ i ] == null ) {
+
+		stringIds[ i ] = NULLID;
+
+		continue;
+
+	    }
+
+	    Integer stringId = internCache == null ? null
+		: (Integer) internCache.get( strings[ i ] );
+
+	    if( stringId != null ) {
+
+		stringIds[ i ] = stringId.intValue();
+
+	    } else {
+
+		misses[ nmisses++ ] = new Integer( i );
+
 	    }
 
 	}
 
-	return stringId.intValue();
+	if( nmisses == 0 ) {
+
+	    return stringIds;
+
+	}
+
+	// Sort the misses by value, so that duplicates are adjacent.
+
+	final String[] values = strings;
+
+	Arrays.sort( misses, 0, nmisses, new Comparator() {
+		public int compare( Object o1, Object o2 ) {
+		    return values[ ((Integer) o1).intValue() ].compareTo
+			( values[ ((Integer) o2).intValue() ] );
+		}
+	    } );
+
+	_internAll( strings, misses, nmisses, stringIds );
+
+	for( int i = 0; i < nmisses; i++ ) {
+
+	    int index = misses[ i ].intValue();
+
+	    if( i == 0 || ! strings[ index ].equals
+		( strings[ misses[ i - 1 ].intValue() ] ) ) {
+
+		cache( strings[ index ], new Integer( stringIds[ index ] ) );
+
+	    }
+
+	}
+
+	return stringIds;
+
+    }
+
+    /**
+     * Interns the strings at the given indices, which are sorted by
+     * value, using the btrees.
+     */
+    
+    synchronized private void _internAll
+	( String[] strings,
+	  Integer[] sorted,
+	  int n,
+	  int[] stringIds
+	  )
+	throws IOException
+    {
+
+	BTree internBTree = getInternBTree( _recman );
+
+	// Pass 1: find the strings that are already interned with one
+	// browser, advancing it past the keys before each string.  The
+	// new strings are marked with zero.
+
+	Comparator comparator = internBTree.getComparator();
+
+	TupleBrowser browser = internBTree.browse
+	    ( strings[ sorted[ 0 ].intValue() ]
+	      );
+
+	Tuple tuple = new Tuple();
+
+	boolean more = browser.getNext( tuple );
+
+	int nnew = 0;
+
+	String last = null;
+
+	for( int i = 0; i < n; i++ ) {
+
+	    int index = sorted[ i ].intValue();
+
+	    String s = strings[ index ];
+
+	    if( s.equals( last ) ) {
+
+		stringIds[ index ] = stringIds[ sorted[ i - 1 ].intValue() ];
+
+		continue;
+
+	    }
+
+	    while( more && comparator.compare( tuple.getKey(), s ) < 0 ) {
+
+		more = browser.getNext( tuple );
+
+	    }
+
+	    Integer stringId = more && comparator.compare( tuple.getKey(), s ) == 0
+		? (Integer) tuple.getValue() : null;
+
+	    if( stringId == null ) {
+
+		stringIds[ index ] = 0;
+
+		nnew++;
+
+	    } else {
+
+		stringIds[ index ] = stringId.intValue();
+
+	    }
+
+	    last = s;
+
+	}
+
+	if( nnew == 0 ) {
+
+	    return;
+
+	}
+
+	// Pass 2: assign consecutive stringIds to the new strings and
+	// append them to the disintern btree.
+
+	BTree disinternBTree = getDisinternBTree( _recman );
+
+	long nstrings = disinternBTree.entryCount();
+
+	if( ( nstrings + nnew ) >= Integer.MAX_VALUE ) {
+        
+	    throw new RuntimeException
+		( "Too many interned strings"
+		  );
+        
+	}
+
+	int nextId = (int) ( nstrings + 1 );
+
+	for( int i = 0; i < n; i++ ) {
+
+	    int index = sorted[ i ].intValue();
+
+	    if( stringIds[ index ] != 0 ) {
+
+		continue;
+
+	    }
+
+	    int stringId = nextId++;
+
+	    insert( disinternBTree, new Integer( stringId ), strings[ index ] );
+
+	    // Duplicates are adjacent and share the stringId.
+
+	    for( int j = i; j < n && strings[ sorted[ j ].intValue() ].equals
+		     ( strings[ index ] ); j++ ) {
+
+		stringIds[ sorted[ j ].intValue() ] = stringId;
+
+	    }
+
+	}
+
+	// Pass 3: insert the new strings into the intern btree.  Each
+	// insert descends from the root; there is no bulk insert.
+
+	for( int i = 0; i < n; i++ ) {
+
+	    int index = sorted[ i ].intValue();
+
+	    if( stringIds[ index ] > nstrings && ( i == 0 || ! strings[ index ].equals
+		     ( strings[ sorted[ i - 1 ].intValue() ] ) ) ) {
+
+		insert( internBTree, strings[ index ], new Integer( stringIds[ index ] ) );
+
+	    }
+
+	}
 
     }
 
@@ -311,7 +675,7 @@ public class StringTable
      * identifies an interned string).
      */
     
-    synchronized public String disintern
+    public String disintern
 	( int stringId
 	  )
 	throws IOException
@@ -323,6 +687,36 @@ public class StringTable
         
 	}
 
+	Integer key = new Integer( stringId );
+
+	StripedLRUCache disinternCache = m_disinternCache;
+
+	if( disinternCache != null ) {
+
+	    String s = (String) disinternCache.get( key );
+
+	    if( s != null ) {
+
+		return s;
+
+	    }
+
+	}
+
+	String s = _disintern( stringId );
+
+	cache( s, key );
+
+	return s;
+
+    }
+
+    synchronized private String _disintern
+	( int stringId
+	  )
+	throws IOException
+    {
+
 	BTree disinternBTree = getDisinternBTree( _recman );
         
 	String s = (String) disinternBTree.find
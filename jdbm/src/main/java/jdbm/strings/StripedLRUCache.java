@@ -0,0 +1,170 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.strings;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded map with least recently used eviction which may be used by
+ * concurrent threads. The entries are spread over segments, each of which
+ * is an access ordered {@link LinkedHashMap} guarded by its own lock, so
+ * that threads using different keys rarely contend. Eviction is per
+ * segment and therefore only approximately LRU for the whole map.
+ *
+ * @version $Id$
+ */
+
+class StripedLRUCache
+{
+
+    /**
+     * The #of segments, a power of two.
+     */
+    static final int SEGMENTS = 16;
+
+    private final Segment[] m_segments;
+
+    /**
+     * @param capacity The maximum #of entries, which is rounded up to a
+     * multiple of {@link #SEGMENTS}.
+     */
+    StripedLRUCache( int capacity )
+    {
+        if( capacity <= 0 ) {
+            throw new IllegalArgumentException
+                ( "capacity="+capacity
+                  );
+        }
+        int segmentCapacity = ( capacity + SEGMENTS - 1 ) / SEGMENTS;
+        m_segments = new Segment[ SEGMENTS ];
+        for( int i = 0; i < SEGMENTS; i++ ) {
+            m_segments[ i ] = new Segment( segmentCapacity );
+        }
+    }
+
+    private Segment segmentFor( Object key )
+    {
+        int h = key.hashCode();
+        // spread the high bits, which LinkedHashMap uses least.
+        h ^= ( h >>> 16 );
+        h ^= ( h >>> 7 );
+        return m_segments[ h & ( SEGMENTS - 1 ) ];
+    }
+
+    /**
+     * Returns the value of the key or <code>null</code> if it is not
+     * in the cache.
+     */
+    Object get( Object key )
+    {
+        Segment segment = segmentFor( key );
+        synchronized( segment ) {
+            return segment.get( key );
+        }
+    }
+
+    /**
+     * Adds an entry, evicting the least recently used entry of its
+     * segment if that segment is full.
+     */
+    void put( Object key, Object value )
+    {
+        Segment segment = segmentFor( key );
+        synchronized( segment ) {
+            segment.put( key, value );
+        }
+    }
+
+    /**
+     * Returns the #of entries in the cache.
+     */
+    int size()
+    {
+        int size = 0;
+        for( int i = 0; i < SEGMENTS; i++ ) {
+            synchronized( m_segments[ i ] ) {
+                size += m_segments[ i ].size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear()
+    {
+        for( int i = 0; i < SEGMENTS; i++ ) {
+            synchronized( m_segments[ i ] ) {
+                m_segments[ i ].clear();
+            }
+        }
+    }
+
+    private static class Segment
+        extends LinkedHashMap
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int m_capacity;
+
+        Segment( int capacity )
+        {
+            super( 16, 0.75f, true );
+            m_capacity = capacity;
+        }
+
+        protected boolean removeEldestEntry( Map.Entry eldest )
+        {
+            return size() > m_capacity;
+        }
+
+    }
+
+}
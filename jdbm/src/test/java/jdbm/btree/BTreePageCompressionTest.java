@@ -0,0 +1,81 @@
+package jdbm.btree;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+import jdbm.helper.StringComparator;
+import jdbm.helper.Tuple;
+import jdbm.helper.TupleBrowser;
+import jdbm.recman.TestRecordFile;
+import junit.framework.TestCase;
+
+/**
+ * Test BTrees which store their BPages compressed.
+ */
+public class BTreePageCompressionTest extends TestCase {
+
+	protected void setUp() throws Exception {
+		TestRecordFile.deleteTestFile();
+	}
+
+	protected void tearDown() throws Exception {
+		TestRecordFile.deleteTestFile();
+	}
+
+	private static String key(int i) {
+		return "/home/users/customer-" + (100000 + i) + "/documents/invoice.txt";
+	}
+
+	/**
+	 * Fills a tree, returning the size of the store.
+	 */
+	private long fill(Properties props, boolean compressPages, int n) throws IOException {
+		TestRecordFile.deleteTestFile();
+		RecordManager recman = RecordManagerFactory.createRecordManager(TestRecordFile.testFileName, props);
+		BTree tree = BTree.createInstance(recman, new StringComparator(), null, null, 64, compressPages);
+		recman.setNamedObject("tree", tree.getRecid());
+		for (int i = 0; i < n; i++)
+			tree.insert(key(i), "value of " + key(i), false);
+		recman.commit();
+		recman.close();
+
+		// reopen and check the content.
+		recman = RecordManagerFactory.createRecordManager(TestRecordFile.testFileName, props);
+		tree = BTree.load(recman, recman.getNamedObject("tree"));
+		assertEquals(compressPages, tree.isCompressPages());
+		assertEquals(n, tree.entryCount());
+		TupleBrowser browser = tree.browse();
+		Tuple tuple = new Tuple();
+		for (int i = 0; i < n; i++) {
+			assertTrue(browser.getNext(tuple));
+			assertEquals(key(i), tuple.getKey());
+			assertEquals("value of " + key(i), tuple.getValue());
+		}
+		assertFalse(browser.getNext(tuple));
+		for (int i = 0; i < n; i += 2)
+			tree.remove(key(i));
+		assertEquals("value of " + key(1), tree.find(key(1)));
+		assertNull(tree.find(key(0)));
+		recman.commit();
+		recman.close();
+		return new File(TestRecordFile.testFileName + ".db").length();
+	}
+
+	public void testCompressedPages() throws Exception {
+		Properties props = new Properties();
+		long plain = fill(props, false, 5000);
+		long compressed = fill(props, true, 5000);
+		assertTrue("plain=" + plain + ", compressed=" + compressed, compressed * 2 < plain);
+	}
+
+	public void testCompressedPagesExtensibleSerializer() throws Exception {
+		Properties props = new Properties();
+		props.setProperty(RecordManagerOptions.SERIALIZER, RecordManagerOptions.SERIALIZER_EXTENSIBLE);
+		fill(props, true, 1000);
+	}
+
+}
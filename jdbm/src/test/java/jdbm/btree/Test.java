@@ -65,6 +65,7 @@ public class Test extends TestCase {
         retval.addTest( new TestSuite( TestBPage.class ) );
         retval.addTest( new TestSuite( TestBTree.class ) );
         retval.addTest( new TestSuite( BTreeKeyCompressionTest.class ) );
+        retval.addTest( new TestSuite( BTreePageCompressionTest.class ) );
         retval.addTest( new TestSuite( BTreeBench.class ) );
         retval.addTest( new TestSuite( StreamCorrupted.class ) );
         return retval;
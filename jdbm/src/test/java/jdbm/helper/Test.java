@@ -62,8 +62,13 @@ public class Test extends TestCase {
       retval.addTestSuite( TestByteSerializer.class );
       retval.addTestSuite( TestShortSerializer.class );
       retval.addTestSuite( TestCharacterSerializer.class );
+      retval.addTestSuite( TestBufferSerializer.class );
+      retval.addTestSuite( TestCompactSerializationHandler.class );
+      retval.addTestSuite( TestSerializationProfiler.class );
+      retval.addTestSuite( TestLatencyHistogram.class );
       retval.addTest( TestSerializers.suite() );
       retval.addTest( jdbm.helper.compression.Test.suite());
+      retval.addTestSuite( jdbm.helper.compessor.TestFastRecordCompressor.class );
 //      retval.addTest( org.CognitiveWeb.extser.Test.suite());
       retval.addTest(new TestSuite(TestMRU.class));
       retval.addTest(new TestSuite(TestMRUNativeLong.class));
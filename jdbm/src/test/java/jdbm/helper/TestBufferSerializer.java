@@ -0,0 +1,159 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+package jdbm.helper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+import jdbm.recman.TestRecordFile;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for {@link BufferSerializer}s and the {@link ByteArrayBuffer}.
+ * 
+ * @version $Id$
+ */
+public class TestBufferSerializer extends TestCase {
+
+    public TestBufferSerializer() {
+    }
+
+    public TestBufferSerializer(String name) {
+        super(name);
+    }
+
+    /**
+     * Verify that both forms of serialization produce the same bytes and
+     * that an object can be read back from a region of an array.
+     */
+    void doRoundTrip(BufferSerializer ser, Object obj) throws IOException {
+        byte[] expected = ser.serialize(obj);
+        ByteArrayBuffer buf = new ByteArrayBuffer(1);
+        buf.write(99); // some leading data.
+        ser.serialize(buf, obj);
+        assertEquals(expected.length + 1, buf.size());
+        byte[] actual = new byte[expected.length];
+        System.arraycopy(buf.getBuffer(), 1, actual, 0, actual.length);
+        assertTrue(Arrays.equals(expected, actual));
+        Object obj2 = ser.deserialize(buf.getBuffer(), 1, expected.length);
+        if (obj instanceof byte[]) {
+            assertTrue(Arrays.equals((byte[]) obj, (byte[]) obj2));
+        } else {
+            assertEquals(obj, obj2);
+        }
+    }
+
+    public void testSerializers() throws IOException {
+        long[] longs = { 0L, 1L, -1L, Long.MIN_VALUE, Long.MAX_VALUE, 1234567890123L };
+        for (int i = 0; i < longs.length; i++)
+            doRoundTrip(LongSerializer.INSTANCE, new Long(longs[i]));
+        int[] ints = { 0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 123456 };
+        for (int i = 0; i < ints.length; i++)
+            doRoundTrip(IntegerSerializer.INSTANCE, new Integer(ints[i]));
+        doRoundTrip(ByteArraySerializer.INSTANCE, new byte[0]);
+        doRoundTrip(ByteArraySerializer.INSTANCE, new byte[] { 1, 2, 3 });
+        doRoundTrip(DefaultSerializer.INSTANCE, "a string");
+        doRoundTrip(DefaultSerializer.INSTANCE, new Long(12));
+    }
+
+    public void testPool() {
+        ByteArrayBuffer a = ByteArrayBuffer.acquire();
+        ByteArrayBuffer b = ByteArrayBuffer.acquire();
+        assertNotSame(a, b);
+        a.write(1);
+        ByteArrayBuffer.release(a);
+        ByteArrayBuffer c = ByteArrayBuffer.acquire();
+        assertSame(a, c);
+        assertEquals(0, c.size());
+        ByteArrayBuffer.release(c);
+        ByteArrayBuffer.release(b);
+
+        // large buffers are not kept.
+        ByteArrayBuffer large = ByteArrayBuffer.acquire();
+        large.ensureCapacity(ByteArrayBuffer.MAX_POOLED_CAPACITY + 1);
+        ByteArrayBuffer.release(large);
+        for (int i = 0; i < ByteArrayBuffer.POOL_SIZE + 1; i++)
+            assertNotSame(large, ByteArrayBuffer.acquire());
+    }
+
+    /**
+     * Test records written by a record manager straight from the buffer, and
+     * through the compressor.
+     */
+    public void testRecordManager() throws IOException {
+        String[] compressors = { RecordManagerOptions.COMPRESSOR_NONE,
+                                 RecordManagerOptions.COMPRESSOR_FAST };
+        for (int i = 0; i < compressors.length; i++) {
+            TestRecordFile.deleteTestFile();
+            Properties props = new Properties();
+            props.setProperty(RecordManagerOptions.COMPRESSOR, compressors[i]);
+            RecordManager recman = RecordManagerFactory.createRecordManager(
+                    TestRecordFile.testFileName, props);
+            long recid = recman.insert(new Long(42), LongSerializer.INSTANCE);
+            byte[] data = new byte[5000];
+            Arrays.fill(data, (byte) 7);
+            long recid2 = recman.insert(data, ByteArraySerializer.INSTANCE);
+            recman.commit();
+            recman.update(recid, new Long(-42), LongSerializer.INSTANCE);
+            recman.commit();
+            recman.close();
+
+            recman = RecordManagerFactory.createRecordManager(
+                    TestRecordFile.testFileName, props);
+            assertEquals(new Long(-42), recman.fetch(recid, LongSerializer.INSTANCE));
+            assertTrue(Arrays.equals(data, (byte[]) recman.fetch(recid2,
+                    ByteArraySerializer.INSTANCE)));
+            recman.close();
+        }
+        TestRecordFile.deleteTestFile();
+    }
+
+}
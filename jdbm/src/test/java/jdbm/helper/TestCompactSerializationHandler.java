@@ -0,0 +1,338 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+package jdbm.helper;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Properties;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+import jdbm.recman.BaseRecordManager;
+import jdbm.recman.TestRecordFile;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the {@link CompactSerializationHandler}.
+ * 
+ * @version $Id$
+ */
+public class TestCompactSerializationHandler extends TestCase {
+
+    public TestCompactSerializationHandler() {
+    }
+
+    public TestCompactSerializationHandler(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    public void tearDown() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    public static class Point implements Serializable {
+        private static final long serialVersionUID = 1L;
+        int x;
+        int y;
+        public Point() {
+        }
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+        public int hashCode() {
+            return x ^ y;
+        }
+    }
+
+    public static class Shape implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String name;
+        byte[] data;
+        boolean closed;
+        byte b;
+        char c;
+        short s;
+        long l;
+        float f;
+        double d;
+        Point origin;
+        Object extra;
+        transient int ignored;
+        public Shape() {
+        }
+    }
+
+    public static class Square extends Shape {
+        private static final long serialVersionUID = 1L;
+        int side;
+        public Square() {
+        }
+    }
+
+    /**
+     * A class which customizes its serialization, so it is written using
+     * java serialization.
+     */
+    public static class Custom implements Serializable {
+        private static final long serialVersionUID = 1L;
+        int value;
+        private void writeObject(java.io.ObjectOutputStream out)
+            throws IOException {
+            out.writeInt(value + 1);
+        }
+        private void readObject(java.io.ObjectInputStream in)
+            throws IOException {
+            value = in.readInt();
+        }
+    }
+
+    /**
+     * A linked list cell used to check the depth limit.
+     */
+    public static class Cell implements Serializable {
+        private static final long serialVersionUID = 1L;
+        Cell next;
+        public Cell() {
+        }
+    }
+
+    /**
+     * A class whose constructor fails with an error on demand.
+     */
+    public static class Fragile implements Serializable {
+        private static final long serialVersionUID = 1L;
+        static boolean fail;
+        int value;
+        public Fragile() {
+            if (fail)
+                throw new AssertionError("constructor failed");
+        }
+    }
+
+    RecordManager openRecordManager() throws IOException {
+        Properties props = new Properties();
+        props.setProperty(RecordManagerOptions.SERIALIZER,
+                RecordManagerOptions.SERIALIZER_COMPACT);
+        return RecordManagerFactory.createRecordManager(
+                TestRecordFile.testFileName, props);
+    }
+
+    public void testValues() throws IOException {
+        RecordManager recman = openRecordManager();
+        ISerializationHandler ser = recman.getSerializationHandler();
+        assertTrue(ser instanceof CompactSerializationHandler);
+        Object[] values = { null, "", "a string \u1234", new Integer(-5),
+                new Integer(Integer.MIN_VALUE), new Long(Long.MAX_VALUE),
+                Boolean.TRUE, Boolean.FALSE, new Double(-1.5),
+                new Float(2.25f), new Short((short) -3), new Byte((byte) 7),
+                new Character('z'), new Point(3, -4) };
+        for (int i = 0; i < values.length; i++) {
+            byte[] b = ser.serialize(recman, 0L, values[i]);
+            assertEquals(values[i], ser.deserialize(recman, 0L, b));
+        }
+        byte[] bytes = (byte[]) ser.deserialize(recman, 0L, ser.serialize(
+                recman, 0L, new byte[] { 1, 2, 3 }));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, bytes));
+
+        // a small integer takes two bytes and a point three.
+        assertEquals(2, ser.serialize(recman, 0L, new Integer(10)).length);
+        assertEquals(4, ser.serialize(recman, 0L, new Point(1, 2)).length);
+        assertTrue(ser.serialize(recman, 0L, new Point(1, 2)).length < DefaultSerializer.INSTANCE
+                .serialize(new Point(1, 2)).length / 10);
+        recman.close();
+    }
+
+    public void testPojo() throws IOException {
+        RecordManager recman = openRecordManager();
+        Square sq = new Square();
+        sq.name = "square";
+        sq.data = new byte[] { 9, 8 };
+        sq.closed = true;
+        sq.b = -1;
+        sq.c = 'q';
+        sq.s = Short.MIN_VALUE;
+        sq.l = -123456789012L;
+        sq.f = 1.25f;
+        sq.d = Math.PI;
+        sq.origin = new Point(7, 8);
+        ArrayList list = new ArrayList();
+        list.add(new Point(1, 1));
+        sq.extra = list;
+        sq.ignored = 42;
+        sq.side = 5;
+        long recid = recman.insert(sq);
+        recman.commit();
+        recman.close();
+
+        recman = openRecordManager();
+        Square sq2 = (Square) recman.fetch(recid);
+        assertEquals("square", sq2.name);
+        assertTrue(Arrays.equals(sq.data, sq2.data));
+        assertTrue(sq2.closed);
+        assertEquals(sq.b, sq2.b);
+        assertEquals(sq.c, sq2.c);
+        assertEquals(sq.s, sq2.s);
+        assertEquals(sq.l, sq2.l);
+        assertEquals(sq.f, sq2.f, 0f);
+        assertEquals(sq.d, sq2.d, 0d);
+        assertEquals(sq.origin, sq2.origin);
+        assertEquals(list, sq2.extra);
+        assertEquals(0, sq2.ignored);
+        assertEquals(5, sq2.side);
+        recman.close();
+    }
+
+    public void testJavaFallback() throws IOException {
+        RecordManager recman = openRecordManager();
+        ISerializationHandler ser = recman.getSerializationHandler();
+        Custom c = new Custom();
+        c.value = 10;
+        byte[] b = ser.serialize(recman, 0L, c);
+        assertEquals(CompactSerializationHandler.JAVA, b[0]);
+        assertEquals(11, ((Custom) ser.deserialize(recman, 0L, b)).value);
+        recman.close();
+    }
+
+    public void testDepthLimit() throws IOException {
+        RecordManager recman = openRecordManager();
+        ISerializationHandler ser = recman.getSerializationHandler();
+        Cell cell = new Cell();
+        cell.next = cell;
+        try {
+            ser.serialize(recman, 0L, cell);
+            fail("expected exception");
+        } catch (IOException ex) {
+            // expected.
+        }
+        recman.close();
+    }
+
+    /**
+     * An error thrown while reading an object is passed on as it is.
+     */
+    public void testErrorPassedOn() throws IOException {
+        RecordManager recman = openRecordManager();
+        ISerializationHandler ser = recman.getSerializationHandler();
+        byte[] b = ser.serialize(recman, 0L, new Fragile());
+        Fragile.fail = true;
+        try {
+            ser.deserialize(recman, 0L, b);
+            fail("expected error");
+        } catch (AssertionError err) {
+            assertEquals("constructor failed", err.getMessage());
+        } finally {
+            Fragile.fail = false;
+        }
+        recman.close();
+    }
+
+    /**
+     * Records written under an older schema are read by matching fields by
+     * name and type.
+     */
+    public void testEvolution() throws IOException {
+        RecordManager recman = openRecordManager();
+        CompactSerializationHandler ser = (CompactSerializationHandler) recman
+                .getSerializationHandler();
+        // an older Point without y and with a long field which was removed.
+        int id = ser.registerSchema(recman.getBaseRecordManager(),
+                new CompactSerializationHandler.Schema(Point.class.getName(),
+                        new String[] { "gone", "x" }, new char[] { 'J', 'I' }));
+        ByteArrayBuffer buf = new ByteArrayBuffer(16);
+        buf.write(CompactSerializationHandler.OBJECT);
+        CompactSerializationHandler.writeVarLong(buf, id);
+        CompactSerializationHandler.writeVarLong(buf, CompactSerializationHandler
+                .zigZag(-1000000L));
+        CompactSerializationHandler.writeVarLong(buf, CompactSerializationHandler
+                .zigZag(12));
+        Point p = (Point) ser.deserialize(recman, 0L, buf.toByteArray());
+        assertEquals(new Point(12, 0), p);
+
+        // the current Point is registered under a new id.
+        byte[] b = ser.serialize(recman, 0L, new Point(1, 2));
+        assertEquals(id + 1, b[1]);
+        recman.close();
+    }
+
+    /**
+     * The class registry survives a reopen and ids registered by an aborted
+     * transaction are discarded.
+     */
+    public void testRegistryPersistence() throws IOException {
+        RecordManager recman = openRecordManager();
+        long recid = recman.insert(new Point(1, 2));
+        recman.commit();
+        assertTrue(recman.getRoot(BaseRecordManager.DEFAULT_SERIALIZER_ROOT) != 0L);
+
+        recman.insert(new Square());
+        recman.rollback();
+        CompactSerializationHandler ser = (CompactSerializationHandler) recman
+                .getSerializationHandler();
+        byte[] b = ser.serialize(recman, 0L, new Cell());
+        assertEquals(1, b[1]); // Square's id is reused.
+        recman.rollback();
+        recman.close();
+
+        recman = openRecordManager();
+        assertEquals(new Point(1, 2), recman.fetch(recid));
+        b = recman.getSerializationHandler().serialize(recman, 0L, new Shape());
+        assertEquals(1, b[1]);
+        recman.close();
+    }
+
+}
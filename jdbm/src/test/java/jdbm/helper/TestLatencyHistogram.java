@@ -0,0 +1,125 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+package jdbm.helper;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the {@link LatencyHistogram}.
+ * 
+ * @version $Id$
+ */
+public class TestLatencyHistogram extends TestCase {
+
+    public TestLatencyHistogram() {
+    }
+
+    public TestLatencyHistogram(String name) {
+        super(name);
+    }
+
+    /**
+     * Every value falls in a bucket whose highest value is within the
+     * precision of the histogram, and the buckets are ordered.
+     */
+    public void testBuckets() {
+        long[] values = { 0, 1, 31, 32, 33, 63, 64, 1000, 123456789L,
+                Long.MAX_VALUE / 3, Long.MAX_VALUE };
+        int last = -1;
+        for (int i = 0; i < values.length; i++) {
+            int bucket = LatencyHistogram.bucketOf(values[i]);
+            assertTrue(bucket >= last);
+            last = bucket;
+            long high = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(high >= values[i]);
+            assertTrue(high - values[i] <= values[i] / 16);
+            assertEquals(bucket, LatencyHistogram.bucketOf(high));
+        }
+        for (int i = 0; i < LatencyHistogram.SUB_BUCKETS; i++) {
+            assertEquals(i, LatencyHistogram.bucketOf(i));
+        }
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getValueAtPercentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        h.record(-5); // recorded as zero.
+        assertEquals(1001, h.getCount());
+        assertEquals(0, h.getMin());
+        assertEquals(1000000, h.getMax());
+        assertEquals(1000000, h.getValueAtPercentile(100));
+        assertEquals(0, h.getValueAtPercentile(0));
+        long p50 = h.getValueAtPercentile(50);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 17 / 16);
+        long p99 = h.getValueAtPercentile(99);
+        assertTrue(p99 >= 990000 && p99 <= 1000000);
+        assertEquals(500500000L / 1001d, h.getMean(), 1d);
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getValueAtPercentile(50));
+    }
+
+    public void testHistograms() {
+        LatencyHistograms h = new LatencyHistograms();
+        h.record(LatencyHistograms.COMMIT, 10);
+        assertEquals(1, h.get(LatencyHistograms.COMMIT).getCount());
+        assertEquals(0, h.get(LatencyHistograms.FETCH).getCount());
+        try {
+            h.record("bogus", 1);
+            fail("expected exception");
+        } catch (IllegalArgumentException ex) {
+            // expected.
+        }
+        h.reset();
+        assertEquals(0, h.get(LatencyHistograms.COMMIT).getCount());
+    }
+
+}
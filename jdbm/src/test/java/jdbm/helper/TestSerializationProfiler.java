@@ -0,0 +1,158 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+package jdbm.helper;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+import jdbm.btree.BPage;
+import jdbm.btree.BTree;
+import jdbm.recman.TestRecordFile;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the {@link SerializationProfiler}.
+ * 
+ * @version $Id$
+ */
+public class TestSerializationProfiler extends TestCase {
+
+    public TestSerializationProfiler() {
+    }
+
+    public TestSerializationProfiler(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    public void tearDown() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    RecordManager openRecordManager(boolean profile) throws IOException {
+        Properties props = new Properties();
+        props.setProperty(RecordManagerOptions.CACHE_TYPE,
+                RecordManagerOptions.NO_CACHE);
+        props.setProperty(RecordManagerOptions.PROFILE_SERIALIZATION, ""
+                + profile);
+        return RecordManagerFactory.createRecordManager(
+                TestRecordFile.testFileName, props);
+    }
+
+    public void testDisabled() throws IOException {
+        RecordManager recman = openRecordManager(false);
+        assertNull(recman.getSerializationProfiler());
+        recman.close();
+    }
+
+    public void testCounters() throws IOException {
+        RecordManager recman = openRecordManager(true);
+        SerializationProfiler profiler = recman.getSerializationProfiler();
+        assertNotNull(profiler);
+        profiler.reset();
+
+        long recid = recman.insert("abc");
+        recman.update(recid, "abcd");
+        assertEquals("abcd", recman.fetch(recid));
+        long recid2 = recman.insert(new Long(1), LongSerializer.INSTANCE);
+        assertEquals(new Long(1), recman.fetch(recid2, LongSerializer.INSTANCE));
+        recman.insertAll(new Object[] { new Long(2), new Long(3) },
+                LongSerializer.INSTANCE);
+
+        BTree tree = BTree.createInstance(recman, new LongComparator(),
+                LongSerializer.INSTANCE, LongSerializer.INSTANCE);
+        tree.insert(new Long(1), new Long(2), false);
+
+        SerializationProfiler.Counters c = profiler.getCounters(String.class
+                .getName());
+        assertEquals(2, c.getSerializeCount());
+        assertEquals(1, c.getDeserializeCount());
+        assertEquals(DefaultSerializer.INSTANCE.serialize("abcd").length, c
+                .getDeserializeBytes());
+        c = profiler.getCounters(Long.class.getName());
+        assertEquals(3, c.getSerializeCount());
+        assertEquals(24, c.getSerializeBytes());
+        assertEquals(1, c.getDeserializeCount());
+        c = profiler.getCounters(BPage.class.getName());
+        assertTrue(c.getSerializeCount() > 0);
+        assertTrue(c.getSerializeBytes() > 0);
+
+        SerializationProfiler.Counters t = profiler.getTotals();
+        assertTrue(t.getSerializeCount() >= 7);
+        assertEquals(t.getSerializeCount(), profiler.getSerializeCount());
+        assertTrue(profiler.getReport().indexOf(Long.class.getName()) != -1);
+
+        profiler.reset();
+        assertEquals(0, profiler.getClassNames().length);
+        recman.close();
+    }
+
+    public void testMBean() throws Exception {
+        RecordManager recman = openRecordManager(true);
+        recman.insert("abc");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(SerializationProfiler.DOMAIN
+                + ":type=SerializationProfiler,name="
+                + ObjectName.quote(TestRecordFile.testFileName));
+        assertTrue(server.isRegistered(name));
+        Long count = (Long) server.getAttribute(name, "SerializeCount");
+        assertTrue(count.longValue() > 0);
+        recman.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+}
@@ -0,0 +1,219 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2000 (C) Cees de Groot. All Rights Reserved.
+ * Contributions are Copyright (C) 2000 by their associated contributors.
+ *
+ * $Id$
+ */
+
+package jdbm.helper.compessor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the {@link FastRecordCompressor}.
+ */
+public class TestFastRecordCompressor extends TestCase {
+
+    static final String testFileName = "test_fastCompressor";
+
+    public TestFastRecordCompressor(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        deleteFiles();
+    }
+
+    public void tearDown() {
+        deleteFiles();
+    }
+
+    static void deleteFiles() {
+        new File(testFileName + ".db").delete();
+        new File(testFileName + ".lg").delete();
+        new File(testFileName + ".dict").delete();
+    }
+
+    /**
+     * A record which looks like a small serialized object: a common header
+     * and a few varying bytes.
+     */
+    static byte[] record(Random r, int n) {
+        String s = "org.example.Customer{name=customer" + r.nextInt(1000)
+            + ",city=" + (r.nextBoolean() ? "Amsterdam" : "Rotterdam")
+            + ",balance=" + r.nextInt(100000) + "}";
+        StringBuffer sb = new StringBuffer();
+        while (sb.length() < n)
+            sb.append(s);
+        return sb.toString().substring(0, n).getBytes();
+    }
+
+    void roundTrip(IRecordCompressor c, byte[] data) {
+        byte[] compressed = c.compress(data);
+        assertTrue(Arrays.equals(data, c.decompress(compressed)));
+    }
+
+    /**
+     * Test that records of all kinds survive compression.
+     */
+    public void testRoundTrip() {
+        FastRecordCompressor c = new FastRecordCompressor();
+        Random r = new Random(1);
+        for (int n = 0; n < 300; n++) {
+            byte[] random = new byte[n];
+            r.nextBytes(random);
+            roundTrip(c, random);
+            roundTrip(c, record(r, n));
+            roundTrip(c, new byte[n]);
+        }
+        byte[] large = record(r, 100000);
+        roundTrip(c, large);
+        assertTrue(c.compress(large).length < large.length / 10);
+        byte[] random = new byte[100000];
+        r.nextBytes(random);
+        roundTrip(c, random);
+    }
+
+    /**
+     * Test the threshold and that incompressible records cost one byte.
+     */
+    public void testRaw() {
+        FastRecordCompressor c = new FastRecordCompressor(100, null);
+        byte[] small = new byte[99];
+        byte[] compressed = c.compress(small);
+        assertEquals(FastRecordCompressor.RAW, compressed[0]);
+        assertEquals(100, compressed.length);
+        assertEquals(FastRecordCompressor.LZ4, c.compress(new byte[100])[0]);
+
+        byte[] random = new byte[1000];
+        new Random(2).nextBytes(random);
+        compressed = c.compress(random);
+        assertEquals(FastRecordCompressor.RAW, compressed[0]);
+        assertEquals(1001, compressed.length);
+    }
+
+    /**
+     * Test that a trained dictionary makes small records smaller and that
+     * such records need the dictionary.
+     */
+    public void testDictionary() {
+        Random r = new Random(3);
+        byte[][] samples = new byte[100][];
+        for (int i = 0; i < samples.length; i++)
+            samples[i] = record(r, 60 + r.nextInt(20));
+        byte[] dictionary = FastRecordCompressor.trainDictionary(samples, 1024);
+        assertTrue(dictionary.length > 0);
+        assertTrue(dictionary.length <= 1024);
+
+        FastRecordCompressor plain = new FastRecordCompressor(0, null);
+        FastRecordCompressor dict = new FastRecordCompressor(0, dictionary);
+        int plainSize = 0, dictSize = 0;
+        for (int i = 0; i < 100; i++) {
+            byte[] data = record(r, 60 + r.nextInt(20));
+            roundTrip(dict, data);
+            plainSize += plain.compress(data).length;
+            dictSize += dict.compress(data).length;
+        }
+        assertTrue(dictSize < plainSize / 2);
+
+        // records compressed without the dictionary are still readable.
+        byte[] data = record(r, 200);
+        assertTrue(Arrays.equals(data, dict.decompress(plain.compress(data))));
+        try {
+            plain.decompress(dict.compress(data));
+            fail("expected exception");
+        } catch (RuntimeException ex) {
+            // expected.
+        }
+    }
+
+    /**
+     * Test a store using the fast compressor with a dictionary, which must
+     * be found again when the store is reopened.
+     */
+    public void testStore() throws Exception {
+        Random r = new Random(4);
+        byte[][] samples = new byte[50][];
+        for (int i = 0; i < samples.length; i++)
+            samples[i] = record(r, 80);
+        FileOutputStream os = new FileOutputStream(testFileName + ".dict");
+        os.write(FastRecordCompressor.trainDictionary(samples, 4096));
+        os.close();
+
+        Properties props = new Properties();
+        props.setProperty(RecordManagerOptions.COMPRESSOR,
+                          RecordManagerOptions.COMPRESSOR_FAST);
+        props.setProperty(RecordManagerOptions.COMPRESSOR_DICTIONARY,
+                          testFileName + ".dict");
+        RecordManager recman = RecordManagerFactory
+            .createRecordManager(testFileName, props);
+        String[] values = new String[100];
+        long[] recids = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new String(record(r, 100));
+            recids[i] = recman.insert(values[i]);
+        }
+        recman.setNamedObject("first", recids[0]);
+        recman.commit();
+        recman.close();
+
+        // no options needed to reopen the store.
+        recman = RecordManagerFactory.createRecordManager(testFileName,
+                                                          new Properties());
+        assertEquals(recids[0], recman.getNamedObject("first"));
+        for (int i = 0; i < values.length; i++)
+            assertEquals(values[i], recman.fetch(recids[i]));
+        recman.close();
+    }
+
+}
@@ -0,0 +1,120 @@
+package jdbm.helper.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.btree.BTree;
+import jdbm.helper.LongComparator;
+import jdbm.helper.LongSerializer;
+import jdbm.helper.Conversion;
+import jdbm.recman.TestRecordFile;
+
+import junit.framework.TestCase;
+
+public class NumericDeltaCompressionProviderTest extends TestCase {
+
+	NumericDeltaCompressionProvider provider = NumericDeltaCompressionProvider.INSTANCE;
+
+	/**
+	 * Compresses and decompresses the groups, followed by a marker which must
+	 * be read back too.  Returns the #of compressed bytes.
+	 */
+	private int doCompressUncompressTestFor(byte[][] groups) throws IOException{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+
+		ByteArrayCompressor compressor = provider.getCompressor(dos);
+		for (int i = 0; i < groups.length; i++) {
+			compressor.compressNextGroup(groups[i]);
+		}
+		compressor.finishCompression();
+		int size = dos.size();
+		dos.writeInt(12345);
+
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+		ByteArrayDecompressor decompressor = provider.getDecompressor(dis);
+		for(int i = 0;i < groups.length; i++){
+			byte[] data_out = decompressor.decompressNextGroup();
+			assertTrue(Arrays.equals(groups[i], data_out));
+		}
+		assertEquals(12345, dis.readInt());
+		return size;
+	}
+
+	private static byte[][] longs(long[] values) {
+		byte[][] groups = new byte[values.length][];
+		for (int i = 0; i < values.length; i++)
+			groups[i] = Conversion.convertToByteArray(values[i]);
+		return groups;
+	}
+
+	public void testRegularTimestamps() throws IOException{
+		long[] values = new long[64];
+		for (int i = 0; i < values.length; i++)
+			values[i] = 1200000000000L + i * 1000L;
+		// no bits are needed for the deltas.
+		assertTrue(doCompressUncompressTestFor(longs(values)) < 16);
+	}
+
+	public void testIrregularTimestamps() throws IOException{
+		Random r = new Random(1);
+		long[] values = new long[64];
+		values[0] = 1200000000000L;
+		for (int i = 1; i < values.length; i++)
+			values[i] = values[i - 1] + 1000 + r.nextInt(16);
+		int size = doCompressUncompressTestFor(longs(values));
+		assertTrue(size < values.length * 8 / 5);
+	}
+
+	public void testRandomAndExtremes() throws IOException{
+		Random r = new Random(2);
+		long[] values = new long[50];
+		for (int i = 0; i < values.length; i++)
+			values[i] = r.nextLong();
+		values[3] = Long.MIN_VALUE;
+		values[4] = Long.MAX_VALUE;
+		values[5] = Long.MIN_VALUE;
+		doCompressUncompressTestFor(longs(values));
+
+		byte[][] ints = new byte[40][];
+		for (int i = 0; i < ints.length; i++)
+			ints[i] = Conversion.convertToByteArray(r.nextInt(100) - 50);
+		doCompressUncompressTestFor(ints);
+
+		doCompressUncompressTestFor(longs(new long[] { 42 }));
+		doCompressUncompressTestFor(new byte[0][]);
+	}
+
+	public void testRawFallback() throws IOException{
+		doCompressUncompressTestFor(new byte[][] { {1, 2}, null, {3, 4} });
+		doCompressUncompressTestFor(new byte[][] { {1, 2}, {3, 4, 5} });
+		doCompressUncompressTestFor(new byte[][] { new byte[9], new byte[9] });
+	}
+
+	public void testBTree() throws IOException{
+		TestRecordFile.deleteTestFile();
+		RecordManager recman = RecordManagerFactory.createRecordManager(TestRecordFile.testFileName);
+		BTree tree = BTree.createInstance(recman, new LongComparator(), new LongSerializer(), new LongSerializer());
+		tree.setKeyCompressionProvider(NumericDeltaCompressionProvider.INSTANCE);
+		long recid = tree.getRecid();
+		for (int i = 0; i < 1000; i++)
+			tree.insert(new Long(1200000000000L + i * 60000L), new Long(i), false);
+		recman.commit();
+		recman.close();
+
+		recman = RecordManagerFactory.createRecordManager(TestRecordFile.testFileName);
+		tree = BTree.load(recman, recid);
+		for (int i = 0; i < 1000; i++)
+			assertEquals(new Long(i), tree.find(new Long(1200000000000L + i * 60000L)));
+		recman.close();
+		TestRecordFile.deleteTestFile();
+	}
+
+}
@@ -69,6 +69,7 @@ public class Test
         TestSuite suite = new TestSuite();
 //        suite.addTestSuite( ByteArraySource.class );
         suite.addTestSuite( LeadingValueCompressionProviderTest.class );
+        suite.addTestSuite( NumericDeltaCompressionProviderTest.class );
         return suite;
     }
 
@@ -47,10 +47,19 @@ public class Test extends TestCase {
     retval.addTest(new TestSuite(TestPhysicalRowId.class));
     retval.addTest(new TestSuite(TestPhysicalRowIdManager.class));
     retval.addTest(new TestSuite(TestRecordFile.class));
+    retval.addTest(new TestSuite(TestBlockTable.class));
+    retval.addTest(new TestSuite(TestBackup.class));
+    retval.addTest(new TestSuite(TestLogShipping.class));
+    retval.addTest(new TestSuite(TestShardedRecordManager.class));
     retval.addTest(new TestSuite(TestRecordHeader.class));
     retval.addTest(new TestSuite(TestRecordManager.class));
     retval.addTest(new TestSuite(TestCacheRecordManager.class));
     retval.addTest(new TestSuite(TestLazyInsert.class));
+    retval.addTest(new TestSuite(TestAsyncRecordManager.class));
+    retval.addTest(new TestSuite(TestFetchAll.class));
+    retval.addTest(new TestSuite(TestInsertAll.class));
+    retval.addTest(new TestSuite(TestBlob.class));
+    retval.addTest(new TestSuite(TestStatistics.class));
 //    retval.addTest(new TestSuite(TestBufferedRecordInstallManager.class)); // FIXME enable tests.
     retval.addTest(new TestSuite(TestStress.class));
     retval.addTest(new TestSuite(TestTransactionManager.class));
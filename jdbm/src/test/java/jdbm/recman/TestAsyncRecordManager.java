@@ -0,0 +1,193 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2000 (C) Cees de Groot. All Rights Reserved.
+ * Contributions are Copyright (C) 2000 by their associated contributors.
+ *
+ * $Id$
+ */
+
+package jdbm.recman;
+
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test the {@link AsyncRecordManager}.
+ */
+public class TestAsyncRecordManager extends TestCase {
+
+    public TestAsyncRecordManager(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    public void tearDown() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    /**
+     * An executor which only runs tasks when asked to, so that tests can
+     * control what is queued.
+     */
+    static class ManualExecutor implements Executor {
+        LinkedList tasks = new LinkedList();
+
+        public void execute(Runnable r) {
+            tasks.addLast(r);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                ((Runnable) tasks.removeFirst()).run();
+            }
+        }
+    }
+
+    /**
+     * Test insert, fetch, update, delete and commit using the default I/O
+     * thread.
+     */
+    public void testBasics() throws Exception {
+        RecordManager recman = RecordManagerFactory
+            .createRecordManager(TestRecordFile.testFileName);
+        AsyncRecordManager async = new AsyncRecordManager(recman);
+
+        CompletableFuture f1 = async.insert("one");
+        CompletableFuture f2 = async.insert("two");
+        long recid1 = ((Long) f1.get()).longValue();
+        long recid2 = ((Long) f2.get()).longValue();
+        assertEquals("one", async.fetch(recid1).get());
+
+        async.update(recid1, "uno");
+        CompletableFuture fetch = async.fetch(recid1);
+        async.delete(recid2);
+        CompletableFuture commit = async.commit();
+        commit.get();
+        assertTrue(fetch.isDone());
+        assertEquals("uno", fetch.get());
+
+        async.close().get();
+        try {
+            async.fetch(recid1);
+            fail("expected exception");
+        } catch (IllegalStateException ex) {
+            // expected.
+        }
+    }
+
+    /**
+     * Test that futures complete in submission order and that queued
+     * fetches of the same record are coalesced, but never across an
+     * update.
+     */
+    public void testOrderingAndCoalescing() throws Exception {
+        RecordManager recman = RecordManagerFactory
+            .createRecordManager(TestRecordFile.testFileName);
+        long recid = recman.insert("a");
+        recman.commit();
+
+        ManualExecutor executor = new ManualExecutor();
+        AsyncRecordManager async = new AsyncRecordManager(recman, executor);
+
+        CompletableFuture f1 = async.fetch(recid);
+        CompletableFuture f2 = async.fetch(recid);
+        assertSame(f1, f2);
+        CompletableFuture u = async.update(recid, "b");
+        CompletableFuture f3 = async.fetch(recid);
+        assertNotSame(f1, f3);
+        CompletableFuture c = async.commit();
+
+        // only one drain task is scheduled and nothing has run yet.
+        assertEquals(1, executor.tasks.size());
+        assertFalse(f1.isDone());
+
+        final LinkedList order = new LinkedList();
+        f1.thenRun(new Marker(order, "f1"));
+        u.thenRun(new Marker(order, "u"));
+        f3.thenRun(new Marker(order, "f3"));
+        c.thenRun(new Marker(order, "c"));
+
+        executor.runAll();
+        assertEquals("a", f1.get());
+        assertEquals("b", f3.get());
+        assertEquals("[f1, u, f3, c]", order.toString());
+
+        // a fetch submitted once the queue has drained reads again.
+        assertNotSame(f3, async.fetch(recid));
+        executor.runAll();
+
+        async.close();
+        executor.runAll();
+    }
+
+    static class Marker implements Runnable {
+        final LinkedList order;
+        final String name;
+
+        Marker(LinkedList order, String name) {
+            this.order = order;
+            this.name = name;
+        }
+
+        public void run() {
+            order.add(name);
+        }
+    }
+
+    /**
+     *  Runs all tests in this class
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(new TestSuite(TestAsyncRecordManager.class));
+    }
+
+}
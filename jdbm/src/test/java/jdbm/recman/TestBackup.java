@@ -0,0 +1,300 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.recman;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ *  This class contains all Unit tests for {@link Backup} and
+ *  {@link BaseRecordManager#backup(String, boolean)}.
+ */
+public class TestBackup extends TestCase {
+
+    static final String backupName = "testBackup";
+
+    static final int RECORDS = 500;
+
+    public TestBackup(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        TestRecordFile.deleteTestFile();
+        deleteBackup();
+    }
+
+    public void tearDown() {
+        TestRecordFile.deleteTestFile();
+        deleteBackup();
+    }
+
+    static void deleteBackup() {
+        TestRecordFile.deleteFile(backupName + RecordFile.extension);
+        TestRecordFile.deleteFile(backupName + TransactionManager.extension);
+    }
+
+    /** Returns the value of a record for a version. */
+    static String value(int version) {
+        StringBuffer sb = new StringBuffer("version " + version + " ");
+        while (sb.length() < 200) {
+            sb.append('.');
+        }
+        return sb.toString();
+    }
+
+    static long[] insertRecords(BaseRecordManager recman, int version)
+        throws IOException {
+        long[] recids = new long[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            recids[i] = recman.insert(value(version));
+        }
+        recman.commit();
+        return recids;
+    }
+
+    static void updateRecords(BaseRecordManager recman, long[] recids,
+                              int from, int to, int version)
+        throws IOException {
+        for (int i = from; i < to; i++) {
+            recman.update(recids[i], value(version));
+        }
+    }
+
+    /**
+     *  Asserts the records of the backup have the given versions.
+     */
+    static void assertBackup(long[] recids, int[] versions)
+        throws IOException {
+        BaseRecordManager recman = new BaseRecordManager(backupName);
+        for (int i = 0; i < recids.length; i++) {
+            assertEquals("record " + i, value(versions[i]),
+                         recman.fetch(recids[i]));
+        }
+        recman.close();
+    }
+
+    static int[] versions(int version) {
+        int[] versions = new int[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            versions[i] = version;
+        }
+        return versions;
+    }
+
+    /**
+     *  Test that a backup holds the last commit, whether it is still on
+     *  the log or already on the data file, but not the changes which are
+     *  not committed.
+     */
+    public void testFullBackup() throws IOException {
+        BaseRecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        long[] recids = insertRecords(recman, 0);
+        recman.getTransactionManager().synchronizeLog();
+        updateRecords(recman, recids, 0, RECORDS / 2, 1);
+        recman.commit();
+        updateRecords(recman, recids, 0, RECORDS, 2);
+
+        recman.backup(backupName, false);
+        recman.rollback();
+        recman.close();
+
+        int[] versions = versions(0);
+        for (int i = 0; i < RECORDS / 2; i++) {
+            versions[i] = 1;
+        }
+        assertBackup(recids, versions);
+    }
+
+    /**
+     *  Test that the blocks written onto the data file while the backup
+     *  copies the file are copied as of the start of the backup.
+     */
+    public void testCopyOnWrite() throws IOException {
+        BaseRecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        long[] recids = insertRecords(recman, 0);
+        recman.getTransactionManager().synchronizeLog();
+
+        Backup backup = recman._file.startBackup(backupName, false);
+        updateRecords(recman, recids, 0, RECORDS, 1);
+        recman.commit();
+        recman.getTransactionManager().synchronizeLog();
+        long copiedByWriters = backup.getCopiedCount();
+        assertTrue(copiedByWriters > 0);
+        backup.copy();
+        recman._file.endBackup(backup, true);
+        new RecordFile(backupName).close();
+
+        assertEquals(recman.fetch(recids[0]), value(1));
+        recman.close();
+        assertBackup(recids, versions(0));
+    }
+
+    /**
+     *  Test that an incremental backup only copies the blocks changed
+     *  since the last backup, and is a full one onto another backup.
+     */
+    public void testIncrementalBackup() throws IOException {
+        BaseRecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        long[] recids = insertRecords(recman, 0);
+        recman.getTransactionManager().synchronizeLog();
+
+        // the first backup is a full one.
+        Backup backup = recman._file.startBackup(backupName, true);
+        assertFalse(backup.isIncremental());
+        backup.copy();
+        long fullCount = backup.getCopiedCount();
+        recman._file.endBackup(backup, true);
+
+        int[] versions = versions(0);
+        for (int i = 0; i < 10; i++) {
+            versions[i] = 1;
+        }
+        updateRecords(recman, recids, 0, 10, 1);
+        recman.commit();
+        recman.getTransactionManager().synchronizeLog();
+
+        backup = recman._file.startBackup(backupName, true);
+        assertTrue(backup.isIncremental());
+        backup.copy();
+        assertTrue(backup.getCopiedCount() > 0);
+        assertTrue(backup.getCopiedCount() < fullCount);
+        recman._file.endBackup(backup, true);
+        new RecordFile(backupName).close();
+        assertBackup(recids, versions);
+
+        // a failed backup leaves its changes to the next one.
+        updateRecords(recman, recids, RECORDS - 10, RECORDS, 2);
+        recman.commit();
+        recman.getTransactionManager().synchronizeLog();
+        backup = recman._file.startBackup(backupName, true);
+        recman._file.endBackup(backup, false);
+        backup = recman._file.startBackup(backupName, true);
+        assertTrue(backup.isIncremental());
+        backup.copy();
+        assertTrue(backup.getCopiedCount() > 0);
+        recman._file.endBackup(backup, true);
+        new RecordFile(backupName).close();
+        for (int i = RECORDS - 10; i < RECORDS; i++) {
+            versions[i] = 2;
+        }
+        assertBackup(recids, versions);
+
+        // the backup does not go incrementally onto another file.
+        TestRecordFile.deleteFile("testBackup2" + RecordFile.extension);
+        TestRecordFile.deleteFile("testBackup2" + TransactionManager.extension);
+        backup = recman._file.startBackup("testBackup2", true);
+        assertFalse(backup.isIncremental());
+        recman._file.endBackup(backup, false);
+        TestRecordFile.deleteFile("testBackup2" + RecordFile.extension);
+        TestRecordFile.deleteFile("testBackup2" + TransactionManager.extension);
+        recman.close();
+    }
+
+    /**
+     *  Test backups taken while another thread updates all records in
+     *  each transaction and checkpoints often: every backup must hold a
+     *  single version of the records.
+     */
+    public void testConcurrentBackup() throws Exception {
+        final BaseRecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        recman.getTransactionManager().setMaximumTransactionsInLog(2);
+        final long[] recids = insertRecords(recman, 0);
+        final Exception[] failure = new Exception[1];
+        final boolean[] stop = new boolean[1];
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    for (int version = 1; ; version++) {
+                        synchronized (stop) {
+                            if (stop[0]) {
+                                return;
+                            }
+                        }
+                        synchronized (recman) {
+                            updateRecords(recman, recids, 0, RECORDS, version);
+                            recman.commit();
+                        }
+                    }
+                } catch (Exception ex) {
+                    failure[0] = ex;
+                }
+            }
+        };
+        writer.start();
+        try {
+            for (int i = 0; i < 5; i++) {
+                Thread.sleep(20);
+                recman.backup(backupName, i > 0);
+                BaseRecordManager copy = new BaseRecordManager(backupName);
+                Object first = copy.fetch(recids[0]);
+                for (int j = 1; j < RECORDS; j++) {
+                    assertEquals("record " + j, first, copy.fetch(recids[j]));
+                }
+                copy.close();
+            }
+        } finally {
+            synchronized (stop) {
+                stop[0] = true;
+            }
+            writer.join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        recman.close();
+    }
+
+    /**
+     *  Runs all tests in this class
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(new TestSuite(TestBackup.class));
+    }
+}
@@ -0,0 +1,384 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2000 (C) Cees de Groot. All Rights Reserved.
+ * Contributions are Copyright (C) 2000 by their associated contributors.
+ *
+ * $Id$
+ */
+
+package jdbm.recman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import jdbm.BlobInputStream;
+import jdbm.BlobOutputStream;
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.helper.ByteArraySerializer;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test the blob support of the record managers.
+ */
+public class TestBlob extends TestCase {
+
+    public TestBlob(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    public void tearDown() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    static byte[] randomData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    static long writeBlob(RecordManager recman, byte[] data)
+        throws IOException {
+        BlobOutputStream os = recman.openBlobOutput();
+        // mix single byte and bulk writes.
+        int i = 0;
+        for (; i < data.length && i < 10; i++)
+            os.write(data[i]);
+        while (i < data.length) {
+            int n = Math.min(1000, data.length - i);
+            os.write(data, i, n);
+            i += n;
+        }
+        os.close();
+        return os.getRecid();
+    }
+
+    static byte[] readBlob(RecordManager recman, long recid)
+        throws IOException {
+        BlobInputStream is = recman.openBlobInput(recid);
+        byte[] data = new byte[(int) is.length()];
+        int off = 0;
+        int n;
+        while ((n = is.read(data, off, data.length - off)) > 0)
+            off += n;
+        assertEquals(data.length, off);
+        assertEquals(-1, is.read());
+        is.close();
+        return data;
+    }
+
+    /**
+     * Test writing and reading blobs of various sizes, including the
+     * empty blob and blobs spanning many chunks.
+     */
+    public void testWriteRead() throws Exception {
+        RecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        int[] sizes = { 0, 1, 100, RecordFile.BLOCK_SIZE,
+                        10 * RecordFile.BLOCK_SIZE + 17, 1000000 };
+        long[] recids = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++)
+            recids[i] = writeBlob(recman, randomData(sizes[i]));
+        for (int i = 0; i < sizes.length; i++)
+            assertTrue(Arrays.equals(randomData(sizes[i]),
+                                     readBlob(recman, recids[i])));
+        recman.commit();
+        recman.close();
+
+        // and after reopening the file.
+        recman = new BaseRecordManager(TestRecordFile.testFileName);
+        for (int i = 0; i < sizes.length; i++)
+            assertTrue(Arrays.equals(randomData(sizes[i]),
+                                     readBlob(recman, recids[i])));
+        recman.close();
+    }
+
+    /**
+     * Test seek, skip and single byte reads.
+     */
+    public void testSeek() throws Exception {
+        RecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        byte[] data = randomData(5 * RecordFile.BLOCK_SIZE);
+        long recid = writeBlob(recman, data);
+
+        BlobInputStream is = recman.openBlobInput(recid);
+        assertEquals(data.length, is.length());
+        int[] positions = { 3 * RecordFile.BLOCK_SIZE + 5, 0,
+                            data.length - 1, RecordFile.BLOCK_SIZE };
+        for (int i = 0; i < positions.length; i++) {
+            is.seek(positions[i]);
+            assertEquals(positions[i], is.position());
+            assertEquals(data[positions[i]] & 0xff, is.read());
+        }
+        is.seek(10);
+        byte[] buf = new byte[2 * RecordFile.BLOCK_SIZE];
+        int n = 0;
+        while (n < buf.length)
+            n += is.read(buf, n, buf.length - n);
+        for (int i = 0; i < buf.length; i++)
+            assertEquals(data[10 + i], buf[i]);
+        assertEquals(100, is.skip(100));
+        assertEquals(data[10 + buf.length + 100] & 0xff, is.read());
+        is.seek(data.length);
+        assertEquals(-1, is.read());
+        assertEquals(0, is.skip(10));
+        is.close();
+        recman.close();
+    }
+
+    /**
+     * Test that deleting a blob returns its space and that the blob is no
+     * longer readable.
+     */
+    public void testDelete() throws Exception {
+        RecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        byte[] data = randomData(20 * RecordFile.BLOCK_SIZE);
+        long recid = writeBlob(recman, data);
+        recman.commit();
+        recman.deleteBlob(recid);
+        recman.commit();
+
+        try {
+            recman.openBlobInput(recid);
+            fail("expected exception");
+        } catch (IOException ex) {
+            // expected.
+        }
+        recman.close();
+
+        // the space of the deleted blob is reused.
+        long size = new java.io.File(TestRecordFile.testFileName + ".db").length();
+        recman = new BaseRecordManager(TestRecordFile.testFileName);
+        recid = writeBlob(recman, data);
+        recman.commit();
+        assertTrue(Arrays.equals(data, readBlob(recman, recid)));
+        recman.close();
+        assertEquals(size,
+                     new java.io.File(TestRecordFile.testFileName + ".db").length());
+    }
+
+    /**
+     * Test that a record which is not a blob can not be read as a blob and
+     * that getRecid requires a closed stream.
+     */
+    public void testErrors() throws Exception {
+        RecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        long recid = recman.insert("not a blob");
+        try {
+            recman.openBlobInput(recid);
+            fail("expected exception");
+        } catch (IOException ex) {
+            // expected.
+        }
+        BlobOutputStream os = recman.openBlobOutput();
+        try {
+            os.getRecid();
+            fail("expected exception");
+        } catch (IllegalStateException ex) {
+            // expected.
+        }
+        os.close();
+        recman.close();
+    }
+
+    /**
+     * Test that a blob can not be fetched, updated or deleted as a record,
+     * and that a record holding the bytes of a descriptor is not a blob.
+     */
+    public void testBlobIsNotARecord() throws Exception {
+        RecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        byte[] data = randomData(3 * RecordFile.BLOCK_SIZE);
+        long recid = writeBlob(recman, data);
+        long empty = writeBlob(recman, new byte[0]);
+        recman.commit();
+        recman.close();
+
+        // the mark survives a reopen.
+        recman = new BaseRecordManager(TestRecordFile.testFileName);
+        long[] blobs = { recid, empty };
+        for (int i = 0; i < blobs.length; i++) {
+            try {
+                recman.delete(blobs[i]);
+                fail("expected exception");
+            } catch (IllegalArgumentException ex) {
+                // expected.
+            }
+            try {
+                recman.fetch(blobs[i]);
+                fail("expected exception");
+            } catch (IllegalArgumentException ex) {
+                // expected.
+            }
+            try {
+                recman.update(blobs[i], "not a blob");
+                fail("expected exception");
+            } catch (IllegalArgumentException ex) {
+                // expected.
+            }
+        }
+        assertTrue(Arrays.equals(data, readBlob(recman, recid)));
+
+        // the descriptor of an empty blob, stored as a record.
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream os = new DataOutputStream(baos);
+        os.writeInt(BlobStore.MAGIC);
+        os.writeLong(0);
+        os.writeInt(DataPage.getDataPerPage(RecordFile.BLOCK_SIZE) - RecordHeader.SIZE);
+        os.writeInt(0);
+        os.flush();
+        long other = recman.insert(baos.toByteArray(),
+                                   ByteArraySerializer.INSTANCE);
+        try {
+            recman.openBlobInput(other);
+            fail("expected exception");
+        } catch (IOException ex) {
+            // expected.
+        }
+        assertTrue(Arrays.equals(baos.toByteArray(),
+                                 (byte[]) recman.fetch(other, ByteArraySerializer.INSTANCE)));
+        recman.delete(other);
+
+        // a deleted blob reads as a deleted record.
+        recman.deleteBlob(recid);
+        recman.deleteBlob(empty);
+        assertNull(recman.fetch(recid));
+        recman.close();
+    }
+
+    /**
+     * Writes blobs which are never closed: one aborted, one rolled back and
+     * one still open when the record manager is closed, each with chunks
+     * written both before and after a commit.
+     */
+    static void abandonBlobs(byte[] data) throws IOException {
+        RecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        BlobOutputStream os = recman.openBlobOutput();
+        os.write(data, 0, data.length / 2);
+        recman.commit();
+        os.write(data, data.length / 2, data.length / 2);
+        os.abort();
+        try {
+            os.write(1);
+            fail("expected exception");
+        } catch (IOException ex) {
+            // expected.
+        }
+        try {
+            os.getRecid();
+            fail("expected exception");
+        } catch (IllegalStateException ex) {
+            // expected.
+        }
+        recman.commit();
+
+        os = recman.openBlobOutput();
+        os.write(data, 0, data.length / 2);
+        recman.commit();
+        os.write(data, data.length / 2, data.length / 2);
+        recman.rollback();
+        try {
+            os.close();
+            fail("expected exception");
+        } catch (IOException ex) {
+            // expected.
+        }
+        recman.commit();
+
+        os = recman.openBlobOutput();
+        os.write(data, 0, data.length / 2);
+        recman.commit();
+        os.write(data, data.length / 2, data.length / 2);
+        recman.close();
+    }
+
+    /**
+     * Test that the chunks of a stream which is aborted, or rolled back,
+     * or still open when the record manager is closed, are freed: doing it
+     * again does not grow the file.
+     */
+    public void testAbort() throws Exception {
+        byte[] data = randomData(20 * RecordFile.BLOCK_SIZE);
+        abandonBlobs(data);
+        long size = new java.io.File(TestRecordFile.testFileName + ".db").length();
+        for (int i = 0; i < 3; i++)
+            abandonBlobs(data);
+        assertEquals(size,
+                     new java.io.File(TestRecordFile.testFileName + ".db").length());
+
+        RecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        long recid = writeBlob(recman, data);
+        recman.commit();
+        assertTrue(Arrays.equals(data, readBlob(recman, recid)));
+        recman.close();
+    }
+
+    /**
+     * Test blobs through the caching record manager.
+     */
+    public void testCache() throws Exception {
+        RecordManager recman = RecordManagerFactory
+            .createRecordManager(TestRecordFile.testFileName);
+        byte[] data = randomData(3 * RecordFile.BLOCK_SIZE);
+        long recid = writeBlob(recman, data);
+        recman.commit();
+        assertTrue(Arrays.equals(data, readBlob(recman, recid)));
+        recman.deleteBlob(recid);
+        recman.commit();
+        recman.close();
+    }
+
+    /**
+     *  Runs all tests in this class
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(new TestSuite(TestBlob.class));
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.recman;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ *  This class contains all Unit tests for {@link BlockTable}.
+ */
+public class TestBlockTable extends TestCase {
+
+    public TestBlockTable(String name) {
+        super(name);
+    }
+
+    private static BlockIo newBlock(long blockid) {
+        return new BlockIo(blockid, null);
+    }
+
+    /**
+     *  Test get, put, setState and the order of the lists.
+     */
+    public void testBasics() {
+        BlockTable table = new BlockTable(4);
+        BlockIo b1 = newBlock(1);
+        BlockIo b2 = newBlock(2);
+        BlockIo b3 = newBlock(3);
+        table.put(1, b1, BlockTable.IN_USE);
+        table.put(2, b2, BlockTable.CLEAN);
+        table.put(3, b3, BlockTable.CLEAN);
+        assertSame(b1, table.get(1));
+        assertNull(table.get(4));
+        assertEquals(1, table.size(BlockTable.IN_USE));
+        assertEquals(2, table.size(BlockTable.CLEAN));
+        assertSame(b2, table.first(BlockTable.CLEAN));
+
+        // moving a block to the state it is in puts it last.
+        table.setState(b2, BlockTable.CLEAN);
+        assertSame(b3, table.first(BlockTable.CLEAN));
+        assertSame(b2, b3.nextInState);
+        assertNull(b2.nextInState);
+
+        table.setState(b1, BlockTable.DIRTY);
+        assertEquals(0, table.size(BlockTable.IN_USE));
+        assertSame(b1, table.first(BlockTable.DIRTY));
+        assertEquals(BlockTable.DIRTY, table.get(1).state);
+
+        assertSame(b3, table.remove(3));
+        assertNull(table.remove(3));
+        assertNull(table.get(3));
+        assertSame(b2, table.first(BlockTable.CLEAN));
+        assertEquals(1, table.size(BlockTable.CLEAN));
+
+        table.removeAll(BlockTable.CLEAN);
+        assertNull(table.get(2));
+        assertSame(b1, table.get(1));
+    }
+
+    /**
+     *  Test random operations against a map, over enough keys that the
+     *  table grows and with removals that shift back the probe
+     *  sequences.
+     */
+    public void testRandom() {
+        BlockTable table = new BlockTable(1);
+        Map expected = new HashMap();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            // block ids with strides and collisions in the low bits.
+            long key = random.nextInt(2000) * (random.nextBoolean() ? 1 : 4096);
+            Long k = new Long(key);
+            BlockIo block = table.get(key);
+            assertSame(expected.get(k), block);
+            int op = random.nextInt(3);
+            if (block == null) {
+                if (op != 0) {
+                    block = newBlock(key);
+                    table.put(key, block, (byte) random.nextInt(4));
+                    expected.put(k, block);
+                }
+            } else if (op == 0) {
+                assertSame(block, table.remove(key));
+                expected.remove(k);
+            } else {
+                table.setState(block, (byte) random.nextInt(4));
+            }
+        }
+        int total = 0;
+        for (byte state = 0; state < 4; state++) {
+            ArrayList list = new ArrayList();
+            for (BlockIo b = table.first(state); b != null; b = b.nextInState) {
+                assertEquals(state, b.state);
+                list.add(b);
+            }
+            assertEquals(table.size(state), list.size());
+            total += list.size();
+        }
+        assertEquals(expected.size(), total);
+        for (Iterator i = expected.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) i.next();
+            assertSame(entry.getValue(),
+                       table.get(((Long) entry.getKey()).longValue()));
+        }
+    }
+
+    /**
+     *  Runs all tests in this class
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(new TestSuite(TestBlockTable.class));
+    }
+}
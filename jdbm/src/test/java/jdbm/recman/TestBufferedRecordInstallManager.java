@@ -84,6 +84,11 @@ import junit.framework.TestSuite;
  */
 public class TestBufferedRecordInstallManager extends TestCase {
 
+	/**
+	 * The #of data bytes on a data page with the default page size.
+	 */
+	static final int DATA_PER_PAGE = DataPage.getDataPerPage(RecordFile.BLOCK_SIZE);
+
 	/**
 	 * 
 	 */
@@ -209,13 +214,13 @@ public class TestBufferedRecordInstallManager extends TestCase {
     	/*
     	 * Create an empty bucket.
     	 */
-    	BufferedRecordInstallManager.Bucket bucket = new BufferedRecordInstallManager.Bucket();
+    	BufferedRecordInstallManager.Bucket bucket = new BufferedRecordInstallManager.Bucket(DATA_PER_PAGE);
     	
     	/*
     	 * Verify initial conditions.
     	 */
-    	assertEquals(DataPage.DATA_PER_PAGE,bucket._capacity);
-    	assertEquals(DataPage.DATA_PER_PAGE,bucket._avail);
+    	assertEquals(DATA_PER_PAGE,bucket._capacity);
+    	assertEquals(DATA_PER_PAGE,bucket._avail);
     	assertEquals(0,bucket._size);
     	assertEquals(0,bucket.getRecordCount());
     	assertFalse(bucket.iterator().hasNext());
@@ -226,11 +231,11 @@ public class TestBufferedRecordInstallManager extends TestCase {
     	 */
     	Random r = new Random();
     	int expectedSize = 0;
-    	int expectedAvail = DataPage.DATA_PER_PAGE;
+    	int expectedAvail = DATA_PER_PAGE;
     	int nrecs = 0;
     	final int limit = 10;
     	final int maxDataPerRecord = 128;
-    	assertTrue(limit*(RecordHeader.SIZE+maxDataPerRecord)<=DataPage.DATA_PER_PAGE);
+    	assertTrue(limit*(RecordHeader.SIZE+maxDataPerRecord)<=DATA_PER_PAGE);
     	for( int i=0; i<limit; i++ ) {
     		// Assign distinct logical row identifiers (they are junk, but distinct).
     		Location logRowId = new Location((long)i);
@@ -267,8 +272,8 @@ public class TestBufferedRecordInstallManager extends TestCase {
     	 * Clear the bucket and reverify that the initial conditions hold again.
     	 */
     	bucket.clear();
-    	assertEquals(DataPage.DATA_PER_PAGE,bucket._capacity);
-    	assertEquals(DataPage.DATA_PER_PAGE,bucket._avail);
+    	assertEquals(DATA_PER_PAGE,bucket._capacity);
+    	assertEquals(DATA_PER_PAGE,bucket._avail);
     	assertEquals(0,bucket._size);
     	assertEquals(0,bucket.getRecordCount());
     	assertFalse(bucket.iterator().hasNext());
@@ -303,7 +308,7 @@ public class TestBufferedRecordInstallManager extends TestCase {
 			byte[] data = new byte[] { 1, 2, 3 };
 			bucket.add(logRowId,new Location(0L),data);
     		assertEquals(RecordHeader.SIZE+data.length, bucket._size );
-    		assertEquals(DataPage.DATA_PER_PAGE-(RecordHeader.SIZE+data.length), bucket._avail );
+    		assertEquals(DATA_PER_PAGE-(RecordHeader.SIZE+data.length), bucket._avail );
     		assertEquals(1,bucket.getRecordCount());
     		assertEquals(data,bucket.fetch(logRowId));
     		assertNull(bucket.fetch(logRowId2));
@@ -312,7 +317,7 @@ public class TestBufferedRecordInstallManager extends TestCase {
     		 */
     		assertFalse(bucket.delete(logRowId2));
     		assertEquals(RecordHeader.SIZE+data.length, bucket._size );
-    		assertEquals(DataPage.DATA_PER_PAGE-(RecordHeader.SIZE+data.length), bucket._avail );
+    		assertEquals(DATA_PER_PAGE-(RecordHeader.SIZE+data.length), bucket._avail );
     		assertEquals(1,bucket.getRecordCount());
     		assertEquals(data,bucket.fetch(logRowId));
     		assertNull(bucket.fetch(logRowId2));
@@ -321,7 +326,7 @@ public class TestBufferedRecordInstallManager extends TestCase {
     		 */
     		assertTrue(bucket.delete(logRowId));
     		assertEquals(0, bucket._size );
-    		assertEquals(DataPage.DATA_PER_PAGE, bucket._avail );
+    		assertEquals(DATA_PER_PAGE, bucket._avail );
     		assertEquals(0,bucket.getRecordCount());
     		assertNull(bucket.fetch(logRowId));
     		assertNull(bucket.fetch(logRowId2));
@@ -622,7 +627,7 @@ public class TestBufferedRecordInstallManager extends TestCase {
 	 */
     public void test_multipleRecordsUnderOnePage() throws IOException {
     	Op gen = new Op(.3f,.2f,.2f,0,0,0,0); // insert, fetch, update in place.
-    	doManyRecordsTest( 128, 0, DataPage.DATA_PER_PAGE/2, gen, true );
+    	doManyRecordsTest( 128, 0, DATA_PER_PAGE/2, gen, true );
     }
     
     /**
@@ -634,7 +639,7 @@ public class TestBufferedRecordInstallManager extends TestCase {
     	int wasteMargin = baserecman._bufMgr._wasteMargin;
     	int maxRecordSize = wasteMargin/2+1;
     	Op gen = new Op(.3f,.2f,.2f,0,0,0,0); // insert, fetch, update in place.
-    	doManyRecordsTest( maxRecordSize, 0, DataPage.DATA_PER_PAGE, gen, false );
+    	doManyRecordsTest( maxRecordSize, 0, DATA_PER_PAGE, gen, false );
     }
 
     /**
@@ -0,0 +1,143 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2000 (C) Cees de Groot. All Rights Reserved.
+ * Contributions are Copyright (C) 2000 by their associated contributors.
+ *
+ * $Id$
+ */
+
+
+package jdbm.recman;
+
+import java.io.IOException;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test {@link RecordManager#fetchAll(long[])} for the base and the cache
+ * record managers.
+ */
+public class TestFetchAll extends TestCase {
+
+    public TestFetchAll(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    public void tearDown() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    public void testBaseRecordManager() throws IOException {
+        RecordManager recman = new BaseRecordManager(TestRecordFile.testFileName);
+        doFetchAll(recman);
+        recman.close();
+    }
+
+    public void testCacheRecordManager() throws IOException {
+        RecordManager recman = RecordManagerFactory
+            .createRecordManager(TestRecordFile.testFileName);
+        assertTrue(recman instanceof CacheRecordManager);
+        doFetchAll(recman);
+
+        // cached objects are returned as is, even when repeated.
+        long recid = recman.insert("x");
+        Object[] objs = recman.fetchAll(new long[] { recid, recid });
+        assertSame(recman.fetch(recid), objs[0]);
+        assertSame(objs[0], objs[1]);
+        recman.close();
+    }
+
+    /**
+     * Insert records spanning many pages, including records larger than a
+     * page, delete one and fetch all of them in reverse order, with a
+     * repeated recid.
+     */
+    void doFetchAll(RecordManager recman) throws IOException {
+        final int n = 200;
+        long[] recids = new long[n];
+        for (int i = 0; i < n; i++) {
+            int length = (i % 17 == 0) ? 3 * RecordFile.BLOCK_SIZE : 100 + i;
+            recids[i] = recman.insert(TestUtil.makeRecord(length, (byte) i));
+        }
+        recman.commit();
+        recman.delete(recids[5]);
+
+        long[] request = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            request[i] = recids[n - 1 - i];
+        }
+        request[n] = recids[n - 1];
+
+        Object[] objs = recman.fetchAll(request);
+        assertEquals(n + 1, objs.length);
+        for (int i = 0; i < n; i++) {
+            int j = n - 1 - i;
+            if (j == 5) {
+                assertNull(objs[i]);
+                continue;
+            }
+            int length = (j % 17 == 0) ? 3 * RecordFile.BLOCK_SIZE : 100 + j;
+            assertTrue("record " + j,
+                       TestUtil.checkRecord((byte[]) objs[i], length, (byte) j));
+        }
+        assertTrue(TestUtil.checkRecord((byte[]) objs[n], 100 + n - 1,
+                                        (byte) (n - 1)));
+
+        assertEquals(0, recman.fetchAll(new long[0]).length);
+    }
+
+    /**
+     *  Runs all tests in this class
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(new TestSuite(TestFetchAll.class));
+    }
+
+}
@@ -57,16 +57,50 @@ public class TestFileHeader extends TestCase {
     public void testRootRowids() throws Exception {
   BlockIo b = new BlockIo(0, new byte[RecordFile.BLOCK_SIZE]);
   FileHeader f = new FileHeader(b, true);
-  for (int i = 0; i < FileHeader.NROOTS; i++) {
+  for (int i = 0; i < f.getRootCount(); i++) {
       f.setRoot(i, 100 * i);
   }
   
   f = new FileHeader(b, false);
-  for (int i = 0; i < FileHeader.NROOTS; i++) {
+  for (int i = 0; i < f.getRootCount(); i++) {
       assertEquals("root " + i, i * 100, f.getRoot(i));
   }
     }
 
+    /**
+     *  Test that a header for a non-default page size records the page
+     *  size and still provides all lists and roots.
+     */
+    public void testPageSize() throws Exception {
+  BlockIo b = new BlockIo(0, new byte[RecordFile.MIN_BLOCK_SIZE]);
+  FileHeader f = new FileHeader(b, true);
+  assertEquals(Magic.FILE_HEADER_PAGESIZE, b.readShort(0));
+  assertEquals(RecordFile.MIN_BLOCK_SIZE,
+               FileHeader.getPageSize(b.readShort(0), b.readInt(2)));
+  for (int i = 0; i < Magic.NLISTS; i++) {
+      f.setFirstOf(i, 100 * i);
+      f.setLastOf(i, 200 * i);
+  }
+  for (int i = 0; i < f.getRootCount(); i++) {
+      f.setRoot(i, 300 * i);
+  }
+  
+  f = new FileHeader(b, false);
+  assertEquals(RecordFile.MIN_BLOCK_SIZE, f.getPageSize());
+  for (int i = 0; i < Magic.NLISTS; i++) {
+      assertEquals("first " + i, i * 100, f.getFirstOf(i));
+      assertEquals("last " + i, i * 200, f.getLastOf(i));
+  }
+  for (int i = 0; i < f.getRootCount(); i++) {
+      assertEquals("root " + i, i * 300, f.getRoot(i));
+  }
+
+  // the default page size keeps the original layout.
+  b = new BlockIo(0, new byte[RecordFile.BLOCK_SIZE]);
+  new FileHeader(b, true);
+  assertEquals(Magic.FILE_HEADER, b.readShort(0));
+    }
+
     /**
      *  Runs all tests in this class
      */
@@ -69,6 +69,76 @@ public class TestFreePhysicalRowIdPageManager extends TestCase {
       f.close();
     }
 
+    /**
+     *  Test that the smallest sufficient free row is chosen, that rows
+     *  wasting too much space are not, and that the index is rebuilt from
+     *  the free list when the file is reopened.
+     */
+    public void testBestFit() throws Exception {
+  RecordFile f = new RecordFile(TestRecordFile.testFileName);
+  PageManager pm = new PageManager(f);
+  FreePhysicalRowIdPageManager freeMgr =
+      new FreePhysicalRowIdPageManager(f, pm);
+
+  freeMgr.put(new Location(10, (short) 20), 1000);
+  freeMgr.put(new Location(11, (short) 20), 120);
+  freeMgr.put(new Location(12, (short) 20), 105);
+  freeMgr.put(new Location(13, (short) 20), 500);
+
+  assertEquals(new Location(12, (short) 20), freeMgr.get(100));
+  assertEquals(new Location(11, (short) 20), freeMgr.get(100));
+  // 500 wastes too much for a 100 byte request.
+  assertNull(freeMgr.get(100));
+  pm.commit();
+  pm.close();
+  f.close();
+
+  f = new RecordFile(TestRecordFile.testFileName);
+  pm = new PageManager(f);
+  freeMgr = new FreePhysicalRowIdPageManager(f, pm);
+  assertEquals(new Location(13, (short) 20), freeMgr.get(450));
+  assertEquals(new Location(10, (short) 20), freeMgr.get(1000));
+  assertNull(freeMgr.get(1));
+  pm.close();
+  f.close();
+    }
+
+    /**
+     *  Test that free list pages are filled, emptied and freed, and that
+     *  the index is discarded on rollback.
+     */
+    public void testManyPages() throws Exception {
+  RecordFile f = new RecordFile(TestRecordFile.testFileName);
+  PageManager pm = new PageManager(f);
+  FreePhysicalRowIdPageManager freeMgr =
+      new FreePhysicalRowIdPageManager(f, pm);
+  int n = 3 * FreePhysicalRowIdPage.getElemsPerPage(RecordFile.BLOCK_SIZE) + 1;
+  for (int i = 0; i < n; i++) {
+      freeMgr.put(new Location(100 + i, (short) 20), 100 + i % 50);
+  }
+  pm.commit();
+
+  int found = 0;
+  for (int i = 0; i < n; i++) {
+      Location loc = freeMgr.get(100 + i % 50);
+      assertNotNull(loc);
+      assertEquals(100 + i % 50, 100 + (loc.getBlock() - 100) % 50);
+      found++;
+  }
+  assertEquals(n, found);
+  assertNull(freeMgr.get(1));
+  assertEquals(0, pm.getFirst(Magic.FREEPHYSIDS_PAGE));
+
+  // discard the allocations: all free rows are back after the rollback.
+  pm.rollback();
+  freeMgr.invalidate();
+  for (int i = 0; i < n; i++) {
+      assertNotNull(freeMgr.get(100));
+  }
+  pm.close();
+  f.close();
+    }
+
 
     /**
      *  Runs all tests in this class
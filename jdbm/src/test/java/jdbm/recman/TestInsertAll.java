@@ -0,0 +1,144 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2000 (C) Cees de Groot. All Rights Reserved.
+ * Contributions are Copyright (C) 2000 by their associated contributors.
+ *
+ * $Id$
+ */
+
+
+package jdbm.recman;
+
+import java.io.IOException;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test {@link RecordManager#insertAll(Object[], jdbm.helper.Serializer)}
+ * for the base and the cache record managers.
+ */
+public class TestInsertAll extends TestCase {
+
+    public TestInsertAll(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    public void tearDown() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    static int length(int i) {
+        return (i % 97 == 0) ? 2 * RecordFile.BLOCK_SIZE + i : 10 + (i % 300);
+    }
+
+    public void testBaseRecordManager() throws IOException {
+        doInsertAll(new BaseRecordManager(TestRecordFile.testFileName));
+    }
+
+    public void testCacheRecordManager() throws IOException {
+        doInsertAll(RecordManagerFactory
+                    .createRecordManager(TestRecordFile.testFileName));
+    }
+
+    /**
+     * Insert records one by one and delete some of them so that there are
+     * free logical and physical rows, then insert a batch which is larger
+     * than a translation page, interleave single inserts, reopen the store
+     * and verify all records.
+     */
+    void doInsertAll(RecordManager recman) throws IOException {
+        long[] singles = new long[50];
+        for (int i = 0; i < singles.length; i++) {
+            singles[i] = recman.insert(TestUtil.makeRecord(100, (byte) i));
+        }
+        for (int i = 0; i < singles.length; i += 2) {
+            recman.delete(singles[i]);
+        }
+        recman.commit();
+
+        final int n = 3000;
+        Object[] objs = new Object[n];
+        for (int i = 0; i < n; i++) {
+            objs[i] = TestUtil.makeRecord(length(i), (byte) i);
+        }
+        long[] recids = recman.insertAll(objs, null);
+        assertEquals(n, recids.length);
+        long after = recman.insert(TestUtil.makeRecord(500, (byte) 7));
+        long[] more = recman.insertAll(new Object[] {
+            TestUtil.makeRecord(20, (byte) 8) }, null);
+        recman.commit();
+        String name = TestRecordFile.testFileName;
+        recman.close();
+
+        recman = new BaseRecordManager(name);
+        for (int i = 0; i < n; i++) {
+            assertTrue("record " + i,
+                       TestUtil.checkRecord((byte[]) recman.fetch(recids[i]),
+                                            length(i), (byte) i));
+        }
+        for (int i = 1; i < singles.length; i += 2) {
+            assertTrue(TestUtil.checkRecord((byte[]) recman.fetch(singles[i]),
+                                            100, (byte) i));
+        }
+        assertTrue(TestUtil.checkRecord((byte[]) recman.fetch(after),
+                                        500, (byte) 7));
+        assertTrue(TestUtil.checkRecord((byte[]) recman.fetch(more[0]),
+                                        20, (byte) 8));
+        recman.close();
+    }
+
+    /**
+     *  Runs all tests in this class
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(new TestSuite(TestInsertAll.class));
+    }
+
+}
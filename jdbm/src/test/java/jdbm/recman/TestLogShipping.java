@@ -0,0 +1,251 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.recman;
+
+import java.io.File;
+import java.io.IOException;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ *  This class contains all Unit tests for {@link LogShipper} and
+ *  {@link LogFollower}.
+ */
+public class TestLogShipping extends TestCase {
+
+    static final String directory = "testShipping";
+
+    static final String followerName = "testFollower";
+
+    static final int RECORDS = 100;
+
+    public TestLogShipping(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        TestRecordFile.deleteTestFile();
+        deleteFiles();
+    }
+
+    public void tearDown() {
+        TestRecordFile.deleteTestFile();
+        deleteFiles();
+    }
+
+    static void deleteFiles() {
+        File dir = new File(directory);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                TestRecordFile.deleteFile(files[i].getPath());
+            }
+        }
+        dir.delete();
+        TestRecordFile.deleteFile(followerName + RecordFile.extension);
+        TestRecordFile.deleteFile(followerName + TransactionManager.extension);
+        TestRecordFile.deleteFile(followerName + LogFollower.FOLLOW_EXTENSION);
+    }
+
+    static long[] insertRecords(RecordManager recman, int version)
+        throws IOException {
+        long[] recids = new long[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            recids[i] = recman.insert("version " + version);
+        }
+        recman.commit();
+        return recids;
+    }
+
+    static void updateRecords(RecordManager recman, long[] recids, int version)
+        throws IOException {
+        for (int i = 0; i < recids.length; i++) {
+            recman.update(recids[i], "version " + version);
+        }
+        recman.commit();
+    }
+
+    static void assertRecords(RecordManager recman, long[] recids, int version)
+        throws IOException {
+        for (int i = 0; i < recids.length; i++) {
+            assertEquals("record " + i, "version " + version,
+                         recman.fetch(recids[i]));
+        }
+    }
+
+    /**
+     *  Test that a follower starts from the backup, applies the
+     *  transactions committed since and only those, and is read-only.
+     */
+    public void testShipAndFollow() throws IOException {
+        RecordManager recman = RecordManagerFactory
+            .createRecordManager(TestRecordFile.testFileName);
+        long[] recids = insertRecords(recman, 0);
+        recman.setNamedObject("records", recids[0]);
+        recman.commit();
+
+        LogShipper shipper = new LogShipper(recman, directory);
+        shipper.start();
+        assertTrue(shipper.isShipping());
+        updateRecords(recman, recids, 1);
+        long[] more = insertRecords(recman, 2);
+        assertEquals(2, shipper.getSequence());
+
+        LogFollower follower = new LogFollower(directory, followerName, null);
+        assertEquals(2, follower.getSequence());
+        assertRecords(follower, recids, 1);
+        assertRecords(follower, more, 2);
+        assertEquals(recids[0], follower.getNamedObject("records"));
+
+        updateRecords(recman, recids, 3);
+        recman.update(more[0], "not committed");
+        assertEquals(1, follower.poll());
+        assertEquals(0, follower.poll());
+        assertRecords(follower, recids, 3);
+        assertEquals("version 2", follower.fetch(more[0]));
+        recman.rollback();
+
+        try {
+            follower.update(recids[0], "x");
+            fail("expected exception");
+        } catch (UnsupportedOperationException ex) {
+            // expected.
+        }
+
+        // a follower opened again carries on where it stopped.
+        follower.close();
+        recman.update(more[1], "version 4");
+        recman.commit();
+        follower = new LogFollower(directory, followerName, null);
+        assertEquals(4, follower.getSequence());
+        assertEquals("version 4", follower.fetch(more[1]));
+        assertRecords(follower, recids, 3);
+        follower.close();
+
+        shipper.stop();
+        assertFalse(shipper.isShipping());
+        recman.close();
+    }
+
+    /**
+     *  Test that a follower starts again from the backup of a new
+     *  generation, which holds the transactions which were not shipped.
+     */
+    public void testNewGeneration() throws IOException {
+        RecordManager recman = RecordManagerFactory
+            .createRecordManager(TestRecordFile.testFileName);
+        long[] recids = insertRecords(recman, 0);
+        LogShipper shipper = new LogShipper(recman, directory);
+        shipper.start();
+        updateRecords(recman, recids, 1);
+        LogFollower follower = new LogFollower(directory, followerName, null);
+        assertRecords(follower, recids, 1);
+        long generation = shipper.getGeneration();
+
+        shipper.stop();
+        updateRecords(recman, recids, 2);
+        assertEquals(0, follower.poll());
+        assertRecords(follower, recids, 1);
+
+        shipper.start();
+        assertTrue(shipper.getGeneration() > generation);
+        updateRecords(recman, recids, 3);
+        assertEquals(1, follower.poll());
+        assertRecords(follower, recids, 3);
+
+        follower.close();
+        shipper.stop();
+        recman.close();
+    }
+
+    /**
+     *  Test a follower polling from its own thread while the shipping
+     *  record manager commits: every fetch sees a single version of the
+     *  records.
+     */
+    public void testPolling() throws Exception {
+        RecordManager recman = RecordManagerFactory
+            .createRecordManager(TestRecordFile.testFileName);
+        long[] recids = insertRecords(recman, 0);
+        LogShipper shipper = new LogShipper(recman, directory);
+        shipper.start();
+        LogFollower follower = new LogFollower(directory, followerName, null);
+        follower.start(1);
+        for (int version = 1; version <= 50; version++) {
+            updateRecords(recman, recids, version);
+            Object[] values;
+            synchronized (follower) {
+                values = follower.fetchAll(recids);
+            }
+            for (int i = 1; i < values.length; i++) {
+                assertEquals(values[0], values[i]);
+            }
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (follower.getSequence() < 50
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(follower.getFailure());
+        assertEquals(50, follower.getSequence());
+        assertRecords(follower, recids, 50);
+        follower.close();
+        shipper.stop();
+        recman.close();
+    }
+
+    /**
+     *  Runs all tests in this class
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(new TestSuite(TestLogShipping.class));
+    }
+}
@@ -81,6 +81,137 @@ public class TestPageManager extends TestCase {
         f.close();
     }
 
+    /**
+     *  Returns the pages on the indicated list.
+     */
+    static String list(PageManager pm, short type) throws Exception {
+        StringBuffer sb = new StringBuffer();
+        PageCursor curs = new PageCursor(pm, type);
+        for (long cur = curs.next(); cur != 0; cur = curs.next()) {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(cur);
+        }
+        return sb.toString();
+    }
+
+    /**
+     *  Returns the pages marked free.
+     */
+    static String free(PageManager pm) throws Exception {
+        StringBuffer sb = new StringBuffer();
+        for (long cur = pm.getNextFree(0); cur != 0; cur = pm.getNextFree(cur)) {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(cur);
+        }
+        return sb.toString();
+    }
+
+    /**
+     *  Test that freed pages are kept in the bitmap, that the lowest free
+     *  pages are reused first, and that contiguous runs are allocated from
+     *  free pages or from the end of the file.
+     */
+    public void testFreePagesAndExtents() throws Exception {
+        RecordFile f = new RecordFile(TestRecordFile.testFileName);
+        PageManager pm = new PageManager(f);
+        for (int i = 0; i < 10; i++) {
+            pm.allocate(Magic.USED_PAGE);
+        }
+        pm.free(Magic.USED_PAGE, 7);
+        pm.free(Magic.USED_PAGE, 3);
+        pm.free(Magic.USED_PAGE, 4);
+        pm.free(Magic.USED_PAGE, 9);
+        pm.free(Magic.USED_PAGE, 10);
+        assertEquals("3,4,7,9,10", free(pm));
+        assertEquals("", list(pm, Magic.FREE_PAGE));
+        assertEquals("1,2,5,6,8", list(pm, Magic.USED_PAGE));
+        // the bitmap took the page at the end of the file.
+        assertEquals(11, pm.getFileHeader().getBitmapRoot());
+
+        // a run of two fits at 3.
+        assertEquals(3, pm.allocate(Magic.TRANSLATION_PAGE, 2));
+        assertEquals("3,4", list(pm, Magic.TRANSLATION_PAGE));
+        // a single page is the lowest free page.
+        assertEquals(7, pm.allocate(Magic.TRANSLATION_PAGE));
+        // no run of three: extend the file.
+        assertEquals(12, pm.allocate(Magic.USED_PAGE, 3));
+        assertEquals("9,10", free(pm));
+        assertEquals("1,2,5,6,8,12,13,14", list(pm, Magic.USED_PAGE));
+        assertEquals(9, pm.allocate(Magic.USED_PAGE));
+        pm.commit();
+        pm.close();
+        f.close();
+
+        // the bitmap is kept in the file.
+        f = new RecordFile(TestRecordFile.testFileName);
+        pm = new PageManager(f);
+        assertEquals("10", free(pm));
+        assertEquals("3,4,7", list(pm, Magic.TRANSLATION_PAGE));
+        pm.free(Magic.TRANSLATION_PAGE, 4);
+        pm.free(Magic.USED_PAGE, 2);
+        assertEquals("2,4,10", free(pm));
+        pm.rollback();
+        assertEquals("10", free(pm));
+        // the run is taken from the end of the file, reusing 13 and 14.
+        pm.free(Magic.USED_PAGE, 14);
+        pm.free(Magic.USED_PAGE, 13);
+        assertEquals(13, pm.allocate(Magic.USED_PAGE, 3));
+        assertEquals("10", free(pm));
+        assertEquals(10, pm.allocate(Magic.USED_PAGE));
+        assertEquals(16, pm.allocate(Magic.USED_PAGE));
+        pm.close();
+        f.close();
+    }
+
+    /**
+     *  Test that a free list, as written by older versions, is moved into
+     *  the bitmap.
+     */
+    public void testFreeListMigrated() throws Exception {
+        RecordFile f = new RecordFile(TestRecordFile.testFileName);
+        PageManager pm = new PageManager(f);
+        for (int i = 0; i < 5; i++) {
+            pm.allocate(Magic.USED_PAGE);
+        }
+        pm.free(Magic.USED_PAGE, 2);
+        pm.free(Magic.USED_PAGE, 4);
+        pm.free(Magic.USED_PAGE, 3);
+
+        // drop the bitmap and link the free list as 4, 2, 3 directly.
+        pm.getFileHeader().setBitmapRoot(0);
+        PageHeader.getView(f.get(4)).setNext(2);
+        f.release(4, true);
+        PageHeader.getView(f.get(2)).setNext(3);
+        f.release(2, true);
+        PageHeader.getView(f.get(3)).setNext(0);
+        f.release(3, true);
+        pm.getFileHeader().setFirstOf(Magic.FREE_PAGE, 4);
+        pm.commit();
+        pm.close();
+        f.close();
+
+        f = new RecordFile(TestRecordFile.testFileName);
+        pm = new PageManager(f);
+        assertEquals("4,2,3", list(pm, Magic.FREE_PAGE));
+        assertEquals("2,3,4", free(pm));
+        assertEquals("", list(pm, Magic.FREE_PAGE));
+        assertEquals(7, pm.getFileHeader().getBitmapRoot());
+        pm.commit();
+        pm.close();
+        f.close();
+
+        f = new RecordFile(TestRecordFile.testFileName);
+        pm = new PageManager(f);
+        assertEquals("2,3,4", free(pm));
+        assertEquals(2, pm.allocate(Magic.USED_PAGE, 3));
+        assertEquals("", free(pm));
+        assertEquals("1,5,2,3,4", list(pm, Magic.USED_PAGE));
+        pm.close();
+        f.close();
+    }
+
     /**
      *  Runs all tests in this class
      */
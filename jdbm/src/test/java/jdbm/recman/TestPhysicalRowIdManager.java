@@ -142,6 +142,128 @@ public class TestPhysicalRowIdManager extends TestCase {
         
     }
 
+    static int countPages(PageManager pm, short type) throws Exception {
+        int n = 0;
+        PageCursor curs = new PageCursor(pm, type);
+        while (curs.next() != 0) {
+            n++;
+        }
+        return n;
+    }
+
+    static int countFreePages(PageManager pm) throws Exception {
+        int n = 0;
+        for (long cur = pm.getNextFree(0); cur != 0; cur = pm.getNextFree(cur)) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     *  Test that deleted rows are merged with neighbouring free rows and
+     *  with the unallocated space at the end of the last page, and that the
+     *  pages holding only the continuation of a deleted row are freed.
+     */
+    public void testCoalesceOnDelete() throws Exception {
+        RecordFile f = new RecordFile(TestRecordFile.testFileName);
+        PageManager pm = new PageManager(f);
+        PhysicalRowIdManager physMgr = new PhysicalRowIdManager(f, pm);
+
+        byte[] data = TestUtil.makeRecord(100, (byte) 1);
+        Location a = physMgr.insert(data, 0, data.length);
+        Location b = physMgr.insert(data, 0, data.length);
+        Location c = physMgr.insert(data, 0, data.length);
+        Location d = physMgr.insert(data, 0, data.length);
+
+        // b and c are merged into one free row which fits a larger record.
+        physMgr.delete(c);
+        physMgr.delete(b);
+        data = TestUtil.makeRecord(200 + RecordHeader.SIZE, (byte) 2);
+        assertEquals(b, physMgr.insert(data, 0, data.length));
+
+        // d goes back to the unallocated space and is allocated again.
+        physMgr.delete(d);
+        data = TestUtil.makeRecord(300, (byte) 3);
+        assertEquals(d, physMgr.insert(data, 0, data.length));
+        assertTrue(TestUtil.checkRecord(physMgr.fetch(a), 100, (byte) 1));
+
+        // a record spanning several pages, followed by a small record.
+        data = TestUtil.makeRecord(4 * RecordFile.BLOCK_SIZE, (byte) 4);
+        Location x = physMgr.insert(data, 0, data.length);
+        data = TestUtil.makeRecord(50, (byte) 5);
+        Location y = physMgr.insert(data, 0, data.length);
+        int usedPages = countPages(pm, Magic.USED_PAGE);
+        physMgr.delete(x);
+        assertEquals("continuation pages freed",
+                     usedPages - 3, countPages(pm, Magic.USED_PAGE));
+        assertTrue(TestUtil.checkRecord(physMgr.fetch(y), 50, (byte) 5));
+
+        // the freed pages are used again.
+        int freePages = countFreePages(pm);
+        data = TestUtil.makeRecord(2 * RecordFile.BLOCK_SIZE, (byte) 6);
+        Location z = physMgr.insert(data, 0, data.length);
+        assertTrue(TestUtil.checkRecord(physMgr.fetch(z),
+                                        2 * RecordFile.BLOCK_SIZE, (byte) 6));
+        assertTrue(countFreePages(pm) <= freePages - 2);
+        pm.commit();
+        pm.close();
+        f.close();
+
+        f = new RecordFile(TestRecordFile.testFileName);
+        pm = new PageManager(f);
+        physMgr = new PhysicalRowIdManager(f, pm);
+        assertTrue(TestUtil.checkRecord(physMgr.fetch(a), 100, (byte) 1));
+        assertTrue(TestUtil.checkRecord(physMgr.fetch(b),
+                                        200 + RecordHeader.SIZE, (byte) 2));
+        assertTrue(TestUtil.checkRecord(physMgr.fetch(d), 300, (byte) 3));
+        assertTrue(TestUtil.checkRecord(physMgr.fetch(y), 50, (byte) 5));
+        assertTrue(TestUtil.checkRecord(physMgr.fetch(z),
+                                        2 * RecordFile.BLOCK_SIZE, (byte) 6));
+        pm.close();
+        f.close();
+    }
+
+    /**
+     *  Test that rows appended as pages each fill a new page, one after the
+     *  other, and that the space left on the previous last page is freed.
+     */
+    public void testAppendPage() throws Exception {
+        RecordFile f = new RecordFile(TestRecordFile.testFileName);
+        PageManager pm = new PageManager(f);
+        PhysicalRowIdManager physMgr = new PhysicalRowIdManager(f, pm);
+
+        byte[] data = TestUtil.makeRecord(100, (byte) 1);
+        Location a = physMgr.insert(data, 0, data.length);
+        int chunk = DataPage.getDataPerPage(RecordFile.BLOCK_SIZE) - RecordHeader.SIZE;
+        Location[] rows = new Location[3];
+        for (int i = 0; i < rows.length; i++) {
+            data = TestUtil.makeRecord(i < 2 ? chunk : 10, (byte) (2 + i));
+            rows[i] = physMgr.appendPage(data, 0, data.length);
+            assertEquals(DataPage.O_DATA, rows[i].getOffset());
+            assertEquals(rows[0].getBlock() + i, rows[i].getBlock());
+        }
+        assertTrue(rows[0].getBlock() != a.getBlock());
+        for (int i = 0; i < rows.length; i++) {
+            assertTrue(TestUtil.checkRecord(physMgr.fetch(rows[i]),
+                                            i < 2 ? chunk : 10, (byte) (2 + i)));
+        }
+
+        // the rest of the first page is a free row which is reused.
+        data = TestUtil.makeRecord(chunk - 100 - RecordHeader.SIZE, (byte) 5);
+        Location b = physMgr.insert(data, 0, data.length);
+        assertEquals(a.getBlock(), b.getBlock());
+        assertTrue(TestUtil.checkRecord(physMgr.fetch(a), 100, (byte) 1));
+
+        try {
+            physMgr.appendPage(new byte[chunk + 1], 0, chunk + 1);
+            fail("expected exception");
+        } catch (IllegalArgumentException ex) {
+            // expected.
+        }
+        pm.close();
+        f.close();
+    }
+
     /**
      *  Runs all tests in this class
      */
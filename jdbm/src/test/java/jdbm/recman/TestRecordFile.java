@@ -204,6 +204,94 @@ public class TestRecordFile
     }
 
 
+    /**
+     *  Test write back of runs of adjacent dirty blocks, with holes and
+     *  with runs longer than the maximum write batch size.
+     */
+    public void testCoalescedWriteBack()
+        throws Exception
+    {
+        for ( int pass = 0; pass < 2; pass++ ) {
+            RecordFile file = new RecordFile( testFileName );
+            if ( pass == 0 ) {
+                file.disableTransactions();
+            }
+            file.setMaxWriteBatchSize( 4 );
+
+            // blocks 1..10 and 20..22, written in descending order.
+            for ( int i = 22; i > 0; i-- ) {
+                if ( i > 10 && i < 20 ) {
+                    continue;
+                }
+                byte[] data = file.get( i ).getData();
+                data[ 0 ] = (byte) i;
+                data[ RecordFile.BLOCK_SIZE - 1 ] = (byte) ( i + pass );
+                file.release( i, true );
+            }
+            file.commit();
+            file.close();
+
+            file = new RecordFile( testFileName );
+            for ( int i = 1; i <= 22; i++ ) {
+                byte[] data = file.get( i ).getData();
+                if ( i > 10 && i < 20 ) {
+                    assertEquals( "block " + i, 0, data[ 0 ] );
+                } else {
+                    assertEquals( "block " + i, (byte) i, data[ 0 ] );
+                    assertEquals( "block " + i, (byte) ( i + pass ),
+                                  data[ RecordFile.BLOCK_SIZE - 1 ] );
+                }
+                file.release( i, false );
+            }
+            file.close();
+        }
+    }
+
+
+    /**
+     *  Test that the page size given when a file is created is used for
+     *  that file and is not changed by the page size requested when it is
+     *  reopened.
+     */
+    public void testPageSize()
+        throws Exception
+    {
+        int[] sizes = new int[] { RecordFile.MIN_BLOCK_SIZE,
+                                  RecordFile.MAX_BLOCK_SIZE };
+        for ( int i = 0; i < sizes.length; i++ ) {
+            BaseRecordManager recman =
+                new BaseRecordManager( testFileName, sizes[ i ] );
+            assertEquals( sizes[ i ], recman._file.getBlockSize() );
+            byte[] small = TestUtil.makeRecord( 100, (byte) 1 );
+            byte[] large = TestUtil.makeRecord( 3 * sizes[ i ], (byte) 2 );
+            long recid1 = recman.insert( small );
+            long recid2 = recman.insert( large );
+            int nroots = recman.getRootCount();
+            recman.setRoot( nroots - 1, recid2 );
+            recman.commit();
+            recman.close();
+
+            recman = new BaseRecordManager( testFileName );
+            assertEquals( sizes[ i ], recman._file.getBlockSize() );
+            assertEquals( nroots, recman.getRootCount() );
+            assertEquals( recid2, recman.getRoot( nroots - 1 ) );
+            assertTrue( TestUtil.checkRecord( (byte[]) recman.fetch( recid1 ),
+                                              100, (byte) 1 ) );
+            assertTrue( TestUtil.checkRecord( (byte[]) recman.fetch( recid2 ),
+                                              3 * sizes[ i ], (byte) 2 ) );
+            recman.close();
+            deleteTestFile();
+        }
+
+        try {
+            new RecordFile( testFileName, 5000 );
+            fail( "expected exception" );
+        } catch ( IllegalArgumentException except ) {
+            // ignore
+        }
+    }
+
+
     /**
      *  Runs all tests in this class
      */
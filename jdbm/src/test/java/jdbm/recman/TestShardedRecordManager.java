@@ -0,0 +1,318 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2001 (C) Alex Boisvert. All Rights Reserved.
+ * Contributions are Copyright (C) 2001 by their associated contributors.
+ *
+ */
+
+package jdbm.recman;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Properties;
+
+import jdbm.BlobInputStream;
+import jdbm.BlobOutputStream;
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+import jdbm.RecordManagerStatistics;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ *  This class contains all Unit tests for {@link ShardedRecordManager}.
+ */
+public class TestShardedRecordManager extends TestCase {
+
+    static final String testName = "testSharded";
+
+    static final String backupName = "testShardedBackup";
+
+    public TestShardedRecordManager(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        deleteFiles(testName);
+        deleteFiles(backupName);
+    }
+
+    public void tearDown() {
+        deleteFiles(testName);
+        deleteFiles(backupName);
+    }
+
+    static void deleteFiles(String name) {
+        TestRecordFile.deleteFile(name + ShardedRecordManager.COORDINATOR_EXTENSION);
+        for (int i = 0; i < 4; i++) {
+            TestRecordFile.deleteFile(name + "-" + i + RecordFile.extension);
+            TestRecordFile.deleteFile(name + "-" + i + TransactionManager.extension);
+        }
+    }
+
+    static RecordManager open(int nshards) throws IOException {
+        Properties options = new Properties();
+        options.setProperty(RecordManagerOptions.SHARDS, "" + nshards);
+        return RecordManagerFactory.createRecordManager(testName, options);
+    }
+
+    /**
+     *  Test that records are spread across the shards and routed by recid,
+     *  and that the roots and named objects are kept.
+     */
+    public void testRouting() throws IOException {
+        RecordManager recman = open(4);
+        assertTrue(recman instanceof ShardedRecordManager);
+        long[] recids = new long[100];
+        int[] counts = new int[4];
+        for (int i = 0; i < recids.length; i++) {
+            recids[i] = recman.insert("record " + i);
+            counts[ShardedRecordManager.shardOf(recids[i])]++;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            assertEquals(25, counts[i]);
+        }
+        recman.update(recids[1], "updated");
+        recman.delete(recids[2]);
+        recman.setNamedObject("first", recids[0]);
+        recman.setRoot(recman.getRootCount() - 1, recids[3]);
+        recman.commit();
+        assertEquals(1, recman.getStatistics().get(
+            RecordManagerStatistics.DISTRIBUTED_COMMITS));
+        recman.close();
+
+        recman = open(4);
+        assertEquals("record 0", recman.fetch(recids[0]));
+        assertEquals("updated", recman.fetch(recids[1]));
+        assertEquals("record 99", recman.fetch(recids[99]));
+        assertEquals(recids[0], recman.getNamedObject("first"));
+        assertEquals(recids[3], recman.getRoot(recman.getRootCount() - 1));
+
+        // a single shard commits on its own.
+        recman.update(recids[4], "alone");
+        recman.commit();
+        assertEquals(0, recman.getStatistics().get(
+            RecordManagerStatistics.DISTRIBUTED_COMMITS));
+        recman.update(recids[4], "rolled back");
+        recman.update(recids[5], "rolled back");
+        recman.rollback();
+        assertEquals("alone", recman.fetch(recids[4]));
+        assertEquals("record 5", recman.fetch(recids[5]));
+        recman.close();
+
+        try {
+            open(2);
+            fail("expected exception");
+        } catch (IllegalArgumentException ex) {
+            // expected.
+        }
+    }
+
+    /**
+     *  Test that a transaction prepared by the shards but not decided by the
+     *  coordinator is rolled back when the shards are opened, and that a
+     *  decided one is recovered.
+     */
+    public void testRecovery() throws IOException {
+        ShardedRecordManager recman = new ShardedRecordManager(testName, 2,
+                                                               new Properties());
+        long recid0 = recman.insert("a0");
+        long recid1 = recman.insert("a1");
+        assertTrue(ShardedRecordManager.shardOf(recid0)
+                   != ShardedRecordManager.shardOf(recid1));
+        recman.commit();
+        recman.update(recid0, "b0");
+        recman.update(recid1, "b1");
+        recman.commit();
+        recman.forceClose();
+
+        // the second transaction is decided.
+        recman = new ShardedRecordManager(testName, 2, new Properties());
+        assertEquals("b0", recman.fetch(recid0));
+        assertEquals("b1", recman.fetch(recid1));
+        recman.update(recid0, "c0");
+        recman.update(recid1, "c1");
+        recman.commit();
+        recman.forceClose();
+
+        // a crash before the decision of the third transaction.
+        RandomAccessFile coordinator = new RandomAccessFile(
+            testName + ShardedRecordManager.COORDINATOR_EXTENSION, "rw");
+        coordinator.seek(Magic.SZ_SHORT + Magic.SZ_INT);
+        assertEquals(3, coordinator.readLong());
+        coordinator.seek(Magic.SZ_SHORT + Magic.SZ_INT);
+        coordinator.writeLong(2);
+        coordinator.close();
+
+        recman = new ShardedRecordManager(testName, 2, new Properties());
+        assertEquals("b0", recman.fetch(recid0));
+        assertEquals("b1", recman.fetch(recid1));
+        recman.close();
+    }
+
+    /**
+     *  Test threads updating records of all the shards while another
+     *  commits.
+     */
+    public void testConcurrentUpdates() throws Exception {
+        final RecordManager recman = open(4);
+        final long[] recids = new long[400];
+        for (int i = 0; i < recids.length; i++) {
+            recids[i] = recman.insert(new Integer(0));
+        }
+        recman.commit();
+        final Exception[] failure = new Exception[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int first = t * 100;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int v = 1; v <= 20; v++) {
+                            for (int i = first; i < first + 100; i++) {
+                                recman.update(recids[i], new Integer(v));
+                            }
+                        }
+                    } catch (Exception ex) {
+                        synchronized (failure) {
+                            failure[0] = ex;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int i = 0; i < 20; i++) {
+            recman.commit();
+            Thread.sleep(1);
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        recman.close();
+        RecordManager reopened = open(4);
+        for (int i = 0; i < recids.length; i++) {
+            assertEquals(new Integer(20), reopened.fetch(recids[i]));
+        }
+        reopened.close();
+    }
+
+    /**
+     *  Test that a blob written across a commit is committed with the next
+     *  one, and that its stream refuses writes once the record manager is
+     *  closed.
+     */
+    public void testBlobAcrossCommit() throws IOException {
+        ShardedRecordManager recman = new ShardedRecordManager(testName, 2,
+                                                               new Properties());
+        BlobOutputStream out = recman.openBlobOutput();
+        recman.commit();
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        out.write(data);
+        out.close();
+        long recid = out.getRecid();
+        recman.commit();
+        recman.forceClose();
+
+        recman = new ShardedRecordManager(testName, 2, new Properties());
+        BlobInputStream in = recman.openBlobInput(recid);
+        assertEquals(data.length, in.length());
+        byte[] read = new byte[data.length];
+        int n = 0;
+        while (n < read.length) {
+            int count = in.read(read, n, read.length - n);
+            assertTrue(count > 0);
+            n += count;
+        }
+        in.close();
+        assertTrue(Arrays.equals(data, read));
+
+        out = recman.openBlobOutput();
+        recman.close();
+        try {
+            out.write(data);
+            fail("expected exception");
+        } catch (IllegalStateException ex) {
+            // expected.
+        }
+    }
+
+    /**
+     *  Test a backup of all the shards.
+     */
+    public void testBackup() throws IOException {
+        RecordManager recman = open(3);
+        long[] recids = new long[30];
+        for (int i = 0; i < recids.length; i++) {
+            recids[i] = recman.insert("record " + i);
+        }
+        recman.commit();
+        recman.update(recids[0], "not committed");
+        recman.backup(backupName, false);
+        recman.close();
+        assertTrue(new File(backupName + "-2" + RecordFile.extension).exists());
+
+        RecordManager backup = new ShardedRecordManager(backupName, 3,
+                                                        new Properties());
+        for (int i = 0; i < recids.length; i++) {
+            assertEquals("record " + i, backup.fetch(recids[i]));
+        }
+        backup.close();
+    }
+
+    /**
+     *  Runs all tests in this class
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(new TestSuite(TestShardedRecordManager.class));
+    }
+}
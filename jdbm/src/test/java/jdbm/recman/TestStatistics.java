@@ -0,0 +1,239 @@
+/**
+ * JDBM LICENSE v1.00
+ *
+ * Redistribution and use of this software and associated documentation
+ * ("Software"), with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain copyright
+ *    statements and notices.  Redistributions must also contain a
+ *    copy of this document.
+ *
+ * 2. Redistributions in binary form must reproduce the
+ *    above copyright notice, this list of conditions and the
+ *    following disclaimer in the documentation and/or other
+ *    materials provided with the distribution.
+ *
+ * 3. The name "JDBM" must not be used to endorse or promote
+ *    products derived from this Software without prior written
+ *    permission of Cees de Groot.  For written permission,
+ *    please contact cg@cdegroot.com.
+ *
+ * 4. Products derived from this Software may not be called "JDBM"
+ *    nor may "JDBM" appear in their names without prior written
+ *    permission of Cees de Groot.
+ *
+ * 5. Due credit should be given to the JDBM Project
+ *    (http://jdbm.sourceforge.net/).
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE JDBM PROJECT AND CONTRIBUTORS
+ * ``AS IS'' AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL
+ * CEES DE GROOT OR ANY CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * Copyright 2000 (C) Cees de Groot. All Rights Reserved.
+ * Contributions are Copyright (C) 2000 by their associated contributors.
+ *
+ * $Id$
+ */
+
+package jdbm.recman;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+import jdbm.RecordManagerStatistics;
+import jdbm.helper.LatencyHistograms;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Test the {@link RecordManagerStatistics} and the statistics MBean.
+ */
+public class TestStatistics extends TestCase {
+
+    public TestStatistics(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    public void tearDown() {
+        TestRecordFile.deleteTestFile();
+    }
+
+    /**
+     * Test the statistics of the record file, the transaction log, the
+     * allocator and the record manager.
+     */
+    public void testBaseStatistics() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(RecordManagerOptions.CACHE_TYPE,
+                RecordManagerOptions.NO_CACHE);
+        RecordManager recman = RecordManagerFactory.createRecordManager(
+                TestRecordFile.testFileName, props);
+        // the provider commits while setting up the store.
+        RecordManagerStatistics before = recman.getStatistics();
+        long recid = recman.insert("small");
+        recman.commit();
+        recman.update(recid, new byte[1000]);
+        recman.commit();
+        recman.insert("other");
+        recman.rollback();
+
+        RecordManagerStatistics stats = recman.getStatistics();
+        assertFalse(stats.contains(RecordManagerStatistics.OBJECT_CACHE_HITS));
+        assertEquals(2, stats.get(RecordManagerStatistics.COMMITS)
+                - before.get(RecordManagerStatistics.COMMITS));
+        assertEquals(1, stats.get(RecordManagerStatistics.ROLLBACKS));
+        assertTrue(stats.get(RecordManagerStatistics.COMMIT_NANOS) > 0);
+        assertEquals(2, stats.get(RecordManagerStatistics.LOG_TRANSACTIONS)
+                - before.get(RecordManagerStatistics.LOG_TRANSACTIONS));
+        assertTrue(stats.get(RecordManagerStatistics.LOG_SIZE) > 0);
+        assertTrue(stats.get(RecordManagerStatistics.FSYNCS) >= 2);
+        assertTrue(stats.get(RecordManagerStatistics.BLOCK_CACHE_HITS) > 0);
+        assertEquals(1, stats.get(RecordManagerStatistics.ROWS_MOVED)
+                - before.get(RecordManagerStatistics.ROWS_MOVED));
+        assertEquals(1, stats.get(RecordManagerStatistics.ROWS_FREED)
+                - before.get(RecordManagerStatistics.ROWS_FREED));
+        assertEquals(3, stats.get(RecordManagerStatistics.ROWS_ALLOCATED)
+                + stats.get(RecordManagerStatistics.ROWS_REUSED)
+                - before.get(RecordManagerStatistics.ROWS_ALLOCATED)
+                - before.get(RecordManagerStatistics.ROWS_REUSED));
+        recman.close();
+
+        // a new store reads its blocks from disk.
+        recman = RecordManagerFactory.createRecordManager(
+                TestRecordFile.testFileName, props);
+        recman.fetch(recid);
+        stats = recman.getStatistics();
+        assertTrue(stats.get(RecordManagerStatistics.BLOCKS_READ) > 0);
+        assertEquals(stats.get(RecordManagerStatistics.BLOCKS_READ)
+                * RecordFile.BLOCK_SIZE, stats
+                .get(RecordManagerStatistics.BYTES_READ));
+        assertEquals(0, stats.get(RecordManagerStatistics.LOG_CHECKPOINTS));
+        recman.close();
+    }
+
+    /**
+     * Test the object cache statistics.
+     */
+    public void testCacheStatistics() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(RecordManagerOptions.CACHE_SIZE, "1");
+        RecordManager recman = RecordManagerFactory.createRecordManager(
+                TestRecordFile.testFileName, props);
+        long recid1 = recman.insert("one");
+        recman.fetch(recid1);
+        long recid2 = recman.insert("two");
+        recman.update(recid2, "deux");
+        recman.fetch(recid1); // evicts the dirty record 2.
+        recman.fetchAll(new long[] { recid1, recid2 });
+
+        RecordManagerStatistics stats = recman.getStatistics();
+        assertEquals(2, stats.get(RecordManagerStatistics.OBJECT_CACHE_HITS));
+        assertEquals(2, stats.get(RecordManagerStatistics.OBJECT_CACHE_MISSES));
+        assertTrue(stats.get(RecordManagerStatistics.OBJECT_CACHE_WRITE_BACKS) >= 1);
+        assertTrue(stats.contains(RecordManagerStatistics.BLOCK_CACHE_HITS));
+        recman.close();
+    }
+
+    /**
+     * Test that the statistics are registered as an MBean while the store
+     * is open.
+     */
+    public void testMBean() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(RecordManagerOptions.JMX, "true");
+        RecordManager recman = RecordManagerFactory.createRecordManager(
+                TestRecordFile.testFileName, props);
+        long commits = recman.getStatistics().get(
+                RecordManagerStatistics.COMMITS);
+        recman.insert("abc");
+        recman.commit();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("jdbm:type=RecordManager,name="
+                + ObjectName.quote(TestRecordFile.testFileName));
+        assertTrue(server.isRegistered(name));
+        Long value = (Long) server.getAttribute(name,
+                RecordManagerStatistics.COMMITS);
+        assertEquals(commits + 1, value.longValue());
+        assertNotNull(server.getAttribute(name,
+                RecordManagerStatistics.OBJECT_CACHE_HITS));
+        recman.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+    /**
+     * Test the latency histograms, including the split of fetches into
+     * cache hits and misses.
+     */
+    public void testLatencyHistograms() throws Exception {
+        RecordManager recman = RecordManagerFactory
+            .createRecordManager(TestRecordFile.testFileName);
+        assertNull(recman.getLatencyHistograms());
+        assertFalse(recman.getStatistics().contains("CommitLatencyP99"));
+        recman.close();
+
+        Properties props = new Properties();
+        props.setProperty(RecordManagerOptions.LATENCY_HISTOGRAMS, "true");
+        recman = RecordManagerFactory.createRecordManager(
+                TestRecordFile.testFileName, props);
+        LatencyHistograms latencies = recman.getLatencyHistograms();
+        assertNotNull(latencies);
+        latencies.reset();
+        long recid = recman.insert("abc");
+        recman.update(recid, "def");
+        recman.commit();
+        recman.fetch(recid); // hit.
+        recman.rollback();
+        recman.fetch(recid); // miss.
+        recman.delete(recid);
+        recman.commit();
+
+        assertEquals(1, latencies.get(LatencyHistograms.FETCH_CACHE_HIT)
+                .getCount());
+        assertEquals(1, latencies.get(LatencyHistograms.FETCH_CACHE_MISS)
+                .getCount());
+        assertEquals(1, latencies.get(LatencyHistograms.FETCH).getCount());
+        assertEquals(1, latencies.get(LatencyHistograms.DELETE).getCount());
+        assertEquals(2, latencies.get(LatencyHistograms.COMMIT).getCount());
+        assertTrue(latencies.get(LatencyHistograms.COMMIT).getMax() > 0);
+
+        // a checkpoint is forced by the synchronization of the log.
+        ((BaseRecordManager) recman.getBaseRecordManager())
+                .getTransactionManager().synchronizeLog();
+        assertEquals(1, latencies.get(LatencyHistograms.CHECKPOINT).getCount());
+
+        RecordManagerStatistics stats = recman.getStatistics();
+        assertEquals(2, stats.get("CommitLatencyCount"));
+        assertTrue(stats.get("CommitLatencyP99") > 0);
+        recman.close();
+    }
+
+    /**
+     *  Runs all tests in this class
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(new TestSuite(TestStatistics.class));
+    }
+
+}
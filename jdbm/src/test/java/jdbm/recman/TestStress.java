@@ -73,6 +73,7 @@ public class TestStress extends TestCase {
 
 	// test parameters
 	final int RECORDS = 10000;
+	final int NROOTS = new FileHeader(new BlockIo(0, new byte[RecordFile.BLOCK_SIZE]), true).getRootCount();
 
 	final int MAXSIZE = 500;
 
@@ -112,13 +113,13 @@ public class TestStress extends TestCase {
 	}
 
 	// holder for root records
-	long[] roots = new long[FileHeader.NROOTS];
+	long[] roots = new long[NROOTS];
 
 	private int getRandomAllocatedRoot() {
-		int slot = rnd.nextInt(FileHeader.NROOTS);
+		int slot = rnd.nextInt(NROOTS);
 		while (roots[slot] == 0) {
 			slot++;
-			if (slot == FileHeader.NROOTS)
+			if (slot == NROOTS)
 				slot = 0; // wrap
 		}
 		return slot;
@@ -217,7 +218,7 @@ public class TestStress extends TestCase {
 					updates++;
 				} else if (op == 51) {
 					// SET ROOT, but not any of the roots that are actually in use!
-					int root = Math.max( BaseRecordManager.FIRST_FREE_ROOT, rnd.nextInt(FileHeader.NROOTS) );
+					int root = Math.max( BaseRecordManager.FIRST_FREE_ROOT, rnd.nextInt(NROOTS) );
 					roots[root] = rnd.nextLong();
 					recman.setRoot(root, roots[root]);
 					rootsets++;
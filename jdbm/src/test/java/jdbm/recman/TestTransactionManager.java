@@ -22,6 +22,8 @@
  */
 package jdbm.recman;
 
+import jdbm.RecordManagerStatistics;
+
 import junit.framework.*;
 import java.io.*;
 
@@ -115,6 +117,54 @@ public class TestTransactionManager extends TestCase {
         file2.forceClose();
     }
 
+    /**
+     *  Test recovery of a log with more blocks than a single recovery
+     *  thread handles, in which later transactions overwrite some of the
+     *  blocks of earlier ones.
+     */
+    public void testParallelRecovery() throws Exception {
+        final int nblocks = 2000;
+        int nlogged = 0;
+        RecordFile file1 = new RecordFile(TestRecordFile.testFileName);
+        for (int txn = 1; txn <= 3; txn++) {
+            for (int i = 0; i < nblocks; i++) {
+                // the first transaction writes every block, the others
+                // every second and third block.
+                if (txn > 1 && i % txn != 0) {
+                    continue;
+                }
+                BlockIo node = file1.get(i);
+                node.writeLong(0, i);
+                node.writeInt(8, txn);
+                node.setDirty();
+                file1.release(node);
+                nlogged++;
+            }
+            file1.commit();
+        }
+        assertDataSizeEquals("len1", 0);
+        file1.forceClose();
+
+        RecordFile file2 = new RecordFile(TestRecordFile.testFileName,
+                                          RecordFile.BLOCK_SIZE, 4);
+        assertDataSizeEquals("len2", nblocks * RecordFile.BLOCK_SIZE);
+        assertLogSizeEquals("len2", 8);
+        for (int i = 0; i < nblocks; i++) {
+            BlockIo node = file2.get(i);
+            assertEquals(i, node.readLong(0));
+            int txn = i % 3 == 0 ? 3 : i % 2 == 0 ? 2 : 1;
+            assertEquals("block " + i, txn, node.readInt(8));
+            file2.release(node);
+        }
+        RecordManagerStatistics stats = new RecordManagerStatistics();
+        file2.addStatistics(stats);
+        assertEquals(3, stats.get(RecordManagerStatistics.LOG_RECOVERED_TRANSACTIONS));
+        assertEquals(nblocks, stats.get(RecordManagerStatistics.LOG_RECOVERED_BLOCKS));
+        assertEquals(nlogged, stats.get(RecordManagerStatistics.LOG_REPLAYED_BLOCKS));
+        assertEquals(0, stats.get(RecordManagerStatistics.LOG_DISCARDED_TRANSACTIONS));
+        file2.forceClose();
+    }
+
     //  Helpers
 
     void assertDataSizeEquals(String msg, long size) {
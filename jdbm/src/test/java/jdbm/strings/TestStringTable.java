@@ -399,4 +399,208 @@ public class TestStringTable
         
     }
 
+    /**
+     * Tests internAll() on strings with duplicates, nulls and strings
+     * which were already interned.
+     */
+
+    public void test_internAll_001()
+    	throws IOException
+    {
+
+        int a = stbl.intern( "a", true );
+
+        String[] strings = new String[] { "d", "a", null, "c", "d", "b", "a" };
+
+        int[] stringIds = stbl.internAll( strings );
+
+        assertEquals( strings.length, stringIds.length );
+        assertEquals( a, stringIds[ 1 ] );
+        assertEquals( a, stringIds[ 6 ] );
+        assertEquals( StringTable.NULLID, stringIds[ 2 ] );
+        assertEquals( stringIds[ 0 ], stringIds[ 4 ] );
+
+        // the new strings get consecutive stringIds in sort order.
+        assertEquals( 2, stringIds[ 5 ] ); // b
+        assertEquals( 3, stringIds[ 3 ] ); // c
+        assertEquals( 4, stringIds[ 0 ] ); // d
+
+        for( int i=0; i<strings.length; i++ ) {
+
+            assertEquals( stringIds[ i ], stbl.intern( strings[ i ], false ) );
+
+        }
+
+        assertEquals( 5, stbl.intern( "e", true ) );
+
+        reopenStore();
+
+        for( int i=0; i<strings.length; i++ ) {
+
+            assertEquals( strings[ i ], stbl.disintern( stringIds[ i ] ) );
+
+        }
+
+        // a batch of strings which are all interned changes nothing.
+        int[] again = stbl.internAll( strings );
+
+        for( int i=0; i<strings.length; i++ ) {
+
+            assertEquals( stringIds[ i ], again[ i ] );
+
+        }
+
+        assertEquals( 6, stbl.intern( "f", true ) );
+
+    }
+
+    /**
+     * Tests internAll() on new strings which fall between strings that
+     * are already interned, across many pages of the intern btree.
+     */
+
+    public void test_internAll_002()
+    	throws IOException
+    {
+
+        final int n = 1000;
+
+        int[] known = new int[ n ];
+
+        for( int i=0; i<n; i+=2 ) {
+
+            known[ i ] = stbl.intern( "k"+(10000+i), true );
+
+        }
+
+        reopenStore();
+
+        String[] strings = new String[ n ];
+
+        for( int i=0; i<n; i++ ) {
+
+            // reversed, so that the sort does some work.
+            strings[ i ] = "k"+(10000+n-1-i);
+
+        }
+
+        int[] stringIds = stbl.internAll( strings );
+
+        int nextId = n / 2 + 1;
+
+        for( int i=n-1; i>=0; i-- ) {
+
+            int k = n-1-i;
+
+            if( k % 2 == 0 ) {
+
+                assertEquals( strings[ i ], known[ k ], stringIds[ i ] );
+
+            } else {
+
+                assertEquals( strings[ i ], nextId++, stringIds[ i ] );
+
+            }
+
+            assertEquals( stringIds[ i ], stbl.intern( strings[ i ], false ) );
+
+        }
+
+    }
+
+    /**
+     * Tests intern(), internAll() and disintern() with a cache smaller
+     * than the #of strings, from several threads interning the same
+     * strings.
+     */
+
+    public void test_cache_001()
+    	throws Exception
+    {
+
+        stbl.setCacheSize( 64 );
+
+        final int nstrings = 500;
+
+        final String[] testStrings = new String[ nstrings ];
+
+        for( int i=0; i<nstrings; i++ ) {
+
+            testStrings[ i ] = "s" + i;
+
+        }
+
+        final int[][] stringIds = new int[ 4 ][];
+
+        final Throwable[] failures = new Throwable[ 4 ];
+
+        Thread[] threads = new Thread[ 4 ];
+
+        for( int t=0; t<threads.length; t++ ) {
+
+            final int id = t;
+
+            threads[ t ] = new Thread() {
+                    public void run() {
+                        try {
+                            if( id % 2 == 0 ) {
+                                stringIds[ id ] = stbl.internAll( testStrings );
+                            } else {
+                                int[] ids = new int[ nstrings ];
+                                for( int i=0; i<nstrings; i++ ) {
+                                    ids[ i ] = stbl.intern( testStrings[ i ], true );
+                                }
+                                stringIds[ id ] = ids;
+                            }
+                        } catch( Throwable ex ) {
+                            failures[ id ] = ex;
+                        }
+                    }
+                };
+
+            threads[ t ].start();
+
+        }
+
+        for( int t=0; t<threads.length; t++ ) {
+
+            threads[ t ].join();
+
+            if( failures[ t ] != null ) {
+
+                throw new RuntimeException( failures[ t ] );
+
+            }
+
+        }
+
+        // every thread got the same stringIds, which are distinct.
+        java.util.Set distinct = new java.util.HashSet();
+
+        for( int i=0; i<nstrings; i++ ) {
+
+            for( int t=1; t<threads.length; t++ ) {
+
+                assertEquals( stringIds[ 0 ][ i ], stringIds[ t ][ i ] );
+
+            }
+
+            assertTrue( distinct.add( new Integer( stringIds[ 0 ][ i ] ) ) );
+
+            assertEquals( testStrings[ i ], stbl.disintern( stringIds[ 0 ][ i ] ) );
+
+        }
+
+        assertEquals( nstrings + 1, stbl.intern( "new", true ) );
+
+        reopenStore();
+
+        for( int i=0; i<nstrings; i++ ) {
+
+            assertEquals( stringIds[ 0 ][ i ], stbl.intern( testStrings[ i ], false ) );
+
+        }
+
+    }
+
 }
@@ -0,0 +1,113 @@
+package jdbm.perftests;
+
+import java.util.Random;
+
+/**
+ * Chooses the key of the next operation of a workload. Keys are dense,
+ * from 0 to the number of records in the store. Choosers are shared by
+ * the threads of a workload, each thread passing its own random source.
+ */
+interface KeyChooser {
+
+    /**
+     * Returns a key in [0, itemCount).
+     */
+    public long nextKey(Random random, long itemCount);
+
+    /**
+     * Chooses every key with the same probability.
+     */
+    static class Uniform implements KeyChooser {
+
+        public long nextKey(Random random, long itemCount) {
+            return (random.nextLong() & Long.MAX_VALUE) % itemCount;
+        }
+
+        public String toString() {
+            return "uniform";
+        }
+    }
+
+    /**
+     * Chooses keys following a Zipfian distribution, so that a few keys are
+     * much hotter than the others. The ranks are computed as described by
+     * Gray et al. in "Quickly Generating Billion-Record Synthetic
+     * Databases" over a fixed number of items and then hashed over the
+     * keys, so that the hot keys are scattered over the store rather than
+     * clustered at its start, and keys inserted while the workload runs
+     * may be chosen too.
+     */
+    static class Zipfian implements KeyChooser {
+
+        /** The number of ranks, independent of the size of the store. */
+        static final long ITEMS = 10000000000L;
+
+        final double theta;
+        final double alpha;
+        final double zetan;
+        final double eta;
+
+        /**
+         * @param theta The skew of the distribution, 0.99 in YCSB.
+         */
+        Zipfian(double theta) {
+            this.theta = theta;
+            // zeta(n) for 10^10 items takes too long to sum, so it is
+            // approximated by the integral of x^-theta past the first
+            // million terms.
+            long exact = 1000000;
+            double zeta = zeta(exact, theta);
+            zeta += (Math.pow(ITEMS, 1 - theta) - Math.pow(exact, 1 - theta))
+                / (1 - theta);
+            this.zetan = zeta;
+            this.alpha = 1 / (1 - theta);
+            double zeta2 = zeta(2, theta);
+            this.eta = (1 - Math.pow(2.0 / ITEMS, 1 - theta)) / (1 - zeta2 / zetan);
+        }
+
+        private static double zeta(long n, double theta) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        /**
+         * Returns a rank in [0, ITEMS), 0 being the most frequent.
+         */
+        long nextRank(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, theta)) {
+                return 1;
+            }
+            return (long) (ITEMS * Math.pow(eta * u - eta + 1, alpha));
+        }
+
+        public long nextKey(Random random, long itemCount) {
+            return (fnvHash(nextRank(random)) & Long.MAX_VALUE) % itemCount;
+        }
+
+        /**
+         * The 64 bit FNV-1a hash of a long.
+         */
+        static long fnvHash(long value) {
+            long hash = 0xCBF29CE484222325L;
+            for (int i = 0; i < 8; i++) {
+                hash ^= value & 0xff;
+                hash *= 1099511628211L;
+                value >>>= 8;
+            }
+            return hash;
+        }
+
+        public String toString() {
+            return "zipfian(" + theta + ")";
+        }
+    }
+
+}
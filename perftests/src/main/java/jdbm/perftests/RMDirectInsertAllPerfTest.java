@@ -0,0 +1,43 @@
+/*
+ * (c) 2005 Trumpet, Inc.
+ *
+ */
+package jdbm.perftests;
+
+import java.io.IOException;
+
+import jdbm.RecordManager;
+import jdbm.helper.Serializer;
+
+/**
+ * Inserts records in batches using {@link RecordManager#insertAll}. Each
+ * operation inserts one batch, so divide the reported rate by the batch
+ * size to compare with {@link RMDirectBatchInsertPerfTest}.
+ */
+public class RMDirectInsertAllPerfTest implements PerfTest{
+        RecordManager rm;
+        Object[] objs;
+        Serializer serializer;
+        int dataSize;
+
+        public RMDirectInsertAllPerfTest(int dataSize, int batchSize){
+            this.dataSize = dataSize;
+            serializer = new SimpleSerializer(dataSize);
+            objs = new Object[batchSize];
+        }
+
+        public void initialize(RecordManager rm) throws IOException{
+            this.rm = rm;
+            for (int i = 0; i < objs.length; i++) {
+                objs[i] = new Object();
+            }
+        }
+        
+        public void doOperation() throws IOException {
+            long[] recids = rm.insertAll(objs, serializer);
+        }
+        
+        public String toString() {
+            return super.toString() + " with data size " + dataSize + " and batch size " + objs.length;
+        }
+   }
@@ -0,0 +1,453 @@
+package jdbm.perftests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+import jdbm.helper.LatencyHistogram;
+
+/**
+ * Runs a mix of reads, updates, inserts and scans over a BTree, an HTree or
+ * records of the record manager from several threads, in the manner of the
+ * Yahoo! Cloud Serving Benchmark, and prints the throughput and latency
+ * percentiles of each operation as the workload runs.
+ * <p>
+ * The options are given as <code>name=value</code> arguments or in a
+ * properties file given as <code>-f file</code>:
+ * <dl>
+ * <dt>target</dt><dd>btree, htree or recman (btree).</dd>
+ * <dt>workload</dt><dd>Sets the proportions of one of the YCSB core
+ *   workloads: a (50% read, 50% update), b (95% read, 5% update), c (read
+ *   only), d (95% read, 5% insert) or e (95% scan, 5% insert).</dd>
+ * <dt>read, update, insert, scan</dt><dd>The proportions of each operation
+ *   (1, 0, 0, 0).</dd>
+ * <dt>distribution</dt><dd>zipfian or uniform (zipfian).</dd>
+ * <dt>zipfianConstant</dt><dd>The skew of the Zipfian distribution
+ *   (0.99).</dd>
+ * <dt>threads</dt><dd>The number of threads (1).</dd>
+ * <dt>records</dt><dd>The number of records loaded before the run
+ *   (100000).</dd>
+ * <dt>operations</dt><dd>The number of operations of the run (1000000).</dd>
+ * <dt>duration</dt><dd>Ends the run after that many seconds instead.</dd>
+ * <dt>valueSize</dt><dd>The size of the values in bytes (100).</dd>
+ * <dt>scanLength</dt><dd>The number of records read by a scan (100).</dd>
+ * <dt>commitInterval</dt><dd>Commits every that many operations
+ *   (1000).</dd>
+ * <dt>reportInterval</dt><dd>Prints a line every that many seconds
+ *   (10).</dd>
+ * <dt>file</dt><dd>The store, which is deleted first
+ *   (WorkloadDriver_test).</dd>
+ * </dl>
+ * Options starting with "jdbm." are passed to the record manager, e.g.
+ * <code>jdbm.cache.type=soft</code>.
+ * <p>
+ * The latencies are in microseconds. Reads of keys which are not in the
+ * store, e.g. because their insert is still running, are counted as
+ * misses.
+ */
+public class WorkloadDriver {
+
+    static final int READ = 0;
+    static final int UPDATE = 1;
+    static final int INSERT = 2;
+    static final int SCAN = 3;
+    static final int COMMIT = 4;
+
+    static final String[] NAMES = { "READ", "UPDATE", "INSERT", "SCAN", "COMMIT" };
+
+    Properties props;
+    PrintStream out;
+
+    WorkloadTarget target;
+    KeyChooser chooser;
+    double[] proportions;
+    int threads;
+    long records;
+    long operations;
+    long duration;
+    int valueSize;
+    int scanLength;
+    int commitInterval;
+    long reportInterval;
+    String file;
+
+    RecordManager rm;
+
+    /** The next key to insert. */
+    final AtomicLong nextKey = new AtomicLong();
+
+    /** The number of operations started. */
+    final AtomicLong started = new AtomicLong();
+
+    final AtomicLong misses = new AtomicLong();
+
+    long startTime;
+    volatile boolean stopped;
+
+    /** The latencies since the start of the run. */
+    final LatencyHistogram[] total = newHistograms();
+
+    /** The latencies since the last report. */
+    volatile LatencyHistogram[] interval = newHistograms();
+
+    long lastReportTime;
+    long lastReportCount;
+
+    public WorkloadDriver(Properties props, PrintStream out) {
+        this.props = props;
+        this.out = out;
+        String workload = props.getProperty("workload");
+        if (workload != null) {
+            setWorkload(workload);
+        }
+        target = WorkloadTarget.forName(props.getProperty("target", "btree"));
+        String distribution = props.getProperty("distribution", "zipfian");
+        if (distribution.equals("zipfian")) {
+            double theta = getDouble("zipfianConstant", 0.99);
+            if (theta <= 0 || theta >= 1) {
+                throw new IllegalArgumentException("zipfianConstant must be in (0, 1)");
+            }
+            chooser = new KeyChooser.Zipfian(theta);
+        } else if (distribution.equals("uniform")) {
+            chooser = new KeyChooser.Uniform();
+        } else {
+            throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+        proportions = new double[] {
+            getDouble("read", 1), getDouble("update", 0),
+            getDouble("insert", 0), getDouble("scan", 0) };
+        double sum = 0;
+        for (int i = 0; i < proportions.length; i++) {
+            sum += proportions[i];
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("No operations in the workload");
+        }
+        for (int i = 0; i < proportions.length; i++) {
+            proportions[i] /= sum;
+        }
+        threads = (int) getLong("threads", 1);
+        records = getLong("records", 100000);
+        if (records < 1) {
+            throw new IllegalArgumentException("records must be positive");
+        }
+        duration = getLong("duration", 0) * 1000;
+        operations = getLong("operations", duration > 0 ? Long.MAX_VALUE : 1000000);
+        valueSize = (int) getLong("valueSize", 100);
+        scanLength = (int) getLong("scanLength", 100);
+        commitInterval = (int) getLong("commitInterval", 1000);
+        reportInterval = getLong("reportInterval", 10) * 1000;
+        file = props.getProperty("file", "WorkloadDriver_test");
+    }
+
+    /**
+     * Sets the proportions of a YCSB core workload, unless they are given.
+     */
+    private void setWorkload(String workload) {
+        String[] mix;
+        if (workload.equals("a")) {
+            mix = new String[] { "0.5", "0.5", "0", "0" };
+        } else if (workload.equals("b")) {
+            mix = new String[] { "0.95", "0.05", "0", "0" };
+        } else if (workload.equals("c")) {
+            mix = new String[] { "1", "0", "0", "0" };
+        } else if (workload.equals("d")) {
+            mix = new String[] { "0.95", "0", "0.05", "0" };
+        } else if (workload.equals("e")) {
+            mix = new String[] { "0", "0", "0.05", "0.95" };
+        } else {
+            throw new IllegalArgumentException("Unknown workload: " + workload);
+        }
+        String[] names = { "read", "update", "insert", "scan" };
+        for (int i = 0; i < names.length; i++) {
+            if (props.getProperty(names[i]) == null) {
+                props.setProperty(names[i], mix[i]);
+            }
+        }
+    }
+
+    private long getLong(String name, long defaultValue) {
+        String value = props.getProperty(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    private double getDouble(String name, double defaultValue) {
+        String value = props.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[NAMES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * Returns the options of the record manager.
+     */
+    private Properties getRecordManagerProperties() {
+        Properties rmProps = new Properties();
+        Enumeration names = props.propertyNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            if (name.startsWith("jdbm.")) {
+                rmProps.setProperty(name, props.getProperty(name));
+            }
+        }
+        return rmProps;
+    }
+
+    private boolean isTransactional() {
+        return !"true".equals(props.getProperty(RecordManagerOptions.DISABLE_TRANSACTIONS));
+    }
+
+    /**
+     * Creates the store and loads the records.
+     */
+    void load() throws IOException {
+        new File(file + ".db").delete();
+        new File(file + ".lg").delete();
+        rm = RecordManagerFactory.createRecordManager(file, getRecordManagerProperties());
+        target.initialize(rm);
+        Random random = new Random(0);
+        long start = System.currentTimeMillis();
+        for (long key = 0; key < records; key++) {
+            target.insert(key, newValue(random));
+            if ((key + 1) % commitInterval == 0) {
+                rm.commit();
+            }
+        }
+        rm.commit();
+        nextKey.set(records);
+        out.println("Loaded " + records + " records in "
+                    + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private byte[] newValue(Random random) {
+        byte[] value = new byte[valueSize];
+        random.nextBytes(value);
+        return value;
+    }
+
+    /**
+     * Runs the workload and prints the report. A worker which fails stops
+     * the run, and its failure is thrown once the other workers are done.
+     */
+    void run() throws IOException, InterruptedException {
+        out.println("Running " + target + " with " + threads + " threads, "
+                    + chooser + " keys, read/update/insert/scan "
+                    + proportions[READ] + "/" + proportions[UPDATE] + "/"
+                    + proportions[INSERT] + "/" + proportions[SCAN]);
+        out.print("elapsedTime, operations, operationsPerSec, misses");
+        for (int i = 0; i < NAMES.length; i++) {
+            out.print(", " + NAMES[i] + " count, p50, p99, p99.9, max");
+        }
+        out.println();
+
+        Worker[] workers = new Worker[threads];
+        startTime = System.currentTimeMillis();
+        lastReportTime = startTime;
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i);
+            workers[i].start();
+        }
+        boolean running = true;
+        while (running) {
+            long now = System.currentTimeMillis();
+            long wait = lastReportTime + reportInterval - now;
+            if (duration > 0) {
+                wait = Math.min(wait, startTime + duration - now);
+            }
+            if (wait > 0) {
+                Thread.sleep(Math.min(wait, 100));
+            }
+            running = false;
+            for (int i = 0; i < threads; i++) {
+                running |= workers[i].isAlive();
+            }
+            if (duration > 0 && System.currentTimeMillis() >= startTime + duration) {
+                stopped = true;
+            }
+            if (System.currentTimeMillis() >= lastReportTime + reportInterval || !running) {
+                report();
+            }
+        }
+        for (int i = 0; i < threads; i++) {
+            Throwable t = workers[i].failure;
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else if (t != null) {
+                throw new RuntimeException(workers[i].getName() + " failed", t);
+            }
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        long count = Math.min(started.get(), operations);
+        out.println("Ran " + count + " operations in " + elapsed + " ms, "
+                    + (elapsed > 0 ? count * 1000 / elapsed : 0) + " operations/sec");
+        for (int i = 0; i < NAMES.length; i++) {
+            LatencyHistogram h = total[i];
+            if (h.getCount() > 0) {
+                out.println(NAMES[i] + ": count=" + h.getCount()
+                            + ", mean=" + (long) h.getMean() / 1000
+                            + ", p50=" + h.getValueAtPercentile(50) / 1000
+                            + ", p99=" + h.getValueAtPercentile(99) / 1000
+                            + ", p99.9=" + h.getValueAtPercentile(99.9) / 1000
+                            + ", max=" + h.getMax() / 1000);
+            }
+        }
+        rm.close();
+    }
+
+    /**
+     * Prints the throughput and latencies since the last report.
+     */
+    void report() {
+        LatencyHistogram[] histograms = interval;
+        interval = newHistograms();
+        long now = System.currentTimeMillis();
+        long count = 0;
+        for (int i = 0; i < COMMIT; i++) {
+            count += histograms[i].getCount();
+        }
+        long elapsed = now - lastReportTime;
+        StringBuffer line = new StringBuffer();
+        line.append(now - startTime).append(", ").append(count).append(", ")
+            .append(elapsed > 0 ? count * 1000 / elapsed : 0).append(", ")
+            .append(misses.getAndSet(0));
+        for (int i = 0; i < NAMES.length; i++) {
+            LatencyHistogram h = histograms[i];
+            line.append(", ").append(h.getCount())
+                .append(", ").append(h.getValueAtPercentile(50) / 1000)
+                .append(", ").append(h.getValueAtPercentile(99) / 1000)
+                .append(", ").append(h.getValueAtPercentile(99.9) / 1000)
+                .append(", ").append(h.getMax() / 1000);
+        }
+        out.println(line);
+        lastReportTime = now;
+    }
+
+    private void record(int op, long nanos) {
+        total[op].record(nanos);
+        interval[op].record(nanos);
+    }
+
+    /**
+     * Runs operations until the run is over.
+     */
+    class Worker extends Thread {
+        final Random random;
+        Throwable failure;
+
+        Worker(int id) {
+            super("WorkloadDriver-" + id);
+            random = new Random(id + 1);
+        }
+
+        public void run() {
+            try {
+                while (!stopped) {
+                    long n = started.incrementAndGet();
+                    if (n > operations) {
+                        break;
+                    }
+                    doOperation(chooseOperation());
+                    if (isTransactional() && n % commitInterval == 0) {
+                        long start = System.nanoTime();
+                        rm.commit();
+                        record(COMMIT, System.nanoTime() - start);
+                    }
+                }
+            } catch (Throwable t) {
+                // stop the other workers too, run() rethrows the failure.
+                failure = t;
+                stopped = true;
+            }
+        }
+
+        private int chooseOperation() {
+            double p = random.nextDouble();
+            for (int op = 0; op < SCAN; op++) {
+                if (p < proportions[op]) {
+                    return op;
+                }
+                p -= proportions[op];
+            }
+            return SCAN;
+        }
+
+        private void doOperation(int op) throws IOException {
+            long start;
+            switch (op) {
+            case READ:
+                long key = chooser.nextKey(random, nextKey.get());
+                start = System.nanoTime();
+                if (!target.read(key)) {
+                    misses.incrementAndGet();
+                }
+                break;
+            case UPDATE:
+                key = chooser.nextKey(random, nextKey.get());
+                byte[] value = newValue(random);
+                start = System.nanoTime();
+                target.update(key, value);
+                break;
+            case INSERT:
+                key = nextKey.getAndIncrement();
+                value = newValue(random);
+                start = System.nanoTime();
+                target.insert(key, value);
+                break;
+            default:
+                key = chooser.nextKey(random, nextKey.get());
+                start = System.nanoTime();
+                target.scan(key, scanLength);
+                break;
+            }
+            record(op, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param args <code>name=value</code> options, or <code>-f file</code>
+     *        to read them from a properties file.
+     */
+    public static void main(String[] args) throws Exception {
+        Properties props = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-f") && i + 1 < args.length) {
+                InputStream in = new FileInputStream(args[++i]);
+                try {
+                    props.load(in);
+                } finally {
+                    in.close();
+                }
+            } else {
+                int eq = args[i].indexOf('=');
+                if (eq < 0) {
+                    System.err.println("Usage: WorkloadDriver [-f file] [name=value]...");
+                    System.exit(1);
+                }
+                props.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+        WorkloadDriver driver = new WorkloadDriver(props, System.out);
+        driver.load();
+        driver.run();
+    }
+
+}
@@ -0,0 +1,175 @@
+package jdbm.perftests;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jdbm.RecordManager;
+import jdbm.btree.BTree;
+import jdbm.helper.ByteArraySerializer;
+import jdbm.helper.LongComparator;
+import jdbm.helper.LongSerializer;
+import jdbm.helper.Tuple;
+import jdbm.helper.TupleBrowser;
+import jdbm.htree.HTree;
+
+/**
+ * The structure a {@link WorkloadDriver} runs against. Keys are longs and
+ * values byte arrays. Targets are called concurrently by the threads of
+ * the driver.
+ */
+abstract class WorkloadTarget {
+
+    /**
+     * Creates the structure in an empty store.
+     */
+    public abstract void initialize(RecordManager rm) throws IOException;
+
+    /**
+     * Returns false if the key was not found.
+     */
+    public abstract boolean read(long key) throws IOException;
+
+    public abstract void update(long key, byte[] value) throws IOException;
+
+    public abstract void insert(long key, byte[] value) throws IOException;
+
+    /**
+     * Reads up to <code>length</code> records in key order from
+     * <code>key</code> and returns how many were read.
+     */
+    public abstract int scan(long key, int length) throws IOException;
+
+    /**
+     * Returns the target named by the "target" option of the driver.
+     */
+    static WorkloadTarget forName(String name) {
+        if (name.equals("btree")) {
+            return new BTreeTarget();
+        } else if (name.equals("htree")) {
+            return new HTreeTarget();
+        } else if (name.equals("recman")) {
+            return new RecordManagerTarget();
+        }
+        throw new IllegalArgumentException("Unknown target: " + name);
+    }
+
+    /**
+     * Records inserted directly in the record manager. The recids of the
+     * keys are kept in memory; a scan fetches consecutive keys.
+     */
+    static class RecordManagerTarget extends WorkloadTarget {
+        RecordManager rm;
+        Map recids = new ConcurrentHashMap();
+
+        public void initialize(RecordManager rm) {
+            this.rm = rm;
+        }
+
+        public boolean read(long key) throws IOException {
+            Long recid = (Long) recids.get(new Long(key));
+            return recid != null
+                && rm.fetch(recid.longValue(), ByteArraySerializer.INSTANCE) != null;
+        }
+
+        public void update(long key, byte[] value) throws IOException {
+            Long recid = (Long) recids.get(new Long(key));
+            if (recid != null) {
+                rm.update(recid.longValue(), value, ByteArraySerializer.INSTANCE);
+            }
+        }
+
+        public void insert(long key, byte[] value) throws IOException {
+            long recid = rm.insert(value, ByteArraySerializer.INSTANCE);
+            recids.put(new Long(key), new Long(recid));
+        }
+
+        public int scan(long key, int length) throws IOException {
+            int found = 0;
+            for (int i = 0; i < length; i++) {
+                if (read(key + i)) {
+                    found++;
+                }
+            }
+            return found;
+        }
+
+        public String toString() {
+            return "recman";
+        }
+    }
+
+    static class BTreeTarget extends WorkloadTarget {
+        BTree tree;
+
+        public void initialize(RecordManager rm) throws IOException {
+            tree = BTree.createInstance(rm, new LongComparator(),
+                                        LongSerializer.INSTANCE,
+                                        ByteArraySerializer.INSTANCE);
+        }
+
+        public boolean read(long key) throws IOException {
+            return tree.find(new Long(key)) != null;
+        }
+
+        public void update(long key, byte[] value) throws IOException {
+            tree.insert(new Long(key), value, true);
+        }
+
+        public void insert(long key, byte[] value) throws IOException {
+            tree.insert(new Long(key), value, true);
+        }
+
+        public int scan(long key, int length) throws IOException {
+            TupleBrowser browser = tree.browse(new Long(key));
+            Tuple tuple = new Tuple();
+            int found = 0;
+            while (found < length && browser.getNext(tuple)) {
+                found++;
+            }
+            return found;
+        }
+
+        public String toString() {
+            return "btree";
+        }
+    }
+
+    /**
+     * An HTree is not ordered; a scan gets consecutive keys.
+     */
+    static class HTreeTarget extends WorkloadTarget {
+        HTree tree;
+
+        public void initialize(RecordManager rm) throws IOException {
+            tree = HTree.createInstance(rm);
+        }
+
+        public boolean read(long key) throws IOException {
+            return tree.get(new Long(key)) != null;
+        }
+
+        public void update(long key, byte[] value) throws IOException {
+            tree.put(new Long(key), value);
+        }
+
+        public void insert(long key, byte[] value) throws IOException {
+            tree.put(new Long(key), value);
+        }
+
+        public int scan(long key, int length) throws IOException {
+            int found = 0;
+            for (int i = 0; i < length; i++) {
+                if (read(key + i)) {
+                    found++;
+                }
+            }
+            return found;
+        }
+
+        public String toString() {
+            return "htree";
+        }
+    }
+
+}